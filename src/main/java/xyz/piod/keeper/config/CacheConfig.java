@@ -16,6 +16,7 @@ import java.time.Duration;
 public class CacheConfig {
 
     public static final String USER_CACHE = "userCache";
+    public static final String DM_ROOM_CACHE = "dmRoomCache";
 
     @Bean
     public RedisCacheManagerBuilderCustomizer redisCacheManagerBuilderCustomizer() {
@@ -28,7 +29,11 @@ public class CacheConfig {
                 .entryTtl(Duration.ofHours(1))
                 .serializeValuesWith(SerializationPair.fromSerializer(userSerializer));
 
+        RedisCacheConfiguration dmRoomCacheConfig = RedisCacheConfiguration.defaultCacheConfig()
+                .entryTtl(Duration.ofHours(6));
+
         return (builder) -> builder
-                .withCacheConfiguration(USER_CACHE, userCacheConfig);
+                .withCacheConfiguration(USER_CACHE, userCacheConfig)
+                .withCacheConfiguration(DM_ROOM_CACHE, dmRoomCacheConfig);
     }
 }
\ No newline at end of file
@@ -0,0 +1,37 @@
+package xyz.piod.keeper.config;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.Set;
+
+@Getter
+@RequiredArgsConstructor
+public enum CommandLane {
+    INTERACTIVE(RabbitMQConfig.INTERACTIVE_COMMANDS_QUEUE,
+            Set.of("new_message", "edit_message", "delete_message"), Set.of()),
+    SOCIAL(RabbitMQConfig.SOCIAL_COMMANDS_QUEUE,
+            Set.of("toggle_reaction", "toggle_pin", "typing", "stop_typing"), Set.of("typing", "stop_typing")),
+    BULK(RabbitMQConfig.BULK_COMMANDS_QUEUE,
+            Set.of("messages_seen"), Set.of());
+
+    private final String queueName;
+    private final Set<String> actions;
+    private final Set<String> ephemeralActions;
+
+    public String tag() {
+        return name().toLowerCase();
+    }
+
+    public String stripeQueueName(int stripe) {
+        return queueName + "." + stripe;
+    }
+
+    public String stripeRoutingKey(int stripe) {
+        return tag() + "." + stripe;
+    }
+
+    public boolean isEphemeral(String action) {
+        return ephemeralActions.contains(action);
+    }
+}
@@ -0,0 +1,15 @@
+package xyz.piod.keeper.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.springframework.amqp.support.converter.AbstractJackson2MessageConverter;
+import org.springframework.util.MimeType;
+
+public class Jackson2CborMessageConverter extends AbstractJackson2MessageConverter {
+
+    public static final String CONTENT_TYPE = "application/cbor";
+
+    public Jackson2CborMessageConverter(ObjectMapper objectMapper) {
+        super(objectMapper.copyWith(new CBORFactory()), MimeType.valueOf(CONTENT_TYPE), "*");
+    }
+}
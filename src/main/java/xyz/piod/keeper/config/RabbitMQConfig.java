@@ -3,20 +3,42 @@ package xyz.piod.keeper.config;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.amqp.core.Binding;
 import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.core.Declarables;
+import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.core.DirectExchange;
 import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.QueueBuilder;
 import org.springframework.amqp.core.TopicExchange;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.ContentTypeDelegatingMessageConverter;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
 @Configuration
 public class RabbitMQConfig {
 
     public static final String KEEPER_EXCHANGE = "keeper.exchange";
-    public static final String MESSAGE_COMMANDS_QUEUE = "keeper.message.commands";
-    public static final String MESSAGE_COMMAND_ROUTING_KEY = "cmd.v2.message.#";
+    public static final String INTERACTIVE_COMMANDS_QUEUE = "keeper.message.commands.interactive";
+    public static final String SOCIAL_COMMANDS_QUEUE = "keeper.message.commands.social";
+    public static final String BULK_COMMANDS_QUEUE = "keeper.message.commands.bulk";
+    public static final String MESSAGE_COMMAND_ROUTING_PREFIX = "cmd.v2.message.";
+    // lane queues are routed onto per-room stripe queues through this exchange
+    public static final String COMMAND_STRIPES_EXCHANGE = "keeper.commands.stripes";
+
+    // the pre-lanes catch-all queue; drained and removed by LegacyCommandQueueDrainer once no old node consumes it
+    public static final String LEGACY_COMMANDS_QUEUE = "keeper.message.commands";
+    public static final String LEGACY_COMMAND_ROUTING_KEY = MESSAGE_COMMAND_ROUTING_PREFIX + "#";
 
     public static final String NOTIFICATIONS_QUEUE = "keeper.notifications";
     public static final String NOTIFICATION_EVENTS_ROUTING_KEY = "event.notification.#";
@@ -28,18 +50,48 @@ public class RabbitMQConfig {
     }
 
     @Bean
-    public Queue messageCommandsQueue() {
-        return new Queue(MESSAGE_COMMANDS_QUEUE, true);
+    public Queue notificationsQueue() {
+        return new Queue(NOTIFICATIONS_QUEUE, true);
     }
 
     @Bean
-    public Queue notificationsQueue() {
-        return new Queue(NOTIFICATIONS_QUEUE, true);
+    public DirectExchange commandStripesExchange() {
+        return new DirectExchange(COMMAND_STRIPES_EXCHANGE);
     }
 
+    // lane queues are bound to keeper.exchange by LegacyCommandQueueDrainer, once the legacy queue has been unbound
     @Bean
-    public Binding messageCommandsBinding(Queue messageCommandsQueue, TopicExchange keeperExchange) {
-        return BindingBuilder.bind(messageCommandsQueue).to(keeperExchange).with(MESSAGE_COMMAND_ROUTING_KEY);
+    public Declarables commandLanes(DirectExchange commandStripesExchange,
+                                    @Value("${keeper.commands.lanes.interactive.stripes}") int interactiveStripes,
+                                    @Value("${keeper.commands.lanes.social.stripes}") int socialStripes,
+                                    @Value("${keeper.commands.lanes.bulk.stripes}") int bulkStripes) {
+        Map<CommandLane, Integer> stripeCounts = Map.of(
+                CommandLane.INTERACTIVE, interactiveStripes,
+                CommandLane.SOCIAL, socialStripes,
+                CommandLane.BULK, bulkStripes);
+        List<Declarable> declarables = new ArrayList<>();
+        for (CommandLane lane : CommandLane.values()) {
+            // one active router per lane across all nodes, so a room's commands reach its stripe in publish order
+            declarables.add(QueueBuilder.durable(lane.getQueueName()).singleActiveConsumer().build());
+            for (int stripe = 0; stripe < stripeCounts.get(lane); stripe++) {
+                // one active consumer per stripe across all nodes, so each room is handled by one consumer at a time
+                Queue queue = QueueBuilder.durable(lane.stripeQueueName(stripe)).singleActiveConsumer().build();
+                declarables.add(queue);
+                declarables.add(BindingBuilder.bind(queue).to(commandStripesExchange).with(lane.stripeRoutingKey(stripe)));
+            }
+        }
+        return new Declarables(declarables);
+    }
+
+    public static List<Binding> commandLaneBindings() {
+        List<Binding> bindings = new ArrayList<>();
+        for (CommandLane lane : CommandLane.values()) {
+            for (String action : lane.getActions()) {
+                bindings.add(new Binding(lane.getQueueName(), Binding.DestinationType.QUEUE, KEEPER_EXCHANGE,
+                        MESSAGE_COMMAND_ROUTING_PREFIX + action, null));
+            }
+        }
+        return bindings;
     }
 
     @Bean
@@ -48,12 +100,56 @@ public class RabbitMQConfig {
     }
 
     @Bean
-    public Jackson2JsonMessageConverter messageConverter(ObjectMapper objectMapper) {
-        return new Jackson2JsonMessageConverter(objectMapper);
+    public MessageConverter messageConverter(ObjectMapper objectMapper) {
+        ContentTypeDelegatingMessageConverter converter =
+                new ContentTypeDelegatingMessageConverter(new Jackson2JsonMessageConverter(objectMapper));
+        converter.addDelegate(Jackson2CborMessageConverter.CONTENT_TYPE, new Jackson2CborMessageConverter(objectMapper));
+        return converter;
+    }
+
+    @Bean
+    public SimpleRabbitListenerContainerFactory commandRouterContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer, ConnectionFactory connectionFactory,
+            @Value("${keeper.commands.router-prefetch}") int prefetch) {
+        return singleConsumerContainerFactory(configurer, connectionFactory, prefetch);
+    }
+
+    @Bean
+    public SimpleRabbitListenerContainerFactory interactiveLaneContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer, ConnectionFactory connectionFactory,
+            @Value("${keeper.commands.lanes.interactive.prefetch}") int prefetch) {
+        return singleConsumerContainerFactory(configurer, connectionFactory, prefetch);
+    }
+
+    @Bean
+    public SimpleRabbitListenerContainerFactory socialLaneContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer, ConnectionFactory connectionFactory,
+            @Value("${keeper.commands.lanes.social.prefetch}") int prefetch) {
+        return singleConsumerContainerFactory(configurer, connectionFactory, prefetch);
+    }
+
+    @Bean
+    public SimpleRabbitListenerContainerFactory bulkLaneContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer, ConnectionFactory connectionFactory,
+            @Value("${keeper.commands.lanes.bulk.prefetch}") int prefetch) {
+        return singleConsumerContainerFactory(configurer, connectionFactory, prefetch);
+    }
+
+    private SimpleRabbitListenerContainerFactory singleConsumerContainerFactory(SimpleRabbitListenerContainerFactoryConfigurer configurer,
+                                                                                ConnectionFactory connectionFactory,
+                                                                                int prefetch) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        // a single consumer reads in queue order and acks each command once the listener returns
+        factory.setConcurrentConsumers(1);
+        factory.setMaxConcurrentConsumers(1);
+        factory.setPrefetchCount(prefetch);
+        factory.setAcknowledgeMode(AcknowledgeMode.AUTO);
+        return factory;
     }
 
     @Bean
-    public RabbitTemplate rabbitTemplate(ConnectionFactory connectionFactory, Jackson2JsonMessageConverter messageConverter) {
+    public RabbitTemplate rabbitTemplate(ConnectionFactory connectionFactory, MessageConverter messageConverter) {
         RabbitTemplate rabbitTemplate = new RabbitTemplate(connectionFactory);
         rabbitTemplate.setMessageConverter(messageConverter);
         return rabbitTemplate;
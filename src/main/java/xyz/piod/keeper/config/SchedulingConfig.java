@@ -0,0 +1,14 @@
+package xyz.piod.keeper.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Scheduled jobs run on serving nodes only, not in one-off import processes.
+ */
+@Configuration
+@Profile("!import")
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -3,6 +3,7 @@ package xyz.piod.keeper.config;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.autoconfigure.security.servlet.EndpointRequest;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -20,6 +21,7 @@ import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 import xyz.piod.keeper.config.filter.JwtAuthenticationFilter;
 import xyz.piod.keeper.config.oauth.OAuth2AuthenticationSuccessHandler;
+import xyz.piod.keeper.controller.HotRoomsEndpoint;
 import xyz.piod.keeper.service.UserService;
 
 import java.util.Arrays;
@@ -57,7 +59,9 @@ public class SecurityConfig {
                 .csrf(AbstractHttpConfigurer::disable)
                 .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
                 .authorizeHttpRequests(auth -> auth
-                        .requestMatchers("/api/auth/**", "/oauth2/**", "/login/oauth2/code/**").permitAll()
+                        .requestMatchers("/api/auth/**", "/oauth2/**", "/login/oauth2/code/**", "/ws").permitAll()
+                        // exposes room ids and their activity
+                        .requestMatchers(EndpointRequest.to(HotRoomsEndpoint.class)).hasRole("ADMIN")
                         .anyRequest().authenticated())
                 .oauth2Login(oauth2 -> oauth2
                         .successHandler(oAuth2AuthenticationSuccessHandler))
@@ -0,0 +1,31 @@
+package xyz.piod.keeper.config;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+import xyz.piod.keeper.config.filter.JwtHandshakeInterceptor;
+import xyz.piod.keeper.service.gateway.GatewayWebSocketHandler;
+
+@Configuration
+@EnableWebSocket
+@ConditionalOnProperty(name = "keeper.gateway.embedded.enabled", havingValue = "true")
+@RequiredArgsConstructor
+public class WebSocketConfig implements WebSocketConfigurer {
+
+    private final GatewayWebSocketHandler gatewayWebSocketHandler;
+    private final JwtHandshakeInterceptor jwtHandshakeInterceptor;
+
+    @Value("${frontend.url}")
+    private String frontendUrl;
+
+    @Override
+    public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+        registry.addHandler(gatewayWebSocketHandler, "/ws")
+                .addInterceptors(jwtHandshakeInterceptor)
+                .setAllowedOriginPatterns(frontendUrl, "http://localhost:5173", "http://localhost:63659");
+    }
+}
@@ -5,8 +5,10 @@ import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.lang.NonNull;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -18,6 +20,7 @@ import xyz.piod.keeper.service.JwtService;
 import xyz.piod.keeper.service.UserService;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 
 @Component
@@ -27,6 +30,9 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     private final JwtService jwtService;
     private final UserService userService;
 
+    @Value("${keeper.security.admin-emails}")
+    private String[] adminEmails;
+
     @Override
     protected void doFilterInternal(
             @NonNull HttpServletRequest request,
@@ -52,7 +58,7 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             UserDetails userDetails = new org.springframework.security.core.userdetails.User(
                     user.getUsername(),
                     "",
-                    List.of(new SimpleGrantedAuthority("ROLE_USER"))
+                    authorities(user)
             );
 
             if (jwtService.isTokenValid(jwt, userDetails)) {
@@ -67,4 +73,12 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         }
         filterChain.doFilter(request, response);
     }
+
+    List<GrantedAuthority> authorities(User user) {
+        boolean admin = user.getEmail() != null && Arrays.stream(adminEmails)
+                .anyMatch(email -> !email.isBlank() && email.strip().equalsIgnoreCase(user.getEmail()));
+        return admin
+                ? List.of(new SimpleGrantedAuthority("ROLE_USER"), new SimpleGrantedAuthority("ROLE_ADMIN"))
+                : List.of(new SimpleGrantedAuthority("ROLE_USER"));
+    }
 }
\ No newline at end of file
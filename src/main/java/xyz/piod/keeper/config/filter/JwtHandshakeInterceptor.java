@@ -0,0 +1,79 @@
+package xyz.piod.keeper.config.filter;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.lang.NonNull;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+import org.springframework.web.util.UriComponentsBuilder;
+import xyz.piod.keeper.entity.User;
+import xyz.piod.keeper.service.JwtService;
+import xyz.piod.keeper.service.UserService;
+import xyz.piod.keeper.service.gateway.GatewayWebSocketHandler;
+
+import java.util.List;
+import java.util.Map;
+
+@Component
+@ConditionalOnProperty(name = "keeper.gateway.embedded.enabled", havingValue = "true")
+@RequiredArgsConstructor
+@Slf4j
+public class JwtHandshakeInterceptor implements HandshakeInterceptor {
+
+    private final JwtService jwtService;
+    private final UserService userService;
+
+    @Override
+    public boolean beforeHandshake(@NonNull ServerHttpRequest request, @NonNull ServerHttpResponse response,
+                                   @NonNull WebSocketHandler wsHandler, @NonNull Map<String, Object> attributes) {
+        String jwt = resolveToken(request);
+        if (jwt == null) {
+            response.setStatusCode(HttpStatus.UNAUTHORIZED);
+            return false;
+        }
+
+        try {
+            String username = jwtService.extractUsername(jwt);
+            User user = userService.findUserByUsername(username);
+
+            UserDetails userDetails = new org.springframework.security.core.userdetails.User(
+                    user.getUsername(),
+                    "",
+                    List.of(new SimpleGrantedAuthority("ROLE_USER"))
+            );
+
+            if (!jwtService.isTokenValid(jwt, userDetails)) {
+                response.setStatusCode(HttpStatus.UNAUTHORIZED);
+                return false;
+            }
+
+            attributes.put(GatewayWebSocketHandler.USER_ID_ATTRIBUTE, user.getId());
+            attributes.put(GatewayWebSocketHandler.USERNAME_ATTRIBUTE, user.getUsername());
+            return true;
+        } catch (Exception e) {
+            log.warn("Rejected websocket handshake: {}", e.getMessage());
+            response.setStatusCode(HttpStatus.UNAUTHORIZED);
+            return false;
+        }
+    }
+
+    @Override
+    public void afterHandshake(@NonNull ServerHttpRequest request, @NonNull ServerHttpResponse response,
+                               @NonNull WebSocketHandler wsHandler, Exception exception) {
+    }
+
+    private String resolveToken(ServerHttpRequest request) {
+        String authHeader = request.getHeaders().getFirst("Authorization");
+        if (authHeader != null && authHeader.startsWith("Bearer ")) {
+            return authHeader.substring(7);
+        }
+        return UriComponentsBuilder.fromUri(request.getURI()).build().getQueryParams().getFirst("token");
+    }
+}
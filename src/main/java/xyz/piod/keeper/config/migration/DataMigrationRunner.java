@@ -0,0 +1,174 @@
+package xyz.piod.keeper.config.migration;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Idempotent backfills run on every start. One-off steps run through
+ * {@link #runOnce}: each is recorded in keeper_data_migrations in the same
+ * transaction as its changes, under an advisory lock, so it runs exactly
+ * once across restarts and concurrently starting nodes.
+ */
+@Component
+@Profile("!import")
+@RequiredArgsConstructor
+@Slf4j
+public class DataMigrationRunner implements ApplicationRunner {
+
+    private static final String LEDGER_TABLE = "keeper_data_migrations";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${keeper.messages.reply-snippet-length}")
+    private int replySnippetLength;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + LEDGER_TABLE
+                + " (name VARCHAR(200) PRIMARY KEY, completed_at TIMESTAMP NOT NULL DEFAULT now())");
+
+        runOnce("hidden_chat_rooms -> chatroom_participants.hidden", this::migrateHiddenChatRooms);
+        runStep("chat_rooms.dm_user_low/dm_user_high backfill", this::backfillDirectMessagePairs);
+        runOnce("chat_rooms.member_count backfill", this::backfillMemberCounts);
+        runOnce("chat_rooms.last_activity_at backfill", this::backfillLastActivity);
+        runOnce("messages reply snippet backfill", this::backfillReplySnippets);
+        runOnce("messages.reply_count backfill", this::backfillReplyCounts);
+        runStep("idx_messages_replied_to_id -> idx_messages_replied_to_id_id", this::dropReplyIndex);
+    }
+
+    private void runStep(String name, Runnable step) {
+        try {
+            step.run();
+        } catch (Exception e) {
+            log.error("Data migration step '{}' failed: {}", name, e.getMessage(), e);
+        }
+    }
+
+    private void runOnce(String name, Runnable step) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.query("SELECT pg_advisory_xact_lock(hashtext(?))", (RowCallbackHandler) rs -> { }, name);
+                Integer done = jdbcTemplate.queryForObject(
+                        "SELECT count(*) FROM " + LEDGER_TABLE + " WHERE name = ?", Integer.class, name);
+                if (done != null && done > 0) {
+                    return;
+                }
+                step.run();
+                jdbcTemplate.update("INSERT INTO " + LEDGER_TABLE + " (name) VALUES (?)", name);
+                log.info("Data migration step '{}' completed", name);
+            });
+        } catch (Exception e) {
+            log.error("Data migration step '{}' failed and will be retried on next start: {}", name, e.getMessage(), e);
+        }
+    }
+
+    // the old table is kept, renamed, until an operator has checked the migrated flags and drops it
+    private void migrateHiddenChatRooms() {
+        if (!tableExists("hidden_chat_rooms")) {
+            return;
+        }
+        int migrated = jdbcTemplate.update("""
+                UPDATE chatroom_participants p SET hidden = TRUE
+                FROM hidden_chat_rooms h
+                WHERE h.chatroom_id = p.chatroom_id AND h.user_id = p.user_id
+                """);
+        jdbcTemplate.execute("ALTER TABLE hidden_chat_rooms RENAME TO hidden_chat_rooms_archived");
+        log.info("Moved {} hidden chat rooms onto chatroom_participants; the old rows are kept in hidden_chat_rooms_archived",
+                migrated);
+    }
+
+    private void backfillDirectMessagePairs() {
+        int keyed = jdbcTemplate.update("""
+                UPDATE chat_rooms cr SET dm_user_low = pair.low, dm_user_high = pair.high
+                FROM (
+                    SELECT DISTINCT ON (low, high) chatroom_id, low, high
+                    FROM (
+                        SELECT p.chatroom_id, min(p.user_id) AS low, max(p.user_id) AS high
+                        FROM chatroom_participants p
+                        JOIN chat_rooms r ON r.id = p.chatroom_id
+                        WHERE r.is_private = TRUE AND r.dm_user_low IS NULL
+                        GROUP BY p.chatroom_id
+                        HAVING count(*) = 2
+                    ) pairs
+                    ORDER BY low, high, chatroom_id
+                ) pair
+                WHERE cr.id = pair.chatroom_id
+                  AND NOT EXISTS (SELECT 1 FROM chat_rooms o WHERE o.dm_user_low = pair.low AND o.dm_user_high = pair.high)
+                """);
+        if (keyed > 0) {
+            log.info("Keyed {} existing direct-message rooms by their user pair", keyed);
+        }
+
+        Integer duplicates = jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM chat_rooms WHERE is_private = TRUE AND dm_user_low IS NULL", Integer.class);
+        if (duplicates != null && duplicates > 0) {
+            log.warn("{} private rooms were left unkeyed; they duplicate an older DM for the same pair", duplicates);
+        }
+    }
+
+    private void backfillMemberCounts() {
+        int counted = jdbcTemplate.update("""
+                UPDATE chat_rooms cr SET member_count = m.members
+                FROM (SELECT chatroom_id, count(*) AS members FROM chatroom_participants GROUP BY chatroom_id) m
+                WHERE cr.id = m.chatroom_id AND cr.member_count = 0
+                """);
+        if (counted > 0) {
+            log.info("Backfilled member counts for {} chat rooms", counted);
+        }
+    }
+
+    private void backfillLastActivity() {
+        int touched = jdbcTemplate.update("""
+                UPDATE chat_rooms cr
+                SET last_activity_at = (SELECT max(m.timestamp) FROM messages m WHERE m.chatroom_id = cr.id)
+                WHERE cr.last_activity_at IS NULL AND EXISTS (SELECT 1 FROM messages m WHERE m.chatroom_id = cr.id)
+                """);
+        if (touched > 0) {
+            log.info("Backfilled last activity for {} chat rooms", touched);
+        }
+    }
+
+    private void backfillReplySnippets() {
+        int filled = jdbcTemplate.update("""
+                UPDATE messages r
+                SET reply_sender_username = u.username,
+                    reply_snippet = CASE WHEN char_length(p.content) > ? THEN left(p.content, ?) || '…' ELSE p.content END
+                FROM messages p JOIN users u ON u.id = p.sender_id
+                WHERE r.replied_to_id = p.id AND r.reply_snippet IS NULL
+                """, replySnippetLength, replySnippetLength);
+        if (filled > 0) {
+            log.info("Backfilled reply snippets for {} messages", filled);
+        }
+    }
+
+    private void backfillReplyCounts() {
+        int counted = jdbcTemplate.update("""
+                UPDATE messages p SET reply_count = c.replies
+                FROM (
+                    SELECT replied_to_id, count(*) AS replies FROM messages
+                    WHERE replied_to_id IS NOT NULL GROUP BY replied_to_id
+                ) c
+                WHERE p.id = c.replied_to_id AND p.reply_count = 0
+                """);
+        if (counted > 0) {
+            log.info("Backfilled reply counts for {} messages", counted);
+        }
+    }
+
+    private void dropReplyIndex() {
+        jdbcTemplate.execute("DROP INDEX IF EXISTS idx_messages_replied_to_id");
+    }
+
+    private boolean tableExists(String table) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject("SELECT to_regclass(?) IS NOT NULL", Boolean.class, table));
+    }
+}
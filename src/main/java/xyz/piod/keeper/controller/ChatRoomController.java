@@ -4,20 +4,31 @@ import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import xyz.piod.keeper.dto.ChatRoomCreateRequest;
 import xyz.piod.keeper.dto.ChatRoomResponse;
+import xyz.piod.keeper.dto.ChatRoomSummary;
 import xyz.piod.keeper.dto.MessageResponse;
+import xyz.piod.keeper.dto.RoomAuthorizationRequest;
+import xyz.piod.keeper.dto.RoomAuthorizationResponse;
+import xyz.piod.keeper.dto.RoomRetentionRequest;
+import xyz.piod.keeper.dto.UserResponse;
 import xyz.piod.keeper.entity.User;
-import xyz.piod.keeper.repository.ChatRoomRepository;
 import xyz.piod.keeper.service.ChatRoomService;
 import xyz.piod.keeper.service.MessageService;
+import xyz.piod.keeper.service.RoomMembershipService;
 import xyz.piod.keeper.service.UserService;
+import xyz.piod.keeper.service.export.RoomExportService;
 
+import java.util.Base64;
+import java.util.BitSet;
 import java.util.List;
 
 @RestController
@@ -27,8 +38,9 @@ public class ChatRoomController {
 
     private final ChatRoomService chatRoomService;
     private final MessageService messageService;
-    private final ChatRoomRepository chatRoomRepository;
     private final UserService userService;
+    private final RoomMembershipService roomMembershipService;
+    private final RoomExportService roomExportService;
 
     private User getAuthenticatedUser(UserDetails principal) {
         return userService.findUserByUsername(principal.getUsername());
@@ -43,11 +55,11 @@ public class ChatRoomController {
     }
 
     @GetMapping("/groups")
-    public ResponseEntity<Page<ChatRoomResponse>> getGroupChatsForUser(
+    public ResponseEntity<Page<ChatRoomSummary>> getGroupChatsForUser(
             @AuthenticationPrincipal UserDetails principal,
             Pageable pageable) {
         User user = getAuthenticatedUser(principal);
-        Page<ChatRoomResponse> rooms = chatRoomService.getGroupChatsForUser(user, pageable);
+        Page<ChatRoomSummary> rooms = chatRoomService.getGroupChatsForUser(user, pageable);
         return ResponseEntity.ok(rooms);
     }
 
@@ -75,6 +87,15 @@ public class ChatRoomController {
         return ResponseEntity.noContent().build();
     }
 
+    @PutMapping("/groups/{roomId}/retention")
+    public ResponseEntity<ChatRoomResponse> setRetention(@PathVariable Long roomId,
+                                                         @Valid @RequestBody RoomRetentionRequest request,
+                                                         @AuthenticationPrincipal UserDetails principal) {
+        User currentUser = getAuthenticatedUser(principal);
+        ChatRoomResponse updatedRoom = chatRoomService.setRetention(roomId, request.days(), currentUser);
+        return ResponseEntity.ok(updatedRoom);
+    }
+
     @DeleteMapping("/groups/{roomId}/participants/{userIdToKick}")
     public ResponseEntity<Void> kickParticipant(@PathVariable Long roomId,
                                                 @PathVariable Long userIdToKick,
@@ -93,11 +114,11 @@ public class ChatRoomController {
     }
 
     @GetMapping("/dms")
-    public ResponseEntity<Page<ChatRoomResponse>> getDirectMessagesForUser(
+    public ResponseEntity<Page<ChatRoomSummary>> getDirectMessagesForUser(
             @AuthenticationPrincipal UserDetails principal,
             Pageable pageable) {
         User user = getAuthenticatedUser(principal);
-        Page<ChatRoomResponse> dms = chatRoomService.getDirectMessagesForUser(user, pageable);
+        Page<ChatRoomSummary> dms = chatRoomService.getDirectMessagesForUser(user, pageable);
         return ResponseEntity.ok(dms);
     }
 
@@ -108,6 +129,20 @@ public class ChatRoomController {
         return ResponseEntity.noContent().build();
     }
 
+    @PutMapping("/{roomId}/mute")
+    public ResponseEntity<Void> muteRoom(@PathVariable Long roomId, @AuthenticationPrincipal UserDetails principal) {
+        User currentUser = getAuthenticatedUser(principal);
+        chatRoomService.setRoomMuted(roomId, currentUser, true);
+        return ResponseEntity.noContent().build();
+    }
+
+    @DeleteMapping("/{roomId}/mute")
+    public ResponseEntity<Void> unmuteRoom(@PathVariable Long roomId, @AuthenticationPrincipal UserDetails principal) {
+        User currentUser = getAuthenticatedUser(principal);
+        chatRoomService.setRoomMuted(roomId, currentUser, false);
+        return ResponseEntity.noContent().build();
+    }
+
     @GetMapping("/{roomId}/messages")
     public ResponseEntity<Page<MessageResponse>> getMessagesForRoom(
             @PathVariable Long roomId,
@@ -117,10 +152,34 @@ public class ChatRoomController {
         return ResponseEntity.ok(messages);
     }
 
+    @GetMapping("/{roomId}/export")
+    public ResponseEntity<StreamingResponseBody> exportRoomHistory(@PathVariable Long roomId,
+                                                                   @RequestParam(required = false) Long afterId,
+                                                                   @RequestParam(defaultValue = "false") boolean gzip,
+                                                                   @AuthenticationPrincipal UserDetails principal) {
+        User user = getAuthenticatedUser(principal);
+        StreamingResponseBody body = roomExportService.export(roomId, afterId, gzip, user);
+        String fileName = "room-" + roomId + (afterId != null ? "-after-" + afterId : "") + ".ndjson" + (gzip ? ".gz" : "");
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"")
+                .contentType(gzip ? MediaType.parseMediaType("application/gzip") : MediaType.parseMediaType("application/x-ndjson"))
+                .body(body);
+    }
+
+    @GetMapping("/{roomId}/members")
+    public ResponseEntity<Page<UserResponse>> getRoomMembers(@PathVariable Long roomId,
+                                                             @RequestParam(required = false) String q,
+                                                             @AuthenticationPrincipal UserDetails principal,
+                                                             Pageable pageable) {
+        User user = getAuthenticatedUser(principal);
+        Page<UserResponse> members = chatRoomService.getRoomMembers(roomId, q, user, pageable);
+        return ResponseEntity.ok(members);
+    }
+
     @GetMapping("/{roomId}/authorize-join")
     public ResponseEntity<Void> authorizeJoin(@PathVariable Long roomId, @AuthenticationPrincipal UserDetails principal) {
         User user = getAuthenticatedUser(principal);
-        boolean isParticipant = chatRoomRepository.isUserParticipant(roomId, user.getId());
+        boolean isParticipant = roomMembershipService.isMember(roomId, user.getId());
 
         if (isParticipant) {
             return ResponseEntity.ok().build();
@@ -129,6 +188,15 @@ public class ChatRoomController {
         }
     }
 
+    @PostMapping("/authorize")
+    public ResponseEntity<RoomAuthorizationResponse> authorizeRooms(@Valid @RequestBody RoomAuthorizationRequest request,
+                                                                    @AuthenticationPrincipal UserDetails principal) {
+        User user = getAuthenticatedUser(principal);
+        BitSet allowed = roomMembershipService.authorize(user.getId(), request.roomIds());
+        String encoded = Base64.getEncoder().encodeToString(allowed.toByteArray());
+        return ResponseEntity.ok(new RoomAuthorizationResponse(request.roomIds(), encoded));
+    }
+
     @GetMapping("/{roomId}/pinned")
     public ResponseEntity<List<MessageResponse>> getPinnedMessages(@PathVariable Long roomId) {
         List<MessageResponse> pinnedMessages = messageService.getPinnedMessagesForRoom(roomId);
@@ -0,0 +1,38 @@
+package xyz.piod.keeper.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.web.bind.annotation.*;
+import xyz.piod.keeper.dto.command.MessageCommand;
+import xyz.piod.keeper.entity.User;
+import xyz.piod.keeper.service.DirectCommandIngress;
+import xyz.piod.keeper.service.UserService;
+
+@RestController
+@RequestMapping("/api/commands")
+@ConditionalOnProperty(name = "keeper.ingress.direct.enabled", havingValue = "true")
+@RequiredArgsConstructor
+public class CommandController {
+
+    private final DirectCommandIngress directCommandIngress;
+    private final UserService userService;
+
+    @PostMapping("/{action}")
+    public ResponseEntity<Void> submitCommand(@PathVariable String action,
+                                              @RequestBody MessageCommand command,
+                                              @AuthenticationPrincipal UserDetails principal) {
+        if (!directCommandIngress.isKnownAction(action)) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        User user = userService.findUserByUsername(principal.getUsername());
+        if (directCommandIngress.submit(action, command, user)) {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).build();
+        }
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+    }
+}
@@ -0,0 +1,53 @@
+package xyz.piod.keeper.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import xyz.piod.keeper.entity.User;
+import xyz.piod.keeper.service.UserService;
+import xyz.piod.keeper.service.gateway.EmbeddedGatewayService;
+import xyz.piod.keeper.service.gateway.SseGatewayConnection;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/events")
+@ConditionalOnProperty(name = "keeper.gateway.embedded.enabled", havingValue = "true")
+@RequiredArgsConstructor
+public class EventStreamController {
+
+    private final EmbeddedGatewayService gatewayService;
+    private final UserService userService;
+
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(@RequestParam(name = "rooms", required = false) List<Long> roomIds,
+                             @AuthenticationPrincipal UserDetails principal) {
+        User user = userService.findUserByUsername(principal.getUsername());
+        SseGatewayConnection connection = gatewayService.openSseConnection(user.getId(), user.getUsername());
+
+        if (roomIds != null) {
+            roomIds.forEach(roomId -> gatewayService.subscribe(connection, "room:" + roomId));
+        }
+        return connection.getEmitter();
+    }
+
+    @PostMapping("/stream/{connectionId}/heartbeat")
+    public ResponseEntity<Void> heartbeat(@PathVariable String connectionId,
+                                          @AuthenticationPrincipal UserDetails principal) {
+        User user = userService.findUserByUsername(principal.getUsername());
+        if (!gatewayService.markSeen(connectionId, user.getId())) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.noContent().build();
+    }
+}
@@ -0,0 +1,23 @@
+package xyz.piod.keeper.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+import xyz.piod.keeper.service.BroadcastService;
+import xyz.piod.keeper.service.HotRoomCoalescer;
+
+import java.util.List;
+
+@Component
+@Endpoint(id = "hotrooms")
+@RequiredArgsConstructor
+public class HotRoomsEndpoint {
+
+    private final BroadcastService broadcastService;
+
+    @ReadOperation
+    public List<HotRoomCoalescer.HotRoomStats> hotRooms() {
+        return broadcastService.getHotRoomStats();
+    }
+}
@@ -0,0 +1,36 @@
+package xyz.piod.keeper.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Page;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import xyz.piod.keeper.dto.InboxEntry;
+import xyz.piod.keeper.entity.User;
+import xyz.piod.keeper.service.UserService;
+import xyz.piod.keeper.service.inbox.InboxService;
+
+@RestController
+@RequestMapping("/api/inbox")
+@RequiredArgsConstructor
+public class InboxController {
+
+    private final InboxService inboxService;
+    private final UserService userService;
+
+    private User getAuthenticatedUser(UserDetails principal) {
+        return userService.findUserByUsername(principal.getUsername());
+    }
+
+    @GetMapping
+    public ResponseEntity<Page<InboxEntry>> getInbox(@AuthenticationPrincipal UserDetails principal,
+                                                     @RequestParam(defaultValue = "0") int page,
+                                                     @RequestParam(defaultValue = "30") int size) {
+        User user = getAuthenticatedUser(principal);
+        return ResponseEntity.ok(inboxService.getInbox(user.getId(), page, size));
+    }
+}
@@ -4,6 +4,7 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import xyz.piod.keeper.dto.LinkPreviewRequest;
+import xyz.piod.keeper.dto.MessageThreadResponse;
 import xyz.piod.keeper.service.MessageService;
 
 @RestController
@@ -20,4 +21,12 @@ public class MessageController {
         messageService.updateMessageWithLinkPreview(messageId, previewRequest);
         return ResponseEntity.ok().build();
     }
+
+    @GetMapping("/{messageId}/thread")
+    public ResponseEntity<MessageThreadResponse> getThread(
+            @PathVariable Long messageId,
+            @RequestParam(required = false) Long afterId,
+            @RequestParam(defaultValue = "50") int size) {
+        return ResponseEntity.ok(messageService.getThread(messageId, afterId, size));
+    }
 }
\ No newline at end of file
@@ -0,0 +1,64 @@
+package xyz.piod.keeper.controller;
+
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.web.bind.annotation.*;
+import xyz.piod.keeper.dto.PresenceHeartbeatRequest;
+import xyz.piod.keeper.dto.RoomPresenceResponse;
+import xyz.piod.keeper.entity.User;
+import xyz.piod.keeper.exception.UnauthorizedOperationException;
+import xyz.piod.keeper.service.RoomMembershipService;
+import xyz.piod.keeper.service.UserService;
+import xyz.piod.keeper.service.presence.PresenceService;
+
+import java.util.List;
+import java.util.Set;
+
+@RestController
+@RequestMapping("/api/presence")
+@RequiredArgsConstructor
+public class PresenceController {
+
+    private static final int MAX_QUERY_SIZE = 500;
+
+    private final PresenceService presenceService;
+    private final RoomMembershipService roomMembershipService;
+    private final UserService userService;
+
+    @PostMapping("/heartbeat")
+    public ResponseEntity<Void> heartbeat(@Valid @RequestBody PresenceHeartbeatRequest request,
+                                          @AuthenticationPrincipal UserDetails principal) {
+        presenceService.heartbeat(principal.getUsername(), request.connectionId());
+        return ResponseEntity.noContent().build();
+    }
+
+    @DeleteMapping("/connections/{connectionId}")
+    public ResponseEntity<Void> disconnect(@PathVariable String connectionId,
+                                           @AuthenticationPrincipal UserDetails principal) {
+        presenceService.disconnect(principal.getUsername(), connectionId);
+        return ResponseEntity.noContent().build();
+    }
+
+    @PostMapping("/query")
+    public ResponseEntity<Set<String>> queryOnline(@RequestBody List<String> usernames,
+                                                   @AuthenticationPrincipal UserDetails principal) {
+        if (usernames.size() > MAX_QUERY_SIZE) {
+            return ResponseEntity.badRequest().build();
+        }
+        User user = userService.findUserByUsername(principal.getUsername());
+        return ResponseEntity.ok(presenceService.onlineAmongVisibleTo(user.getId(), usernames));
+    }
+
+    @GetMapping("/rooms/{roomId}")
+    public ResponseEntity<RoomPresenceResponse> getRoomPresence(@PathVariable Long roomId,
+                                                                @AuthenticationPrincipal UserDetails principal) {
+        User user = userService.findUserByUsername(principal.getUsername());
+        if (!roomMembershipService.isMember(roomId, user.getId())) {
+            throw new UnauthorizedOperationException("User is not a participant of this room.");
+        }
+        return ResponseEntity.ok(new RoomPresenceResponse(roomId, presenceService.onlineCountInRoom(roomId)));
+    }
+}
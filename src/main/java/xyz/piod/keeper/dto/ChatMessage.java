@@ -3,6 +3,7 @@ package xyz.piod.keeper.dto;
 import com.fasterxml.jackson.annotation.JsonFormat;
 import lombok.Data;
 import java.time.LocalDateTime;
+import java.util.List;
 
 @Data
 public class ChatMessage {
@@ -29,6 +30,8 @@ public class ChatMessage {
     private String linkPreviewDescription;
     private String linkPreviewImage;
     private Long lastMessageId;
+    private List<String> typingUsernames;
+    private Boolean online;
 
     public enum MessageType {
         CHAT,
@@ -38,11 +41,13 @@ public class ChatMessage {
         REACTION_UPDATE,
         MESSAGE_UPDATED,
         USER_JOINED,
+        MEMBERSHIP_REVOKED,
         FRIEND_REQUEST_RECEIVED,
         FRIEND_REQUEST_ACCEPTED,
         FRIEND_REMOVED,
         PIN_UPDATE,
         MESSAGES_SEEN,
-        DM_CHANNEL_CREATED
+        DM_CHANNEL_CREATED,
+        PRESENCE_UPDATE
     }
 }
\ No newline at end of file
@@ -11,6 +11,8 @@ public class ChatRoomResponse {
     private String inviteCode;
     private UserResponse owner;
     private Set<UserResponse> participants;
+    private int memberCount;
     private LocalDateTime createdAt;
     private boolean isPrivate;
+    private Integer retentionDays;
 }
\ No newline at end of file
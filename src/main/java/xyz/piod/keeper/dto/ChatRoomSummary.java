@@ -0,0 +1,17 @@
+package xyz.piod.keeper.dto;
+
+import java.time.LocalDateTime;
+
+public record ChatRoomSummary(Long id, String name, boolean isPrivate, Long ownerId, int memberCount,
+                              Partner partner, LocalDateTime lastActivityAt) {
+
+    public ChatRoomSummary(Long id, String name, boolean isPrivate, Long ownerId, int memberCount,
+                           Long partnerId, String partnerPublicId, String partnerUsername, String partnerProfilePicture,
+                           LocalDateTime lastActivityAt) {
+        this(id, name, isPrivate, ownerId, memberCount,
+                partnerId == null ? null : new Partner(partnerId, partnerPublicId, partnerUsername, partnerProfilePicture),
+                lastActivityAt);
+    }
+
+    public record Partner(Long id, String publicId, String username, String profilePicture) {}
+}
@@ -0,0 +1,8 @@
+package xyz.piod.keeper.dto;
+
+import java.time.LocalDateTime;
+
+public record InboxEntry(ChatRoomSummary room, LastMessage lastMessage) {
+
+    public record LastMessage(Long id, String senderUsername, String snippet, LocalDateTime sentAt) {}
+}
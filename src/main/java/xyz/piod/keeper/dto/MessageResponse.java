@@ -13,6 +13,7 @@ public class MessageResponse {
     private String senderProfilePicture;
     private Set<ReactionResponse> reactions;
     private RepliedMessageInfo repliedTo;
+    private int replyCount;
     private boolean edited;
     private boolean isPinned;
     private String linkPreviewUrl;
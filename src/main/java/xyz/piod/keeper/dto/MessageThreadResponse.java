@@ -0,0 +1,13 @@
+package xyz.piod.keeper.dto;
+
+import lombok.Data;
+import java.util.List;
+
+@Data
+public class MessageThreadResponse {
+    private Long parentId;
+    private Long roomId;
+    private int replyCount;
+    private List<MessageResponse> replies;
+    private Long nextAfterId;
+}
@@ -0,0 +1,19 @@
+package xyz.piod.keeper.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class NotificationDigest {
+    private String recipientUsername;
+    private String fcmToken;
+    private long messageCount;
+    private String lastSenderUsername;
+    private String lastMessageSnippet;
+    private List<Long> roomIds;
+}
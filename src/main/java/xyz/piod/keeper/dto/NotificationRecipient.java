@@ -0,0 +1,3 @@
+package xyz.piod.keeper.dto;
+
+public record NotificationRecipient(Long id, String username, String fcmToken) {}
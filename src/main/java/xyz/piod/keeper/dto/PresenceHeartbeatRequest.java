@@ -0,0 +1,5 @@
+package xyz.piod.keeper.dto;
+
+import jakarta.validation.constraints.NotBlank;
+
+public record PresenceHeartbeatRequest(@NotBlank String connectionId) {}
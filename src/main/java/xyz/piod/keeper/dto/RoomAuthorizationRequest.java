@@ -0,0 +1,8 @@
+package xyz.piod.keeper.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+
+import java.util.List;
+
+public record RoomAuthorizationRequest(@NotEmpty @Size(max = 500) List<Long> roomIds) {}
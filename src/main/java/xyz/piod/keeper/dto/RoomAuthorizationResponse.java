@@ -0,0 +1,11 @@
+package xyz.piod.keeper.dto;
+
+import java.util.List;
+
+/**
+ * {@code allowed} is the base64 (RFC 4648, padded) encoding of {@code java.util.BitSet#toByteArray()}:
+ * room {@code roomIds[i]} is allowed when bit {@code i % 8} of byte {@code i / 8} is set, counting bits
+ * from the least significant one. Trailing zero bytes are omitted, so a short or empty array means the
+ * remaining rooms are denied.
+ */
+public record RoomAuthorizationResponse(List<Long> roomIds, String allowed) {}
@@ -0,0 +1,3 @@
+package xyz.piod.keeper.dto;
+
+public record RoomPresenceResponse(Long roomId, long onlineCount) {}
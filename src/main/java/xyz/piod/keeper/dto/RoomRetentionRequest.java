@@ -0,0 +1,6 @@
+package xyz.piod.keeper.dto;
+
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+
+public record RoomRetentionRequest(@Min(1) @Max(3650) Integer days) {}
@@ -4,6 +4,7 @@ import lombok.Data;
 
 @Data
 public class MessageCommand {
+    private String commandId;
     private String userToken;
     private Long roomId;
     private Long messageId;
@@ -0,0 +1,50 @@
+package xyz.piod.keeper.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+@Getter
+@Setter
+@Entity
+@Table(name = "archived_segments", indexes = {
+        @Index(name = "idx_archived_segments_chatroom_id_last_message_id", columnList = "chatroom_id, last_message_id"),
+        @Index(name = "idx_archived_segments_first_message_id", columnList = "first_message_id")
+})
+public class ArchivedSegment {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "chatroom_id", nullable = false)
+    private Long roomId;
+
+    @Column(nullable = false)
+    private Long firstMessageId;
+
+    @Column(nullable = false)
+    private Long lastMessageId;
+
+    @Column(nullable = false)
+    private int messageCount;
+
+    @Column(nullable = false)
+    private LocalDateTime oldestAt;
+
+    @Column(nullable = false)
+    private LocalDateTime newestAt;
+
+    @Column(nullable = false, unique = true)
+    private String fileName;
+
+    @Column(nullable = false)
+    private long checksum;
+
+    @CreationTimestamp
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+}
@@ -5,17 +5,18 @@ import lombok.Getter;
 import lombok.Setter;
 import lombok.ToString;
 import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.SQLRestriction;
 import java.time.LocalDateTime;
-import java.util.HashSet;
 import java.util.Objects;
-import java.util.Set;
-import org.hibernate.annotations.BatchSize;
 
 @Getter
 @Setter
 @ToString
 @Entity
-@Table(name = "chat_rooms")
+@SQLRestriction("deleted_at IS NULL")
+@Table(name = "chat_rooms", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_chat_rooms_dm_pair", columnNames = {"dm_user_low", "dm_user_high"})
+})
 public class ChatRoom {
 
     @Id
@@ -32,23 +33,26 @@ public class ChatRoom {
     @JoinColumn(name = "owner_id", nullable = true)
     private User owner;
 
-    @ManyToMany(fetch = FetchType.LAZY)
-    @JoinTable(
-            name = "chatroom_participants",
-            joinColumns = @JoinColumn(name = "chatroom_id"),
-            inverseJoinColumns = @JoinColumn(name = "user_id")
-    )
-    @BatchSize(size = 20)
-    @ToString.Exclude
-    private Set<User> participants = new HashSet<>();
+    @Column(nullable = false, columnDefinition = "INTEGER DEFAULT 0")
+    private int memberCount;
 
     @Column(nullable = false, columnDefinition = "BOOLEAN DEFAULT FALSE")
     private boolean isPrivate = false;
 
+    private Long dmUserLow;
+
+    private Long dmUserHigh;
+
     @CreationTimestamp
     @Column(nullable = false, updatable = false)
     private LocalDateTime createdAt;
 
+    private LocalDateTime lastActivityAt;
+
+    private Integer retentionDays;
+
+    private LocalDateTime deletedAt;
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -0,0 +1,42 @@
+package xyz.piod.keeper.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+@Getter
+@Setter
+@Entity
+@Table(name = "chatroom_participants", indexes = {
+        @Index(name = "idx_chatroom_participants_user_visible", columnList = "user_id, hidden, chatroom_id"),
+        @Index(name = "idx_chatroom_participants_room_hidden", columnList = "chatroom_id, hidden, user_id")
+})
+public class ChatRoomParticipant {
+
+    @EmbeddedId
+    private ChatRoomParticipantId id;
+
+    @MapsId("chatRoomId")
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "chatroom_id", nullable = false)
+    private ChatRoom chatRoom;
+
+    @MapsId("userId")
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "user_id", nullable = false)
+    private User user;
+
+    @Column(nullable = false, columnDefinition = "BOOLEAN DEFAULT FALSE")
+    private boolean hidden = false;
+
+    @Column(nullable = false, columnDefinition = "BOOLEAN DEFAULT FALSE")
+    private boolean muted = false;
+
+    @Column(nullable = false, insertable = false, updatable = false, columnDefinition = "TIMESTAMP DEFAULT CURRENT_TIMESTAMP")
+    private LocalDateTime joinedAt;
+
+    // highest message id this member's read receipts have been written up to
+    private Long lastSeenMessageId;
+}
@@ -0,0 +1,26 @@
+package xyz.piod.keeper.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.io.Serializable;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode
+@Embeddable
+public class ChatRoomParticipantId implements Serializable {
+
+    @Column(name = "chatroom_id")
+    private Long chatRoomId;
+
+    @Column(name = "user_id")
+    private Long userId;
+}
@@ -13,7 +13,11 @@ import java.util.Set;
 @Setter
 @ToString
 @Entity
-@Table(name = "messages")
+@Table(name = "messages", indexes = {
+        @Index(name = "idx_messages_chatroom_id_id", columnList = "chatroom_id, id"),
+        @Index(name = "idx_messages_chatroom_id_timestamp", columnList = "chatroom_id, timestamp"),
+        @Index(name = "idx_messages_replied_to_id_id", columnList = "replied_to_id, id")
+})
 public class Message {
 
     @Id
@@ -34,9 +38,17 @@ public class Message {
     @JoinColumn(name = "chatroom_id", nullable = false)
     private ChatRoom chatRoom;
 
-    @ManyToOne(fetch = FetchType.EAGER)
-    @JoinColumn(name = "replied_to_id")
-    private Message repliedTo;
+    @Column(name = "replied_to_id")
+    private Long repliedToId;
+
+    @Column(length = 15)
+    private String replySenderUsername;
+
+    @Column(length = 256)
+    private String replySnippet;
+
+    @Column(columnDefinition = "INTEGER DEFAULT 0")
+    private int replyCount = 0;
 
     @Column(columnDefinition = "BOOLEAN DEFAULT FALSE")
     private boolean edited = false;
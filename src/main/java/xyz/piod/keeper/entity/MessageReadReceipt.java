@@ -12,6 +12,8 @@ import java.time.LocalDateTime;
 @Entity
 @Table(name = "message_read_receipts", uniqueConstraints = {
         @UniqueConstraint(columnNames = {"user_id", "message_id"})
+}, indexes = {
+        @Index(name = "idx_message_read_receipts_message_id", columnList = "message_id")
 })
 public class MessageReadReceipt {
 
@@ -24,7 +26,7 @@ public class MessageReadReceipt {
     private User user;
 
     @ManyToOne(optional = false, fetch = FetchType.LAZY)
-    @JoinColumn(name = "message_id", nullable = false)
+    @JoinColumn(name = "message_id", nullable = false, foreignKey = @ForeignKey(ConstraintMode.NO_CONSTRAINT))
     private Message message;
 
     @CreationTimestamp
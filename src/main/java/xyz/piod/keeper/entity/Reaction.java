@@ -10,7 +10,9 @@ import java.time.LocalDateTime;
 @Getter
 @Setter
 @Entity
-@Table(name = "reactions")
+@Table(name = "reactions", indexes = {
+        @Index(name = "idx_reactions_message_id", columnList = "message_id")
+})
 public class Reaction {
 
     @Id
@@ -18,7 +20,7 @@ public class Reaction {
     private Long id;
 
     @ManyToOne(optional = false)
-    @JoinColumn(name = "message_id", nullable = false)
+    @JoinColumn(name = "message_id", nullable = false, foreignKey = @ForeignKey(ConstraintMode.NO_CONSTRAINT))
     private Message message;
 
     @ManyToOne(optional = false)
@@ -43,6 +43,8 @@ public class User {
     @Column(columnDefinition = "TEXT")
     private String fcmToken;
 
+    private LocalDateTime lastSeenAt;
+
     @CreationTimestamp
     @Column(nullable = false, updatable = false)
     private LocalDateTime createdAt;
@@ -1,10 +1,12 @@
 package xyz.piod.keeper.mapper;
 
 import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
 import xyz.piod.keeper.dto.ChatRoomResponse;
 import xyz.piod.keeper.entity.ChatRoom;
 
 @Mapper(componentModel = "spring", uses = {UserMapper.class})
 public interface ChatRoomMapper {
+    @Mapping(target = "participants", ignore = true)
     ChatRoomResponse toChatRoomResponse(ChatRoom chatRoom);
 }
\ No newline at end of file
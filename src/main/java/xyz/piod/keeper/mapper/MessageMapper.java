@@ -17,13 +17,22 @@ public interface MessageMapper {
     @Mapping(source = "sender.username", target = "senderUsername")
     @Mapping(source = "sender.profilePicture", target = "senderProfilePicture")
     @Mapping(target = "seenBy", expression = "java(mapSeenBy(message.getReadReceipts()))")
+    @Mapping(target = "repliedTo", expression = "java(toRepliedMessageInfo(message))")
     MessageResponse toMessageResponse(Message message);
 
     @Mapping(source = "user.username", target = "username")
     ReactionResponse toReactionResponse(Reaction reaction);
 
-    @Mapping(source = "sender.username", target = "senderUsername")
-    RepliedMessageInfo toRepliedMessageInfo(Message message);
+    default RepliedMessageInfo toRepliedMessageInfo(Message reply) {
+        if (reply == null || reply.getRepliedToId() == null) {
+            return null;
+        }
+        RepliedMessageInfo info = new RepliedMessageInfo();
+        info.setId(reply.getRepliedToId());
+        info.setSenderUsername(reply.getReplySenderUsername());
+        info.setContent(reply.getReplySnippet());
+        return info;
+    }
 
     default Set<String> mapSeenBy(Set<MessageReadReceipt> readReceipts) {
         if (readReceipts == null) {
@@ -0,0 +1,46 @@
+package xyz.piod.keeper.repository;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import xyz.piod.keeper.entity.ArchivedSegment;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface ArchivedSegmentRepository extends JpaRepository<ArchivedSegment, Long> {
+
+    List<ArchivedSegment> findByRoomIdOrderByLastMessageIdDesc(Long roomId);
+
+    List<ArchivedSegment> findByRoomIdAndLastMessageIdGreaterThanOrderByFirstMessageIdAsc(Long roomId, Long afterId);
+
+    List<ArchivedSegment> findByRoomIdAndLastMessageIdGreaterThanOrderByFirstMessageIdAsc(Long roomId, Long afterId, Pageable pageable);
+
+    List<ArchivedSegment> findByRoomIdAndNewestAtBefore(Long roomId, LocalDateTime cutoff);
+
+    @Query("SELECT COALESCE(SUM(s.messageCount), 0) FROM ArchivedSegment s WHERE s.roomId = :roomId")
+    long countArchivedMessages(@Param("roomId") Long roomId);
+
+    @Query("SELECT COALESCE(MAX(s.id), 0) FROM ArchivedSegment s WHERE s.roomId = :roomId")
+    long findLatestId(@Param("roomId") Long roomId);
+
+    @Query("SELECT s FROM ArchivedSegment s WHERE s.firstMessageId <= :messageId AND s.lastMessageId >= :messageId " +
+            "AND (:roomId IS NULL OR s.roomId = :roomId)")
+    List<ArchivedSegment> findCovering(@Param("roomId") Long roomId, @Param("messageId") Long messageId);
+
+    List<ArchivedSegment> findByIdGreaterThanOrderByIdAsc(Long afterId, Pageable pageable);
+
+    boolean existsByFileName(String fileName);
+
+    @Modifying
+    @Query("DELETE FROM ArchivedSegment s WHERE s.id = :id AND s.fileName = :fileName")
+    int deleteClaim(@Param("id") Long id, @Param("fileName") String fileName);
+
+    @Modifying
+    @Query("UPDATE ArchivedSegment s SET s.fileName = :newFileName, s.messageCount = :messageCount, " +
+            "s.checksum = :checksum WHERE s.id = :id AND s.fileName = :fileName")
+    int replaceFile(@Param("id") Long id, @Param("fileName") String fileName, @Param("newFileName") String newFileName,
+                    @Param("messageCount") int messageCount, @Param("checksum") long checksum);
+}
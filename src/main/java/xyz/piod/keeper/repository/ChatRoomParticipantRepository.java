@@ -0,0 +1,89 @@
+package xyz.piod.keeper.repository;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import xyz.piod.keeper.dto.NotificationRecipient;
+import xyz.piod.keeper.entity.ChatRoomParticipant;
+import xyz.piod.keeper.entity.ChatRoomParticipantId;
+import xyz.piod.keeper.entity.User;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface ChatRoomParticipantRepository extends JpaRepository<ChatRoomParticipant, ChatRoomParticipantId> {
+
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO chatroom_participants (chatroom_id, user_id) VALUES (:roomId, :userId) " +
+            "ON CONFLICT DO NOTHING", nativeQuery = true)
+    int insertIfAbsent(@Param("roomId") Long roomId, @Param("userId") Long userId);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM ChatRoomParticipant p WHERE p.id.chatRoomId = :roomId AND p.id.userId = :userId")
+    int deleteMember(@Param("roomId") Long roomId, @Param("userId") Long userId);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM ChatRoomParticipant p WHERE p.id.chatRoomId = :roomId")
+    int deleteAllByRoomId(@Param("roomId") Long roomId);
+
+    @Query(value = "SELECT u FROM ChatRoomParticipant p JOIN p.user u " +
+            "WHERE p.id.chatRoomId = :roomId AND lower(u.username) LIKE lower(concat(:prefix, '%')) ESCAPE '\\' ORDER BY u.username",
+            countQuery = "SELECT count(p) FROM ChatRoomParticipant p JOIN p.user u " +
+                    "WHERE p.id.chatRoomId = :roomId AND lower(u.username) LIKE lower(concat(:prefix, '%')) ESCAPE '\\'")
+    Page<User> findMembers(@Param("roomId") Long roomId, @Param("prefix") String prefix, Pageable pageable);
+
+    @Query("SELECT p.id.chatRoomId FROM ChatRoomParticipant p WHERE p.id.userId = :userId AND p.id.chatRoomId IN :roomIds")
+    List<Long> findMemberRoomIds(@Param("userId") Long userId, @Param("roomIds") Collection<Long> roomIds);
+
+    @Query("SELECT p.id.userId FROM ChatRoomParticipant p " +
+            "WHERE p.id.chatRoomId = :roomId AND p.hidden = false AND p.id.userId > :afterId ORDER BY p.id.userId")
+    List<Long> findVisibleMemberIds(@Param("roomId") Long roomId, @Param("afterId") Long afterId, Pageable pageable);
+
+    @Query("SELECT p.id.userId FROM ChatRoomParticipant p WHERE p.id.chatRoomId = :roomId AND p.hidden = true")
+    List<Long> findHiddenMemberIds(@Param("roomId") Long roomId);
+
+    @Query(value = "SELECT chatroom_id AS \"chatRoomId\", user_id AS \"userId\" FROM (" +
+            "SELECT chatroom_id, user_id, row_number() OVER (PARTITION BY chatroom_id ORDER BY joined_at, user_id) AS rn " +
+            "FROM chatroom_participants WHERE chatroom_id IN (:roomIds)) ranked WHERE rn <= :limit", nativeQuery = true)
+    List<MemberSample> findMemberSamples(@Param("roomIds") Collection<Long> roomIds, @Param("limit") int limit);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE ChatRoomParticipant p SET p.hidden = :hidden WHERE p.id.chatRoomId = :roomId AND p.id.userId = :userId")
+    int updateHidden(@Param("roomId") Long roomId, @Param("userId") Long userId, @Param("hidden") boolean hidden);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE ChatRoomParticipant p SET p.muted = :muted WHERE p.id.chatRoomId = :roomId AND p.id.userId = :userId")
+    int updateMuted(@Param("roomId") Long roomId, @Param("userId") Long userId, @Param("muted") boolean muted);
+
+    @Query(value = "SELECT u.username FROM chatroom_participants p JOIN users u ON u.id = p.user_id " +
+            "WHERE p.chatroom_id = :roomId AND p.hidden = TRUE AND p.user_id <> :senderId FOR UPDATE OF p", nativeQuery = true)
+    List<String> lockHiddenRecipients(@Param("roomId") Long roomId, @Param("senderId") Long senderId);
+
+    @Modifying
+    @Query("UPDATE ChatRoomParticipant p SET p.hidden = false " +
+            "WHERE p.id.chatRoomId = :roomId AND p.hidden = true AND p.id.userId <> :senderId")
+    int unhideForRecipients(@Param("roomId") Long roomId, @Param("senderId") Long senderId);
+
+    @Query("SELECT new xyz.piod.keeper.dto.NotificationRecipient(u.id, u.username, u.fcmToken) " +
+            "FROM ChatRoomParticipant p JOIN p.user u " +
+            "WHERE p.id.chatRoomId = :roomId AND p.hidden = false AND p.muted = false " +
+            "AND u.id <> :senderId AND u.id > :afterId " +
+            "AND u.fcmToken IS NOT NULL AND u.fcmToken <> '' ORDER BY u.id")
+    List<NotificationRecipient> findNotificationRecipients(@Param("roomId") Long roomId, @Param("senderId") Long senderId,
+                                                           @Param("afterId") Long afterId, Pageable pageable);
+
+    interface MemberSample {
+        Long getChatRoomId();
+
+        Long getUserId();
+    }
+}
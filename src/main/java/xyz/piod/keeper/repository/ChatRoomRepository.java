@@ -1,47 +1,76 @@
 package xyz.piod.keeper.repository;
 
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
-import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import xyz.piod.keeper.config.CacheConfig;
+import xyz.piod.keeper.dto.ChatRoomSummary;
 import xyz.piod.keeper.entity.ChatRoom;
-import xyz.piod.keeper.entity.User;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 public interface ChatRoomRepository extends JpaRepository<ChatRoom, Long> {
+
+    String ROOM_SUMMARY_SELECT = "SELECT new xyz.piod.keeper.dto.ChatRoomSummary(cr.id, cr.name, cr.isPrivate, cr.owner.id, " +
+            "cr.memberCount, partner.id, partner.publicId, partner.username, partner.profilePicture, " +
+            "COALESCE(cr.lastActivityAt, cr.createdAt)) " +
+            "FROM ChatRoomParticipant p JOIN p.chatRoom cr " +
+            "LEFT JOIN User partner ON partner.id = CASE WHEN cr.dmUserLow = :userId THEN cr.dmUserHigh ELSE cr.dmUserLow END ";
+
     Optional<ChatRoom> findByInviteCode(String inviteCode);
 
-    @Query(value = "SELECT cr.id FROM ChatRoom cr " +
-            "WHERE :user MEMBER OF cr.participants AND cr.isPrivate = false AND cr.id NOT IN " +
-            "(SELECT hcr.chatRoom.id FROM HiddenChatRoom hcr WHERE hcr.user = :user)",
-            countQuery = "SELECT count(cr) FROM ChatRoom cr " +
-                    "WHERE :user MEMBER OF cr.participants AND cr.isPrivate = false AND cr.id NOT IN " +
-                    "(SELECT hcr.chatRoom.id FROM HiddenChatRoom hcr WHERE hcr.user = :user)")
-    Page<Long> findVisiblePublicRoomIdsForUser(@Param("user") User user, Pageable pageable);
-
-    @Query("SELECT cr FROM ChatRoom cr LEFT JOIN FETCH cr.participants LEFT JOIN FETCH cr.owner WHERE cr.id IN :ids")
-    @EntityGraph(attributePaths = {"participants", "owner"})
-    List<ChatRoom> findByIdsWithParticipants(@Param("ids") List<Long> ids);
-
-    @Query(value = "SELECT cr.id FROM ChatRoom cr " +
-            "WHERE :user MEMBER OF cr.participants AND cr.isPrivate = true AND cr.id NOT IN " +
-            "(SELECT hcr.chatRoom.id FROM HiddenChatRoom hcr WHERE hcr.user = :user)",
-            countQuery = "SELECT count(cr) FROM ChatRoom cr " +
-                    "WHERE :user MEMBER OF cr.participants AND cr.isPrivate = true AND cr.id NOT IN " +
-                    "(SELECT hcr.chatRoom.id FROM HiddenChatRoom hcr WHERE hcr.user = :user)")
-    Page<Long> findVisiblePrivateRoomIdsForUser(@Param("user") User user, Pageable pageable);
-
-    @Query("SELECT CASE WHEN COUNT(cr) > 0 THEN TRUE ELSE FALSE END FROM ChatRoom cr JOIN cr.participants p WHERE cr.id = :roomId AND p.id = :userId")
+    @Query(value = ROOM_SUMMARY_SELECT +
+            "WHERE p.id.userId = :userId AND p.hidden = false AND cr.isPrivate = :isPrivate " +
+            "ORDER BY COALESCE(cr.lastActivityAt, cr.createdAt) DESC, cr.id DESC",
+            countQuery = "SELECT count(p) FROM ChatRoomParticipant p JOIN p.chatRoom cr " +
+                    "WHERE p.id.userId = :userId AND p.hidden = false AND cr.isPrivate = :isPrivate")
+    Page<ChatRoomSummary> findRoomSummariesForUser(@Param("userId") Long userId, @Param("isPrivate") boolean isPrivate,
+                                                   Pageable pageable);
+
+    @Query(ROOM_SUMMARY_SELECT + "WHERE p.id.userId = :userId AND p.hidden = false AND cr.id IN :roomIds")
+    List<ChatRoomSummary> findRoomSummariesByIds(@Param("userId") Long userId, @Param("roomIds") Collection<Long> roomIds);
+
+    @Query(ROOM_SUMMARY_SELECT + "WHERE p.id.userId = :userId AND p.hidden = false " +
+            "ORDER BY COALESCE(cr.lastActivityAt, cr.createdAt) DESC, cr.id DESC")
+    List<ChatRoomSummary> findRecentRoomSummaries(@Param("userId") Long userId, Pageable pageable);
+
+    @Query("SELECT cr.memberCount FROM ChatRoom cr WHERE cr.id = :roomId")
+    Integer findMemberCount(@Param("roomId") Long roomId);
+
+    @Query("SELECT CASE WHEN COUNT(p) > 0 THEN TRUE ELSE FALSE END FROM ChatRoomParticipant p " +
+            "WHERE p.id.chatRoomId = :roomId AND p.id.userId = :userId")
     boolean isUserParticipant(@Param("roomId") Long roomId, @Param("userId") Long userId);
 
-    @EntityGraph(attributePaths = {"participants", "owner"})
-    @Query("SELECT cr FROM ChatRoom cr JOIN cr.participants p1 JOIN cr.participants p2 WHERE cr.isPrivate = true AND p1 = :user1 AND p2 = :user2")
-    Optional<ChatRoom> findPrivateRoomBetween(@Param("user1") User user1, @Param("user2") User user2);
+    @Cacheable(value = CacheConfig.DM_ROOM_CACHE, key = "#p0 + ':' + #p1", unless = "#result == null")
+    @Query("SELECT cr.id FROM ChatRoom cr WHERE cr.dmUserLow = :low AND cr.dmUserHigh = :high")
+    Long findDirectMessageRoomId(@Param("low") Long low, @Param("high") Long high);
+
+    @Query(value = "SELECT count(*) FROM (SELECT pg_advisory_xact_lock(hashtext('dm:' || :low || ':' || :high))) l",
+            nativeQuery = true)
+    long lockDirectMessagePair(@Param("low") Long low, @Param("high") Long high);
 
-    @Query("SELECT cr.id FROM ChatRoom cr JOIN cr.participants p WHERE p.id = :userId")
+    @Query("SELECT p.id.chatRoomId FROM ChatRoomParticipant p WHERE p.id.userId = :userId")
     List<Long> findAllRoomIdsByParticipantId(@Param("userId") Long userId);
-}
\ No newline at end of file
+
+    @Query("SELECT u.username FROM ChatRoomParticipant p JOIN p.user u WHERE p.id.chatRoomId = :roomId")
+    List<String> findParticipantUsernames(@Param("roomId") Long roomId);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE ChatRoom cr SET cr.lastActivityAt = :at WHERE cr.id = :roomId " +
+            "AND (cr.lastActivityAt IS NULL OR cr.lastActivityAt < :at)")
+    int touchLastActivity(@Param("roomId") Long roomId, @Param("at") LocalDateTime at);
+
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE ChatRoom cr SET cr.memberCount = cr.memberCount + :delta WHERE cr.id = :roomId")
+    int adjustMemberCount(@Param("roomId") Long roomId, @Param("delta") int delta);
+}
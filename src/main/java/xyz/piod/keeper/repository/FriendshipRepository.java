@@ -7,6 +7,7 @@ import xyz.piod.keeper.entity.Friendship;
 import xyz.piod.keeper.entity.FriendshipStatus;
 import xyz.piod.keeper.entity.User;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -22,5 +23,22 @@ public interface FriendshipRepository extends JpaRepository<Friendship, Long> {
     @Query("SELECT f FROM Friendship f WHERE (f.requester = :user1 AND f.addressee = :user2) OR (f.requester = :user2 AND f.addressee = :user1)")
     Optional<Friendship> findFriendshipBetween(@Param("user1") User user1, @Param("user2") User user2);
 
+    /**
+     * One row per (user, accepted friend), plus a row with a null friend for users without any.
+     */
+    @Query("SELECT u.id AS userId, u.username AS username, " +
+            "CASE WHEN r.id = u.id THEN a.username ELSE r.username END AS friendUsername " +
+            "FROM User u LEFT JOIN Friendship f ON f.status = 'ACCEPTED' AND (f.requester = u OR f.addressee = u) " +
+            "LEFT JOIN f.requester r LEFT JOIN f.addressee a WHERE u.username IN :usernames")
+    List<PresenceAudience> findPresenceAudiences(@Param("usernames") Collection<String> usernames);
+
     Optional<Friendship> findByRequesterAndAddresseeAndStatus(User requester, User addressee, FriendshipStatus status);
+
+    interface PresenceAudience {
+        Long getUserId();
+
+        String getUsername();
+
+        String getFriendUsername();
+    }
 }
\ No newline at end of file
@@ -1,31 +1,73 @@
 package xyz.piod.keeper.repository;
 
-import jakarta.transaction.Transactional;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 import xyz.piod.keeper.entity.Message;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 public interface MessageRepository extends JpaRepository<Message, Long> {
 
-    @EntityGraph(attributePaths = {"sender", "repliedTo", "reactions.user", "readReceipts.user"})
+    @EntityGraph(attributePaths = {"sender", "reactions.user", "readReceipts.user"})
     Page<Message> findByChatRoomIdOrderByTimestampDesc(Long chatRoomId, Pageable pageable);
 
-    @EntityGraph(attributePaths = {"sender", "repliedTo", "reactions.user", "readReceipts.user"})
+    @EntityGraph(attributePaths = {"sender", "reactions.user", "readReceipts.user"})
     List<Message> findByChatRoomIdAndIsPinnedTrueOrderByTimestampDesc(Long chatRoomId);
 
-    List<Message> findByIdLessThanEqualAndChatRoomId(Long id, Long chatRoomId);
-
     @Query("SELECT m FROM Message m WHERE m.id = :messageId")
-    @EntityGraph(attributePaths = {"sender", "repliedTo", "reactions.user", "readReceipts.user"})
+    @EntityGraph(attributePaths = {"sender", "reactions.user", "readReceipts.user"})
     Optional<Message> findByIdWithReactions(@Param("messageId") Long messageId);
 
+    @Query("SELECT m.chatRoom.id FROM Message m WHERE m.id = :messageId")
+    Optional<Long> findRoomIdById(@Param("messageId") Long messageId);
+
+    @Query("SELECT m.id FROM Message m WHERE m.repliedToId = :parentId AND m.id > :afterId ORDER BY m.id")
+    List<Long> findReplyIds(@Param("parentId") Long parentId, @Param("afterId") Long afterId, Pageable pageable);
+
+    @Query("SELECT m FROM Message m WHERE m.id IN :ids ORDER BY m.id")
+    @EntityGraph(attributePaths = {"sender", "reactions.user", "readReceipts.user"})
+    List<Message> findAllWithReactionsByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Message m SET m.replyCount = GREATEST(m.replyCount + :delta, 0) WHERE m.id = :messageId")
+    int adjustReplyCount(@Param("messageId") Long messageId, @Param("delta") int delta);
+
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Message m SET m.replySnippet = :snippet WHERE m.repliedToId = :parentId")
+    int updateReplySnippets(@Param("parentId") Long parentId, @Param("snippet") String snippet);
+
     @Transactional
-    void deleteByChatRoomId(Long chatRoomId);
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Message m SET m.repliedToId = NULL, m.replySenderUsername = NULL, m.replySnippet = NULL " +
+            "WHERE m.repliedToId = :parentId")
+    int detachReplies(@Param("parentId") Long parentId);
+
+    @Query(value = "SELECT r.id AS \"roomId\", l.id AS \"messageId\", l.username AS \"senderUsername\", " +
+            "l.content AS \"content\", l.timestamp AS \"sentAt\" FROM chat_rooms r CROSS JOIN LATERAL (" +
+            "SELECT m.id, u.username, m.content, m.timestamp FROM messages m JOIN users u ON u.id = m.sender_id " +
+            "WHERE m.chatroom_id = r.id ORDER BY m.timestamp DESC, m.id DESC LIMIT 1) l WHERE r.id IN (:roomIds)", nativeQuery = true)
+    List<LastMessage> findLastMessages(@Param("roomIds") Collection<Long> roomIds);
+
+    interface LastMessage {
+        Long getRoomId();
+
+        Long getMessageId();
+
+        String getSenderUsername();
+
+        String getContent();
+
+        LocalDateTime getSentAt();
+    }
 }
\ No newline at end of file
@@ -1,8 +1,11 @@
 package xyz.piod.keeper.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import xyz.piod.keeper.entity.User;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -10,9 +13,27 @@ public interface UserRepository extends JpaRepository<User, Long> {
 
     Optional<User> findByUsername(String username);
 
+    @Query("SELECT u.id FROM User u WHERE u.username = :username")
+    Optional<Long> findIdByUsername(@Param("username") String username);
+
     Optional<User> findByEmail(String email);
 
     Optional<User> findByPublicId(String publicId);
 
     List<User> findByUsernameContainingIgnoreCase(String username);
+
+    List<User> findByUsernameIn(Collection<String> usernames);
+
+    @Query("SELECT u.username FROM User u WHERE u.username IN :usernames")
+    List<String> findExistingUsernames(@Param("usernames") Collection<String> usernames);
+
+    @Query("SELECT u.username FROM User u WHERE u.username IN :usernames AND (u.id = :userId " +
+            "OR EXISTS (SELECT f FROM Friendship f WHERE f.status = 'ACCEPTED' AND " +
+            "((f.requester.id = :userId AND f.addressee = u) OR (f.addressee.id = :userId AND f.requester = u))) " +
+            "OR EXISTS (SELECT a FROM ChatRoomParticipant a, ChatRoomParticipant b " +
+            "WHERE a.id.chatRoomId = b.id.chatRoomId AND a.id.userId = :userId AND b.id.userId = u.id))")
+    List<String> findVisibleUsernames(@Param("userId") Long userId, @Param("usernames") Collection<String> usernames);
+
+    @Query("SELECT u.publicId FROM User u WHERE u.publicId IN :publicIds")
+    List<String> findExistingPublicIds(@Param("publicIds") Collection<String> publicIds);
 }
\ No newline at end of file
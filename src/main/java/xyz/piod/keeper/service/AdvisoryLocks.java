@@ -0,0 +1,46 @@
+package xyz.piod.keeper.service;
+
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Session-level Postgres advisory locks for background jobs that span several
+ * transactions. The lock is held on one pooled connection for the whole run
+ * while the job's own statements use other connections.
+ */
+public final class AdvisoryLocks {
+
+    private AdvisoryLocks() {
+    }
+
+    /**
+     * Runs {@code work} if no other session holds {@code lock}; returns whether it ran.
+     */
+    public static boolean runExclusively(JdbcTemplate jdbcTemplate, String lock, Runnable work) {
+        return Boolean.TRUE.equals(jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+            if (!call(connection, "SELECT pg_try_advisory_lock(hashtext(?))", lock)) {
+                return false;
+            }
+            try {
+                work.run();
+            } finally {
+                call(connection, "SELECT pg_advisory_unlock(hashtext(?))", lock);
+            }
+            return true;
+        }));
+    }
+
+    private static boolean call(Connection connection, String sql, String lock) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, lock);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() && rs.getBoolean(1);
+            }
+        }
+    }
+}
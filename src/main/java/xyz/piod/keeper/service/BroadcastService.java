@@ -1,40 +1,177 @@
 package xyz.piod.keeper.service;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import xyz.piod.keeper.service.transport.BroadcastEvent;
+import xyz.piod.keeper.service.transport.EventTransport;
+import xyz.piod.keeper.service.transport.LocalEventListener;
 
-import java.util.Map;
+import java.util.List;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class BroadcastService {
 
-    private final RedisTemplate<String, String> redisTemplate;
-    private final ObjectMapper objectMapper;
-    private static final String KEEPER_EVENTS_CHANNEL = "keeper-events";
+    private final EventTransport eventTransport;
+    private final TopicSubscriptionRegistry subscriptionRegistry;
+    private final MeterRegistry meterRegistry;
+    private final ObjectProvider<LocalEventListener> localListenerProvider;
+
+    @Value("${keeper.broadcast.hot-rooms.enabled}")
+    private boolean hotRoomsEnabled;
+
+    @Value("${keeper.broadcast.hot-rooms.hot-threshold}")
+    private int hotThreshold;
+
+    @Value("${keeper.broadcast.hot-rooms.cool-threshold}")
+    private int coolThreshold;
+
+    private volatile List<LocalEventListener> localListeners;
+    private HotRoomCoalescer hotRoomCoalescer;
+    private Counter publishedCounter;
+    private Counter suppressedCounter;
+    private Counter coalescedEventsCounter;
+    private Counter coalescedFramesCounter;
+
+    @PostConstruct
+    void init() {
+        publishedCounter = Counter.builder("keeper.broadcast.events")
+                .tag("outcome", "published")
+                .tag("transport", eventTransport.name())
+                .register(meterRegistry);
+        suppressedCounter = Counter.builder("keeper.broadcast.events")
+                .tag("outcome", "suppressed")
+                .tag("transport", eventTransport.name())
+                .description("Events skipped because no gateway holds a live subscription for the topic")
+                .register(meterRegistry);
+        log.info("Broadcasting events over the '{}' transport", eventTransport.name());
+
+        hotRoomCoalescer = new HotRoomCoalescer(hotThreshold, coolThreshold);
+        coalescedEventsCounter = Counter.builder("keeper.broadcast.coalesced")
+                .tag("unit", "events")
+                .register(meterRegistry);
+        coalescedFramesCounter = Counter.builder("keeper.broadcast.coalesced")
+                .tag("unit", "frames")
+                .register(meterRegistry);
+        Gauge.builder("keeper.broadcast.hot.rooms", hotRoomCoalescer, HotRoomCoalescer::hotRoomCount)
+                .description("Rooms currently delivering events in coalescing mode")
+                .register(meterRegistry);
+    }
+
+    private List<LocalEventListener> localListeners() {
+        List<LocalEventListener> listeners = localListeners;
+        if (listeners == null) {
+            listeners = localListenerProvider.orderedStream().toList();
+            localListeners = listeners;
+        }
+        return listeners;
+    }
+
+    public List<HotRoomCoalescer.HotRoomStats> getHotRoomStats() {
+        return hotRoomCoalescer.snapshot();
+    }
+
+    public boolean hasSubscribers(String topic) {
+        if (subscriptionRegistry.hasSubscribers(topic)) {
+            return true;
+        }
+        for (LocalEventListener listener : localListeners()) {
+            if (listener.isSubscribed(topic)) {
+                return true;
+            }
+        }
+        return false;
+    }
 
     public void broadcast(String topic, String event, Object payload) {
+        if (!hasSubscribers(topic)) {
+            suppressedCounter.increment();
+            log.debug("Suppressed event '{}' for topic '{}' with no live subscribers", event, topic);
+            return;
+        }
+
+        BroadcastEvent broadcastEvent = new BroadcastEvent(topic, event, payload);
+        if (coalesced(broadcastEvent, System.currentTimeMillis())) {
+            return;
+        }
+
+        deliverLocally(broadcastEvent);
         try {
-            Map<String, Object> messageMap = Map.of(
-                    "topic", topic,
-                    "event", event,
-                    "payload", payload
-            );
+            eventTransport.publish(broadcastEvent);
+            publishedCounter.increment();
+        } catch (Exception e) {
+            log.error("Error publishing event '{}' for topic '{}' over {}: {}", event, topic, eventTransport.name(), e.getMessage());
+        }
+    }
 
-            String jsonMessage = objectMapper.writeValueAsString(messageMap);
+    public void broadcastAll(List<BroadcastEvent> events) {
+        List<BroadcastEvent> live = events.stream()
+                .filter(e -> hasSubscribers(e.topic()))
+                .toList();
+        suppressedCounter.increment(events.size() - live.size());
+        if (live.isEmpty()) {
+            return;
+        }
+        // room events go through the same coalescer as broadcast(), so a batch cannot overtake frames buffered for a hot room
+        long now = System.currentTimeMillis();
+        live = live.stream().filter(e -> !coalesced(e, now)).toList();
+        if (live.isEmpty()) {
+            return;
+        }
 
-            redisTemplate.convertAndSend(KEEPER_EVENTS_CHANNEL, jsonMessage);
-            log.info("Broadcasted event '{}' to Redis channel '{}'", event, KEEPER_EVENTS_CHANNEL);
+        live.forEach(this::deliverLocally);
+        try {
+            eventTransport.publishBatch(live);
+            publishedCounter.increment(live.size());
+        } catch (Exception e) {
+            log.error("Error publishing a batch of {} events over {}: {}", live.size(), eventTransport.name(), e.getMessage());
+        }
+    }
 
-        } catch (JsonProcessingException e) {
-            log.error("Error serializing broadcast message to JSON: {}", e.getMessage());
+    @Scheduled(fixedRateString = "${keeper.broadcast.hot-rooms.window}")
+    public void flushHotRooms() {
+        if (!hotRoomsEnabled) {
+            return;
+        }
+        List<BroadcastEvent> frames = hotRoomCoalescer.drain(System.currentTimeMillis());
+        if (frames.isEmpty()) {
+            return;
+        }
+
+        frames.forEach(this::deliverLocally);
+        try {
+            eventTransport.publishBatch(frames);
+            publishedCounter.increment(frames.size());
+            coalescedFramesCounter.increment(frames.size());
         } catch (Exception e) {
-            log.error("Error publishing message to Redis channel {}: {}", KEEPER_EVENTS_CHANNEL, e.getMessage());
+            log.error("Error publishing {} coalesced frames over {}: {}", frames.size(), eventTransport.name(), e.getMessage());
+        }
+    }
+
+    private boolean coalesced(BroadcastEvent event, long now) {
+        if (hotRoomsEnabled && event.topic().startsWith("room:") && hotRoomCoalescer.offer(event, now)) {
+            coalescedEventsCounter.increment();
+            return true;
+        }
+        return false;
+    }
+
+    private void deliverLocally(BroadcastEvent event) {
+        for (LocalEventListener listener : localListeners()) {
+            try {
+                listener.onEvent(event);
+            } catch (Exception e) {
+                log.error("Local delivery of event '{}' for topic '{}' failed: {}", event.event(), event.topic(), e.getMessage());
+            }
         }
     }
-}
\ No newline at end of file
+}
@@ -2,24 +2,27 @@ package xyz.piod.keeper.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import xyz.piod.keeper.dto.ChatMessage;
 import xyz.piod.keeper.dto.ChatRoomResponse;
+import xyz.piod.keeper.dto.ChatRoomSummary;
+import xyz.piod.keeper.dto.UserResponse;
 import xyz.piod.keeper.entity.ChatRoom;
-import xyz.piod.keeper.entity.HiddenChatRoom;
 import xyz.piod.keeper.entity.User;
 import xyz.piod.keeper.exception.ResourceNotFoundException;
 import xyz.piod.keeper.exception.UnauthorizedOperationException;
-import xyz.piod.keeper.mapper.ChatRoomMapper;
 import xyz.piod.keeper.mapper.UserMapper;
 import xyz.piod.keeper.repository.*;
+import xyz.piod.keeper.service.inbox.InboxService;
+import xyz.piod.keeper.service.transport.BroadcastEvent;
 
+import java.time.LocalDateTime;
 import java.util.List;
-import java.util.Optional;
-import java.util.Set;
 import java.util.UUID;
 
 @Service
@@ -28,13 +31,14 @@ import java.util.UUID;
 public class ChatRoomService {
 
     private final ChatRoomRepository chatRoomRepository;
-    private final MessageRepository messageRepository;
     private final FriendshipRepository friendshipRepository;
-    private final HiddenChatRoomRepository hiddenChatRoomRepository;
+    private final ChatRoomParticipantRepository participantRepository;
+    private final RoomMembershipService membershipService;
+    private final InboxService inboxService;
     private final BroadcastService broadcastService;
-    private final ChatRoomMapper chatRoomMapper;
     private final UserMapper userMapper;
     private final UserService userService;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Transactional
     public ChatRoomResponse getOrCreateDirectMessageChannel(String username1, String username2) {
@@ -45,56 +49,74 @@ public class ChatRoomService {
                 .filter(f -> f.getStatus() == xyz.piod.keeper.entity.FriendshipStatus.ACCEPTED)
                 .orElseThrow(() -> new UnauthorizedOperationException("Users are not friends."));
 
-        Optional<ChatRoom> existingRoomOpt = chatRoomRepository.findPrivateRoomBetween(user1, user2);
+        Long low = Math.min(user1.getId(), user2.getId());
+        Long high = Math.max(user1.getId(), user2.getId());
 
-        if (existingRoomOpt.isPresent()) {
-            ChatRoom existingRoom = existingRoomOpt.get();
-            hiddenChatRoomRepository.findByUserAndChatRoom(user1, existingRoom)
-                    .ifPresent(hiddenChatRoomRepository::delete);
-            return chatRoomMapper.toChatRoomResponse(existingRoom);
-        } else {
-            ChatRoom newRoom = createDirectMessageChannelAndNotify(user1, user2);
-            return chatRoomMapper.toChatRoomResponse(newRoom);
+        Long existingRoomId = chatRoomRepository.findDirectMessageRoomId(low, high);
+        if (existingRoomId != null) {
+            return reopenDirectMessageChannel(existingRoomId, user1);
+        }
+
+        // serializes concurrent creators of the same pair; a missing room is not cached, so the re-check hits the database
+        chatRoomRepository.lockDirectMessagePair(low, high);
+        existingRoomId = chatRoomRepository.findDirectMessageRoomId(low, high);
+        if (existingRoomId != null) {
+            return reopenDirectMessageChannel(existingRoomId, user1);
         }
-    }
 
-    private ChatRoom createDirectMessageChannelAndNotify(User user1, User user2) {
         ChatRoom chatRoom = new ChatRoom();
         chatRoom.setName(user1.getUsername() + " & " + user2.getUsername());
-        chatRoom.setOwner(null);
         chatRoom.setInviteCode(UUID.randomUUID().toString());
         chatRoom.setPrivate(true);
-        chatRoom.setParticipants(Set.of(user1, user2));
-
+        chatRoom.setDmUserLow(low);
+        chatRoom.setDmUserHigh(high);
         ChatRoom savedRoom = chatRoomRepository.save(chatRoom);
-        ChatRoomResponse roomResponse = chatRoomMapper.toChatRoomResponse(savedRoom);
+
+        membershipService.addMember(savedRoom.getId(), user1.getId());
+        membershipService.addMember(savedRoom.getId(), user2.getId());
+        ChatRoom createdRoom = findRoom(savedRoom.getId());
+        inboxService.touch(user1.getId(), createdRoom.getId(), createdRoom.getCreatedAt());
+        inboxService.touch(user2.getId(), createdRoom.getId(), createdRoom.getCreatedAt());
+        return notifyDirectMessageChannelCreated(createdRoom, user1, user2);
+    }
+
+    private ChatRoomResponse reopenDirectMessageChannel(Long roomId, User user) {
+        ChatRoom room = findRoom(roomId);
+        if (participantRepository.updateHidden(roomId, user.getId(), false) > 0) {
+            inboxService.touch(user.getId(), roomId,
+                    room.getLastActivityAt() != null ? room.getLastActivityAt() : room.getCreatedAt());
+        }
+        return membershipService.toResponse(room);
+    }
+
+    private ChatRoom findRoom(Long roomId) {
+        return chatRoomRepository.findById(roomId)
+                .orElseThrow(() -> new ResourceNotFoundException("Chat room not found with id: " + roomId));
+    }
+
+    private ChatRoomResponse notifyDirectMessageChannelCreated(ChatRoom savedRoom, User user1, User user2) {
+        ChatRoomResponse roomResponse = membershipService.toResponse(savedRoom);
 
         ChatMessage notification = new ChatMessage();
         notification.setType(ChatMessage.MessageType.DM_CHANNEL_CREATED);
         notification.setRoom(roomResponse);
 
-        broadcastService.broadcast("user:" + user1.getUsername(), "new_event", notification);
-        broadcastService.broadcast("user:" + user2.getUsername(), "new_event", notification);
+        broadcastService.broadcastAll(List.of(
+                new BroadcastEvent("user:" + user1.getUsername(), "new_event", notification),
+                new BroadcastEvent("user:" + user2.getUsername(), "new_event", notification)
+        ));
 
         log.info("Created and broadcasted new DM channel #{} for users {} and {}", savedRoom.getId(), user1.getUsername(), user2.getUsername());
 
-        return savedRoom;
+        return roomResponse;
     }
 
-    public Page<ChatRoomResponse> getDirectMessagesForUser(User user, Pageable pageable) {
-        Page<Long> roomIdsPage = chatRoomRepository.findVisiblePrivateRoomIdsForUser(user, pageable);
-        List<Long> roomIds = roomIdsPage.getContent();
-
-        if (roomIds.isEmpty()) {
-            return Page.empty(pageable);
-        }
-
-        List<ChatRoom> rooms = chatRoomRepository.findByIdsWithParticipants(roomIds);
+    public Page<ChatRoomSummary> getDirectMessagesForUser(User user, Pageable pageable) {
+        return chatRoomRepository.findRoomSummariesForUser(user.getId(), true, unsorted(pageable));
+    }
 
-        return roomIdsPage.map(roomId -> {
-            ChatRoom room = rooms.stream().filter(r -> r.getId().equals(roomId)).findFirst().orElse(null);
-            return chatRoomMapper.toChatRoomResponse(room);
-        });
+    private Pageable unsorted(Pageable pageable) {
+        return PageRequest.of(pageable.getPageNumber(), pageable.getPageSize());
     }
 
     @Transactional
@@ -102,15 +124,15 @@ public class ChatRoomService {
         ChatRoom chatRoom = chatRoomRepository.findById(roomId)
                 .orElseThrow(() -> new ResourceNotFoundException("Chat room not found"));
 
-        if (!chatRoom.isPrivate() || !chatRoom.getParticipants().contains(currentUser)) {
+        if (!chatRoom.isPrivate() || participantRepository.updateHidden(roomId, currentUser.getId(), true) == 0) {
             throw new UnauthorizedOperationException("You can only hide your own private chats.");
         }
+        inboxService.remove(currentUser.getId(), roomId);
+    }
 
-        if (hiddenChatRoomRepository.findByUserAndChatRoom(currentUser, chatRoom).isEmpty()) {
-            HiddenChatRoom hidden = new HiddenChatRoom();
-            hidden.setUser(currentUser);
-            hidden.setChatRoom(chatRoom);
-            hiddenChatRoomRepository.save(hidden);
+    public void setRoomMuted(Long roomId, User currentUser, boolean muted) {
+        if (participantRepository.updateMuted(roomId, currentUser.getId(), muted) == 0) {
+            throw new UnauthorizedOperationException("User is not a participant of this room.");
         }
     }
 
@@ -119,27 +141,23 @@ public class ChatRoomService {
         chatRoom.setName(name);
         chatRoom.setOwner(owner);
         chatRoom.setInviteCode(UUID.randomUUID().toString());
-        chatRoom.getParticipants().add(owner);
         chatRoom.setPrivate(false);
 
         ChatRoom savedRoom = chatRoomRepository.save(chatRoom);
-        return chatRoomMapper.toChatRoomResponse(savedRoom);
+        membershipService.addMember(savedRoom.getId(), owner.getId());
+        inboxService.touch(owner.getId(), savedRoom.getId(), savedRoom.getCreatedAt());
+        return membershipService.toResponse(findRoom(savedRoom.getId()));
     }
 
-    public Page<ChatRoomResponse> getGroupChatsForUser(User user, Pageable pageable) {
-        Page<Long> roomIdsPage = chatRoomRepository.findVisiblePublicRoomIdsForUser(user, pageable);
-        List<Long> roomIds = roomIdsPage.getContent();
+    public Page<ChatRoomSummary> getGroupChatsForUser(User user, Pageable pageable) {
+        return chatRoomRepository.findRoomSummariesForUser(user.getId(), false, unsorted(pageable));
+    }
 
-        if (roomIds.isEmpty()) {
-            return Page.empty(pageable);
+    public Page<UserResponse> getRoomMembers(Long roomId, String query, User currentUser, Pageable pageable) {
+        if (!membershipService.isMember(roomId, currentUser.getId())) {
+            throw new UnauthorizedOperationException("User is not a participant of this room.");
         }
-
-        List<ChatRoom> rooms = chatRoomRepository.findByIdsWithParticipants(roomIds);
-
-        return roomIdsPage.map(roomId -> {
-            ChatRoom room = rooms.stream().filter(r -> r.getId().equals(roomId)).findFirst().orElse(null);
-            return chatRoomMapper.toChatRoomResponse(room);
-        });
+        return membershipService.getMembers(roomId, query, pageable);
     }
 
     public ChatRoomResponse joinGroupChat(String inviteCode, User user) {
@@ -150,12 +168,10 @@ public class ChatRoomService {
             throw new UnauthorizedOperationException("Cannot join a private room with an invite code.");
         }
 
-        if (chatRoom.getParticipants().contains(user)) {
-            return chatRoomMapper.toChatRoomResponse(chatRoom);
+        if (!membershipService.addMember(chatRoom.getId(), user.getId())) {
+            return membershipService.toResponse(chatRoom);
         }
-
-        chatRoom.getParticipants().add(user);
-        ChatRoom updatedRoom = chatRoomRepository.save(chatRoom);
+        inboxService.touch(user.getId(), chatRoom.getId(), LocalDateTime.now());
 
         ChatMessage joinNotification = new ChatMessage();
         joinNotification.setType(ChatMessage.MessageType.USER_JOINED);
@@ -165,7 +181,7 @@ public class ChatRoomService {
         String topic = "room:" + chatRoom.getId();
         broadcastService.broadcast(topic, "new_event", joinNotification);
 
-        return chatRoomMapper.toChatRoomResponse(updatedRoom);
+        return membershipService.toResponse(findRoom(chatRoom.getId()));
     }
 
     public ChatRoomResponse updateGroupChat(Long roomId, String newName, User currentUser) {
@@ -178,9 +194,10 @@ public class ChatRoomService {
 
         chatRoom.setName(newName);
         ChatRoom updatedRoom = chatRoomRepository.save(chatRoom);
-        return chatRoomMapper.toChatRoomResponse(updatedRoom);
+        return membershipService.toResponse(updatedRoom);
     }
 
+    @Transactional
     public void deleteGroupChat(Long roomId, User currentUser) {
         ChatRoom chatRoom = chatRoomRepository.findById(roomId)
                 .orElseThrow(() -> new ResourceNotFoundException("Chat room not found with id: " + roomId));
@@ -189,8 +206,24 @@ public class ChatRoomService {
             throw new UnauthorizedOperationException("Only the room owner can delete the room.");
         }
 
-        messageRepository.deleteByChatRoomId(roomId);
-        chatRoomRepository.delete(chatRoom);
+        chatRoom.setDeletedAt(LocalDateTime.now());
+        chatRoomRepository.save(chatRoom);
+        membershipService.removeAllMembers(roomId);
+        membershipService.publishRevocation(roomId, null);
+        eventPublisher.publishEvent(new RoomTombstonedEvent(roomId));
+        log.info("Tombstoned room #{}; its history will be purged in the background", roomId);
+    }
+
+    public ChatRoomResponse setRetention(Long roomId, Integer retentionDays, User currentUser) {
+        ChatRoom chatRoom = chatRoomRepository.findById(roomId)
+                .orElseThrow(() -> new ResourceNotFoundException("Chat room not found with id: " + roomId));
+
+        if (chatRoom.isPrivate() || chatRoom.getOwner() == null || !chatRoom.getOwner().equals(currentUser)) {
+            throw new UnauthorizedOperationException("Only the room owner can change the retention policy.");
+        }
+
+        chatRoom.setRetentionDays(retentionDays);
+        return membershipService.toResponse(chatRoomRepository.save(chatRoom));
     }
 
     public void kickParticipant(Long roomId, Long userIdToKick, User currentUser) {
@@ -207,10 +240,10 @@ public class ChatRoomService {
             throw new UnauthorizedOperationException("The room owner cannot be kicked.");
         }
 
-        if (chatRoom.getParticipants().remove(userToKick)) {
-            chatRoomRepository.save(chatRoom);
-        } else {
+        if (!membershipService.removeMember(roomId, userToKick.getId())) {
             throw new ResourceNotFoundException("User is not a participant of this room.");
         }
+        inboxService.remove(userToKick.getId(), roomId);
+        membershipService.publishRevocation(roomId, userToKick);
     }
 }
\ No newline at end of file
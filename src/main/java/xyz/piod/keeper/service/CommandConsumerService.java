@@ -1,129 +1,240 @@
 package xyz.piod.keeper.service;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
-import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.amqp.rabbit.annotation.RabbitListenerConfigurer;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerEndpoint;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistrar;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import xyz.piod.keeper.config.CommandLane;
 import xyz.piod.keeper.config.RabbitMQConfig;
-import xyz.piod.keeper.dto.ChatMessage;
 import xyz.piod.keeper.dto.command.MessageCommand;
 import xyz.piod.keeper.entity.User;
-
+import xyz.piod.keeper.service.typing.TypingService;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Each lane queue has a single active router, which reads commands in
+ * publish order and moves each one onto a stripe queue picked by its room,
+ * so one room's commands stay in order while different rooms spread across
+ * stripes. Every stripe queue has a single active consumer of its own,
+ * which handles its commands one at a time. Producers should set the room
+ * id on every command; commands that only carry a message id are striped
+ * by that message instead.
+ */
 @Service
 @RequiredArgsConstructor
 @Slf4j
-public class CommandConsumerService {
+public class CommandConsumerService implements RabbitListenerConfigurer {
+
+    static final String ACTION_HEADER = "x-keeper-action";
+    private static final long CONFIRM_TIMEOUT_MILLIS = 5_000L;
 
-    private final MessageService messageService;
-    private final ReactionService reactionService;
+    private final CommandProcessor commandProcessor;
     private final JwtService jwtService;
     private final UserService userService;
+    private final TypingService typingService;
+    private final RabbitTemplate rabbitTemplate;
+    private final MessageConverter messageConverter;
+    private final Map<String, SimpleRabbitListenerContainerFactory> containerFactories;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${keeper.commands.lanes.interactive.slo}")
+    private long interactiveSloMillis;
+
+    @Value("${keeper.commands.lanes.social.slo}")
+    private long socialSloMillis;
+
+    @Value("${keeper.commands.lanes.bulk.slo}")
+    private long bulkSloMillis;
+
+    @Value("${keeper.commands.lanes.interactive.stripes}")
+    private int interactiveStripes;
+
+    @Value("${keeper.commands.lanes.social.stripes}")
+    private int socialStripes;
+
+    @Value("${keeper.commands.lanes.bulk.stripes}")
+    private int bulkStripes;
+
+    @Value("${keeper.commands.ephemeral-deadline}")
+    private long ephemeralDeadlineMillis;
+
+    private final Map<CommandLane, LaneMetrics> laneMetrics = new EnumMap<>(CommandLane.class);
+
+    @PostConstruct
+    void initLanes() {
+        laneMetrics.put(CommandLane.INTERACTIVE, laneMetrics(CommandLane.INTERACTIVE, interactiveSloMillis));
+        laneMetrics.put(CommandLane.SOCIAL, laneMetrics(CommandLane.SOCIAL, socialSloMillis));
+        laneMetrics.put(CommandLane.BULK, laneMetrics(CommandLane.BULK, bulkSloMillis));
+    }
+
+    private LaneMetrics laneMetrics(CommandLane lane, long sloMillis) {
+        Duration slo = Duration.ofMillis(sloMillis);
+        Timer latency = Timer.builder("keeper.command.lane.latency")
+                .tag("lane", lane.tag())
+                .serviceLevelObjectives(slo)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        Counter breaches = Counter.builder("keeper.command.lane.slo.breaches")
+                .tag("lane", lane.tag())
+                .register(meterRegistry);
+        Counter dropped = Counter.builder("keeper.command.lane.dropped")
+                .tag("lane", lane.tag())
+                .tag("reason", "stale")
+                .register(meterRegistry);
+        return new LaneMetrics(slo, latency, breaches, dropped);
+    }
+
+    private int stripeCount(CommandLane lane) {
+        return switch (lane) {
+            case INTERACTIVE -> interactiveStripes;
+            case SOCIAL -> socialStripes;
+            case BULK -> bulkStripes;
+        };
+    }
+
+    // each stripe queue gets its own single-consumer container, so stripes never wait on one another
+    @Override
+    public void configureRabbitListeners(RabbitListenerEndpointRegistrar registrar) {
+        for (CommandLane lane : CommandLane.values()) {
+            SimpleRabbitListenerContainerFactory factory = containerFactories.get(lane.tag() + "LaneContainerFactory");
+            for (int stripe = 0; stripe < stripeCount(lane); stripe++) {
+                SimpleRabbitListenerEndpoint endpoint = new SimpleRabbitListenerEndpoint();
+                endpoint.setId("command-" + lane.tag() + "-" + stripe);
+                endpoint.setQueueNames(lane.stripeQueueName(stripe));
+                endpoint.setMessageListener(message -> handleStripeMessage(lane, message));
+                registrar.registerEndpoint(endpoint, factory);
+            }
+        }
+    }
 
     private User getUserByToken(String token) {
         String username = jwtService.extractUsername(token);
         return userService.findUserByUsername(username);
     }
 
-    @RabbitListener(queues = RabbitMQConfig.MESSAGE_COMMANDS_QUEUE)
-    public void handleMessageCommand(MessageCommand command, @Header("amqp_receivedRoutingKey") String routingKey) {
-        String action = routingKey.substring(routingKey.lastIndexOf('.') + 1);
-
-        switch (action) {
-            case "new_message":
-                handleNewMessageCommand(command);
-                break;
-            case "edit_message":
-                handleEditMessageCommand(command);
-                break;
-            case "delete_message":
-                handleDeleteMessageCommand(command);
-                break;
-            case "toggle_pin":
-                handleTogglePinCommand(command);
-                break;
-            case "toggle_reaction":
-                handleToggleReactionCommand(command);
-                break;
-            case "messages_seen":
-                handleMessagesSeenCommand(command);
-                break;
-            default:
-                log.warn("Received a message command with unknown action: {}", action);
-        }
+    @RabbitListener(queues = RabbitMQConfig.INTERACTIVE_COMMANDS_QUEUE, containerFactory = "commandRouterContainerFactory")
+    public void routeInteractiveCommand(Message message) {
+        route(CommandLane.INTERACTIVE, message);
     }
 
-    private void handleNewMessageCommand(MessageCommand command) {
-        try {
-            User sender = getUserByToken(command.getUserToken());
-            log.info("Received new_message command from user '{}' for room {}", sender.getUsername(), command.getRoomId());
+    @RabbitListener(queues = RabbitMQConfig.SOCIAL_COMMANDS_QUEUE, containerFactory = "commandRouterContainerFactory")
+    public void routeSocialCommand(Message message) {
+        route(CommandLane.SOCIAL, message);
+    }
 
-            ChatMessage chatMessage = new ChatMessage();
-            chatMessage.setContent(command.getContent());
-            chatMessage.setRepliedToId(command.getRepliedToId());
+    @RabbitListener(queues = RabbitMQConfig.BULK_COMMANDS_QUEUE, containerFactory = "commandRouterContainerFactory")
+    public void routeBulkCommand(Message message) {
+        route(CommandLane.BULK, message);
+    }
 
-            messageService.saveAndBroadcastMessage(command.getRoomId(), chatMessage, sender);
-        } catch (Exception e) {
-            log.error("Failed to process new_message command: {}", e.getMessage(), e);
+    // the lane message is acked once the broker confirms its stripe copy, so a crash duplicates rather than loses it
+    void route(CommandLane lane, Message message) {
+        MessageProperties properties = message.getMessageProperties();
+        MessageCommand command = toCommand(lane, message);
+        if (command == null) {
+            return;
         }
+        String routingKey = properties.getReceivedRoutingKey();
+        properties.setHeader(ACTION_HEADER, routingKey.substring(routingKey.lastIndexOf('.') + 1));
+        String stripeKey = lane.stripeRoutingKey(stripeIndex(command, stripeCount(lane)));
+        rabbitTemplate.invoke(operations -> {
+            operations.send(RabbitMQConfig.COMMAND_STRIPES_EXCHANGE, stripeKey, message);
+            operations.waitForConfirmsOrDie(CONFIRM_TIMEOUT_MILLIS);
+            return null;
+        });
     }
 
-    private void handleEditMessageCommand(MessageCommand command) {
-        try {
-            User currentUser = getUserByToken(command.getUserToken());
-            log.info("Received edit_message command from user '{}' for message {}", currentUser.getUsername(), command.getMessageId());
-
-            ChatMessage chatMessage = new ChatMessage();
-            chatMessage.setId(command.getMessageId());
-            chatMessage.setContent(command.getContent());
+    static int stripeIndex(MessageCommand command, int stripeCount) {
+        Long key = command.getRoomId() != null ? command.getRoomId() : command.getMessageId();
+        int hash = key == null ? 0 : Long.hashCode(key);
+        return Math.floorMod(hash, stripeCount);
+    }
 
-            messageService.editMessage(chatMessage, currentUser);
-        } catch (Exception e) {
-            log.error("Failed to process edit_message command for message {}: {}", command.getMessageId(), e.getMessage(), e);
+    void handleStripeMessage(CommandLane lane, Message message) {
+        MessageProperties properties = message.getMessageProperties();
+        String action = properties.getHeader(ACTION_HEADER);
+        if (action == null) {
+            log.warn("Dropping a command without an action on the {} lane", lane.tag());
+            return;
+        }
+        MessageCommand command = toCommand(lane, message);
+        if (command != null) {
+            handleMessageCommand(lane, command, action, properties.getTimestamp());
         }
     }
 
-    private void handleDeleteMessageCommand(MessageCommand command) {
+    private MessageCommand toCommand(CommandLane lane, Message message) {
+        message.getMessageProperties().setInferredArgumentType(MessageCommand.class);
         try {
-            User currentUser = getUserByToken(command.getUserToken());
-            log.info("Received delete_message command from user '{}' for message {}", currentUser.getUsername(), command.getMessageId());
+            return (MessageCommand) messageConverter.fromMessage(message);
+        } catch (MessageConversionException | ClassCastException e) {
+            log.warn("Dropping unreadable command on the {} lane: {}", lane.tag(), e.getMessage());
+            return null;
+        }
+    }
 
-            ChatMessage chatMessage = new ChatMessage();
-            chatMessage.setId(command.getMessageId());
+    void handleMessageCommand(CommandLane lane, MessageCommand command, String action, Date publishedAt) {
+        long receivedAt = publishedAt != null ? publishedAt.getTime() : System.currentTimeMillis();
+        LaneMetrics metrics = laneMetrics.get(lane);
 
-            messageService.deleteMessage(chatMessage, currentUser);
-        } catch (Exception e) {
-            log.error("Failed to process delete_message command for message {}: {}", command.getMessageId(), e.getMessage(), e);
+        if (lane.isEphemeral(action) && System.currentTimeMillis() - receivedAt > ephemeralDeadlineMillis) {
+            metrics.dropped().increment();
+            log.debug("Dropping stale {} command on the {} lane", action, lane.tag());
+            return;
         }
-    }
 
-    private void handleTogglePinCommand(MessageCommand command) {
         try {
-            User currentUser = getUserByToken(command.getUserToken());
-            log.info("Received toggle_pin command from user '{}' for message {}", currentUser.getUsername(), command.getMessageId());
-            messageService.togglePinMessage(command.getMessageId(), currentUser);
+            handle(action, command, receivedAt);
         } catch (Exception e) {
-            log.error("Failed to process toggle_pin command for message {}: {}", command.getMessageId(), e.getMessage(), e);
+            log.error("Failed to handle {} command on the {} lane: {}", action, lane.tag(), e.getMessage());
+        } finally {
+            Duration elapsed = Duration.ofMillis(Math.max(0, System.currentTimeMillis() - receivedAt));
+            metrics.latency().record(elapsed);
+            if (elapsed.compareTo(metrics.slo()) > 0) {
+                metrics.breaches().increment();
+            }
         }
     }
 
-    private void handleToggleReactionCommand(MessageCommand command) {
-        try {
-            User currentUser = getUserByToken(command.getUserToken());
-            log.info("Received toggle_reaction command from user '{}' for message {}", currentUser.getUsername(), command.getMessageId());
-            reactionService.toggleReaction(command.getMessageId(), currentUser.getUsername(), command.getEmoji());
-        } catch (Exception e) {
-            log.error("Failed to process toggle_reaction command for message {}: {}", command.getMessageId(), e.getMessage(), e);
+    private void handle(String action, MessageCommand command, long receivedAt) {
+        if (typingService.isTypingAction(action)) {
+            typingService.handle(action, command);
+            return;
+        }
+
+        if (!commandProcessor.isKnownAction(action)) {
+            log.warn("Received a message command with unknown action: {}", action);
+            return;
         }
-    }
 
-    private void handleMessagesSeenCommand(MessageCommand command) {
+        User user;
         try {
-            User currentUser = getUserByToken(command.getUserToken());
-            log.info("Received messages_seen command from user '{}' for room {}", currentUser.getUsername(), command.getRoomId());
-            messageService.markMessagesAsSeen(currentUser, command.getRoomId(), command.getLastMessageId());
+            user = getUserByToken(command.getUserToken());
         } catch (Exception e) {
-            log.error("Failed to process messages_seen command for room {}: {}", command.getRoomId(), e.getMessage(), e);
+            log.error("Failed to authenticate {} command: {}", action, e.getMessage());
+            return;
         }
+
+        commandProcessor.process(action, command, user, "amqp", receivedAt);
     }
-}
\ No newline at end of file
+
+    private record LaneMetrics(Duration slo, Timer latency, Counter breaches, Counter dropped) {}
+}
@@ -0,0 +1,153 @@
+package xyz.piod.keeper.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+import xyz.piod.keeper.dto.ChatMessage;
+import xyz.piod.keeper.dto.command.MessageCommand;
+import xyz.piod.keeper.entity.User;
+
+import java.time.Duration;
+import java.util.Set;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class CommandProcessor {
+
+    public static final Set<String> ACTIONS = Set.of(
+            "new_message", "edit_message", "delete_message", "toggle_pin", "toggle_reaction", "messages_seen");
+
+    private static final String DEDUP_KEY_PREFIX = "command:dedup:";
+    private static final String IN_FLIGHT = "in-flight";
+    private static final String DONE = "done";
+
+    private final MessageService messageService;
+    private final ReactionService reactionService;
+    private final SeenReceiptCoalescer seenReceiptCoalescer;
+    private final RedisTemplate<String, String> redisTemplate;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${keeper.commands.dedup-ttl}")
+    private long dedupTtlMillis;
+
+    @Value("${keeper.commands.in-flight-ttl}")
+    private long inFlightTtlMillis;
+
+    public boolean isKnownAction(String action) {
+        return ACTIONS.contains(action);
+    }
+
+    public void process(String action, MessageCommand command, User user, String ingress, long receivedAtMillis) {
+        String dedupKey = dedupKey(command, user);
+        boolean claimed = false;
+        boolean succeeded = false;
+        try {
+            if (dedupKey != null) {
+                claimed = claim(dedupKey);
+                if (!claimed) {
+                    log.info("Skipping duplicate {} command {} from user '{}'", action, command.getCommandId(), user.getUsername());
+                    return;
+                }
+            }
+
+            switch (action) {
+                case "new_message" -> handleNewMessageCommand(command, user);
+                case "edit_message" -> handleEditMessageCommand(command, user);
+                case "delete_message" -> handleDeleteMessageCommand(command, user);
+                case "toggle_pin" -> handleTogglePinCommand(command, user);
+                case "toggle_reaction" -> handleToggleReactionCommand(command, user);
+                case "messages_seen" -> handleMessagesSeenCommand(command, user);
+                default -> log.warn("Received a message command with unknown action: {}", action);
+            }
+            succeeded = true;
+        } catch (Exception e) {
+            log.error("Failed to process {} command for room {} / message {}: {}",
+                    action, command.getRoomId(), command.getMessageId(), e.getMessage(), e);
+        } finally {
+            if (claimed) {
+                settle(dedupKey, succeeded);
+            }
+            Timer.builder("keeper.command.latency")
+                    .tag("ingress", ingress)
+                    .tag("action", action)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry)
+                    .record(Duration.ofMillis(Math.max(0, System.currentTimeMillis() - receivedAtMillis)));
+        }
+    }
+
+    private String dedupKey(MessageCommand command, User user) {
+        if (command.getCommandId() == null || command.getCommandId().isBlank()) {
+            return null;
+        }
+        return DEDUP_KEY_PREFIX + user.getId() + ":" + command.getCommandId();
+    }
+
+    // the short in-flight claim only stops concurrent redeliveries; the command is remembered as done once it succeeds
+    private boolean claim(String dedupKey) {
+        Boolean claimed = redisTemplate.opsForValue()
+                .setIfAbsent(dedupKey, IN_FLIGHT, Duration.ofMillis(inFlightTtlMillis));
+        return !Boolean.FALSE.equals(claimed);
+    }
+
+    private void settle(String dedupKey, boolean succeeded) {
+        try {
+            if (succeeded) {
+                redisTemplate.opsForValue().set(dedupKey, DONE, Duration.ofMillis(dedupTtlMillis));
+            } else {
+                redisTemplate.delete(dedupKey);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to record the outcome of command {}: {}", dedupKey, e.getMessage());
+        }
+    }
+
+    private void handleNewMessageCommand(MessageCommand command, User sender) {
+        log.info("Received new_message command from user '{}' for room {}", sender.getUsername(), command.getRoomId());
+
+        ChatMessage chatMessage = new ChatMessage();
+        chatMessage.setContent(command.getContent());
+        chatMessage.setRepliedToId(command.getRepliedToId());
+
+        messageService.saveAndBroadcastMessage(command.getRoomId(), chatMessage, sender);
+    }
+
+    private void handleEditMessageCommand(MessageCommand command, User currentUser) {
+        log.info("Received edit_message command from user '{}' for message {}", currentUser.getUsername(), command.getMessageId());
+
+        ChatMessage chatMessage = new ChatMessage();
+        chatMessage.setId(command.getMessageId());
+        chatMessage.setContent(command.getContent());
+
+        messageService.editMessage(chatMessage, currentUser);
+    }
+
+    private void handleDeleteMessageCommand(MessageCommand command, User currentUser) {
+        log.info("Received delete_message command from user '{}' for message {}", currentUser.getUsername(), command.getMessageId());
+
+        ChatMessage chatMessage = new ChatMessage();
+        chatMessage.setId(command.getMessageId());
+
+        messageService.deleteMessage(chatMessage, currentUser);
+    }
+
+    private void handleTogglePinCommand(MessageCommand command, User currentUser) {
+        log.info("Received toggle_pin command from user '{}' for message {}", currentUser.getUsername(), command.getMessageId());
+        messageService.togglePinMessage(command.getMessageId(), currentUser);
+    }
+
+    private void handleToggleReactionCommand(MessageCommand command, User currentUser) {
+        log.info("Received toggle_reaction command from user '{}' for message {}", currentUser.getUsername(), command.getMessageId());
+        reactionService.toggleReaction(command.getMessageId(), currentUser.getUsername(), command.getEmoji());
+    }
+
+    private void handleMessagesSeenCommand(MessageCommand command, User currentUser) {
+        log.info("Received messages_seen command from user '{}' for room {}", currentUser.getUsername(), command.getRoomId());
+        seenReceiptCoalescer.offer(currentUser, command.getRoomId(), command.getLastMessageId());
+    }
+}
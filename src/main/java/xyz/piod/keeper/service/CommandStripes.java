@@ -0,0 +1,60 @@
+package xyz.piod.keeper.service;
+
+import xyz.piod.keeper.dto.command.MessageCommand;
+import xyz.piod.keeper.repository.MessageRepository;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A fixed set of single-threaded lanes keyed by room, so commands for the
+ * same room run one at a time and in submission order while different
+ * rooms run in parallel.
+ */
+class CommandStripes {
+
+    private final MessageRepository messageRepository;
+    private final ThreadPoolExecutor[] stripes;
+
+    CommandStripes(String name, int stripeCount, int queueCapacity, MessageRepository messageRepository) {
+        this.messageRepository = messageRepository;
+        this.stripes = new ThreadPoolExecutor[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            String threadName = name + "-" + i;
+            stripes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(queueCapacity),
+                    runnable -> {
+                        Thread thread = new Thread(runnable, threadName);
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+        }
+    }
+
+    boolean submit(MessageCommand command, Runnable task) {
+        try {
+            stripes[stripeIndex(command)].execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    void shutdown() {
+        for (ThreadPoolExecutor stripe : stripes) {
+            stripe.shutdown();
+        }
+    }
+
+    // message-only commands are striped by the message's room so they stay ordered with that room's new_message commands
+    int stripeIndex(MessageCommand command) {
+        Long key = command.getRoomId();
+        if (key == null && command.getMessageId() != null) {
+            key = messageRepository.findRoomIdById(command.getMessageId()).orElse(command.getMessageId());
+        }
+        int hash = key == null ? 0 : Long.hashCode(key);
+        return Math.floorMod(hash, stripes.length);
+    }
+}
@@ -0,0 +1,53 @@
+package xyz.piod.keeper.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import xyz.piod.keeper.dto.command.MessageCommand;
+import xyz.piod.keeper.entity.User;
+import xyz.piod.keeper.repository.MessageRepository;
+
+@Service
+@ConditionalOnProperty(name = "keeper.ingress.direct.enabled", havingValue = "true")
+@RequiredArgsConstructor
+@Slf4j
+public class DirectCommandIngress {
+
+    private final CommandProcessor commandProcessor;
+    private final MessageRepository messageRepository;
+
+    @Value("${keeper.ingress.direct.stripes}")
+    private int stripeCount;
+
+    @Value("${keeper.ingress.direct.queue-capacity}")
+    private int queueCapacity;
+
+    private CommandStripes stripes;
+
+    @PostConstruct
+    void startStripes() {
+        stripes = new CommandStripes("direct-ingress", stripeCount, queueCapacity, messageRepository);
+    }
+
+    @PreDestroy
+    void stopStripes() {
+        stripes.shutdown();
+    }
+
+    public boolean isKnownAction(String action) {
+        return commandProcessor.isKnownAction(action);
+    }
+
+    public boolean submit(String action, MessageCommand command, User user) {
+        long receivedAt = System.currentTimeMillis();
+        if (stripes.submit(command, () -> commandProcessor.process(action, command, user, "direct", receivedAt))) {
+            return true;
+        }
+        log.warn("Direct ingress lane full, rejecting {} command from user '{}'", action, user.getUsername());
+        return false;
+    }
+}
@@ -0,0 +1,163 @@
+package xyz.piod.keeper.service;
+
+import xyz.piod.keeper.dto.ChatMessage;
+import xyz.piod.keeper.service.transport.BroadcastEvent;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class HotRoomCoalescer {
+
+    public static final String BATCH_EVENT = "new_events";
+
+    private static final long RATE_WINDOW_MILLIS = 1000;
+    private static final long IDLE_EVICTION_MILLIS = 60_000;
+
+    private final int hotThreshold;
+    private final int coolThreshold;
+    private final Map<String, RoomState> rooms = new ConcurrentHashMap<>();
+
+    public HotRoomCoalescer(int hotThreshold, int coolThreshold) {
+        this.hotThreshold = Math.max(2, hotThreshold);
+        this.coolThreshold = Math.min(coolThreshold, this.hotThreshold);
+    }
+
+    public boolean offer(BroadcastEvent event, long now) {
+        while (true) {
+            RoomState state = rooms.computeIfAbsent(event.topic(), topic -> new RoomState(now));
+            synchronized (state) {
+                if (state.evicted) {
+                    continue;
+                }
+                state.record(now);
+                if (!state.coalescing && state.currentCount >= hotThreshold) {
+                    state.coalescing = true;
+                }
+                if (!state.coalescing) {
+                    return false;
+                }
+                state.buffer.add(event);
+                state.eventsBuffered++;
+                return true;
+            }
+        }
+    }
+
+    public List<BroadcastEvent> drain(long now) {
+        List<BroadcastEvent> frames = new ArrayList<>();
+        rooms.forEach((topic, state) -> {
+            synchronized (state) {
+                state.roll(now);
+                boolean drained = !state.buffer.isEmpty();
+                if (drained) {
+                    frames.add(toFrame(topic, state.buffer));
+                    state.buffer.clear();
+                    state.framesEmitted++;
+                }
+                // only leave coalescing mode on a quiet tick so an immediate publish cannot overtake a frame still in flight
+                if (state.coalescing && !drained && state.previousCount < coolThreshold && state.currentCount < coolThreshold) {
+                    state.coalescing = false;
+                }
+                if (!state.coalescing && now - state.lastEventAt > IDLE_EVICTION_MILLIS) {
+                    state.evicted = true;
+                    rooms.remove(topic, state);
+                }
+            }
+        });
+        return frames;
+    }
+
+    public int hotRoomCount() {
+        return (int) rooms.values().stream().filter(state -> state.coalescing).count();
+    }
+
+    public List<HotRoomStats> snapshot() {
+        List<HotRoomStats> stats = new ArrayList<>();
+        rooms.forEach((topic, state) -> {
+            synchronized (state) {
+                double ratio = state.framesEmitted == 0 ? 0 : (double) state.eventsBuffered / state.framesEmitted;
+                stats.add(new HotRoomStats(topic, state.coalescing ? "coalescing" : "immediate",
+                        Math.max(state.previousCount, state.currentCount), state.eventsBuffered, state.framesEmitted, ratio));
+            }
+        });
+        return stats;
+    }
+
+    private BroadcastEvent toFrame(String topic, List<BroadcastEvent> buffered) {
+        if (buffered.size() == 1) {
+            return buffered.get(0);
+        }
+
+        Map<Object, Object> merged = new LinkedHashMap<>();
+        for (BroadcastEvent event : buffered) {
+            Object key = supersedingKey(event.payload());
+            if (key == null) {
+                merged.put(new Object(), event.payload());
+                continue;
+            }
+            Object previous = merged.remove(key);
+            merged.put(key, newer(previous, event.payload()));
+        }
+        return new BroadcastEvent(topic, BATCH_EVENT, new ArrayList<>(merged.values()));
+    }
+
+    private static Object supersedingKey(Object payload) {
+        if (!(payload instanceof ChatMessage message) || message.getType() == null) {
+            return null;
+        }
+        return switch (message.getType()) {
+            case REACTION_UPDATE -> message.getUpdatedMessage() == null ? null : "reaction:" + message.getUpdatedMessage().getId();
+            case MESSAGES_SEEN -> message.getSenderUsername() == null ? null : "seen:" + message.getSenderUsername();
+            default -> null;
+        };
+    }
+
+    private static Object newer(Object previous, Object current) {
+        if (previous instanceof ChatMessage prev && current instanceof ChatMessage curr
+                && curr.getType() == ChatMessage.MessageType.MESSAGES_SEEN
+                && prev.getLastMessageId() != null && curr.getLastMessageId() != null
+                && prev.getLastMessageId() > curr.getLastMessageId()) {
+            return previous;
+        }
+        return current;
+    }
+
+    public record HotRoomStats(String topic, String mode, int eventsPerSecond, long eventsCoalesced,
+                               long framesEmitted, double coalescingRatio) {}
+
+    private static final class RoomState {
+        private long windowStart;
+        private int currentCount;
+        private int previousCount;
+        private long lastEventAt;
+        private boolean coalescing;
+        private boolean evicted;
+        private long eventsBuffered;
+        private long framesEmitted;
+        private final List<BroadcastEvent> buffer = new ArrayList<>();
+
+        private RoomState(long now) {
+            this.windowStart = now;
+            this.lastEventAt = now;
+        }
+
+        private void record(long now) {
+            roll(now);
+            currentCount++;
+            lastEventAt = now;
+        }
+
+        private void roll(long now) {
+            long elapsed = now - windowStart;
+            if (elapsed < RATE_WINDOW_MILLIS) {
+                return;
+            }
+            previousCount = elapsed < 2 * RATE_WINDOW_MILLIS ? currentCount : 0;
+            currentCount = 0;
+            windowStart = now;
+        }
+    }
+}
@@ -8,7 +8,7 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
 import xyz.piod.keeper.entity.User;
-import xyz.piod.keeper.repository.ChatRoomRepository;
+import xyz.piod.keeper.service.membership.RoomMembershipIndex;
 
 import java.security.KeyFactory;
 import java.security.NoSuchAlgorithmException;
@@ -32,7 +32,7 @@ public class JwtService {
     @Value("${jwt.expiration}")
     private long jwtExpiration;
 
-    private final ChatRoomRepository chatRoomRepository;
+    private final RoomMembershipIndex membershipIndex;
 
     public String extractUsername(String token) {
         return extractClaim(token, Claims::getSubject);
@@ -44,7 +44,7 @@ public class JwtService {
     }
 
     public String generateToken(User user) {
-        List<Long> roomIds = chatRoomRepository.findAllRoomIdsByParticipantId(user.getId());
+        List<Long> roomIds = membershipIndex.roomIdsOf(user.getId());
         Map<String, Object> extraClaims = new HashMap<>();
         extraClaims.put("rooms", roomIds);
 
@@ -0,0 +1,93 @@
+package xyz.piod.keeper.service;
+
+import com.rabbitmq.client.GetResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import xyz.piod.keeper.config.RabbitMQConfig;
+
+import java.util.Properties;
+
+/**
+ * Retires the catch-all command queue used before commands were split into
+ * lanes. The lanes are only bound once the legacy binding is gone, so no
+ * command is ever routed to both. Nodes still running the old version keep
+ * consuming the legacy queue during a rolling deploy; it is drained onto the
+ * lanes only once none of them is left, so a command is never handled by an
+ * old node and a lane both, and then deleted.
+ */
+@Component
+@Profile("!import")
+@RequiredArgsConstructor
+@Slf4j
+public class LegacyCommandQueueDrainer {
+
+    private static final Binding LEGACY_BINDING = new Binding(RabbitMQConfig.LEGACY_COMMANDS_QUEUE,
+            Binding.DestinationType.QUEUE, RabbitMQConfig.KEEPER_EXCHANGE, RabbitMQConfig.LEGACY_COMMAND_ROUTING_KEY, null);
+
+    private final AmqpAdmin amqpAdmin;
+    private final RabbitTemplate rabbitTemplate;
+
+    private volatile boolean lanesBound;
+    private volatile boolean retired;
+
+    @Scheduled(fixedDelayString = "${keeper.commands.legacy-drain-interval}")
+    public void drain() {
+        if (lanesBound && retired) {
+            return;
+        }
+        try {
+            Properties legacy = amqpAdmin.getQueueProperties(RabbitMQConfig.LEGACY_COMMANDS_QUEUE);
+            if (legacy != null) {
+                // an old node redeclares the binding whenever it reconnects, so it is removed on every round
+                amqpAdmin.removeBinding(LEGACY_BINDING);
+            }
+            if (!lanesBound) {
+                RabbitMQConfig.commandLaneBindings().forEach(amqpAdmin::declareBinding);
+                lanesBound = true;
+            }
+            if (legacy == null) {
+                retired = true;
+                return;
+            }
+            if (legacy.get(RabbitAdmin.QUEUE_CONSUMER_COUNT) instanceof Integer consumers && consumers > 0) {
+                log.debug("Legacy command queue '{}' still has {} consumers, not draining yet",
+                        RabbitMQConfig.LEGACY_COMMANDS_QUEUE, consumers);
+                return;
+            }
+
+            int moved = 0;
+            while (moveOne()) {
+                moved++;
+            }
+            amqpAdmin.deleteQueue(RabbitMQConfig.LEGACY_COMMANDS_QUEUE, true, true);
+            retired = true;
+            log.info("Retired legacy command queue '{}' after moving {} commands onto the lanes",
+                    RabbitMQConfig.LEGACY_COMMANDS_QUEUE, moved);
+        } catch (Exception e) {
+            log.warn("Could not retire legacy command queue '{}', will retry: {}",
+                    RabbitMQConfig.LEGACY_COMMANDS_QUEUE, e.getMessage());
+        }
+    }
+
+    // republish before acking, so a crash in between duplicates a command rather than losing it
+    private boolean moveOne() {
+        Boolean moved = rabbitTemplate.execute(channel -> {
+            GetResponse response = channel.basicGet(RabbitMQConfig.LEGACY_COMMANDS_QUEUE, false);
+            if (response == null) {
+                return false;
+            }
+            channel.basicPublish(RabbitMQConfig.KEEPER_EXCHANGE, response.getEnvelope().getRoutingKey(),
+                    response.getProps(), response.getBody());
+            channel.basicAck(response.getEnvelope().getDeliveryTag(), false);
+            return true;
+        });
+        return Boolean.TRUE.equals(moved);
+    }
+}
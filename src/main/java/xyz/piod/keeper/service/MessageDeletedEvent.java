@@ -0,0 +1,3 @@
+package xyz.piod.keeper.service;
+
+public record MessageDeletedEvent(Long roomId, Long messageId) {}
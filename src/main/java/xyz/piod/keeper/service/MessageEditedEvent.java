@@ -0,0 +1,3 @@
+package xyz.piod.keeper.service;
+
+public record MessageEditedEvent(Long roomId, Long messageId, String content) {}
@@ -0,0 +1,6 @@
+package xyz.piod.keeper.service;
+
+import java.time.LocalDateTime;
+
+public record MessagePostedEvent(Long roomId, Long messageId, Long senderId, String senderUsername, String content,
+                                 LocalDateTime timestamp) {}
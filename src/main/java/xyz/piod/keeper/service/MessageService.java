@@ -2,60 +2,65 @@ package xyz.piod.keeper.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import xyz.piod.keeper.config.RabbitMQConfig;
 import xyz.piod.keeper.dto.ChatMessage;
 import xyz.piod.keeper.dto.LinkPreviewRequest;
 import xyz.piod.keeper.dto.MessageResponse;
-import xyz.piod.keeper.dto.NotificationPayload;
+import xyz.piod.keeper.dto.MessageThreadResponse;
 import xyz.piod.keeper.entity.ChatRoom;
 import xyz.piod.keeper.entity.Message;
-import xyz.piod.keeper.entity.MessageReadReceipt;
 import xyz.piod.keeper.entity.User;
 import xyz.piod.keeper.exception.ResourceNotFoundException;
 import xyz.piod.keeper.exception.UnauthorizedOperationException;
-import xyz.piod.keeper.mapper.ChatRoomMapper;
 import xyz.piod.keeper.mapper.MessageMapper;
 import xyz.piod.keeper.repository.ChatRoomRepository;
-import xyz.piod.keeper.repository.HiddenChatRoomRepository;
-import xyz.piod.keeper.repository.MessageReadReceiptRepository;
+import xyz.piod.keeper.repository.ChatRoomParticipantRepository;
 import xyz.piod.keeper.repository.MessageRepository;
+import xyz.piod.keeper.service.archive.MessageArchiveService;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class MessageService {
 
-    private static final String ONLINE_USERS_REDIS_KEY = "presence:online_users";
     private final MessageRepository messageRepository;
     private final ChatRoomRepository chatRoomRepository;
-    private final MessageReadReceiptRepository readReceiptRepository;
     private final BroadcastService broadcastService;
     private final MessageMapper messageMapper;
     private final UserService userService;
-    private final RabbitTemplate rabbitTemplate;
-    private final RedisTemplate<String, String> redisTemplate;
-    private final HiddenChatRoomRepository hiddenChatRoomRepository;
-    private final ChatRoomMapper chatRoomMapper;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ChatRoomParticipantRepository participantRepository;
+    private final RoomMembershipService membershipService;
+    private final MessageArchiveService archiveService;
+
+    @Value("${keeper.messages.reply-snippet-length}")
+    private int replySnippetLength;
+
+    @Value("${keeper.messages.thread-page-max}")
+    private int threadPageMax;
 
     public List<MessageResponse> getPinnedMessagesForRoom(Long roomId) {
         UserDetails principal = (UserDetails) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
         User currentUser = userService.findUserByUsername(principal.getUsername());
 
-        if (!chatRoomRepository.isUserParticipant(roomId, currentUser.getId())) {
+        if (!membershipService.isMember(roomId, currentUser.getId())) {
             throw new UnauthorizedOperationException("User is not a participant of this room.");
         }
 
@@ -69,13 +74,82 @@ public class MessageService {
         UserDetails principal = (UserDetails) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
         User currentUser = userService.findUserByUsername(principal.getUsername());
 
-        if (!chatRoomRepository.isUserParticipant(roomId, currentUser.getId())) {
+        if (!membershipService.isMember(roomId, currentUser.getId())) {
             throw new UnauthorizedOperationException("User is not a participant of this room.");
         }
 
-        Pageable pageable = PageRequest.of(page, size, Sort.by("timestamp").descending());
+        Pageable pageable = PageRequest.of(page, size, Sort.by(Sort.Order.desc("timestamp"), Sort.Order.desc("id")));
         Page<Message> messagesPage = messageRepository.findByChatRoomIdOrderByTimestampDesc(roomId, pageable);
-        return messagesPage.map(messageMapper::toMessageResponse);
+        return archiveService.stitch(roomId, messagesPage);
+    }
+
+    public MessageThreadResponse getThread(Long parentId, Long afterId, int size) {
+        UserDetails principal = (UserDetails) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        User currentUser = userService.findUserByUsername(principal.getUsername());
+
+        MessageThreadResponse thread = new MessageThreadResponse();
+        thread.setParentId(parentId);
+        Optional<Message> parent = messageRepository.findById(parentId);
+        if (parent.isPresent()) {
+            thread.setRoomId(parent.get().getChatRoom().getId());
+            thread.setReplyCount(parent.get().getReplyCount());
+        } else {
+            MessageArchiveService.ArchivedMessage archived = archiveService.findArchived(parentId)
+                    .orElseThrow(() -> new ResourceNotFoundException("Message not found with id: " + parentId));
+            thread.setRoomId(archived.roomId());
+            thread.setReplyCount(archived.message().replyCount());
+        }
+
+        if (!membershipService.isMember(thread.getRoomId(), currentUser.getId())) {
+            throw new UnauthorizedOperationException("User is not a participant of this room.");
+        }
+
+        int limit = Math.min(Math.max(size, 1), threadPageMax);
+        long after = afterId == null ? 0L : afterId;
+        List<Long> hotIds = messageRepository.findReplyIds(parentId, after, PageRequest.of(0, limit + 1));
+        MessageArchiveService.ReplyScan coldScan = archiveService.findReplies(thread.getRoomId(), parentId, after, limit + 1);
+        List<MessageResponse> cold = coldScan.replies();
+
+        // hot replies past the scanned part of the archive wait for a later page
+        List<Long> pageIds = Stream.concat(hotIds.stream().filter(id -> id <= coldScan.scannedThrough()),
+                        cold.stream().map(MessageResponse::getId))
+                .sorted()
+                .limit(limit + 1)
+                .collect(Collectors.toList());
+        boolean hasMore = pageIds.size() > limit;
+        if (hasMore) {
+            pageIds.remove(limit);
+        }
+        Set<Long> pageIdSet = new HashSet<>(pageIds);
+
+        List<MessageResponse> replies = new ArrayList<>(pageIds.size());
+        messageRepository.findAllWithReactionsByIdIn(hotIds.stream().filter(pageIdSet::contains).toList())
+                .forEach(message -> replies.add(messageMapper.toMessageResponse(message)));
+        cold.stream().filter(reply -> pageIdSet.contains(reply.getId())).forEach(replies::add);
+        replies.sort(Comparator.comparing(MessageResponse::getId));
+
+        thread.setReplies(replies);
+        if (hasMore) {
+            thread.setNextAfterId(pageIds.get(pageIds.size() - 1));
+        } else if (coldScan.scannedThrough() != Long.MAX_VALUE) {
+            thread.setNextAfterId(coldScan.scannedThrough());
+        }
+        return thread;
+    }
+
+    private String snippet(String content) {
+        if (content.codePointCount(0, content.length()) <= replySnippetLength) {
+            return content;
+        }
+        return content.substring(0, content.offsetByCodePoints(0, replySnippetLength)) + "…";
+    }
+
+    private Optional<Message> findMessage(Long roomId, Long messageId, User user) {
+        Optional<Message> message = messageRepository.findById(messageId);
+        if (message.isEmpty() && archiveService.rehydrate(roomId, messageId, user.getId())) {
+            return messageRepository.findById(messageId);
+        }
+        return message;
     }
 
     @Transactional
@@ -97,11 +171,20 @@ public class MessageService {
         message.setChatRoom(chatRoom);
 
         if (chatMessage.getRepliedToId() != null) {
-            Message repliedToMessage = messageRepository.findById(chatMessage.getRepliedToId()).orElse(null);
-            message.setRepliedTo(repliedToMessage);
+            findMessage(roomId, chatMessage.getRepliedToId(), sender)
+                    .filter(parent -> parent.getChatRoom().getId().equals(roomId))
+                    .ifPresent(parent -> {
+                        message.setRepliedToId(parent.getId());
+                        message.setReplySenderUsername(parent.getSender().getUsername());
+                        message.setReplySnippet(snippet(parent.getContent()));
+                    });
         }
 
         Message savedMessage = messageRepository.save(message);
+        if (savedMessage.getRepliedToId() != null) {
+            messageRepository.adjustReplyCount(savedMessage.getRepliedToId(), 1);
+        }
+        chatRoomRepository.touchLastActivity(roomId, savedMessage.getTimestamp());
 
         ChatMessage broadcastMessage = new ChatMessage();
         broadcastMessage.setId(savedMessage.getId());
@@ -110,14 +193,16 @@ public class MessageService {
         broadcastMessage.setRoomId(roomId);
         broadcastMessage.setSenderUsername(sender.getUsername());
         broadcastMessage.setSenderProfilePicture(sender.getProfilePicture());
-        broadcastMessage.setRepliedTo(messageMapper.toRepliedMessageInfo(savedMessage.getRepliedTo()));
+        broadcastMessage.setRepliedToId(savedMessage.getRepliedToId());
+        broadcastMessage.setRepliedTo(messageMapper.toRepliedMessageInfo(savedMessage));
         broadcastMessage.setTimestamp(savedMessage.getTimestamp());
         broadcastMessage.setEdited(savedMessage.isEdited());
 
         String topic = "room:" + roomId;
         broadcastService.broadcast(topic, "new_event", broadcastMessage);
 
-        sendNotificationsToOfflineUsers(chatRoom, savedMessage);
+        eventPublisher.publishEvent(new MessagePostedEvent(roomId, savedMessage.getId(), sender.getId(),
+                sender.getUsername(), savedMessage.getContent(), savedMessage.getTimestamp()));
     }
 
     private void unhideRoomForRecipients(ChatRoom chatRoom, User sender) {
@@ -125,47 +210,28 @@ public class MessageService {
             return;
         }
 
-        chatRoom.getParticipants().stream()
-                .filter(participant -> !participant.equals(sender))
-                .forEach(recipient -> {
-                    hiddenChatRoomRepository.findByUserAndChatRoom(recipient, chatRoom)
-                            .ifPresent(hiddenRoom -> {
-                                hiddenChatRoomRepository.delete(hiddenRoom);
-
-                                ChatMessage notification = new ChatMessage();
-                                notification.setType(ChatMessage.MessageType.DM_CHANNEL_CREATED);
-                                notification.setRoom(chatRoomMapper.toChatRoomResponse(chatRoom));
-
-                                broadcastService.broadcast("user:" + recipient.getUsername(), "new_event", notification);
-                                log.info("un-hid dm room #{} for user {} and sent notification", chatRoom.getId(), recipient.getUsername());
-                            });
-                });
-    }
+        List<String> unhiddenFor = participantRepository.lockHiddenRecipients(chatRoom.getId(), sender.getId());
+        if (unhiddenFor.isEmpty()) {
+            return;
+        }
+        participantRepository.unhideForRecipients(chatRoom.getId(), sender.getId());
 
-    private void sendNotificationsToOfflineUsers(ChatRoom chatRoom, Message message) {
-        Set<String> onlineUsers = redisTemplate.opsForSet().members(ONLINE_USERS_REDIS_KEY);
-
-        final String notificationRoutingKey = "event.notification.new_message";
-
-        chatRoom.getParticipants().stream()
-                .filter(participant -> !participant.equals(message.getSender()))
-                .filter(participant -> onlineUsers == null || !onlineUsers.contains(participant.getUsername()))
-                .filter(participant -> participant.getFcmToken() != null && !participant.getFcmToken().isEmpty())
-                .forEach(recipient -> {
-                    boolean isHiddenDm = chatRoom.isPrivate() && hiddenChatRoomRepository.findByUserAndChatRoom(recipient, chatRoom).isPresent();
-
-                    if (isHiddenDm) {
-                        NotificationPayload payload = new NotificationPayload(
-                                recipient.getUsername(),
-                                message.getSender().getUsername(),
-                                message.getContent(),
-                                chatRoom.getId(),
-                                recipient.getFcmToken()
-                        );
-                        rabbitTemplate.convertAndSend(RabbitMQConfig.KEEPER_EXCHANGE, notificationRoutingKey, payload);
-                        log.info("published notification event for offline user {} in a hidden dm", recipient.getUsername());
-                    }
-                });
+        ChatMessage notification = null;
+        for (String recipient : unhiddenFor) {
+            String topic = "user:" + recipient;
+            if (!broadcastService.hasSubscribers(topic)) {
+                continue;
+            }
+
+            if (notification == null) {
+                notification = new ChatMessage();
+                notification.setType(ChatMessage.MessageType.DM_CHANNEL_CREATED);
+                notification.setRoom(membershipService.toResponse(chatRoom));
+            }
+
+            broadcastService.broadcast(topic, "new_event", notification);
+            log.info("un-hid dm room #{} for user {} and sent notification", chatRoom.getId(), recipient);
+        }
     }
 
     public void updateMessageWithLinkPreview(Long messageId, LinkPreviewRequest previewRequest) {
@@ -188,8 +254,9 @@ public class MessageService {
         broadcastService.broadcast(topic, "new_event", broadcastMessage);
     }
 
+    @Transactional
     public void editMessage(ChatMessage chatMessage, User currentUser) {
-        Message message = messageRepository.findById(chatMessage.getId())
+        Message message = findMessage(chatMessage.getRoomId(), chatMessage.getId(), currentUser)
                 .orElseThrow(() -> new ResourceNotFoundException("Message not found with id: " + chatMessage.getId()));
 
         if (!message.getSender().equals(currentUser)) {
@@ -199,6 +266,8 @@ public class MessageService {
         message.setContent(chatMessage.getContent());
         message.setEdited(true);
         messageRepository.save(message);
+        // reply_count can lag behind concurrent replies, so it is not used to skip the refresh
+        messageRepository.updateReplySnippets(message.getId(), snippet(message.getContent()));
 
         Long roomId = message.getChatRoom().getId();
 
@@ -211,10 +280,13 @@ public class MessageService {
 
         String topic = "room:" + roomId;
         broadcastService.broadcast(topic, "new_event", broadcastMessage);
+
+        eventPublisher.publishEvent(new MessageEditedEvent(roomId, message.getId(), message.getContent()));
     }
 
+    @Transactional
     public void deleteMessage(ChatMessage chatMessage, User currentUser) {
-        Message message = messageRepository.findById(chatMessage.getId())
+        Message message = findMessage(chatMessage.getRoomId(), chatMessage.getId(), currentUser)
                 .orElseThrow(() -> new ResourceNotFoundException("Message not found with id: " + chatMessage.getId()));
 
         if (!message.getSender().equals(currentUser)) {
@@ -224,16 +296,22 @@ public class MessageService {
         Long roomId = message.getChatRoom().getId();
 
         messageRepository.delete(message);
+        if (message.getRepliedToId() != null) {
+            messageRepository.adjustReplyCount(message.getRepliedToId(), -1);
+        }
+        messageRepository.detachReplies(message.getId());
 
         chatMessage.setType(ChatMessage.MessageType.DELETE);
         chatMessage.setRoomId(roomId);
 
         String topic = "room:" + roomId;
         broadcastService.broadcast(topic, "new_event", chatMessage);
+
+        eventPublisher.publishEvent(new MessageDeletedEvent(roomId, message.getId()));
     }
 
     public void togglePinMessage(Long messageId, User currentUser) {
-        Message message = messageRepository.findById(messageId)
+        Message message = findMessage(null, messageId, currentUser)
                 .orElseThrow(() -> new ResourceNotFoundException("Message not found: " + messageId));
 
         ChatRoom chatRoom = message.getChatRoom();
@@ -252,32 +330,4 @@ public class MessageService {
         String topic = "room:" + chatRoom.getId();
         broadcastService.broadcast(topic, "new_event", broadcastMessage);
     }
-
-    public void markMessagesAsSeen(User user, Long roomId, Long lastMessageId) {
-        Set<Long> alreadySeenMessageIds = readReceiptRepository.findMessageIdsSeenByUserInRoom(roomId, user.getId());
-        List<Message> messagesToConsider = messageRepository.findByIdLessThanEqualAndChatRoomId(lastMessageId, roomId);
-
-        List<MessageReadReceipt> newReceipts = new ArrayList<>();
-        for (Message message : messagesToConsider) {
-            if (!alreadySeenMessageIds.contains(message.getId())) {
-                MessageReadReceipt receipt = new MessageReadReceipt();
-                receipt.setUser(user);
-                receipt.setMessage(message);
-                newReceipts.add(receipt);
-            }
-        }
-
-        if (!newReceipts.isEmpty()) {
-            readReceiptRepository.saveAll(newReceipts);
-
-            ChatMessage broadcastMessage = new ChatMessage();
-            broadcastMessage.setType(ChatMessage.MessageType.MESSAGES_SEEN);
-            broadcastMessage.setRoomId(roomId);
-            broadcastMessage.setSenderUsername(user.getUsername());
-            broadcastMessage.setLastMessageId(lastMessageId);
-
-            String topic = "room:" + roomId;
-            broadcastService.broadcast(topic, "new_event", broadcastMessage);
-        }
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,268 @@
+package xyz.piod.keeper.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import xyz.piod.keeper.dto.NotificationDigest;
+import xyz.piod.keeper.dto.NotificationPayload;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class NotificationDigestService {
+
+    // per-user keys live in their own namespaces so no username can land on a shared key
+    private static final String DIGEST_KEY_PREFIX = "notification:digest:user:";
+    private static final String ROOMS_KEY_PREFIX = "notification:digest:rooms:";
+    private static final String DUE_KEY = "notification:digest-due";
+
+    // claims due recipients by pushing their due time out to a lease; only one node gets each claim
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> CLAIM_DUE = new DefaultRedisScript<>("""
+            local claimed = {}
+            for i = 3, #ARGV do
+                local score = redis.call('ZSCORE', KEYS[1], ARGV[i])
+                if score and tonumber(score) <= tonumber(ARGV[1]) then
+                    redis.call('ZADD', KEYS[1], ARGV[2], ARGV[i])
+                    claimed[#claimed + 1] = 1
+                else
+                    claimed[#claimed + 1] = 0
+                end
+            end
+            return claimed
+            """, List.class);
+
+    // after a confirmed send, removes what was sent; payloads that arrived meanwhile stay and are rescheduled
+    private static final RedisScript<Long> COMPLETE_DIGEST = new DefaultRedisScript<>("""
+            local count = tonumber(redis.call('HGET', KEYS[1], 'count') or '0')
+            local sent = tonumber(ARGV[1])
+            if count <= sent then
+                redis.call('DEL', KEYS[1], KEYS[2])
+                redis.call('ZREM', KEYS[3], ARGV[2])
+                return 0
+            end
+            redis.call('HINCRBY', KEYS[1], 'count', -sent)
+            redis.call('ZADD', KEYS[3], ARGV[3], ARGV[2])
+            return count - sent
+            """, Long.class);
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final NotificationPublisher notificationPublisher;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${keeper.notifications.digest.enabled}")
+    private boolean enabled;
+
+    @Value("${keeper.notifications.digest.window}")
+    private long windowMillis;
+
+    @Value("${keeper.notifications.digest.tick}")
+    private long tickMillis;
+
+    @Value("${keeper.notifications.digest.wheel-size}")
+    private int wheelSize;
+
+    @Value("${keeper.notifications.digest.snippet-length}")
+    private int snippetLength;
+
+    @Value("${keeper.notifications.digest.sweep-batch-size}")
+    private int sweepBatchSize;
+
+    @Value("${keeper.notifications.digest.claim-timeout}")
+    private long claimTimeoutMillis;
+
+    private TimingWheel<String> timingWheel;
+    private Counter payloadsCounter;
+    private Counter digestsCounter;
+
+    @PostConstruct
+    void init() {
+        timingWheel = new TimingWheel<>(wheelSize, tickMillis, System.currentTimeMillis());
+        payloadsCounter = Counter.builder("keeper.notifications.digest")
+                .tag("unit", "payloads")
+                .register(meterRegistry);
+        digestsCounter = Counter.builder("keeper.notifications.digest")
+                .tag("unit", "digests")
+                .register(meterRegistry);
+        Gauge.builder("keeper.notifications.digest.pending", timingWheel, TimingWheel::size)
+                .description("Digest timers scheduled on this node")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void enqueue(List<NotificationPayload> payloads) {
+        if (payloads.isEmpty()) {
+            return;
+        }
+
+        long dueAt = System.currentTimeMillis() + windowMillis;
+        Duration keyTtl = Duration.ofMillis(windowMillis * 10);
+
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                for (NotificationPayload payload : payloads) {
+                    String digestKey = DIGEST_KEY_PREFIX + payload.getRecipientUsername();
+                    String roomsKey = ROOMS_KEY_PREFIX + payload.getRecipientUsername();
+                    operations.opsForHash().increment(digestKey, "count", 1);
+                    operations.opsForHash().putAll(digestKey, Map.of(
+                            "lastSender", payload.getSenderUsername(),
+                            "lastSnippet", snippet(payload.getMessageContent()),
+                            "fcmToken", payload.getFcmToken()));
+                    operations.opsForSet().add(roomsKey, String.valueOf(payload.getRoomId()));
+                    operations.expire(digestKey, keyTtl);
+                    operations.expire(roomsKey, keyTtl);
+                }
+                return null;
+            }
+        });
+
+        List<Object> scheduled = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                for (NotificationPayload payload : payloads) {
+                    operations.opsForZSet().addIfAbsent(DUE_KEY, payload.getRecipientUsername(), dueAt);
+                }
+                return null;
+            }
+        });
+
+        for (int i = 0; i < payloads.size(); i++) {
+            if (Boolean.TRUE.equals(scheduled.get(i))) {
+                timingWheel.schedule(payloads.get(i).getRecipientUsername(), dueAt);
+            }
+        }
+        payloadsCounter.increment(payloads.size());
+    }
+
+    @Scheduled(fixedRateString = "${keeper.notifications.digest.tick}")
+    public void advanceWheel() {
+        if (!enabled) {
+            return;
+        }
+        List<String> due = timingWheel.advance(System.currentTimeMillis());
+        if (!due.isEmpty()) {
+            emitDigests(due);
+        }
+    }
+
+    @Scheduled(fixedRateString = "${keeper.notifications.digest.sweep-interval}")
+    public void sweepOverdue() {
+        if (!enabled) {
+            return;
+        }
+        Set<String> overdue = redisTemplate.opsForZSet()
+                .rangeByScore(DUE_KEY, 0, System.currentTimeMillis() - tickMillis, 0, sweepBatchSize);
+        if (overdue != null && !overdue.isEmpty()) {
+            log.info("Recovering {} overdue notification digests", overdue.size());
+            emitDigests(overdue);
+        }
+    }
+
+    void emitDigests(Collection<String> recipients) {
+        List<String> candidates = List.copyOf(recipients);
+        long now = System.currentTimeMillis();
+        List<String> args = new ArrayList<>(candidates.size() + 2);
+        args.add(String.valueOf(now));
+        args.add(String.valueOf(now + claimTimeoutMillis));
+        args.addAll(candidates);
+        List<?> claimed = redisTemplate.execute(CLAIM_DUE, List.of(DUE_KEY), args.toArray());
+
+        List<NotificationDigest> digests = new ArrayList<>();
+        for (int i = 0; i < candidates.size(); i++) {
+            if (claimed != null && claimed.get(i) instanceof Long flag && flag == 1) {
+                NotificationDigest digest = readDigest(candidates.get(i));
+                if (digest != null) {
+                    digests.add(digest);
+                } else {
+                    redisTemplate.opsForZSet().remove(DUE_KEY, candidates.get(i));
+                }
+            }
+        }
+        if (digests.isEmpty()) {
+            return;
+        }
+
+        // on failure the claims simply lapse and the sweep retries the same digests
+        if (!notificationPublisher.publishConfirmed(NotificationPublisher.DIGEST_ROUTING_KEY, digests)) {
+            log.warn("Failed to publish {} notification digests, retrying in {} ms", digests.size(), claimTimeoutMillis);
+            return;
+        }
+        digestsCounter.increment(digests.size());
+
+        long nextDueAt = System.currentTimeMillis() + windowMillis;
+        for (NotificationDigest digest : digests) {
+            String digestKey = DIGEST_KEY_PREFIX + digest.getRecipientUsername();
+            String roomsKey = ROOMS_KEY_PREFIX + digest.getRecipientUsername();
+            Long remaining = redisTemplate.execute(COMPLETE_DIGEST,
+                    List.of(digestKey, roomsKey, DUE_KEY),
+                    String.valueOf(digest.getMessageCount()), digest.getRecipientUsername(), String.valueOf(nextDueAt));
+            if (remaining != null && remaining > 0) {
+                timingWheel.schedule(digest.getRecipientUsername(), nextDueAt);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private NotificationDigest readDigest(String recipient) {
+        String digestKey = DIGEST_KEY_PREFIX + recipient;
+        String roomsKey = ROOMS_KEY_PREFIX + recipient;
+
+        List<Object> results = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                operations.opsForHash().entries(digestKey);
+                operations.opsForSet().members(roomsKey);
+                return null;
+            }
+        });
+        if (results == null || results.size() < 2) {
+            return null;
+        }
+
+        Map<Object, Object> fields = (Map<Object, Object>) results.get(0);
+        Set<String> rooms = (Set<String>) results.get(1);
+        if (fields == null || fields.get("count") == null) {
+            return null;
+        }
+
+        return new NotificationDigest(
+                recipient,
+                (String) fields.get("fcmToken"),
+                Long.parseLong((String) fields.get("count")),
+                (String) fields.get("lastSender"),
+                (String) fields.get("lastSnippet"),
+                rooms == null ? List.of() : rooms.stream().map(Long::valueOf).sorted().toList());
+    }
+
+    private String snippet(String content) {
+        if (content == null) {
+            return "";
+        }
+        return content.length() <= snippetLength ? content : content.substring(0, snippetLength);
+    }
+}
@@ -0,0 +1,98 @@
+package xyz.piod.keeper.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import xyz.piod.keeper.dto.NotificationPayload;
+import xyz.piod.keeper.dto.NotificationRecipient;
+import xyz.piod.keeper.repository.ChatRoomParticipantRepository;
+import xyz.piod.keeper.service.presence.PresenceService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class NotificationFanoutService {
+
+    private final ChatRoomParticipantRepository participantRepository;
+    private final PresenceService presenceService;
+    private final NotificationPublisher notificationPublisher;
+    private final NotificationDigestService notificationDigestService;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${keeper.notifications.fanout.chunk-size}")
+    private int chunkSize;
+
+    private Counter publishedCounter;
+    private Counter skippedCounter;
+
+    @PostConstruct
+    void initMetrics() {
+        publishedCounter = Counter.builder("keeper.notifications.fanout")
+                .tag("outcome", "published")
+                .register(meterRegistry);
+        skippedCounter = Counter.builder("keeper.notifications.fanout")
+                .tag("outcome", "skipped")
+                .description("Recipients skipped because they are online")
+                .register(meterRegistry);
+    }
+
+    @Async
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMessagePosted(MessagePostedEvent event) {
+        Long afterId = 0L;
+        while (true) {
+            List<NotificationRecipient> recipients = participantRepository.findNotificationRecipients(
+                    event.roomId(), event.senderId(), afterId, PageRequest.of(0, chunkSize));
+            if (recipients.isEmpty()) {
+                return;
+            }
+
+            fanOut(event, recipients);
+
+            if (recipients.size() < chunkSize) {
+                return;
+            }
+            afterId = recipients.get(recipients.size() - 1).id();
+        }
+    }
+
+    private void fanOut(MessagePostedEvent event, List<NotificationRecipient> recipients) {
+        Set<String> online = presenceService.onlineAmong(
+                recipients.stream().map(NotificationRecipient::username).toList());
+
+        List<NotificationRecipient> offline = recipients.stream()
+                .filter(recipient -> !online.contains(recipient.username()))
+                .toList();
+        if (offline.isEmpty()) {
+            skippedCounter.increment(recipients.size());
+            return;
+        }
+
+        List<NotificationPayload> payloads = new ArrayList<>(offline.size());
+        for (NotificationRecipient recipient : offline) {
+            payloads.add(new NotificationPayload(recipient.username(), event.senderUsername(),
+                    event.content(), event.roomId(), recipient.fcmToken()));
+        }
+        skippedCounter.increment(recipients.size() - payloads.size());
+
+        if (notificationDigestService.isEnabled()) {
+            notificationDigestService.enqueue(payloads);
+            return;
+        }
+        if (notificationPublisher.publishConfirmed(NotificationPublisher.NEW_MESSAGE_ROUTING_KEY, payloads)) {
+            publishedCounter.increment(payloads.size());
+            log.info("published {} notification events for offline users in room {}", payloads.size(), event.roomId());
+        }
+    }
+}
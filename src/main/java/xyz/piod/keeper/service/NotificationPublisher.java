@@ -0,0 +1,41 @@
+package xyz.piod.keeper.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import xyz.piod.keeper.config.RabbitMQConfig;
+
+import java.util.List;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class NotificationPublisher {
+
+    public static final String NEW_MESSAGE_ROUTING_KEY = "event.notification.new_message";
+    public static final String DIGEST_ROUTING_KEY = "event.notification.digest";
+
+    private final RabbitTemplate rabbitTemplate;
+
+    @Value("${keeper.notifications.fanout.confirm-timeout}")
+    private long confirmTimeoutMillis;
+
+    public boolean publishConfirmed(String routingKey, List<?> payloads) {
+        if (payloads.isEmpty()) {
+            return true;
+        }
+        try {
+            rabbitTemplate.invoke(operations -> {
+                payloads.forEach(payload -> operations.convertAndSend(RabbitMQConfig.KEEPER_EXCHANGE, routingKey, payload));
+                operations.waitForConfirmsOrDie(confirmTimeoutMillis);
+                return null;
+            });
+            return true;
+        } catch (Exception e) {
+            log.error("Failed to publish {} '{}' notification events: {}", payloads.size(), routingKey, e.getMessage(), e);
+            return false;
+        }
+    }
+}
@@ -12,6 +12,9 @@ import xyz.piod.keeper.exception.ResourceNotFoundException;
 import xyz.piod.keeper.mapper.MessageMapper;
 import xyz.piod.keeper.repository.MessageRepository;
 import xyz.piod.keeper.repository.ReactionRepository;
+import xyz.piod.keeper.service.archive.MessageArchiveService;
+
+import java.util.Optional;
 
 @Service
 @RequiredArgsConstructor
@@ -20,6 +23,7 @@ public class ReactionService {
 
     private final ReactionRepository reactionRepository;
     private final MessageRepository messageRepository;
+    private final MessageArchiveService archiveService;
     private final BroadcastService broadcastService;
     private final MessageMapper messageMapper;
     private final UserService userService;
@@ -28,6 +32,7 @@ public class ReactionService {
     public void toggleReaction(Long messageId, String username, String emoji) {
         User user = userService.findUserByUsername(username);
         Message message = messageRepository.findById(messageId)
+                .or(() -> archiveService.rehydrate(null, messageId, user.getId()) ? messageRepository.findById(messageId) : Optional.empty())
                 .orElseThrow(() -> new ResourceNotFoundException("Message not found: " + messageId));
 
         reactionRepository.findByUserAndMessageAndEmoji(user, message, emoji)
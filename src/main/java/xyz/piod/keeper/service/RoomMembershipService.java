@@ -0,0 +1,181 @@
+package xyz.piod.keeper.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import xyz.piod.keeper.dto.ChatMessage;
+import xyz.piod.keeper.dto.ChatRoomResponse;
+import xyz.piod.keeper.dto.UserResponse;
+import xyz.piod.keeper.entity.ChatRoom;
+import xyz.piod.keeper.entity.User;
+import xyz.piod.keeper.mapper.ChatRoomMapper;
+import xyz.piod.keeper.mapper.UserMapper;
+import xyz.piod.keeper.repository.ChatRoomParticipantRepository;
+import xyz.piod.keeper.repository.ChatRoomParticipantRepository.MemberSample;
+import xyz.piod.keeper.repository.ChatRoomRepository;
+import xyz.piod.keeper.repository.UserRepository;
+import xyz.piod.keeper.service.membership.RoomMembershipIndex;
+import xyz.piod.keeper.service.transport.BroadcastEvent;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class RoomMembershipService {
+
+    public static final String REVOCATIONS_TOPIC = "gateway:revocations";
+    public static final String REVOCATION_EVENT = "membership_revoked";
+
+    private final ChatRoomParticipantRepository participantRepository;
+    private final ChatRoomRepository chatRoomRepository;
+    private final UserRepository userRepository;
+    private final ChatRoomMapper chatRoomMapper;
+    private final UserMapper userMapper;
+    private final BroadcastService broadcastService;
+    private final RoomMembershipIndex membershipIndex;
+
+    @Value("${keeper.rooms.member-sample-size}")
+    private int memberSampleSize;
+
+    @Value("${keeper.rooms.member-page-max}")
+    private int memberPageMax;
+
+    @Transactional
+    public boolean addMember(Long roomId, Long userId) {
+        if (participantRepository.insertIfAbsent(roomId, userId) == 0) {
+            return false;
+        }
+        chatRoomRepository.adjustMemberCount(roomId, 1);
+        membershipIndex.added(roomId, userId);
+        return true;
+    }
+
+    @Transactional
+    public boolean removeMember(Long roomId, Long userId) {
+        if (participantRepository.deleteMember(roomId, userId) == 0) {
+            return false;
+        }
+        chatRoomRepository.adjustMemberCount(roomId, -1);
+        membershipIndex.removed(roomId, userId);
+        return true;
+    }
+
+    @Transactional
+    public void removeAllMembers(Long roomId) {
+        int removed = participantRepository.deleteAllByRoomId(roomId);
+        membershipIndex.roomDropped(roomId);
+        log.debug("Removed {} memberships of room #{}", removed, roomId);
+    }
+
+    public boolean isMember(Long roomId, Long userId) {
+        return membershipIndex.isMember(roomId, userId);
+    }
+
+    /**
+     * Answers from the membership index while it is ready, so a member added a
+     * moment ago may be missed; falls back to {@link #isMember} otherwise.
+     */
+    public boolean containsMember(Long roomId, Long userId) {
+        if (membershipIndex.isReady()) {
+            return membershipIndex.containsMember(roomId, userId);
+        }
+        return isMember(roomId, userId);
+    }
+
+    /**
+     * Bit {@code i} of the result is set when the user may access {@code roomIds.get(i)}.
+     */
+    public BitSet authorize(Long userId, List<Long> roomIds) {
+        Set<Long> memberOf = new HashSet<>();
+        List<Long> misses = new ArrayList<>();
+        for (Long roomId : new LinkedHashSet<>(roomIds)) {
+            if (membershipIndex.containsMember(roomId, userId)) {
+                memberOf.add(roomId);
+            } else {
+                misses.add(roomId);
+            }
+        }
+        if (!misses.isEmpty()) {
+            memberOf.addAll(participantRepository.findMemberRoomIds(userId, misses));
+        }
+
+        BitSet allowed = new BitSet(roomIds.size());
+        for (int i = 0; i < roomIds.size(); i++) {
+            if (memberOf.contains(roomIds.get(i))) {
+                allowed.set(i);
+            }
+        }
+        return allowed;
+    }
+
+    public void publishRevocation(Long roomId, User user) {
+        ChatMessage revocation = new ChatMessage();
+        revocation.setType(ChatMessage.MessageType.MEMBERSHIP_REVOKED);
+        revocation.setRoomId(roomId);
+        if (user != null) {
+            revocation.setUserActionParticipant(userMapper.toUserResponse(user));
+        }
+
+        List<BroadcastEvent> events = new ArrayList<>();
+        events.add(new BroadcastEvent(REVOCATIONS_TOPIC, REVOCATION_EVENT, revocation));
+        if (user != null) {
+            events.add(new BroadcastEvent("user:" + user.getUsername(), "new_event", revocation));
+        }
+        broadcastService.broadcastAll(events);
+    }
+
+    public Page<UserResponse> getMembers(Long roomId, String query, Pageable pageable) {
+        String prefix = query == null ? "" : escapeLike(query.strip());
+        Pageable page = PageRequest.of(pageable.getPageNumber(), Math.min(pageable.getPageSize(), memberPageMax));
+        return participantRepository.findMembers(roomId, prefix, page).map(userMapper::toUserResponse);
+    }
+
+    static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    public ChatRoomResponse toResponse(ChatRoom room) {
+        return toResponses(List.of(room)).get(0);
+    }
+
+    public List<ChatRoomResponse> toResponses(List<ChatRoom> rooms) {
+        if (rooms.isEmpty()) {
+            return List.of();
+        }
+
+        List<MemberSample> samples = participantRepository.findMemberSamples(
+                rooms.stream().map(ChatRoom::getId).toList(), memberSampleSize);
+        Map<Long, User> users = userRepository.findAllById(samples.stream().map(MemberSample::getUserId).distinct().toList())
+                .stream().collect(Collectors.toMap(User::getId, Function.identity()));
+
+        Map<Long, Set<UserResponse>> sampleByRoom = new HashMap<>();
+        for (MemberSample sample : samples) {
+            User user = users.get(sample.getUserId());
+            if (user != null) {
+                sampleByRoom.computeIfAbsent(sample.getChatRoomId(), id -> new LinkedHashSet<>())
+                        .add(userMapper.toUserResponse(user));
+            }
+        }
+
+        return rooms.stream().map(room -> {
+            ChatRoomResponse response = chatRoomMapper.toChatRoomResponse(room);
+            response.setParticipants(sampleByRoom.getOrDefault(room.getId(), Set.of()));
+            return response;
+        }).toList();
+    }
+}
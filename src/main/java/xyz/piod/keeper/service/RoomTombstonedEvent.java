@@ -0,0 +1,3 @@
+package xyz.piod.keeper.service;
+
+public record RoomTombstonedEvent(Long roomId) {}
@@ -0,0 +1,189 @@
+package xyz.piod.keeper.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import xyz.piod.keeper.dto.ChatMessage;
+import xyz.piod.keeper.entity.User;
+import xyz.piod.keeper.service.transport.BroadcastEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class SeenReceiptCoalescer {
+
+    // only messages after the member's previous last_seen_message_id are written, so a flush never rescans history
+    private static final String INSERT_RECEIPTS_SQL = """
+            WITH args (room_id, user_id, last_id) AS (VALUES (?::bigint, ?::bigint, ?::bigint)),
+            previous AS (
+                SELECT COALESCE(p.last_seen_message_id, 0) AS last_seen
+                FROM chatroom_participants p, args
+                WHERE p.chatroom_id = args.room_id AND p.user_id = args.user_id
+                FOR UPDATE OF p
+            ),
+            advanced AS (
+                UPDATE chatroom_participants p SET last_seen_message_id = args.last_id
+                FROM args, previous
+                WHERE p.chatroom_id = args.room_id AND p.user_id = args.user_id AND previous.last_seen < args.last_id
+            )
+            INSERT INTO message_read_receipts (user_id, message_id, read_at)
+            SELECT args.user_id, m.id, now()
+            FROM messages m, args, previous
+            WHERE m.chatroom_id = args.room_id AND m.id > previous.last_seen AND m.id <= args.last_id
+            ON CONFLICT (user_id, message_id) DO NOTHING
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final BroadcastService broadcastService;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<SeenKey, PendingSeen> pending = new ConcurrentHashMap<>();
+    private final AtomicLong commandsReceived = new AtomicLong();
+    private final AtomicLong writesFlushed = new AtomicLong();
+
+    @Value("${keeper.seen.max-flush-attempts}")
+    private int maxFlushAttempts;
+
+    private Counter receivedCounter;
+    private Counter flushedCounter;
+    private Counter retriedCounter;
+    private Counter droppedCounter;
+
+    @PostConstruct
+    void initMetrics() {
+        receivedCounter = Counter.builder("keeper.seen.coalescer")
+                .tag("stage", "received")
+                .register(meterRegistry);
+        flushedCounter = Counter.builder("keeper.seen.coalescer")
+                .tag("stage", "flushed")
+                .register(meterRegistry);
+        retriedCounter = Counter.builder("keeper.seen.coalescer")
+                .tag("stage", "retried")
+                .register(meterRegistry);
+        droppedCounter = Counter.builder("keeper.seen.coalescer")
+                .tag("stage", "dropped")
+                .register(meterRegistry);
+        Gauge.builder("keeper.seen.coalescer.ratio", this, SeenReceiptCoalescer::coalescingRatio)
+                .description("messages_seen commands received per (user, room) write flushed")
+                .register(meterRegistry);
+    }
+
+    public void offer(User user, Long roomId, Long lastMessageId) {
+        if (roomId == null || lastMessageId == null) {
+            return;
+        }
+        pending.merge(new SeenKey(user.getId(), roomId), new PendingSeen(user.getUsername(), lastMessageId, 0),
+                SeenReceiptCoalescer::newest);
+        commandsReceived.incrementAndGet();
+        receivedCounter.increment();
+    }
+
+    @PreDestroy
+    void flushOnShutdown() {
+        flush();
+    }
+
+    @Scheduled(fixedRateString = "${keeper.seen.flush-interval}")
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        List<Map.Entry<SeenKey, PendingSeen>> batch = new ArrayList<>();
+        for (SeenKey key : List.copyOf(pending.keySet())) {
+            PendingSeen value = pending.remove(key);
+            if (value != null) {
+                batch.add(Map.entry(key, value));
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        int[] inserted;
+        try {
+            inserted = jdbcTemplate.batchUpdate(INSERT_RECEIPTS_SQL, batch, batch.size(), (ps, entry) -> {
+                ps.setLong(1, entry.getKey().userId());
+                ps.setLong(2, entry.getKey().roomId());
+                ps.setLong(3, entry.getValue().lastMessageId());
+            })[0];
+        } catch (Exception e) {
+            log.error("Failed to flush {} seen receipts, keeping them for the next flush: {}",
+                    batch.size(), e.getMessage(), e);
+            requeue(batch);
+            return;
+        }
+        writesFlushed.addAndGet(batch.size());
+        flushedCounter.increment(batch.size());
+
+        List<BroadcastEvent> events = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            if (inserted[i] == 0) {
+                continue;
+            }
+            Map.Entry<SeenKey, PendingSeen> entry = batch.get(i);
+            Long roomId = entry.getKey().roomId();
+            events.add(new BroadcastEvent("room:" + roomId, "new_event",
+                    seenEvent(roomId, entry.getValue().username(), entry.getValue().lastMessageId())));
+        }
+        if (!events.isEmpty()) {
+            broadcastService.broadcastAll(events);
+        }
+    }
+
+    // a receipt offered since this batch was taken wins if it is newer; otherwise the batch entry goes back as is
+    private void requeue(List<Map.Entry<SeenKey, PendingSeen>> batch) {
+        for (Map.Entry<SeenKey, PendingSeen> entry : batch) {
+            PendingSeen failed = entry.getValue();
+            if (failed.attempts() + 1 >= maxFlushAttempts) {
+                droppedCounter.increment();
+                log.warn("Dropping seen receipt of user #{} in room #{} after {} failed flushes",
+                        entry.getKey().userId(), entry.getKey().roomId(), failed.attempts() + 1);
+                continue;
+            }
+            pending.merge(entry.getKey(), failed.retried(), SeenReceiptCoalescer::newest);
+            retriedCounter.increment();
+        }
+    }
+
+    private static PendingSeen newest(PendingSeen previous, PendingSeen current) {
+        return previous.lastMessageId() >= current.lastMessageId() ? previous : current;
+    }
+
+    private static ChatMessage seenEvent(Long roomId, String username, Long lastMessageId) {
+        ChatMessage message = new ChatMessage();
+        message.setType(ChatMessage.MessageType.MESSAGES_SEEN);
+        message.setRoomId(roomId);
+        message.setSenderUsername(username);
+        message.setLastMessageId(lastMessageId);
+        return message;
+    }
+
+    private double coalescingRatio() {
+        long flushed = writesFlushed.get();
+        return flushed == 0 ? 0 : (double) commandsReceived.get() / flushed;
+    }
+
+    private record SeenKey(Long userId, Long roomId) {}
+
+    private record PendingSeen(String username, Long lastMessageId, int attempts) {
+
+        PendingSeen retried() {
+            return new PendingSeen(username, lastMessageId, attempts + 1);
+        }
+    }
+}
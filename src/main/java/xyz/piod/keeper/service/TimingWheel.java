@@ -0,0 +1,60 @@
+package xyz.piod.keeper.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Hashed timing wheel: scheduling and expiry are O(1) per entry regardless of
+ * how many timers are pending. Deadlines further out than one revolution stay
+ * in their slot until the wheel has turned enough times.
+ */
+public class TimingWheel<K> {
+
+    private final long tickMillis;
+    private final ArrayDeque<Timer<K>>[] slots;
+    private final long origin;
+    private long currentTick;
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    public TimingWheel(int wheelSize, long tickMillis, long now) {
+        this.tickMillis = tickMillis;
+        this.slots = new ArrayDeque[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            slots[i] = new ArrayDeque<>();
+        }
+        this.origin = now;
+    }
+
+    public synchronized void schedule(K key, long dueAt) {
+        long deadlineTick = Math.max(currentTick + 1, Math.ceilDiv(dueAt - origin, tickMillis));
+        slots[(int) (deadlineTick % slots.length)].add(new Timer<>(key, deadlineTick));
+        size++;
+    }
+
+    public synchronized List<K> advance(long now) {
+        List<K> expired = new ArrayList<>();
+        long targetTick = (now - origin) / tickMillis;
+        while (currentTick < targetTick) {
+            currentTick++;
+            Iterator<Timer<K>> iterator = slots[(int) (currentTick % slots.length)].iterator();
+            while (iterator.hasNext()) {
+                Timer<K> timer = iterator.next();
+                if (timer.deadlineTick() <= currentTick) {
+                    iterator.remove();
+                    expired.add(timer.key());
+                    size--;
+                }
+            }
+        }
+        return expired;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private record Timer<K>(K key, long deadlineTick) {}
+}
@@ -0,0 +1,137 @@
+package xyz.piod.keeper.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TopicSubscriptionRegistry implements MessageListener {
+
+    public static final String SUBSCRIPTIONS_REDIS_KEY = "subscriptions:topics";
+    // new subscriptions are announced so other nodes stop suppressing them before their next refresh
+    public static final String SUBSCRIPTIONS_CHANNEL = "subscriptions:topics:added";
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+
+    @Value("${keeper.broadcast.suppression.enabled}")
+    private boolean suppressionEnabled;
+
+    @Value("${keeper.broadcast.suppression.lease-ttl}")
+    private long leaseTtlMillis;
+
+    // null means "no snapshot yet" and fails open so nothing is dropped before the first refresh
+    private volatile Set<String> liveTopics;
+
+    // topics added since a refresh may have started, kept so the refresh cannot drop them
+    private final Map<String, Long> recentlyAdded = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    void listen() {
+        if (suppressionEnabled) {
+            listenerContainer.addMessageListener(this, new ChannelTopic(SUBSCRIPTIONS_CHANNEL));
+        }
+    }
+
+    public boolean isSuppressionEnabled() {
+        return suppressionEnabled;
+    }
+
+    public boolean hasSubscribers(String topic) {
+        if (!suppressionEnabled) {
+            return true;
+        }
+        Set<String> snapshot = liveTopics;
+        return snapshot == null || snapshot.contains(topic);
+    }
+
+    public void renewLeases(Collection<String> topics) {
+        if (topics.isEmpty()) {
+            return;
+        }
+        double expiresAt = System.currentTimeMillis() + leaseTtlMillis;
+        Set<ZSetOperations.TypedTuple<String>> leases = topics.stream()
+                .map(topic -> (ZSetOperations.TypedTuple<String>) new DefaultTypedTuple<>(topic, expiresAt))
+                .collect(Collectors.toSet());
+        redisTemplate.opsForZSet().add(SUBSCRIPTIONS_REDIS_KEY, leases);
+    }
+
+    /**
+     * Leases a newly subscribed topic and makes it live at once, here and,
+     * through {@link #SUBSCRIPTIONS_CHANNEL}, on every other node.
+     */
+    public void addSubscription(String topic) {
+        renewLeases(Set.of(topic));
+        if (!suppressionEnabled || !markLive(topic)) {
+            return;
+        }
+        try {
+            redisTemplate.convertAndSend(SUBSCRIPTIONS_CHANNEL, topic);
+        } catch (Exception e) {
+            log.warn("Could not announce subscription to '{}', other nodes pick it up on their next refresh: {}",
+                    topic, e.getMessage());
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        markLive(new String(message.getBody(), StandardCharsets.UTF_8));
+    }
+
+    private synchronized boolean markLive(String topic) {
+        recentlyAdded.put(topic, System.currentTimeMillis());
+        Set<String> snapshot = liveTopics;
+        if (snapshot == null) {
+            return true;
+        }
+        if (snapshot.contains(topic)) {
+            return false;
+        }
+        Set<String> updated = new HashSet<>(snapshot);
+        updated.add(topic);
+        liveTopics = Set.copyOf(updated);
+        return true;
+    }
+
+    @Scheduled(fixedDelayString = "${keeper.broadcast.suppression.refresh-interval}")
+    public void refreshSnapshot() {
+        if (!suppressionEnabled) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        try {
+            redisTemplate.opsForZSet().removeRangeByScore(SUBSCRIPTIONS_REDIS_KEY, Double.NEGATIVE_INFINITY, now);
+            Set<String> topics = redisTemplate.opsForZSet().rangeByScore(SUBSCRIPTIONS_REDIS_KEY, now, Double.POSITIVE_INFINITY);
+            synchronized (this) {
+                // adds seen before this refresh started were leased before the range read
+                recentlyAdded.values().removeIf(addedAt -> addedAt < now);
+                Set<String> live = topics == null ? new HashSet<>() : new HashSet<>(topics);
+                live.addAll(recentlyAdded.keySet());
+                liveTopics = Set.copyOf(live);
+            }
+        } catch (Exception e) {
+            log.warn("Could not refresh topic subscription snapshot, publishing to all topics: {}", e.getMessage());
+            liveTopics = null;
+        }
+    }
+}
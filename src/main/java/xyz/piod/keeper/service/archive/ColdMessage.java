@@ -0,0 +1,27 @@
+package xyz.piod.keeper.service.archive;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public record ColdMessage(
+        Long id,
+        Long senderId,
+        String content,
+        Long repliedToId,
+        String replySenderUsername,
+        String replySnippet,
+        int replyCount,
+        boolean edited,
+        boolean pinned,
+        String linkPreviewUrl,
+        String linkPreviewTitle,
+        String linkPreviewDescription,
+        String linkPreviewImage,
+        LocalDateTime timestamp,
+        List<Reaction> reactions,
+        List<Receipt> receipts
+) {
+    public record Reaction(Long userId, String emoji, LocalDateTime createdAt) {}
+
+    public record Receipt(Long userId, LocalDateTime readAt) {}
+}
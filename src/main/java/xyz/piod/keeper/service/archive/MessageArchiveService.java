@@ -0,0 +1,878 @@
+package xyz.piod.keeper.service.archive;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import xyz.piod.keeper.dto.MessageResponse;
+import xyz.piod.keeper.dto.ReactionResponse;
+import xyz.piod.keeper.dto.RepliedMessageInfo;
+import xyz.piod.keeper.entity.ArchivedSegment;
+import xyz.piod.keeper.entity.Message;
+import xyz.piod.keeper.entity.User;
+import xyz.piod.keeper.exception.UnauthorizedOperationException;
+import xyz.piod.keeper.mapper.MessageMapper;
+import xyz.piod.keeper.repository.ArchivedSegmentRepository;
+import xyz.piod.keeper.repository.MessageRepository;
+import xyz.piod.keeper.repository.UserRepository;
+import xyz.piod.keeper.service.RoomMembershipService;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class MessageArchiveService {
+
+    private static final String ROOMS_SQL =
+            "SELECT id FROM chat_rooms WHERE deleted_at IS NULL AND id > ? ORDER BY id LIMIT ?";
+    // Only ids above the room's last segment and below its oldest pinned or
+    // recent message are claimed, so cold ids never interleave with hot ones.
+    private static final String CLAIM_SQL = """
+            SELECT id FROM messages
+            WHERE chatroom_id = ? AND timestamp < ?
+              AND id > COALESCE((SELECT max(s.last_message_id) FROM archived_segments s WHERE s.chatroom_id = ?), 0)
+              AND id < COALESCE(LEAST(
+                      (SELECT min(p.id) FROM messages p WHERE p.chatroom_id = ? AND p.is_pinned),
+                      (SELECT min(h.id) FROM messages h WHERE h.chatroom_id = ? AND h.timestamp >= ?)), ?)
+            ORDER BY id LIMIT ? FOR UPDATE
+            """;
+    private static final String HOT_NEWER_SQL =
+            "SELECT count(*) FROM (SELECT 1 FROM messages WHERE chatroom_id = ? AND timestamp > ? LIMIT ?) n";
+    private static final String HOT_OLDER_SQL =
+            "SELECT id, timestamp FROM messages WHERE chatroom_id = ? AND timestamp <= ? ORDER BY timestamp DESC, id DESC LIMIT ?";
+    private static final String MESSAGES_SQL = """
+            SELECT id, sender_id, content, replied_to_id, reply_sender_username, reply_snippet, reply_count, edited,
+                   is_pinned, link_preview_url, link_preview_title, link_preview_description, link_preview_image, timestamp
+            FROM messages WHERE id = ANY(?) ORDER BY id
+            """;
+    private static final String REACTIONS_SQL =
+            "SELECT message_id, user_id, emoji, created_at FROM reactions WHERE message_id = ANY(?) ORDER BY id";
+    private static final String RECEIPTS_SQL =
+            "SELECT message_id, user_id, read_at FROM message_read_receipts WHERE message_id = ANY(?) ORDER BY id";
+    private static final String DELETE_REACTIONS_SQL = "DELETE FROM reactions WHERE message_id = ANY(?)";
+    private static final String DELETE_RECEIPTS_SQL = "DELETE FROM message_read_receipts WHERE message_id = ANY(?)";
+    private static final String DELETE_MESSAGES_SQL = "DELETE FROM messages WHERE id = ANY(?)";
+    private static final String INSERT_MESSAGE_SQL = """
+            INSERT INTO messages (id, chatroom_id, sender_id, content, replied_to_id, reply_sender_username, reply_snippet,
+                                  reply_count, edited, is_pinned, link_preview_url, link_preview_title,
+                                  link_preview_description, link_preview_image, timestamp)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+            """;
+    // hot replies to dropped cold parents; rehydrated parents in the range stay attached
+    private static final String DETACH_ARCHIVED_REPLIES_SQL = """
+            UPDATE messages r SET replied_to_id = NULL, reply_sender_username = NULL, reply_snippet = NULL
+            WHERE r.chatroom_id = ? AND r.replied_to_id BETWEEN ? AND ?
+              AND NOT EXISTS (SELECT 1 FROM messages p WHERE p.id = r.replied_to_id)
+            """;
+    private static final String INSERT_REACTION_SQL =
+            "INSERT INTO reactions (message_id, user_id, emoji, created_at) VALUES (?, ?, ?, ?)";
+    private static final String INSERT_RECEIPT_SQL =
+            "INSERT INTO message_read_receipts (user_id, message_id, read_at) VALUES (?, ?, ?) ON CONFLICT DO NOTHING";
+
+    private static final int REHYDRATE_ATTEMPTS = 3;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ArchivedSegmentRepository segmentRepository;
+    private final UserRepository userRepository;
+    private final MessageRepository messageRepository;
+    private final MessageMapper messageMapper;
+    private final MeterRegistry meterRegistry;
+    private final RoomMembershipService membershipService;
+
+    @Value("${keeper.archive.enabled}")
+    private boolean enabled;
+
+    @Value("${keeper.archive.dir}")
+    private String archiveDir;
+
+    @Value("${keeper.archive.age-days}")
+    private int ageDays;
+
+    @Value("${keeper.archive.segment-min-messages}")
+    private int segmentMinMessages;
+
+    @Value("${keeper.archive.segment-max-messages}")
+    private int segmentMaxMessages;
+
+    @Value("${keeper.archive.block-size}")
+    private int blockSize;
+
+    @Value("${keeper.archive.rooms-per-run}")
+    private int roomsPerRun;
+
+    @Value("${keeper.archive.open-segments}")
+    private int openSegmentLimit;
+
+    @Value("${keeper.archive.reply-scan-segments}")
+    private int replyScanSegments;
+
+    private final Map<String, SegmentFile> openSegments = Collections.synchronizedMap(
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, SegmentFile> eldest) {
+                    return size() > openSegmentLimit;
+                }
+            });
+
+    private long roomCursor;
+    private Counter archivedCounter;
+    private Counter rehydratedCounter;
+    private Counter corruptCounter;
+
+    @PostConstruct
+    void initMetrics() {
+        archivedCounter = Counter.builder("keeper.archive.messages")
+                .tag("op", "archived")
+                .register(meterRegistry);
+        rehydratedCounter = Counter.builder("keeper.archive.messages")
+                .tag("op", "rehydrated")
+                .register(meterRegistry);
+        corruptCounter = Counter.builder("keeper.archive.corrupt")
+                .description("Archived segments that failed a checksum or could not be read")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${keeper.archive.interval}")
+    public void archive() {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(ageDays);
+        List<Long> roomIds = jdbcTemplate.queryForList(ROOMS_SQL, Long.class, roomCursor, roomsPerRun);
+        roomCursor = roomIds.size() < roomsPerRun ? 0L : roomIds.get(roomIds.size() - 1);
+
+        for (Long roomId : roomIds) {
+            try {
+                int archived = archiveRoom(roomId, cutoff);
+                if (archived > 0) {
+                    archivedCounter.increment(archived);
+                    log.info("Archived {} messages of room #{} into a cold segment", archived, roomId);
+                }
+            } catch (Exception e) {
+                log.error("Failed to archive messages of room #{}: {}", roomId, e.getMessage(), e);
+            }
+        }
+    }
+
+    private int archiveRoom(Long roomId, LocalDateTime cutoff) {
+        Path[] written = new Path[1];
+        try {
+            Integer archived = transactionTemplate.execute(status -> {
+                List<Long> ids = jdbcTemplate.queryForList(CLAIM_SQL, Long.class, roomId, Timestamp.valueOf(cutoff),
+                        roomId, roomId, roomId, Timestamp.valueOf(cutoff), Long.MAX_VALUE, segmentMaxMessages);
+                if (ids.size() < segmentMinMessages) {
+                    return 0;
+                }
+
+                List<ColdMessage> messages = jdbcTemplate.execute((ConnectionCallback<List<ColdMessage>>) connection -> load(connection, ids));
+                String fileName = SegmentFile.name(roomId, ids.get(0), ids.get(ids.size() - 1), null);
+                Path target = Path.of(archiveDir).resolve(fileName);
+                long checksum;
+                try {
+                    checksum = SegmentFile.write(target, roomId, messages, blockSize);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                written[0] = target;
+
+                ArchivedSegment segment = new ArchivedSegment();
+                segment.setRoomId(roomId);
+                segment.setFirstMessageId(ids.get(0));
+                segment.setLastMessageId(ids.get(ids.size() - 1));
+                segment.setMessageCount(messages.size());
+                segment.setOldestAt(messages.get(0).timestamp());
+                segment.setNewestAt(messages.get(messages.size() - 1).timestamp());
+                segment.setFileName(fileName);
+                segment.setChecksum(checksum);
+                segmentRepository.save(segment);
+
+                jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+                    delete(connection, ids);
+                    return null;
+                });
+                return messages.size();
+            });
+            return archived == null ? 0 : archived;
+        } catch (RuntimeException e) {
+            if (written[0] != null) {
+                deleteQuietly(written[0]);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Completes a page of hot messages, ordered by timestamp and id descending,
+     * with the archived ones that belong to the same page. Cold ids all precede
+     * hot ones, but rehydrated or imported rows can still be older than the
+     * newest cold message; those are merged in by (timestamp, id).
+     */
+    public Page<MessageResponse> stitch(Long roomId, Page<Message> hot) {
+        if (!enabled) {
+            return hot.map(messageMapper::toMessageResponse);
+        }
+        long archivedTotal = segmentRepository.countArchivedMessages(roomId);
+        boolean danglingReplies = hot.getContent().stream()
+                .anyMatch(message -> message.getRepliedToId() != null && message.getReplySnippet() == null);
+        if (archivedTotal == 0 && !danglingReplies) {
+            return hot.map(messageMapper::toMessageResponse);
+        }
+
+        Pageable pageable = hot.getPageable();
+        List<ArchivedSegment> segments = segmentRepository.findByRoomIdOrderByLastMessageIdDesc(roomId);
+        List<Message> hotRows = hot.getContent();
+        List<ColdMessage> cold = List.of();
+        if (archivedTotal > 0) {
+            LocalDateTime coldNewest = segments.stream()
+                    .map(ArchivedSegment::getNewestAt)
+                    .max(Comparator.naturalOrder())
+                    .orElseThrow();
+            long pageEnd = pageable.getOffset() + pageable.getPageSize();
+            long hotNewer = jdbcTemplate.queryForObject(HOT_NEWER_SQL, Long.class, roomId, Timestamp.valueOf(coldNewest), pageEnd);
+            if (hotNewer < pageEnd) {
+                int newerOnPage = (int) Math.max(0, Math.min(hotRows.size(), hotNewer - pageable.getOffset()));
+                Window window = window(roomId, coldNewest, segments,
+                        Math.max(0, pageable.getOffset() - hotNewer), pageEnd - hotNewer);
+                hotRows = new ArrayList<>(hotRows.subList(0, newerOnPage));
+                if (!window.hotIds().isEmpty()) {
+                    hotRows.addAll(messageRepository.findAllWithReactionsByIdIn(window.hotIds()));
+                }
+                hotRows.sort(Comparator.comparing(Message::getTimestamp).thenComparing(Message::getId).reversed());
+                cold = window.cold();
+            }
+        }
+
+        Set<Long> replyIds = new HashSet<>();
+        hotRows.stream()
+                .filter(message -> message.getRepliedToId() != null && message.getReplySnippet() == null)
+                .forEach(message -> replyIds.add(message.getRepliedToId()));
+        cold.stream()
+                .filter(message -> message.repliedToId() != null && message.replySnippet() == null)
+                .forEach(message -> replyIds.add(message.repliedToId()));
+        Map<Long, ColdMessage> replyTargets = new HashMap<>();
+        for (Long replyId : replyIds) {
+            findIn(segments, replyId).ifPresent(target -> replyTargets.put(replyId, target));
+        }
+
+        Set<Long> userIds = new HashSet<>();
+        Stream.concat(cold.stream(), replyTargets.values().stream()).forEach(message -> {
+            userIds.add(message.senderId());
+            message.reactions().forEach(reaction -> userIds.add(reaction.userId()));
+            message.receipts().forEach(receipt -> userIds.add(receipt.userId()));
+        });
+        Map<Long, User> users = userIds.isEmpty() ? Map.of() : userRepository.findAllById(userIds).stream()
+                .collect(Collectors.toMap(User::getId, Function.identity()));
+
+        List<MessageResponse> content = new ArrayList<>(hotRows.size() + cold.size());
+        int nextHot = 0;
+        int nextCold = 0;
+        while (nextHot < hotRows.size() || nextCold < cold.size()) {
+            if (nextCold == cold.size() || (nextHot < hotRows.size()
+                    && newer(hotRows.get(nextHot).getTimestamp(), hotRows.get(nextHot).getId(), cold.get(nextCold)))) {
+                Message message = hotRows.get(nextHot++);
+                MessageResponse response = messageMapper.toMessageResponse(message);
+                if (message.getRepliedToId() != null && message.getReplySnippet() == null) {
+                    response.setRepliedTo(toRepliedMessageInfo(replyTargets.get(message.getRepliedToId()), users));
+                }
+                content.add(response);
+            } else {
+                content.add(toMessageResponse(cold.get(nextCold++), replyTargets, users));
+            }
+        }
+        return new PageImpl<>(content, pageable, hot.getTotalElements() + archivedTotal);
+    }
+
+    record HotKey(Long id, LocalDateTime timestamp) {}
+
+    private record Window(List<Long> hotIds, List<ColdMessage> cold) {}
+
+    /**
+     * Positions {@code [start, end)} of the newest-first merge of the cold
+     * messages with the hot ones no newer than {@code coldNewest}. Each hot row
+     * ahead of a cold message shifts it one position, so only
+     * {@code start - hotRows} cold messages have to be skipped.
+     */
+    private Window window(Long roomId, LocalDateTime coldNewest, List<ArchivedSegment> segments, long start, long end) {
+        List<HotKey> hotKeys = jdbcTemplate.query(HOT_OLDER_SQL,
+                (rs, rowNum) -> new HotKey(rs.getLong(1), rs.getTimestamp(2).toLocalDateTime()),
+                roomId, Timestamp.valueOf(coldNewest), end);
+        long coldFrom = Math.max(0, start - hotKeys.size());
+        List<ColdMessage> candidates = readNewestFirst(segments, coldFrom, (int) (end - coldFrom));
+
+        List<ColdMessage> cold = new ArrayList<>();
+        long firstColdInWindow = coldFrom + candidates.size();
+        int hotAhead = 0;
+        for (int i = 0; i < candidates.size(); i++) {
+            ColdMessage message = candidates.get(i);
+            while (hotAhead < hotKeys.size()
+                    && newer(hotKeys.get(hotAhead).timestamp(), hotKeys.get(hotAhead).id(), message)) {
+                hotAhead++;
+            }
+            long position = coldFrom + i + hotAhead;
+            if (position >= start && position < end) {
+                firstColdInWindow = Math.min(firstColdInWindow, coldFrom + i);
+                cold.add(message);
+            }
+        }
+
+        int hotFrom = (int) Math.min(hotKeys.size(), start - firstColdInWindow);
+        int hotTo = (int) Math.min(hotKeys.size(), hotFrom + (end - start) - cold.size());
+        List<Long> hotIds = hotKeys.subList(hotFrom, hotTo).stream().map(HotKey::id).toList();
+        return new Window(hotIds, cold);
+    }
+
+    private static boolean newer(LocalDateTime timestamp, Long id, ColdMessage than) {
+        int byTime = timestamp.compareTo(than.timestamp());
+        return byTime > 0 || (byTime == 0 && id > than.id());
+    }
+
+    public void forEachArchivedBlock(Long roomId, long afterId, ArchivedBlockHandler handler) throws IOException {
+        for (ArchivedSegment segment : segmentRepository.findByRoomIdAndLastMessageIdGreaterThanOrderByFirstMessageIdAsc(roomId, afterId)) {
+            SegmentFile file = segment(segment);
+            for (int block = 0; block < file.blockCount(); block++) {
+                if (block + 1 < file.blockCount() && file.firstId(block + 1) <= afterId + 1) {
+                    continue;
+                }
+                List<ColdMessage> messages = file.readBlock(block).stream()
+                        .filter(message -> message.id() > afterId)
+                        .toList();
+                if (!messages.isEmpty()) {
+                    handler.handle(messages);
+                }
+            }
+        }
+    }
+
+    /**
+     * Manifest ids only grow, so a change here means a segment was archived
+     * since the last call.
+     */
+    public long latestSegmentId(Long roomId) {
+        return segmentRepository.findLatestId(roomId);
+    }
+
+    public interface ArchivedBlockHandler {
+        void handle(List<ColdMessage> messages) throws IOException;
+    }
+
+    public record ArchivedMessage(Long roomId, ColdMessage message) {}
+
+    private record Located(ArchivedSegment segment, ColdMessage message) {}
+
+    /**
+     * Archived replies found by {@link #findReplies}; only replies with ids up to
+     * {@code scannedThrough} were looked for.
+     */
+    public record ReplyScan(List<MessageResponse> replies, long scannedThrough) {}
+
+    public Optional<ArchivedMessage> findArchived(Long messageId) {
+        return locate(null, messageId).map(located -> new ArchivedMessage(located.segment().getRoomId(), located.message()));
+    }
+
+    private Optional<Located> locate(Long roomId, Long messageId) {
+        for (ArchivedSegment segment : segmentRepository.findCovering(roomId, messageId)) {
+            try {
+                Optional<ColdMessage> message = segment(segment).find(messageId);
+                if (message.isPresent()) {
+                    return Optional.of(new Located(segment, message.get()));
+                }
+            } catch (IOException e) {
+                corruptCounter.increment();
+                log.error("Cannot read archived segment {} while looking up message #{}: {}",
+                        segment.getFileName(), messageId, e.getMessage());
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Archived replies to {@code parentId} with ids above {@code afterId}, in
+     * ascending id order. Replies always follow their parent, so segments that
+     * end before it are never opened, and at most reply-scan-segments are read
+     * per call; callers page on from {@link ReplyScan#scannedThrough()}.
+     */
+    public ReplyScan findReplies(Long roomId, Long parentId, long afterId, int limit) {
+        long from = Math.max(afterId, parentId);
+        List<ColdMessage> replies = new ArrayList<>();
+        List<ArchivedSegment> segments = segmentRepository.findByRoomIdAndLastMessageIdGreaterThanOrderByFirstMessageIdAsc(
+                roomId, from, PageRequest.of(0, replyScanSegments + 1));
+        long scannedThrough = Long.MAX_VALUE;
+        for (int i = 0; i < segments.size(); i++) {
+            ArchivedSegment segment = segments.get(i);
+            if (i == replyScanSegments) {
+                scannedThrough = segments.get(i - 1).getLastMessageId();
+                break;
+            }
+            try {
+                SegmentFile file = segment(segment);
+                for (int block = 0; block < file.blockCount() && replies.size() < limit; block++) {
+                    if (block + 1 < file.blockCount() && file.firstId(block + 1) <= from + 1) {
+                        continue;
+                    }
+                    file.readBlock(block).stream()
+                            .filter(message -> message.id() > from && parentId.equals(message.repliedToId()))
+                            .limit(limit - replies.size())
+                            .forEach(replies::add);
+                }
+            } catch (IOException e) {
+                corruptCounter.increment();
+                log.error("Cannot read archived segment {} while loading replies to message #{}: {}",
+                        segment.getFileName(), parentId, e.getMessage());
+            }
+            if (replies.size() >= limit) {
+                break;
+            }
+        }
+        if (replies.isEmpty()) {
+            return new ReplyScan(List.of(), scannedThrough);
+        }
+
+        Set<Long> userIds = new HashSet<>();
+        replies.forEach(message -> {
+            userIds.add(message.senderId());
+            message.reactions().forEach(reaction -> userIds.add(reaction.userId()));
+            message.receipts().forEach(receipt -> userIds.add(receipt.userId()));
+        });
+        Map<Long, User> users = userRepository.findAllById(userIds).stream()
+                .collect(Collectors.toMap(User::getId, Function.identity()));
+        return new ReplyScan(replies.stream()
+                .map(message -> toMessageResponse(message, Map.of(), users))
+                .toList(), scannedThrough);
+    }
+
+    /**
+     * Moves one archived message back into {@code messages} so it can be
+     * changed, once {@code userId} is known to be a member of its room. The
+     * rest of the segment stays cold in a rewritten file.
+     */
+    public boolean rehydrate(Long roomId, Long messageId, Long userId) {
+        for (int attempt = 0; attempt < REHYDRATE_ATTEMPTS; attempt++) {
+            Optional<Located> located = locate(roomId, messageId);
+            if (located.isEmpty()) {
+                return false;
+            }
+            ArchivedSegment segment = located.get().segment();
+            if (!membershipService.isMember(segment.getRoomId(), userId)) {
+                throw new UnauthorizedOperationException("User is not a participant of this room.");
+            }
+            try {
+                if (rehydrate(segment, located.get().message())) {
+                    return true;
+                }
+            } catch (IOException e) {
+                corruptCounter.increment();
+                log.error("Cannot rewrite archived segment {} while rehydrating message #{}: {}",
+                        segment.getFileName(), messageId, e.getMessage());
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private boolean rehydrate(ArchivedSegment segment, ColdMessage message) throws IOException {
+        List<ColdMessage> remaining = segment(segment).readAll().stream()
+                .filter(cold -> !cold.id().equals(message.id()))
+                .toList();
+        String fileName = SegmentFile.name(segment.getRoomId(), segment.getFirstMessageId(), segment.getLastMessageId(),
+                Long.toHexString(ThreadLocalRandom.current().nextLong()));
+        Path rewritten = Path.of(archiveDir).resolve(fileName);
+        long checksum = remaining.isEmpty() ? 0 : SegmentFile.write(rewritten, segment.getRoomId(), remaining, blockSize);
+
+        boolean claimed = false;
+        try {
+            claimed = Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+                int updated = remaining.isEmpty()
+                        ? segmentRepository.deleteClaim(segment.getId(), segment.getFileName())
+                        : segmentRepository.replaceFile(segment.getId(), segment.getFileName(), fileName,
+                        remaining.size(), checksum);
+                if (updated == 0) {
+                    return false;
+                }
+                insert(segment.getRoomId(), List.of(message));
+                afterCommit(() -> deleteFile(segment));
+                return true;
+            }));
+        } finally {
+            if (!claimed && !remaining.isEmpty()) {
+                deleteQuietly(rewritten);
+            }
+        }
+        if (claimed) {
+            rehydratedCounter.increment();
+            log.info("Rehydrated message #{} of room #{} from {}", message.id(), segment.getRoomId(), segment.getFileName());
+        }
+        return claimed;
+    }
+
+    private void insert(Long roomId, List<ColdMessage> messages) {
+        jdbcTemplate.batchUpdate(INSERT_MESSAGE_SQL, messages, messages.size(), (ps, message) -> {
+            ps.setLong(1, message.id());
+            ps.setLong(2, roomId);
+            ps.setLong(3, message.senderId());
+            ps.setString(4, message.content());
+            ps.setObject(5, message.repliedToId(), Types.BIGINT);
+            ps.setString(6, message.replySenderUsername());
+            ps.setString(7, message.replySnippet());
+            ps.setInt(8, message.replyCount());
+            ps.setBoolean(9, message.edited());
+            ps.setBoolean(10, message.pinned());
+            ps.setString(11, message.linkPreviewUrl());
+            ps.setString(12, message.linkPreviewTitle());
+            ps.setString(13, message.linkPreviewDescription());
+            ps.setString(14, message.linkPreviewImage());
+            ps.setTimestamp(15, Timestamp.valueOf(message.timestamp()));
+        });
+
+        List<Object[]> reactions = new ArrayList<>();
+        List<Object[]> receipts = new ArrayList<>();
+        for (ColdMessage message : messages) {
+            message.reactions().forEach(reaction -> reactions.add(new Object[]{
+                    message.id(), reaction.userId(), reaction.emoji(), Timestamp.valueOf(reaction.createdAt())}));
+            message.receipts().forEach(receipt -> receipts.add(new Object[]{
+                    receipt.userId(), message.id(), Timestamp.valueOf(receipt.readAt())}));
+        }
+        jdbcTemplate.batchUpdate(INSERT_REACTION_SQL, reactions);
+        jdbcTemplate.batchUpdate(INSERT_RECEIPT_SQL, receipts);
+    }
+
+    public void dropRoom(Long roomId) {
+        drop(segmentRepository.findByRoomIdOrderByLastMessageIdDesc(roomId));
+    }
+
+    public int dropExpired(Long roomId, LocalDateTime cutoff) {
+        List<ArchivedSegment> expired = segmentRepository.findByRoomIdAndNewestAtBefore(roomId, cutoff);
+        drop(expired);
+        return expired.stream().mapToInt(ArchivedSegment::getMessageCount).sum();
+    }
+
+    private void drop(List<ArchivedSegment> segments) {
+        if (segments.isEmpty()) {
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.batchUpdate(DETACH_ARCHIVED_REPLIES_SQL, segments.stream()
+                    .map(segment -> new Object[]{segment.getRoomId(), segment.getFirstMessageId(), segment.getLastMessageId()})
+                    .toList());
+            segmentRepository.deleteAllInBatch(segments);
+            afterCommit(() -> segments.forEach(this::deleteFile));
+        });
+    }
+
+    @Scheduled(initialDelayString = "${keeper.archive.verify-interval}",
+            fixedDelayString = "${keeper.archive.verify-interval}")
+    public void verify() {
+        int checked = 0;
+        int failed = 0;
+        Long afterId = 0L;
+        while (true) {
+            List<ArchivedSegment> batch = segmentRepository.findByIdGreaterThanOrderByIdAsc(afterId, PageRequest.of(0, 100));
+            if (batch.isEmpty()) {
+                break;
+            }
+            for (ArchivedSegment segment : batch) {
+                checked++;
+                if (!verify(segment)) {
+                    failed++;
+                }
+            }
+            afterId = batch.get(batch.size() - 1).getId();
+        }
+        sweepOrphans();
+        if (checked > 0) {
+            log.info("Verified {} archived segments, {} failed", checked, failed);
+        }
+    }
+
+    private boolean verify(ArchivedSegment segment) {
+        try {
+            SegmentFile file = SegmentFile.open(Path.of(archiveDir).resolve(segment.getFileName()));
+            if (file.checksum() == segment.getChecksum()
+                    && file.messageCount() == segment.getMessageCount()
+                    && file.roomId() == segment.getRoomId()) {
+                return true;
+            }
+            log.error("Archived segment {} does not match its manifest entry", segment.getFileName());
+        } catch (IOException e) {
+            log.error("Archived segment {} is unreadable: {}", segment.getFileName(), e.getMessage());
+        }
+        corruptCounter.increment();
+        return false;
+    }
+
+    /**
+     * Removes segment files that no manifest entry points at, leaving anything
+     * not named like a segment alone in case the directory is shared.
+     */
+    private void sweepOrphans() {
+        Path root = Path.of(archiveDir);
+        if (!enabled || !Files.isDirectory(root)) {
+            return;
+        }
+        Instant stale = Instant.now().minus(Duration.ofHours(1));
+        try (Stream<Path> files = Files.walk(root)) {
+            files.filter(Files::isRegularFile).forEach(file -> {
+                String fileName = root.relativize(file).toString().replace(File.separatorChar, '/');
+                if (!SegmentFile.isSegmentName(fileName)) {
+                    return;
+                }
+                try {
+                    if (Files.getLastModifiedTime(file).toInstant().isBefore(stale)
+                            && !segmentRepository.existsByFileName(fileName)) {
+                        Files.delete(file);
+                        log.info("Removed orphaned archive file {}", fileName);
+                    }
+                } catch (IOException e) {
+                    log.warn("Could not inspect archive file {}: {}", fileName, e.getMessage());
+                }
+            });
+        } catch (IOException e) {
+            log.error("Failed to sweep the archive directory {}: {}", root, e.getMessage());
+        }
+    }
+
+    private List<ColdMessage> readNewestFirst(List<ArchivedSegment> segments, long skip, int limit) {
+        List<ColdMessage> messages = new ArrayList<>(limit);
+        for (ArchivedSegment segment : segments) {
+            if (messages.size() >= limit) {
+                break;
+            }
+            if (skip >= segment.getMessageCount()) {
+                skip -= segment.getMessageCount();
+                continue;
+            }
+
+            int end = segment.getMessageCount() - (int) skip;
+            int start = Math.max(0, end - (limit - messages.size()));
+            skip = 0;
+            try {
+                List<ColdMessage> chunk = new ArrayList<>(segment(segment).read(start, end));
+                Collections.reverse(chunk);
+                messages.addAll(chunk);
+            } catch (IOException e) {
+                corruptCounter.increment();
+                log.error("Skipping unreadable archived segment {}: {}", segment.getFileName(), e.getMessage());
+            }
+        }
+        return messages;
+    }
+
+    private Optional<ColdMessage> findIn(List<ArchivedSegment> segments, Long messageId) {
+        for (ArchivedSegment segment : segments) {
+            if (segment.getFirstMessageId() <= messageId && segment.getLastMessageId() >= messageId) {
+                try {
+                    Optional<ColdMessage> message = segment(segment).find(messageId);
+                    if (message.isPresent()) {
+                        return message;
+                    }
+                } catch (IOException e) {
+                    corruptCounter.increment();
+                    log.error("Cannot read archived segment {}: {}", segment.getFileName(), e.getMessage());
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    private SegmentFile segment(ArchivedSegment segment) throws IOException {
+        SegmentFile file = openSegments.get(segment.getFileName());
+        if (file == null) {
+            file = SegmentFile.open(Path.of(archiveDir).resolve(segment.getFileName()));
+            openSegments.put(segment.getFileName(), file);
+        }
+        return file;
+    }
+
+    private MessageResponse toMessageResponse(ColdMessage message, Map<Long, ColdMessage> replyTargets, Map<Long, User> users) {
+        MessageResponse response = new MessageResponse();
+        response.setId(message.id());
+        response.setContent(message.content());
+        User sender = users.get(message.senderId());
+        if (sender != null) {
+            response.setSenderUsername(sender.getUsername());
+            response.setSenderProfilePicture(sender.getProfilePicture());
+        }
+        response.setReactions(message.reactions().stream()
+                .filter(reaction -> users.containsKey(reaction.userId()))
+                .map(reaction -> {
+                    ReactionResponse reactionResponse = new ReactionResponse();
+                    reactionResponse.setEmoji(reaction.emoji());
+                    reactionResponse.setUsername(users.get(reaction.userId()).getUsername());
+                    return reactionResponse;
+                })
+                .collect(Collectors.toCollection(LinkedHashSet::new)));
+        if (message.replySnippet() != null) {
+            RepliedMessageInfo repliedTo = new RepliedMessageInfo();
+            repliedTo.setId(message.repliedToId());
+            repliedTo.setSenderUsername(message.replySenderUsername());
+            repliedTo.setContent(message.replySnippet());
+            response.setRepliedTo(repliedTo);
+        } else if (message.repliedToId() != null) {
+            response.setRepliedTo(toRepliedMessageInfo(replyTargets.get(message.repliedToId()), users));
+        }
+        response.setReplyCount(message.replyCount());
+        response.setEdited(message.edited());
+        response.setPinned(message.pinned());
+        response.setLinkPreviewUrl(message.linkPreviewUrl());
+        response.setLinkPreviewTitle(message.linkPreviewTitle());
+        response.setLinkPreviewDescription(message.linkPreviewDescription());
+        response.setLinkPreviewImage(message.linkPreviewImage());
+        response.setSeenBy(message.receipts().stream()
+                .map(receipt -> users.get(receipt.userId()))
+                .filter(user -> user != null)
+                .map(User::getUsername)
+                .collect(Collectors.toSet()));
+        response.setTimestamp(message.timestamp());
+        return response;
+    }
+
+    private RepliedMessageInfo toRepliedMessageInfo(ColdMessage target, Map<Long, User> users) {
+        if (target == null) {
+            return null;
+        }
+        RepliedMessageInfo info = new RepliedMessageInfo();
+        info.setId(target.id());
+        info.setContent(target.content());
+        User sender = users.get(target.senderId());
+        if (sender != null) {
+            info.setSenderUsername(sender.getUsername());
+        }
+        return info;
+    }
+
+    private List<ColdMessage> load(Connection connection, List<Long> ids) throws SQLException {
+        Array batch = connection.createArrayOf("bigint", ids.toArray());
+        Map<Long, List<ColdMessage.Reaction>> reactions = new HashMap<>();
+        Map<Long, List<ColdMessage.Receipt>> receipts = new HashMap<>();
+        List<ColdMessage> messages = new ArrayList<>(ids.size());
+        try (PreparedStatement reactionQuery = connection.prepareStatement(REACTIONS_SQL);
+             PreparedStatement receiptQuery = connection.prepareStatement(RECEIPTS_SQL);
+             PreparedStatement messageQuery = connection.prepareStatement(MESSAGES_SQL)) {
+            reactionQuery.setArray(1, batch);
+            try (ResultSet rs = reactionQuery.executeQuery()) {
+                while (rs.next()) {
+                    reactions.computeIfAbsent(rs.getLong(1), id -> new ArrayList<>()).add(new ColdMessage.Reaction(
+                            rs.getLong(2), rs.getString(3), rs.getTimestamp(4).toLocalDateTime()));
+                }
+            }
+            receiptQuery.setArray(1, batch);
+            try (ResultSet rs = receiptQuery.executeQuery()) {
+                while (rs.next()) {
+                    receipts.computeIfAbsent(rs.getLong(1), id -> new ArrayList<>()).add(new ColdMessage.Receipt(
+                            rs.getLong(2), rs.getTimestamp(3).toLocalDateTime()));
+                }
+            }
+            messageQuery.setArray(1, batch);
+            try (ResultSet rs = messageQuery.executeQuery()) {
+                while (rs.next()) {
+                    long id = rs.getLong("id");
+                    messages.add(new ColdMessage(
+                            id,
+                            rs.getLong("sender_id"),
+                            rs.getString("content"),
+                            rs.getObject("replied_to_id", Long.class),
+                            rs.getString("reply_sender_username"),
+                            rs.getString("reply_snippet"),
+                            rs.getInt("reply_count"),
+                            rs.getBoolean("edited"),
+                            rs.getBoolean("is_pinned"),
+                            rs.getString("link_preview_url"),
+                            rs.getString("link_preview_title"),
+                            rs.getString("link_preview_description"),
+                            rs.getString("link_preview_image"),
+                            rs.getTimestamp("timestamp").toLocalDateTime(),
+                            reactions.getOrDefault(id, List.of()),
+                            receipts.getOrDefault(id, List.of())));
+                }
+            }
+        } finally {
+            batch.free();
+        }
+        return messages;
+    }
+
+    private void delete(Connection connection, List<Long> ids) throws SQLException {
+        Array batch = connection.createArrayOf("bigint", ids.toArray());
+        try (PreparedStatement reactions = connection.prepareStatement(DELETE_REACTIONS_SQL);
+             PreparedStatement receipts = connection.prepareStatement(DELETE_RECEIPTS_SQL);
+             PreparedStatement messages = connection.prepareStatement(DELETE_MESSAGES_SQL)) {
+            reactions.setArray(1, batch);
+            reactions.executeUpdate();
+            receipts.setArray(1, batch);
+            receipts.executeUpdate();
+            messages.setArray(1, batch);
+            messages.executeUpdate();
+        } finally {
+            batch.free();
+        }
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private void deleteFile(ArchivedSegment segment) {
+        openSegments.remove(segment.getFileName());
+        deleteQuietly(Path.of(archiveDir).resolve(segment.getFileName()));
+    }
+
+    private void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Could not delete archive file {}: {}", file, e.getMessage());
+        }
+    }
+}
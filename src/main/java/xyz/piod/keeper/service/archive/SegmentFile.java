@@ -0,0 +1,253 @@
+package xyz.piod.keeper.service.archive;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * An immutable run of one room's archived messages, read through a read-only
+ * memory mapping. Layout: a fixed header (magic 'KSEG', format version, room
+ * id, message count, block size, block count), one sparse index entry per
+ * block (first message id, file offset, CRC32 of the compressed bytes), then
+ * the blocks. Each block holds the raw and deflated lengths followed by the
+ * deflated CBOR encoding of up to {@code blockSize} messages in ascending id
+ * order, so a lookup inflates a single block.
+ */
+final class SegmentFile {
+
+    static final String EXTENSION = ".seg";
+
+    private static final Pattern NAME = Pattern.compile("\\d+/\\d+-\\d+(\\.[0-9a-f]+)?\\.seg(\\.tmp)?");
+
+    private static final int MAGIC = 0x4B534547;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 28;
+    private static final int INDEX_ENTRY_BYTES = 20;
+    private static final int BLOCK_HEADER_BYTES = 8;
+
+    private static final ObjectMapper CBOR = CBORMapper.builder()
+            .addModule(new JavaTimeModule())
+            .build();
+    private static final TypeReference<List<ColdMessage>> BLOCK = new TypeReference<>() {};
+
+    private final MappedByteBuffer buffer;
+    private final long roomId;
+    private final int messageCount;
+    private final int blockSize;
+    private final long[] firstIds;
+    private final long[] offsets;
+    private final int[] checksums;
+
+    private SegmentFile(MappedByteBuffer buffer) throws IOException {
+        if (buffer.limit() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a message segment");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported segment version " + buffer.getInt(4));
+        }
+        this.buffer = buffer;
+        this.roomId = buffer.getLong(8);
+        this.messageCount = buffer.getInt(16);
+        this.blockSize = buffer.getInt(20);
+        int blockCount = buffer.getInt(24);
+        this.firstIds = new long[blockCount];
+        this.offsets = new long[blockCount];
+        this.checksums = new int[blockCount];
+        for (int block = 0; block < blockCount; block++) {
+            int entry = HEADER_BYTES + block * INDEX_ENTRY_BYTES;
+            firstIds[block] = buffer.getLong(entry);
+            offsets[block] = buffer.getLong(entry + 8);
+            checksums[block] = buffer.getInt(entry + 16);
+        }
+    }
+
+    /**
+     * {@code <roomId>/<firstId>-<lastId>.seg}, with a revision before the
+     * extension once the segment has been rewritten.
+     */
+    static String name(long roomId, long firstId, long lastId, String revision) {
+        return roomId + "/" + firstId + "-" + lastId + (revision == null ? "" : "." + revision) + EXTENSION;
+    }
+
+    /**
+     * Whether {@code name}, relative to the archive root, is a segment or a
+     * segment still being written.
+     */
+    static boolean isSegmentName(String name) {
+        return NAME.matcher(name).matches();
+    }
+
+    static SegmentFile open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new SegmentFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Writes the segment next to {@code target}, syncs it and atomically moves
+     * it into place. Returns the CRC32 of the whole file.
+     */
+    static long write(Path target, long roomId, List<ColdMessage> messages, int blockSize) throws IOException {
+        List<byte[]> blocks = new ArrayList<>();
+        List<Integer> rawLengths = new ArrayList<>();
+        for (int from = 0; from < messages.size(); from += blockSize) {
+            byte[] raw = CBOR.writeValueAsBytes(messages.subList(from, Math.min(from + blockSize, messages.size())));
+            rawLengths.add(raw.length);
+            blocks.add(deflate(raw));
+        }
+
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        Files.createDirectories(target.getParent());
+        CRC32 fileChecksum = new CRC32();
+        try (DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temp)), fileChecksum))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(roomId);
+            out.writeInt(messages.size());
+            out.writeInt(blockSize);
+            out.writeInt(blocks.size());
+
+            long offset = HEADER_BYTES + (long) blocks.size() * INDEX_ENTRY_BYTES;
+            for (int block = 0; block < blocks.size(); block++) {
+                CRC32 blockChecksum = new CRC32();
+                blockChecksum.update(blocks.get(block));
+                out.writeLong(messages.get(block * blockSize).id());
+                out.writeLong(offset);
+                out.writeInt((int) blockChecksum.getValue());
+                offset += BLOCK_HEADER_BYTES + blocks.get(block).length;
+            }
+
+            for (int block = 0; block < blocks.size(); block++) {
+                out.writeInt(rawLengths.get(block));
+                out.writeInt(blocks.get(block).length);
+                out.write(blocks.get(block));
+            }
+        }
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        return fileChecksum.getValue();
+    }
+
+    long roomId() {
+        return roomId;
+    }
+
+    int messageCount() {
+        return messageCount;
+    }
+
+    int blockCount() {
+        return firstIds.length;
+    }
+
+    long firstId(int block) {
+        return firstIds[block];
+    }
+
+    /**
+     * Messages with ordinals in {@code [from, to)}, in ascending id order.
+     */
+    List<ColdMessage> read(int from, int to) throws IOException {
+        List<ColdMessage> messages = new ArrayList<>(Math.max(0, to - from));
+        for (int block = from / blockSize; block < firstIds.length && block * blockSize < to; block++) {
+            List<ColdMessage> contents = readBlock(block);
+            int blockStart = block * blockSize;
+            int start = Math.max(from - blockStart, 0);
+            int end = Math.min(to - blockStart, contents.size());
+            messages.addAll(contents.subList(start, end));
+        }
+        return messages;
+    }
+
+    Optional<ColdMessage> find(long messageId) throws IOException {
+        int block = Arrays.binarySearch(firstIds, messageId);
+        if (block < 0) {
+            block = -block - 2;
+        }
+        if (block < 0) {
+            return Optional.empty();
+        }
+        return readBlock(block).stream().filter(message -> message.id() == messageId).findFirst();
+    }
+
+    List<ColdMessage> readAll() throws IOException {
+        return read(0, messageCount);
+    }
+
+    long checksum() {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate().position(0));
+        return crc.getValue();
+    }
+
+    List<ColdMessage> readBlock(int block) throws IOException {
+        int offset = Math.toIntExact(offsets[block]);
+        int rawLength = buffer.getInt(offset);
+        byte[] compressed = new byte[buffer.getInt(offset + 4)];
+        buffer.get(offset + BLOCK_HEADER_BYTES, compressed);
+
+        CRC32 crc = new CRC32();
+        crc.update(compressed);
+        if ((int) crc.getValue() != checksums[block]) {
+            throw new IOException("Checksum mismatch in block " + block);
+        }
+        return CBOR.readValue(inflate(compressed, rawLength), BLOCK);
+    }
+
+    private static byte[] deflate(byte[] raw) throws IOException {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try (ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2)) {
+            deflater.setInput(raw);
+            deflater.finish();
+            byte[] chunk = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(chunk, 0, deflater.deflate(chunk));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] compressed, int rawLength) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            byte[] raw = new byte[rawLength];
+            int inflated = inflater.inflate(raw);
+            if (inflated != rawLength || !inflater.finished()) {
+                throw new IOException("Truncated block: inflated " + inflated + " of " + rawLength + " bytes");
+            }
+            return raw;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt block: " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
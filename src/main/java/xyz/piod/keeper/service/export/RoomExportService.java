@@ -0,0 +1,318 @@
+package xyz.piod.keeper.service.export;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import xyz.piod.keeper.config.AsyncTimeoutConfig;
+import xyz.piod.keeper.entity.User;
+import xyz.piod.keeper.exception.TooManyRequestsException;
+import xyz.piod.keeper.exception.UnauthorizedOperationException;
+import xyz.piod.keeper.repository.UserRepository;
+import xyz.piod.keeper.service.RoomMembershipService;
+import xyz.piod.keeper.service.archive.ColdMessage;
+import xyz.piod.keeper.service.archive.MessageArchiveService;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class RoomExportService {
+
+    private static final String EXPORT_SQL = """
+            SELECT m.id, m.timestamp, u.username, m.content, m.replied_to_id, m.edited, m.is_pinned, m.link_preview_url,
+                   (SELECT json_agg(json_build_object('emoji', r.emoji, 'username', ru.username) ORDER BY r.id)
+                    FROM reactions r JOIN users ru ON ru.id = r.user_id WHERE r.message_id = m.id) AS reactions
+            FROM messages m JOIN users u ON u.id = m.sender_id
+            WHERE m.chatroom_id = ? AND m.id > ? AND m.id < ?
+            ORDER BY m.id LIMIT ?
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final UserRepository userRepository;
+    private final RoomMembershipService membershipService;
+    private final MessageArchiveService archiveService;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${keeper.export.page-size}")
+    private int pageSize;
+
+    @Value("${keeper.export.buffer-size}")
+    private int bufferSize;
+
+    @Value("${keeper.export.timeout}")
+    private long timeout;
+
+    @Value("${keeper.export.max-concurrent}")
+    private int maxConcurrent;
+
+    @Value("${keeper.export.max-per-user}")
+    private int maxPerUser;
+
+    private final Map<Long, Integer> runningByUser = new ConcurrentHashMap<>();
+    private Semaphore running;
+    private Counter messagesCounter;
+    private Counter bytesCounter;
+
+    @PostConstruct
+    void init() {
+        running = new Semaphore(maxConcurrent);
+        messagesCounter = Counter.builder("keeper.export.messages").register(meterRegistry);
+        bytesCounter = Counter.builder("keeper.export.bytes").register(meterRegistry);
+    }
+
+    public StreamingResponseBody export(Long roomId, Long afterId, boolean gzip, User currentUser) {
+        if (!membershipService.isMember(roomId, currentUser.getId())) {
+            throw new UnauthorizedOperationException("User is not a participant of this room.");
+        }
+        acquire(currentUser.getId());
+        RequestAttributes request = RequestContextHolder.getRequestAttributes();
+        if (request != null) {
+            request.setAttribute(AsyncTimeoutConfig.TIMEOUT_ATTRIBUTE, timeout, RequestAttributes.SCOPE_REQUEST);
+        }
+        Progress progress = new Progress(afterId == null ? 0L : afterId);
+
+        return responseStream -> {
+            try {
+                long started = System.nanoTime();
+                CountingOutputStream counted = new CountingOutputStream(responseStream);
+                OutputStream out = gzip ? new GZIPOutputStream(counted, bufferSize) : counted;
+
+                try (JsonGenerator json = objectMapper.getFactory().createGenerator(out)) {
+                    json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                    writeAll(json, roomId, progress);
+                } catch (IOException e) {
+                    log.warn("Export of room #{} for {} aborted after {} messages: {}",
+                            roomId, currentUser.getUsername(), progress.exported, e.getMessage());
+                    throw e;
+                }
+                if (out instanceof GZIPOutputStream compressed) {
+                    compressed.finish();
+                }
+                out.flush();
+
+                double seconds = Math.max((System.nanoTime() - started) / 1e9, 0.001);
+                messagesCounter.increment(progress.exported);
+                bytesCounter.increment(counted.count);
+                log.info("Exported {} messages of room #{} ({} bytes{}) in {} ms: {} msg/s, {} MB/s",
+                        progress.exported, roomId, counted.count, gzip ? ", gzip" : "", Math.round(seconds * 1000),
+                        Math.round(progress.exported / seconds), String.format("%.1f", counted.count / seconds / 1_048_576));
+            } finally {
+                release(currentUser.getId());
+            }
+        };
+    }
+
+    private void acquire(Long userId) {
+        if (!running.tryAcquire()) {
+            throw new TooManyRequestsException("Too many exports are running, try again later.");
+        }
+        boolean[] admitted = new boolean[1];
+        runningByUser.compute(userId, (id, count) -> {
+            int current = count == null ? 0 : count;
+            if (current >= maxPerUser) {
+                return count;
+            }
+            admitted[0] = true;
+            return current + 1;
+        });
+        if (!admitted[0]) {
+            running.release();
+            throw new TooManyRequestsException("An export of yours is already running.");
+        }
+    }
+
+    private void release(Long userId) {
+        runningByUser.computeIfPresent(userId, (id, count) -> count > 1 ? count - 1 : null);
+        running.release();
+    }
+
+    private static final class Progress {
+
+        private long cursor;
+        private long exported;
+
+        private Progress(long cursor) {
+            this.cursor = cursor;
+        }
+    }
+
+    /**
+     * Merges archived blocks and hot rows by id, one page per query, so no
+     * connection is held while writing to the client. A segment archived
+     * mid-export shows up as a new manifest entry and is read on another pass.
+     */
+    private void writeAll(JsonGenerator json, Long roomId, Progress progress) throws IOException {
+        long seenSegment;
+        do {
+            seenSegment = archiveService.latestSegmentId(roomId);
+            archiveService.forEachArchivedBlock(roomId, progress.cursor, messages -> {
+                // Rehydrated messages are hot but fall inside the block's id range.
+                List<HotMessage> hot = readHot(roomId, progress.cursor, messages.get(messages.size() - 1).id());
+                Map<Long, User> users = resolveUsers(messages);
+                int nextHot = 0;
+                for (ColdMessage message : messages) {
+                    while (nextHot < hot.size() && hot.get(nextHot).id() < message.id()) {
+                        write(json, hot.get(nextHot++), progress);
+                    }
+                    write(json, message, users, progress);
+                }
+            });
+        } while (!writeHotTail(json, roomId, progress, seenSegment));
+    }
+
+    /**
+     * Writes the remaining hot rows. Stops without writing the current page
+     * and returns false once a segment newer than {@code seenSegment} exists,
+     * as it may hold rows past the cursor.
+     */
+    private boolean writeHotTail(JsonGenerator json, Long roomId, Progress progress, long seenSegment) throws IOException {
+        while (true) {
+            List<HotMessage> page = readPage(roomId, progress.cursor, Long.MAX_VALUE);
+            if (archiveService.latestSegmentId(roomId) != seenSegment) {
+                return false;
+            }
+            for (HotMessage message : page) {
+                write(json, message, progress);
+            }
+            if (page.size() < pageSize) {
+                return true;
+            }
+        }
+    }
+
+    private List<HotMessage> readHot(Long roomId, long afterId, long beforeId) {
+        List<HotMessage> messages = new ArrayList<>();
+        while (true) {
+            List<HotMessage> page = readPage(roomId, afterId, beforeId);
+            messages.addAll(page);
+            if (page.size() < pageSize) {
+                return messages;
+            }
+            afterId = page.get(page.size() - 1).id();
+        }
+    }
+
+    private List<HotMessage> readPage(Long roomId, long afterId, long beforeId) {
+        return jdbcTemplate.query(EXPORT_SQL, (rs, rowNum) -> new HotMessage(
+                rs.getLong("id"),
+                rs.getTimestamp("timestamp").toLocalDateTime(),
+                rs.getString("username"),
+                rs.getString("content"),
+                rs.getObject("replied_to_id", Long.class),
+                rs.getBoolean("edited"),
+                rs.getBoolean("is_pinned"),
+                rs.getString("link_preview_url"),
+                rs.getString("reactions")), roomId, afterId, beforeId, pageSize);
+    }
+
+    private record HotMessage(long id, LocalDateTime timestamp, String sender, String content, Long repliedToId,
+                              boolean edited, boolean pinned, String linkPreviewUrl, String reactions) {}
+
+    private void write(JsonGenerator json, HotMessage message, Progress progress) throws IOException {
+        json.writeStartObject();
+        json.writeNumberField("id", message.id());
+        json.writeStringField("timestamp", message.timestamp().toString());
+        json.writeStringField("sender", message.sender());
+        json.writeStringField("content", message.content());
+        writeNullableNumber(json, "repliedToId", message.repliedToId());
+        json.writeBooleanField("edited", message.edited());
+        json.writeBooleanField("pinned", message.pinned());
+        json.writeStringField("linkPreviewUrl", message.linkPreviewUrl());
+        json.writeFieldName("reactions");
+        json.writeRawValue(message.reactions() != null ? message.reactions() : "[]");
+        json.writeEndObject();
+        json.writeRaw('\n');
+        progress.cursor = message.id();
+        progress.exported++;
+    }
+
+    private void write(JsonGenerator json, ColdMessage message, Map<Long, User> users, Progress progress) throws IOException {
+        User sender = users.get(message.senderId());
+        json.writeStartObject();
+        json.writeNumberField("id", message.id());
+        json.writeStringField("timestamp", message.timestamp().toString());
+        json.writeStringField("sender", sender != null ? sender.getUsername() : null);
+        json.writeStringField("content", message.content());
+        writeNullableNumber(json, "repliedToId", message.repliedToId());
+        json.writeBooleanField("edited", message.edited());
+        json.writeBooleanField("pinned", message.pinned());
+        json.writeStringField("linkPreviewUrl", message.linkPreviewUrl());
+        json.writeArrayFieldStart("reactions");
+        for (ColdMessage.Reaction reaction : message.reactions()) {
+            User user = users.get(reaction.userId());
+            json.writeStartObject();
+            json.writeStringField("emoji", reaction.emoji());
+            json.writeStringField("username", user != null ? user.getUsername() : null);
+            json.writeEndObject();
+        }
+        json.writeEndArray();
+        json.writeEndObject();
+        json.writeRaw('\n');
+        progress.cursor = message.id();
+        progress.exported++;
+    }
+
+    private Map<Long, User> resolveUsers(List<ColdMessage> messages) {
+        Set<Long> userIds = new HashSet<>();
+        for (ColdMessage message : messages) {
+            userIds.add(message.senderId());
+            message.reactions().forEach(reaction -> userIds.add(reaction.userId()));
+        }
+        return userRepository.findAllById(userIds).stream()
+                .collect(Collectors.toMap(User::getId, Function.identity()));
+    }
+
+    private static void writeNullableNumber(JsonGenerator json, String field, Long value) throws IOException {
+        if (value == null) {
+            json.writeNullField(field);
+        } else {
+            json.writeNumberField(field, value);
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package xyz.piod.keeper.service.gateway;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.WebSocketSession;
+import xyz.piod.keeper.dto.ChatMessage;
+import xyz.piod.keeper.service.RoomMembershipService;
+import xyz.piod.keeper.service.TopicSubscriptionRegistry;
+import xyz.piod.keeper.service.membership.RoomMembershipIndex;
+import xyz.piod.keeper.service.presence.PresenceService;
+import xyz.piod.keeper.service.transport.BroadcastEvent;
+import xyz.piod.keeper.service.transport.LocalEventListener;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Service
+@ConditionalOnProperty(name = "keeper.gateway.embedded.enabled", havingValue = "true")
+@RequiredArgsConstructor
+@Slf4j
+public class EmbeddedGatewayService implements LocalEventListener {
+
+    private final RoomMembershipIndex membershipIndex;
+    private final TopicSubscriptionRegistry subscriptionRegistry;
+    private final PresenceService presenceService;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${keeper.gateway.embedded.idle-timeout}")
+    private long idleTimeoutMillis;
+
+    @Value("${keeper.gateway.embedded.send-queue-size}")
+    private int sendQueueSize;
+
+    @Value("${keeper.gateway.embedded.send-time-limit}")
+    private int sendTimeLimit;
+
+    @Value("${keeper.gateway.embedded.send-buffer-bytes}")
+    private int sendBufferSizeLimit;
+
+    private final Map<String, GatewayConnection> connections = new ConcurrentHashMap<>();
+    private final Map<String, Set<GatewayConnection>> subscribers = new ConcurrentHashMap<>();
+    private final ExecutorService sendExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    @PostConstruct
+    void registerMetrics() {
+        Gauge.builder("keeper.gateway.connections", connections, Map::size)
+                .description("Open embedded gateway connections")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        connections.values().forEach(GatewayConnection::close);
+        sendExecutor.shutdown();
+    }
+
+    public SseGatewayConnection openSseConnection(Long userId, String username) {
+        SseGatewayConnection connection = new SseGatewayConnection(userId, username, sendQueueSize, sendExecutor);
+        connection.getEmitter().onCompletion(() -> unregister(connection));
+        connection.getEmitter().onTimeout(() -> unregister(connection));
+        connection.getEmitter().onError(e -> unregister(connection));
+        register(connection);
+        connection.send(objectMapper.createObjectNode()
+                .put("event", "connected")
+                .put("connectionId", connection.getId())
+                .toString());
+        return connection;
+    }
+
+    public WebSocketGatewayConnection openWebSocketConnection(WebSocketSession session, Long userId, String username) {
+        WebSocketGatewayConnection connection = new WebSocketGatewayConnection(session, userId, username,
+                sendTimeLimit, sendBufferSizeLimit, sendQueueSize, sendExecutor);
+        register(connection);
+        return connection;
+    }
+
+    public boolean markSeen(String connectionId, Long userId) {
+        GatewayConnection connection = connections.get(connectionId);
+        if (connection == null || !connection.getUserId().equals(userId)) {
+            return false;
+        }
+        connection.markSeen();
+        return true;
+    }
+
+    public void register(GatewayConnection connection) {
+        connections.put(connection.getId(), connection);
+        addSubscription(connection, "user:" + connection.getUsername());
+        presenceService.heartbeat(connection.getUsername(), connection.getId());
+        log.info("Embedded gateway connection {} opened for user {}", connection.getId(), connection.getUsername());
+    }
+
+    public void unregister(GatewayConnection connection) {
+        if (connections.remove(connection.getId()) == null) {
+            return;
+        }
+        connection.getTopics().forEach(topic -> removeSubscription(connection, topic));
+        presenceService.disconnect(connection.getUsername(), connection.getId());
+        log.info("Embedded gateway connection {} closed for user {}", connection.getId(), connection.getUsername());
+    }
+
+    public boolean subscribe(GatewayConnection connection, String topic) {
+        if (!isAuthorized(connection, topic)) {
+            return false;
+        }
+        addSubscription(connection, topic);
+        return true;
+    }
+
+    public void unsubscribe(GatewayConnection connection, String topic) {
+        if (topic.equals("user:" + connection.getUsername())) {
+            return;
+        }
+        removeSubscription(connection, topic);
+    }
+
+    @Override
+    public boolean isSubscribed(String topic) {
+        if (RoomMembershipService.REVOCATIONS_TOPIC.equals(topic)) {
+            return true;
+        }
+        Set<GatewayConnection> topicSubscribers = subscribers.get(topic);
+        return topicSubscribers != null && !topicSubscribers.isEmpty();
+    }
+
+    @Override
+    public void onEvent(BroadcastEvent event) {
+        if (RoomMembershipService.REVOCATIONS_TOPIC.equals(event.topic())) {
+            if (event.payload() instanceof ChatMessage revocation) {
+                revoke(revocation.getRoomId(), revocation.getUserActionParticipant() == null
+                        ? null : revocation.getUserActionParticipant().getUsername());
+            }
+            return;
+        }
+        Set<GatewayConnection> topicSubscribers = subscribers.get(event.topic());
+        if (topicSubscribers == null || topicSubscribers.isEmpty()) {
+            return;
+        }
+        try {
+            deliver(topicSubscribers, objectMapper.writeValueAsString(event.toEnvelope()));
+        } catch (JsonProcessingException e) {
+            log.error("Error serializing event '{}' for embedded delivery: {}", event.event(), e.getMessage());
+        }
+    }
+
+    public void onRelayedEvent(String topic, String frame) {
+        if (RoomMembershipService.REVOCATIONS_TOPIC.equals(topic)) {
+            try {
+                JsonNode payload = objectMapper.readTree(frame).path("payload");
+                JsonNode username = payload.path("userActionParticipant").path("username");
+                revoke(payload.path("roomId").asLong(), username.isTextual() ? username.asText() : null);
+            } catch (JsonProcessingException e) {
+                log.error("Error reading relayed membership revocation: {}", e.getMessage());
+            }
+            return;
+        }
+        Set<GatewayConnection> topicSubscribers = subscribers.get(topic);
+        if (topicSubscribers != null && !topicSubscribers.isEmpty()) {
+            deliver(topicSubscribers, frame);
+        }
+    }
+
+    private void revoke(Long roomId, String username) {
+        String topic = "room:" + roomId;
+        Set<GatewayConnection> topicSubscribers = subscribers.get(topic);
+        if (topicSubscribers == null) {
+            return;
+        }
+        for (GatewayConnection connection : topicSubscribers) {
+            if (username == null || username.equals(connection.getUsername())) {
+                removeSubscription(connection, topic);
+            }
+        }
+        log.info("Revoked embedded subscriptions to {} for {}", topic, username == null ? "all users" : username);
+    }
+
+    @Scheduled(fixedRateString = "${keeper.gateway.embedded.heartbeat-interval}")
+    public void heartbeat() {
+        long now = System.currentTimeMillis();
+        Map<String, String> live = new HashMap<>();
+        connections.values().forEach(connection -> {
+            if (now - connection.getLastSeen() > idleTimeoutMillis) {
+                log.info("Evicting idle embedded gateway connection {} of user {}", connection.getId(), connection.getUsername());
+                evict(connection);
+            } else {
+                connection.ping();
+                live.put(connection.getId(), connection.getUsername());
+            }
+        });
+        presenceService.heartbeat(live);
+
+        if (subscriptionRegistry.isSuppressionEnabled()) {
+            Set<String> leased = new HashSet<>(subscribers.keySet());
+            leased.add(RoomMembershipService.REVOCATIONS_TOPIC);
+            subscriptionRegistry.renewLeases(leased);
+        }
+    }
+
+    private boolean isAuthorized(GatewayConnection connection, String topic) {
+        if (topic.equals("user:" + connection.getUsername())) {
+            return true;
+        }
+        if (!topic.startsWith("room:")) {
+            return false;
+        }
+        try {
+            Long roomId = Long.parseLong(topic.substring("room:".length()));
+            return membershipIndex.isMember(roomId, connection.getUserId());
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private void addSubscription(GatewayConnection connection, String topic) {
+        connection.getTopics().add(topic);
+        subscribers.compute(topic, (t, set) -> {
+            Set<GatewayConnection> topicSubscribers = set == null ? ConcurrentHashMap.newKeySet() : set;
+            topicSubscribers.add(connection);
+            return topicSubscribers;
+        });
+        if (subscriptionRegistry.isSuppressionEnabled()) {
+            subscriptionRegistry.addSubscription(topic);
+        }
+    }
+
+    private void removeSubscription(GatewayConnection connection, String topic) {
+        connection.getTopics().remove(topic);
+        subscribers.computeIfPresent(topic, (t, set) -> {
+            set.remove(connection);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    private void deliver(Set<GatewayConnection> targets, String frame) {
+        for (GatewayConnection connection : targets) {
+            if (!connection.send(frame)) {
+                evict(connection);
+            }
+        }
+    }
+
+    private void evict(GatewayConnection connection) {
+        unregister(connection);
+        connection.close();
+    }
+}
@@ -0,0 +1,24 @@
+package xyz.piod.keeper.service.gateway;
+
+import java.util.Set;
+
+public interface GatewayConnection {
+
+    String getId();
+
+    Long getUserId();
+
+    String getUsername();
+
+    Set<String> getTopics();
+
+    long getLastSeen();
+
+    void markSeen();
+
+    boolean send(String frame);
+
+    void ping();
+
+    void close();
+}
@@ -0,0 +1,111 @@
+package xyz.piod.keeper.service.gateway;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PongMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+import xyz.piod.keeper.dto.command.MessageCommand;
+import xyz.piod.keeper.entity.User;
+import xyz.piod.keeper.service.DirectCommandIngress;
+import xyz.piod.keeper.service.UserService;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Component
+@ConditionalOnProperty(name = "keeper.gateway.embedded.enabled", havingValue = "true")
+@RequiredArgsConstructor
+@Slf4j
+public class GatewayWebSocketHandler extends TextWebSocketHandler {
+
+    public static final String USER_ID_ATTRIBUTE = "keeper.userId";
+    public static final String USERNAME_ATTRIBUTE = "keeper.username";
+
+    private final EmbeddedGatewayService gatewayService;
+    private final ObjectMapper objectMapper;
+    private final ObjectProvider<DirectCommandIngress> directCommandIngress;
+    private final UserService userService;
+
+    private final Map<String, WebSocketGatewayConnection> connections = new ConcurrentHashMap<>();
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) {
+        Long userId = (Long) session.getAttributes().get(USER_ID_ATTRIBUTE);
+        String username = (String) session.getAttributes().get(USERNAME_ATTRIBUTE);
+
+        connections.put(session.getId(), gatewayService.openWebSocketConnection(session, userId, username));
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
+        WebSocketGatewayConnection connection = connections.get(session.getId());
+        if (connection == null) {
+            return;
+        }
+        connection.markSeen();
+
+        JsonNode frame = objectMapper.readTree(message.getPayload());
+        String action = frame.path("action").asText();
+        String topic = frame.path("topic").asText();
+
+        switch (action) {
+            case "subscribe" -> {
+                boolean subscribed = gatewayService.subscribe(connection, topic);
+                connection.send(reply(subscribed ? "subscribed" : "subscription_denied", topic));
+            }
+            case "unsubscribe" -> {
+                gatewayService.unsubscribe(connection, topic);
+                connection.send(reply("unsubscribed", topic));
+            }
+            case "ping" -> connection.send(reply("pong", null));
+            case "command" -> handleCommand(connection, frame);
+            default -> log.warn("Received a gateway frame with unknown action: {}", action);
+        }
+    }
+
+    @Override
+    protected void handlePongMessage(WebSocketSession session, PongMessage message) {
+        WebSocketGatewayConnection connection = connections.get(session.getId());
+        if (connection != null) {
+            connection.markSeen();
+        }
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        WebSocketGatewayConnection connection = connections.remove(session.getId());
+        if (connection != null) {
+            gatewayService.unregister(connection);
+        }
+    }
+
+    private void handleCommand(WebSocketGatewayConnection connection, JsonNode frame) throws Exception {
+        DirectCommandIngress ingress = directCommandIngress.getIfAvailable();
+        String action = frame.path("command").asText();
+        if (ingress == null || !ingress.isKnownAction(action)) {
+            connection.send(reply("command_rejected", null));
+            return;
+        }
+
+        MessageCommand command = objectMapper.treeToValue(frame.path("payload"), MessageCommand.class);
+        User user = userService.findUserByUsername(connection.getUsername());
+        if (!ingress.submit(action, command, user)) {
+            connection.send(reply("command_rejected", null));
+        }
+    }
+
+    private String reply(String event, String topic) {
+        return objectMapper.createObjectNode()
+                .put("event", event)
+                .put("topic", topic)
+                .toString();
+    }
+}
@@ -0,0 +1,21 @@
+package xyz.piod.keeper.service.gateway;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+import xyz.piod.keeper.service.transport.PostgresEventTransport;
+
+@Component
+@ConditionalOnExpression("${keeper.gateway.embedded.relay:false} and '${keeper.broadcast.transport:redis}' == 'postgres'")
+@RequiredArgsConstructor
+public class PostgresEventRelay {
+
+    private final PostgresEventTransport postgresEventTransport;
+    private final EmbeddedGatewayService gatewayService;
+
+    @PostConstruct
+    void subscribe() {
+        postgresEventTransport.addRemoteListener(gatewayService::onRelayedEvent);
+    }
+}
@@ -0,0 +1,47 @@
+package xyz.piod.keeper.service.gateway;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import xyz.piod.keeper.service.transport.RedisEventTransport;
+
+import java.nio.charset.StandardCharsets;
+
+@Component
+@ConditionalOnExpression("${keeper.gateway.embedded.relay:false} and '${keeper.broadcast.transport:redis}' == 'redis'")
+@RequiredArgsConstructor
+@Slf4j
+public class RedisEventRelay implements MessageListener {
+
+    private final RedisMessageListenerContainer listenerContainer;
+    private final RedisEventTransport redisEventTransport;
+    private final EmbeddedGatewayService gatewayService;
+    private final ObjectMapper objectMapper;
+
+    @PostConstruct
+    void subscribe() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(RedisEventTransport.KEEPER_EVENTS_CHANNEL));
+        log.info("Relaying events from other nodes on Redis channel '{}'", RedisEventTransport.KEEPER_EVENTS_CHANNEL);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            JsonNode envelope = objectMapper.readTree(message.getBody());
+            if (redisEventTransport.getNodeId().equals(envelope.path("origin").asText())) {
+                return;
+            }
+            gatewayService.onRelayedEvent(envelope.path("topic").asText(), new String(message.getBody(), StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            log.error("Error relaying event from Redis: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package xyz.piod.keeper.service.gateway;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Bounded per-connection outbox. Producers only enqueue, so a slow socket
+ * never blocks the thread that is fanning an event out; a single drain task
+ * at a time writes to the connection on the executor.
+ */
+final class SendQueue<T> {
+
+    interface Sink<T> {
+        void write(T item) throws Exception;
+    }
+
+    private final BlockingQueue<T> queue;
+    private final Executor executor;
+    private final Sink<T> sink;
+    private final Runnable onFailure;
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private volatile boolean closed;
+
+    SendQueue(int capacity, Executor executor, Sink<T> sink, Runnable onFailure) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.executor = executor;
+        this.sink = sink;
+        this.onFailure = onFailure;
+    }
+
+    /**
+     * Returns false when the connection is closed or its buffer is full.
+     */
+    boolean offer(T item) {
+        if (closed || !queue.offer(item)) {
+            return false;
+        }
+        if (draining.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+        return true;
+    }
+
+    void close() {
+        closed = true;
+        queue.clear();
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    private void drain() {
+        try {
+            T item;
+            while (!closed && (item = queue.poll()) != null) {
+                sink.write(item);
+            }
+        } catch (Exception e) {
+            close();
+            onFailure.run();
+        } finally {
+            draining.set(false);
+            if (!closed && !queue.isEmpty() && draining.compareAndSet(false, true)) {
+                executor.execute(this::drain);
+            }
+        }
+    }
+}
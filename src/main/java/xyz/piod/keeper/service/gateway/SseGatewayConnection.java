@@ -0,0 +1,77 @@
+package xyz.piod.keeper.service.gateway;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+@Slf4j
+public class SseGatewayConnection implements GatewayConnection {
+
+    @Getter
+    private final String id = UUID.randomUUID().toString();
+    @Getter
+    private final SseEmitter emitter;
+    @Getter
+    private final Long userId;
+    @Getter
+    private final String username;
+    @Getter
+    private final Set<String> topics = ConcurrentHashMap.newKeySet();
+    @Getter
+    private volatile long lastSeen = System.currentTimeMillis();
+
+    private final SendQueue<SseEmitter.SseEventBuilder> outbox;
+
+    public SseGatewayConnection(Long userId, String username, int queueSize, Executor executor) {
+        this.emitter = new SseEmitter(0L);
+        this.userId = userId;
+        this.username = username;
+        this.outbox = new SendQueue<>(queueSize, executor, event -> {
+            emitter.send(event);
+            markSeen();
+        }, this::close);
+    }
+
+    @Override
+    public void markSeen() {
+        lastSeen = System.currentTimeMillis();
+    }
+
+    @Override
+    public boolean send(String frame) {
+        return enqueue(SseEmitter.event().data(frame, MediaType.APPLICATION_JSON));
+    }
+
+    @Override
+    public void ping() {
+        enqueue(SseEmitter.event().comment("heartbeat"));
+    }
+
+    @Override
+    public void close() {
+        outbox.close();
+        try {
+            emitter.complete();
+        } catch (Exception e) {
+            log.debug("Completing SSE connection {} failed: {}", id, e.getMessage());
+        }
+    }
+
+    private boolean enqueue(SseEmitter.SseEventBuilder event) {
+        if (outbox.isClosed()) {
+            return false;
+        }
+        if (!outbox.offer(event)) {
+            log.warn("Evicting slow SSE connection {} of user {}: send buffer full", id, username);
+            close();
+            return false;
+        }
+        return true;
+    }
+}
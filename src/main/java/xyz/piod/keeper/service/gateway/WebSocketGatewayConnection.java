@@ -0,0 +1,77 @@
+package xyz.piod.keeper.service.gateway;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+@Slf4j
+public class WebSocketGatewayConnection implements GatewayConnection {
+
+    private final WebSocketSession session;
+    @Getter
+    private final Long userId;
+    @Getter
+    private final String username;
+    @Getter
+    private final Set<String> topics = ConcurrentHashMap.newKeySet();
+    @Getter
+    private volatile long lastSeen = System.currentTimeMillis();
+
+    private final SendQueue<WebSocketMessage<?>> outbox;
+
+    public WebSocketGatewayConnection(WebSocketSession session, Long userId, String username,
+                                      int sendTimeLimit, int sendBufferSizeLimit, int queueSize, Executor executor) {
+        this.session = new ConcurrentWebSocketSessionDecorator(session, sendTimeLimit, sendBufferSizeLimit,
+                ConcurrentWebSocketSessionDecorator.OverflowStrategy.TERMINATE);
+        this.userId = userId;
+        this.username = username;
+        this.outbox = new SendQueue<>(queueSize, executor, this.session::sendMessage, this::close);
+    }
+
+    @Override
+    public String getId() {
+        return session.getId();
+    }
+
+    @Override
+    public void markSeen() {
+        lastSeen = System.currentTimeMillis();
+    }
+
+    @Override
+    public boolean send(String frame) {
+        if (!session.isOpen()) {
+            return false;
+        }
+        if (!outbox.offer(new TextMessage(frame))) {
+            log.warn("Evicting slow websocket connection {} of user {}: send buffer full", getId(), username);
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void ping() {
+        outbox.offer(new PingMessage());
+    }
+
+    @Override
+    public void close() {
+        outbox.close();
+        try {
+            session.close(CloseStatus.SESSION_NOT_RELIABLE);
+        } catch (IOException e) {
+            log.debug("Closing websocket connection {} failed: {}", getId(), e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package xyz.piod.keeper.service.importer;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Runs a one-off history import when started with {@code --spring.profiles.active=import
+ * --keeper.import.file=<path> --keeper.import.room-id=<id> --keeper.import.user-map=<path>}, then exits.
+ * The user map is a JSON object from export sender names to existing keeper usernames; unmapped
+ * senders get placeholder accounts.
+ */
+@Component
+@Profile("import")
+@Order(Ordered.LOWEST_PRECEDENCE)
+@RequiredArgsConstructor
+@Slf4j
+public class HistoryImportRunner implements ApplicationRunner {
+
+    private static final String FILE_OPTION = "keeper.import.file";
+    private static final String ROOM_OPTION = "keeper.import.room-id";
+    private static final String USER_MAP_OPTION = "keeper.import.user-map";
+
+    private final HistoryImportService importService;
+    private final ConfigurableApplicationContext context;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        int exitCode;
+        try {
+            Path file = Path.of(single(args, FILE_OPTION));
+            Long roomId = Long.valueOf(single(args, ROOM_OPTION));
+            Path userMap = Path.of(single(args, USER_MAP_OPTION));
+            for (Path input : List.of(file, userMap)) {
+                if (!Files.isReadable(input)) {
+                    throw new IllegalArgumentException("Cannot read import file " + input);
+                }
+            }
+            HistoryImportService.ImportSummary summary = importService.importRoom(roomId, file, userMap);
+            log.info("History import finished: {}", summary);
+            exitCode = 0;
+        } catch (Exception e) {
+            log.error("History import failed: {}", e.getMessage(), e);
+            exitCode = 1;
+        }
+        int code = exitCode;
+        System.exit(SpringApplication.exit(context, () -> code));
+    }
+
+    private static String single(ApplicationArguments args, String option) {
+        List<String> values = args.getOptionValues(option);
+        if (values == null || values.size() != 1 || values.get(0).isBlank()) {
+            throw new IllegalArgumentException("Expected exactly one --" + option + " value");
+        }
+        return values.get(0);
+    }
+}
@@ -0,0 +1,461 @@
+package xyz.piod.keeper.service.importer;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import xyz.piod.keeper.entity.AuthProvider;
+import xyz.piod.keeper.entity.User;
+import xyz.piod.keeper.exception.ResourceNotFoundException;
+import xyz.piod.keeper.repository.ChatRoomRepository;
+import xyz.piod.keeper.repository.UserRepository;
+import xyz.piod.keeper.service.RoomMembershipService;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Bulk-loads an exported history into a room. Imported messages get ids below anything posted
+ * afterwards, so rooms must be empty: ids and timestamps then agree, which history paging,
+ * archiving and export rely on.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class HistoryImportService {
+
+    private static final String ROOM_HAS_HISTORY_SQL = """
+            SELECT EXISTS (SELECT 1 FROM messages WHERE chatroom_id = ?)
+                OR EXISTS (SELECT 1 FROM archived_segments WHERE chatroom_id = ?)
+            """;
+    private static final String LOCK_MESSAGES_SQL = "LOCK TABLE messages IN SHARE ROW EXCLUSIVE MODE";
+    private static final String ALLOCATE_IDS_SQL = """
+            SELECT setval(pg_get_serial_sequence('messages', 'id'), nextval(pg_get_serial_sequence('messages', 'id')) + ? - 1)
+            """;
+    private static final String COPY_MESSAGES_SQL = """
+            COPY messages (id, chatroom_id, sender_id, content, replied_to_id, edited, is_pinned, link_preview_url, timestamp)
+            FROM STDIN WITH (FORMAT csv)
+            """;
+    private static final String COPY_REACTIONS_SQL =
+            "COPY reactions (message_id, user_id, emoji, created_at) FROM STDIN WITH (FORMAT csv)";
+    private static final String REPLY_SNIPPETS_SQL = """
+            UPDATE messages r
+            SET reply_sender_username = u.username,
+                reply_snippet = CASE WHEN char_length(p.content) > ? THEN left(p.content, ?) || '…' ELSE p.content END
+            FROM messages p JOIN users u ON u.id = p.sender_id
+            WHERE r.id BETWEEN ? AND ? AND r.replied_to_id = p.id
+            """;
+    private static final String REPLY_COUNTS_SQL = """
+            UPDATE messages p SET reply_count = c.replies
+            FROM (
+                SELECT replied_to_id, count(*) AS replies FROM messages
+                WHERE id BETWEEN ? AND ? AND replied_to_id IS NOT NULL GROUP BY replied_to_id
+            ) c
+            WHERE p.id BETWEEN ? AND ? AND p.id = c.replied_to_id
+            """;
+    private static final String IMPORTED_EMAIL_DOMAIN = "@imported.invalid";
+    private static final int MAX_REPORTED_PROBLEMS = 10;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final UserRepository userRepository;
+    private final ChatRoomRepository chatRoomRepository;
+    private final RoomMembershipService membershipService;
+
+    @Value("${keeper.import.user-batch-size}")
+    private int userBatchSize;
+
+    @Value("${keeper.import.copy-buffer-size}")
+    private int copyBufferSize;
+
+    @Value("${keeper.import.progress-interval}")
+    private long progressInterval;
+
+    @Value("${keeper.messages.reply-snippet-length}")
+    private int replySnippetLength;
+
+    public record ImportSummary(long messages, long reactions, int users, long skipped, long unresolvedReplies, long millis) {}
+
+    private record Scan(Set<String> users, Set<String> repliedTo, long messages, long skipped) {}
+
+    public ImportSummary importRoom(Long roomId, Path file, Path userMapFile) throws IOException {
+        chatRoomRepository.findById(roomId)
+                .orElseThrow(() -> new ResourceNotFoundException("Chat room not found with id: " + roomId));
+        requireEmpty(roomId);
+        long started = System.currentTimeMillis();
+        ObjectReader reader = objectMapper.readerFor(ImportedMessage.class);
+        Map<String, String> userMap = readUserMap(userMapFile);
+
+        Scan scan = scan(file, reader);
+        if (scan.messages() == 0) {
+            log.warn("Nothing to import from {}", file);
+            return new ImportSummary(0, 0, 0, scan.skipped(), 0, System.currentTimeMillis() - started);
+        }
+        log.info("Scanned {}: {} messages from {} users, {} lines skipped",
+                file, scan.messages(), scan.users().size(), scan.skipped());
+
+        long firstId = allocateIds(roomId, scan.messages());
+        Map<String, Long> userIds = resolveUsers(scan.users(), userMap);
+        long lastId = firstId + scan.messages() - 1;
+        log.info("Mapped {} users and reserved message ids {}..{}", userIds.size(), firstId, lastId);
+
+        Path reactionsFile = Files.createTempFile("keeper-import-reactions-", ".csv");
+        try {
+            long[] counts = transactionTemplate.execute(status -> {
+                long[] copied = jdbcTemplate.execute((ConnectionCallback<long[]>) connection -> {
+                    CopyManager copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+                    try {
+                        long[] rows = copyMessages(copyManager, file, reader, roomId, firstId, userIds, scan.repliedTo(), reactionsFile, started);
+                        try (BufferedReader reactions = Files.newBufferedReader(reactionsFile, StandardCharsets.UTF_8)) {
+                            rows[1] = copyManager.copyIn(COPY_REACTIONS_SQL, reactions);
+                        }
+                        return rows;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                jdbcTemplate.update(REPLY_SNIPPETS_SQL, replySnippetLength, replySnippetLength, firstId, lastId);
+                jdbcTemplate.update(REPLY_COUNTS_SQL, firstId, lastId, firstId, lastId);
+                return copied;
+            });
+
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.queryForList("SELECT max(timestamp) FROM messages WHERE id BETWEEN ? AND ?",
+                                LocalDateTime.class, firstId, lastId)
+                        .stream().findFirst()
+                        .ifPresent(newest -> chatRoomRepository.touchLastActivity(roomId, newest));
+                userIds.values().forEach(userId -> membershipService.addMember(roomId, userId));
+            });
+
+            long millis = Math.max(System.currentTimeMillis() - started, 1);
+            ImportSummary summary = new ImportSummary(counts[0], counts[1], userIds.size(), scan.skipped(), counts[2], millis);
+            log.info("Imported {} messages and {} reactions into room #{} in {} ms ({} rows/s); {} replies left unresolved",
+                    summary.messages(), summary.reactions(), roomId, millis,
+                    (summary.messages() + summary.reactions()) * 1000 / millis, summary.unresolvedReplies());
+            return summary;
+        } finally {
+            Files.deleteIfExists(reactionsFile);
+        }
+    }
+
+    private Scan scan(Path file, ObjectReader reader) throws IOException {
+        Set<String> users = new LinkedHashSet<>();
+        Set<String> repliedTo = new HashSet<>();
+        long messages = 0;
+        long skipped = 0;
+        LocalDateTime previous = null;
+        try (BufferedReader lines = open(file)) {
+            String line;
+            long lineNumber = 0;
+            while ((line = lines.readLine()) != null) {
+                lineNumber++;
+                ImportedMessage message = parse(reader, line, lineNumber, skipped < MAX_REPORTED_PROBLEMS);
+                if (message == null) {
+                    skipped += line.isBlank() ? 0 : 1;
+                    continue;
+                }
+                // ids are assigned in file order and must not disagree with timestamps
+                LocalDateTime timestamp = parseTimestamp(message.timestamp());
+                if (previous != null && timestamp.isBefore(previous)) {
+                    throw new IllegalArgumentException("Line " + lineNumber
+                            + " is older than the line before it; the import file must be sorted by timestamp");
+                }
+                previous = timestamp;
+                users.add(message.sender());
+                if (message.reactions() != null) {
+                    message.reactions().stream()
+                            .map(ImportedMessage.Reaction::username)
+                            .filter(username -> username != null)
+                            .forEach(users::add);
+                }
+                if (message.repliedToId() != null) {
+                    repliedTo.add(message.repliedToId());
+                }
+                messages++;
+            }
+        }
+        return new Scan(users, repliedTo, messages, skipped);
+    }
+
+    private long[] copyMessages(CopyManager copyManager, Path file, ObjectReader reader, Long roomId, long firstId,
+                                Map<String, Long> userIds, Set<String> repliedTo, Path reactionsFile, long started)
+            throws IOException, SQLException {
+        Map<String, Long> replyTargets = new HashMap<>();
+        StringBuilder rows = new StringBuilder(copyBufferSize + 4096);
+        long ordinal = 0;
+        long unresolvedReplies = 0;
+        CopyIn copy = copyManager.copyIn(COPY_MESSAGES_SQL);
+        try (BufferedReader lines = open(file);
+             BufferedWriter reactions = Files.newBufferedWriter(reactionsFile, StandardCharsets.UTF_8)) {
+            String line;
+            long lineNumber = 0;
+            while ((line = lines.readLine()) != null) {
+                lineNumber++;
+                ImportedMessage message = parse(reader, line, lineNumber, false);
+                if (message == null) {
+                    continue;
+                }
+
+                long id = firstId + ordinal++;
+                if (repliedTo.contains(message.id())) {
+                    replyTargets.put(message.id(), id);
+                }
+                Long replyId = null;
+                if (message.repliedToId() != null) {
+                    replyId = replyTargets.get(message.repliedToId());
+                    if (replyId == null) {
+                        unresolvedReplies++;
+                    }
+                }
+                LocalDateTime timestamp = parseTimestamp(message.timestamp());
+
+                rows.append(id).append(',').append(roomId).append(',').append(userIds.get(message.sender())).append(',');
+                appendCsv(rows, message.content());
+                rows.append(',');
+                if (replyId != null) {
+                    rows.append(replyId);
+                }
+                rows.append(',').append(message.edited()).append(',').append(message.pinned()).append(',');
+                appendCsv(rows, message.linkPreviewUrl());
+                rows.append(',').append(timestamp).append('\n');
+
+                if (message.reactions() != null) {
+                    for (ImportedMessage.Reaction reaction : message.reactions()) {
+                        if (reaction.username() == null || reaction.emoji() == null || reaction.emoji().codePointCount(0, reaction.emoji().length()) > 8) {
+                            continue;
+                        }
+                        StringBuilder row = new StringBuilder(64);
+                        row.append(id).append(',').append(userIds.get(reaction.username())).append(',');
+                        appendCsv(row, reaction.emoji());
+                        row.append(',').append(timestamp).append('\n');
+                        reactions.write(row.toString());
+                    }
+                }
+
+                if (rows.length() >= copyBufferSize) {
+                    flush(copy, rows);
+                }
+                if (ordinal % progressInterval == 0) {
+                    long elapsed = Math.max(System.currentTimeMillis() - started, 1);
+                    log.info("Imported {} messages so far ({} rows/s)", ordinal, ordinal * 1000 / elapsed);
+                }
+            }
+            flush(copy, rows);
+        } catch (IOException | SQLException | RuntimeException e) {
+            if (copy.isActive()) {
+                copy.cancelCopy();
+            }
+            throw e;
+        }
+        return new long[]{copy.endCopy(), 0, unresolvedReplies};
+    }
+
+    private void requireEmpty(Long roomId) {
+        if (Boolean.TRUE.equals(jdbcTemplate.queryForObject(ROOM_HAS_HISTORY_SQL, Boolean.class, roomId, roomId))) {
+            throw new IllegalStateException("Room #" + roomId + " already has messages; history can only be imported into an empty room");
+        }
+    }
+
+    private Map<String, String> readUserMap(Path file) throws IOException {
+        Map<String, String> userMap = objectMapper.readValue(file.toFile(), new TypeReference<LinkedHashMap<String, String>>() {});
+        userMap.forEach((sender, username) -> {
+            if (username == null || username.isBlank()) {
+                throw new IllegalArgumentException("User map entry for '" + sender + "' has no username");
+            }
+        });
+        return userMap;
+    }
+
+    /**
+     * Senders listed in the user map become the existing accounts they name; everyone else gets a
+     * placeholder account that cannot sign in.
+     */
+    Map<String, Long> resolveUsers(Set<String> senders, Map<String, String> userMap) {
+        List<String> mapped = senders.stream().filter(userMap::containsKey).toList();
+        List<String> unmapped = senders.stream().filter(sender -> !userMap.containsKey(sender)).toList();
+
+        Map<String, Long> userIds = new HashMap<>();
+        for (int from = 0; from < mapped.size(); from += userBatchSize) {
+            List<String> batch = mapped.subList(from, Math.min(from + userBatchSize, mapped.size()));
+            Map<String, Long> byUsername = userRepository.findByUsernameIn(batch.stream().map(userMap::get).toList())
+                    .stream().collect(Collectors.toMap(User::getUsername, User::getId));
+            List<String> unknown = batch.stream().map(userMap::get).filter(username -> !byUsername.containsKey(username)).toList();
+            if (!unknown.isEmpty()) {
+                throw new IllegalArgumentException("User map names unknown accounts: " + unknown);
+            }
+            batch.forEach(sender -> userIds.put(sender, byUsername.get(userMap.get(sender))));
+        }
+
+        for (int from = 0; from < unmapped.size(); from += userBatchSize) {
+            List<String> batch = unmapped.subList(from, Math.min(from + userBatchSize, unmapped.size()));
+            transactionTemplate.executeWithoutResult(status -> {
+                List<String> usernames = uniqueUsernames(batch.stream().map(HistoryImportService::baseUsername).toList());
+                List<String> publicIds = new ArrayList<>(uniquePublicIds(batch.size()));
+                List<User> created = new ArrayList<>(batch.size());
+                for (int i = 0; i < batch.size(); i++) {
+                    User user = new User();
+                    user.setPublicId(publicIds.get(i));
+                    user.setUsername(usernames.get(i));
+                    user.setEmail(user.getPublicId() + IMPORTED_EMAIL_DOMAIN);
+                    user.setAuthProvider(AuthProvider.LOCAL);
+                    created.add(user);
+                }
+                List<User> saved = userRepository.saveAll(created);
+                for (int i = 0; i < batch.size(); i++) {
+                    userIds.put(batch.get(i), saved.get(i).getId());
+                }
+            });
+        }
+        return userIds;
+    }
+
+    private long allocateIds(Long roomId, long count) {
+        Long last = transactionTemplate.execute(status -> {
+            jdbcTemplate.execute(LOCK_MESSAGES_SQL);
+            requireEmpty(roomId);
+            return jdbcTemplate.queryForObject(ALLOCATE_IDS_SQL, Long.class, count);
+        });
+        return last - count + 1;
+    }
+
+    private ImportedMessage parse(ObjectReader reader, String line, long lineNumber, boolean report) {
+        if (line.isBlank()) {
+            return null;
+        }
+        try {
+            ImportedMessage message = reader.readValue(line);
+            if (message.id() == null || message.sender() == null || message.content() == null || message.timestamp() == null) {
+                if (report) {
+                    log.warn("Skipping line {}: id, sender, content and timestamp are required", lineNumber);
+                }
+                return null;
+            }
+            parseTimestamp(message.timestamp());
+            return message;
+        } catch (IOException | DateTimeParseException e) {
+            if (report) {
+                log.warn("Skipping malformed line {}: {}", lineNumber, e.getMessage());
+            }
+            return null;
+        }
+    }
+
+    private static LocalDateTime parseTimestamp(String value) {
+        try {
+            return LocalDateTime.parse(value);
+        } catch (DateTimeParseException e) {
+            return OffsetDateTime.parse(value).atZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime();
+        }
+    }
+
+    private static BufferedReader open(Path file) throws IOException {
+        InputStream in = Files.newInputStream(file);
+        if (file.getFileName().toString().endsWith(".gz")) {
+            in = new GZIPInputStream(in, 65536);
+        }
+        return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 65536);
+    }
+
+    private static void flush(CopyIn copy, StringBuilder rows) throws SQLException {
+        if (rows.isEmpty()) {
+            return;
+        }
+        byte[] bytes = rows.toString().getBytes(StandardCharsets.UTF_8);
+        copy.writeToCopy(bytes, 0, bytes.length);
+        rows.setLength(0);
+    }
+
+    private static void appendCsv(StringBuilder row, String value) {
+        if (value != null) {
+            row.append('"').append(value.replace("\"", "\"\"")).append('"');
+        }
+    }
+
+    private static String baseUsername(String externalName) {
+        String sanitized = externalName.replaceAll("[^A-Za-z0-9_.-]", "");
+        if (sanitized.isEmpty()) {
+            sanitized = "imported";
+        }
+        return sanitized.length() > 15 ? sanitized.substring(0, 15) : sanitized;
+    }
+
+    // one lookup per round; collisions retry with a random suffix
+    private List<String> uniqueUsernames(List<String> bases) {
+        String[] usernames = new String[bases.size()];
+        Set<String> assigned = new HashSet<>();
+        List<Integer> pending = new ArrayList<>();
+        for (int i = 0; i < bases.size(); i++) {
+            pending.add(i);
+        }
+        boolean suffixed = false;
+        while (!pending.isEmpty()) {
+            Map<Integer, String> candidates = new LinkedHashMap<>();
+            for (int i : pending) {
+                candidates.put(i, suffixed ? withSuffix(bases.get(i)) : bases.get(i));
+            }
+            Set<String> taken = new HashSet<>(userRepository.findExistingUsernames(new HashSet<>(candidates.values())));
+            List<Integer> retry = new ArrayList<>();
+            candidates.forEach((i, candidate) -> {
+                if (taken.contains(candidate) || !assigned.add(candidate)) {
+                    retry.add(i);
+                } else {
+                    usernames[i] = candidate;
+                }
+            });
+            pending = retry;
+            suffixed = true;
+        }
+        return List.of(usernames);
+    }
+
+    private static String withSuffix(String base) {
+        String suffix = String.valueOf(ThreadLocalRandom.current().nextInt(1000, 10000));
+        return (base.length() > 15 - suffix.length() ? base.substring(0, 15 - suffix.length()) : base) + suffix;
+    }
+
+    private Set<String> uniquePublicIds(int count) {
+        Set<String> publicIds = new LinkedHashSet<>();
+        while (publicIds.size() < count) {
+            Set<String> candidates = new HashSet<>();
+            while (candidates.size() < count - publicIds.size()) {
+                candidates.add(System.currentTimeMillis() + String.valueOf(ThreadLocalRandom.current().nextInt(1000, 10000)));
+            }
+            candidates.removeAll(userRepository.findExistingPublicIds(candidates));
+            publicIds.addAll(candidates);
+        }
+        return publicIds;
+    }
+}
@@ -0,0 +1,21 @@
+package xyz.piod.keeper.service.importer;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.util.List;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record ImportedMessage(
+        String id,
+        String timestamp,
+        String sender,
+        String content,
+        String repliedToId,
+        boolean edited,
+        boolean pinned,
+        String linkPreviewUrl,
+        List<Reaction> reactions
+) {
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Reaction(String emoji, String username) {}
+}
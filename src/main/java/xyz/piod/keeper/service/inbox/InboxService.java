@@ -0,0 +1,352 @@
+package xyz.piod.keeper.service.inbox;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import xyz.piod.keeper.dto.ChatRoomSummary;
+import xyz.piod.keeper.dto.InboxEntry;
+import xyz.piod.keeper.repository.ChatRoomParticipantRepository;
+import xyz.piod.keeper.repository.ChatRoomRepository;
+import xyz.piod.keeper.repository.MessageRepository;
+import xyz.piod.keeper.service.MessageDeletedEvent;
+import xyz.piod.keeper.service.MessageEditedEvent;
+import xyz.piod.keeper.service.MessagePostedEvent;
+import xyz.piod.keeper.service.RoomTombstonedEvent;
+import xyz.piod.keeper.service.membership.RoomMembershipIndex;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class InboxService {
+
+    private static final String INBOX_KEY_PREFIX = "inbox:";
+    private static final String LAST_MESSAGE_KEY_PREFIX = "inbox:room:";
+    private static final String LAST_MESSAGE_KEY_SUFFIX = ":last";
+    private static final String BUILT_KEY_SUFFIX = ":built";
+    private static final String FANOUT_GUARD_KEY_PREFIX = "inbox:fanout:";
+
+    private static final RedisScript<Long> WRITE_LAST_MESSAGE = new DefaultRedisScript<>("""
+            local current = redis.call('HGET', KEYS[1], 'id')
+            if current and tonumber(current) >= tonumber(ARGV[1]) then
+                return 0
+            end
+            redis.call('HSET', KEYS[1], 'id', ARGV[1], 'sender', ARGV[2], 'snippet', ARGV[3], 'at', ARGV[4])
+            return 1
+            """, Long.class);
+
+    private static final RedisScript<Long> REWRITE_SNIPPET = new DefaultRedisScript<>("""
+            if redis.call('HGET', KEYS[1], 'id') == ARGV[1] then
+                redis.call('HSET', KEYS[1], 'snippet', ARGV[2])
+                return 1
+            end
+            return 0
+            """, Long.class);
+
+    private static final RedisScript<Long> EVICT_LAST_MESSAGE = new DefaultRedisScript<>("""
+            if redis.call('HGET', KEYS[1], 'id') == ARGV[1] then
+                return redis.call('DEL', KEYS[1])
+            end
+            return 0
+            """, Long.class);
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final ChatRoomRepository chatRoomRepository;
+    private final ChatRoomParticipantRepository participantRepository;
+    private final MessageRepository messageRepository;
+    private final RoomMembershipIndex membershipIndex;
+    private final Map<Long, LocalDateTime> trailingFanouts = new ConcurrentHashMap<>();
+
+    @Value("${keeper.inbox.snippet-length}")
+    private int snippetLength;
+
+    @Value("${keeper.inbox.fanout-chunk-size}")
+    private int fanoutChunkSize;
+
+    @Value("${keeper.inbox.large-room-threshold}")
+    private int largeRoomThreshold;
+
+    @Value("${keeper.inbox.large-room-fanout-interval}")
+    private long largeRoomFanoutIntervalMillis;
+
+    @Value("${keeper.inbox.max-entries}")
+    private int maxEntries;
+
+    @Value("${keeper.inbox.page-max}")
+    private int pageMax;
+
+    @Async
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMessagePosted(MessagePostedEvent event) {
+        writeLastMessage(event.roomId(), event.messageId(), event.senderUsername(), event.content(), event.timestamp());
+
+        Integer memberCount = chatRoomRepository.findMemberCount(event.roomId());
+        if (memberCount != null && memberCount > largeRoomThreshold) {
+            if (!claimLargeRoomFanout(event.roomId())) {
+                // the burst's last message must still reach the inboxes once the interval has passed
+                trailingFanouts.merge(event.roomId(), event.timestamp(), InboxService::later);
+                return;
+            }
+            trailingFanouts.computeIfPresent(event.roomId(), (roomId, at) -> at.isAfter(event.timestamp()) ? at : null);
+        }
+
+        fanOut(event.roomId(), event.timestamp());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMessageEdited(MessageEditedEvent event) {
+        redisTemplate.execute(REWRITE_SNIPPET, List.of(lastMessageKey(event.roomId())),
+                event.messageId().toString(), snippet(event.content()));
+    }
+
+    // the next read reloads the room's newest remaining message from the database
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMessageDeleted(MessageDeletedEvent event) {
+        redisTemplate.execute(EVICT_LAST_MESSAGE, List.of(lastMessageKey(event.roomId())), event.messageId().toString());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onRoomTombstoned(RoomTombstonedEvent event) {
+        trailingFanouts.remove(event.roomId());
+        redisTemplate.delete(lastMessageKey(event.roomId()));
+    }
+
+    @Scheduled(fixedRateString = "${keeper.inbox.large-room-fanout-interval}")
+    public void flushTrailingFanouts() {
+        for (Long roomId : trailingFanouts.keySet()) {
+            if (!claimLargeRoomFanout(roomId)) {
+                continue;
+            }
+            LocalDateTime at = trailingFanouts.remove(roomId);
+            if (at != null) {
+                fanOut(roomId, at);
+            }
+        }
+    }
+
+    private void fanOut(Long roomId, LocalDateTime at) {
+        double score = toScore(at);
+        int[] memberIds = membershipIndex.memberIdsOf(roomId);
+        if (memberIds != null) {
+            // the index knows every member; hidden ones are skipped like findVisibleMemberIds does
+            Set<Long> hidden = memberIds.length == 0 ? Set.of() : Set.copyOf(participantRepository.findHiddenMemberIds(roomId));
+            for (int from = 0; from < memberIds.length; from += fanoutChunkSize) {
+                int to = Math.min(from + fanoutChunkSize, memberIds.length);
+                List<Long> userIds = Arrays.stream(memberIds, from, to).asLongStream().boxed()
+                        .filter(userId -> !hidden.contains(userId))
+                        .toList();
+                if (!userIds.isEmpty()) {
+                    touchAll(userIds, roomId, score);
+                }
+            }
+            return;
+        }
+
+        Long afterId = 0L;
+        while (true) {
+            List<Long> userIds = participantRepository.findVisibleMemberIds(
+                    roomId, afterId, PageRequest.of(0, fanoutChunkSize));
+            if (userIds.isEmpty()) {
+                return;
+            }
+
+            touchAll(userIds, roomId, score);
+
+            if (userIds.size() < fanoutChunkSize) {
+                return;
+            }
+            afterId = userIds.get(userIds.size() - 1);
+        }
+    }
+
+    public void touch(Long userId, Long roomId, LocalDateTime at) {
+        redisTemplate.opsForZSet().add(inboxKey(userId), roomId.toString(), toScore(at));
+    }
+
+    public void remove(Long userId, Long roomId) {
+        redisTemplate.opsForZSet().remove(inboxKey(userId), roomId.toString());
+    }
+
+    public Page<InboxEntry> getInbox(Long userId, int page, int size) {
+        String key = inboxKey(userId);
+        PageRequest pageRequest = PageRequest.of(page, Math.min(size, pageMax));
+
+        if (!Boolean.TRUE.equals(redisTemplate.hasKey(key + BUILT_KEY_SUFFIX))) {
+            rebuild(userId);
+        }
+
+        Long total = redisTemplate.opsForZSet().zCard(key);
+        if (total == null) {
+            total = 0L;
+        } else if (total > maxEntries) {
+            redisTemplate.opsForZSet().removeRange(key, 0, total - maxEntries - 1);
+            total = (long) maxEntries;
+        }
+        if (total == 0) {
+            return Page.empty(pageRequest);
+        }
+
+        // stale entries are pruned and the window re-read until it holds only live rooms, so removing them
+        // never shifts rooms of the next page in front of its offset
+        long start = pageRequest.getOffset();
+        List<Long> roomIds;
+        Map<Long, ChatRoomSummary> summaries;
+        while (true) {
+            Set<String> members = redisTemplate.opsForZSet().reverseRange(key, start, start + pageRequest.getPageSize() - 1);
+            if (members == null || members.isEmpty()) {
+                return new PageImpl<>(List.of(), pageRequest, total);
+            }
+
+            roomIds = members.stream().map(Long::valueOf).toList();
+            Map<Long, ChatRoomSummary> found = chatRoomRepository.findRoomSummariesByIds(userId, roomIds).stream()
+                    .collect(Collectors.toMap(ChatRoomSummary::id, Function.identity()));
+            summaries = found;
+
+            List<String> stale = roomIds.stream()
+                    .filter(roomId -> !found.containsKey(roomId))
+                    .map(String::valueOf)
+                    .toList();
+            if (stale.isEmpty()) {
+                break;
+            }
+            redisTemplate.opsForZSet().remove(key, stale.toArray());
+            total -= stale.size();
+        }
+
+        Map<Long, InboxEntry.LastMessage> lastMessages = loadLastMessages(summaries.keySet());
+        List<InboxEntry> entries = new ArrayList<>(roomIds.size());
+        for (Long roomId : roomIds) {
+            entries.add(new InboxEntry(summaries.get(roomId), lastMessages.get(roomId)));
+        }
+        return new PageImpl<>(entries, pageRequest, total);
+    }
+
+    private void rebuild(Long userId) {
+        List<ChatRoomSummary> recent = chatRoomRepository.findRecentRoomSummaries(userId, PageRequest.of(0, maxEntries));
+        String key = inboxKey(userId);
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                recent.forEach(room -> operations.opsForZSet().add(key, room.id().toString(), toScore(room.lastActivityAt())));
+                operations.opsForValue().set(key + BUILT_KEY_SUFFIX, "1");
+                return null;
+            }
+        });
+        log.debug("Rebuilt inbox of user {} with {} rooms", userId, recent.size());
+    }
+
+    private void touchAll(Collection<Long> userIds, Long roomId, double score) {
+        String member = roomId.toString();
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                userIds.forEach(userId -> operations.opsForZSet().add(inboxKey(userId), member, score));
+                return null;
+            }
+        });
+    }
+
+    private boolean claimLargeRoomFanout(Long roomId) {
+        return Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(
+                FANOUT_GUARD_KEY_PREFIX + roomId, "1", Duration.ofMillis(largeRoomFanoutIntervalMillis)));
+    }
+
+    private Map<Long, InboxEntry.LastMessage> loadLastMessages(Collection<Long> roomIds) {
+        if (roomIds.isEmpty()) {
+            return Map.of();
+        }
+
+        List<Long> ordered = new ArrayList<>(roomIds);
+        List<Object> snapshots = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                ordered.forEach(roomId -> operations.opsForHash().entries(lastMessageKey(roomId)));
+                return null;
+            }
+        });
+
+        Map<Long, InboxEntry.LastMessage> lastMessages = new HashMap<>();
+        List<Long> missing = new ArrayList<>();
+        for (int i = 0; i < ordered.size(); i++) {
+            Map<?, ?> snapshot = (Map<?, ?>) snapshots.get(i);
+            if (snapshot == null || snapshot.isEmpty()) {
+                missing.add(ordered.get(i));
+            } else {
+                lastMessages.put(ordered.get(i), new InboxEntry.LastMessage(
+                        Long.valueOf((String) snapshot.get("id")),
+                        (String) snapshot.get("sender"),
+                        (String) snapshot.get("snippet"),
+                        LocalDateTime.parse((String) snapshot.get("at"))));
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            for (MessageRepository.LastMessage last : messageRepository.findLastMessages(missing)) {
+                InboxEntry.LastMessage lastMessage = writeLastMessage(last.getRoomId(), last.getMessageId(),
+                        last.getSenderUsername(), last.getContent(), last.getSentAt());
+                lastMessages.put(last.getRoomId(), lastMessage);
+            }
+        }
+        return lastMessages;
+    }
+
+    private InboxEntry.LastMessage writeLastMessage(Long roomId, Long messageId, String senderUsername,
+                                                    String content, LocalDateTime sentAt) {
+        String snippet = snippet(content);
+        redisTemplate.execute(WRITE_LAST_MESSAGE, List.of(lastMessageKey(roomId)),
+                messageId.toString(), senderUsername, snippet, sentAt.toString());
+        return new InboxEntry.LastMessage(messageId, senderUsername, snippet, sentAt);
+    }
+
+    private String snippet(String content) {
+        if (content == null) {
+            return "";
+        }
+        return content.length() > snippetLength ? content.substring(0, snippetLength) : content;
+    }
+
+    private static LocalDateTime later(LocalDateTime a, LocalDateTime b) {
+        return a.isAfter(b) ? a : b;
+    }
+
+    private static double toScore(LocalDateTime at) {
+        return at.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static String inboxKey(Long userId) {
+        return INBOX_KEY_PREFIX + userId;
+    }
+
+    private static String lastMessageKey(Long roomId) {
+        return LAST_MESSAGE_KEY_PREFIX + roomId + LAST_MESSAGE_KEY_SUFFIX;
+    }
+}
@@ -0,0 +1,361 @@
+package xyz.piod.keeper.service.membership;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.Limit;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import xyz.piod.keeper.repository.ChatRoomRepository;
+
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * In-process copy of chatroom_participants. Nodes share changes through a
+ * Redis stream that each node reads from its last applied entry, so a change
+ * missed while a node was busy or disconnected is replayed rather than lost;
+ * if the node's position has been trimmed away it rebuilds from the database.
+ * The index only answers "yes" on its own: a miss is checked against the
+ * database, so a join that has not reached this node yet is never refused.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class RoomMembershipIndex {
+
+    public static final String MEMBERSHIP_STREAM = "keeper-membership";
+
+    private static final String LOAD_SQL = "SELECT chatroom_id, user_id FROM chatroom_participants";
+    private static final RecordId STREAM_START = RecordId.of(0, 0);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final RedisTemplate<String, String> redisTemplate;
+    private final ChatRoomRepository chatRoomRepository;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${keeper.membership.index.enabled}")
+    private boolean enabled;
+
+    @Value("${keeper.membership.index.fetch-size}")
+    private int fetchSize;
+
+    @Value("${keeper.membership.index.poll-batch-size}")
+    private int pollBatchSize;
+
+    @Value("${keeper.membership.index.stream-max-length}")
+    private long streamMaxLength;
+
+    private final AtomicBoolean building = new AtomicBoolean();
+    private final List<Delta> pendingDuringBuild = new ArrayList<>();
+
+    private volatile Map<Integer, RoaringBitmap> membersByRoom = new ConcurrentHashMap<>();
+    private volatile Map<Integer, RoaringBitmap> roomsByUser = new ConcurrentHashMap<>();
+    private volatile RecordId lastApplied;
+    private volatile boolean ready;
+
+    enum Op { ADD, REMOVE, DROP_ROOM }
+
+    record Delta(Op op, int roomId, int userId) {}
+
+    @PostConstruct
+    void init() {
+        if (!enabled) {
+            return;
+        }
+        Gauge.builder("keeper.membership.index.rooms", this, index -> index.membersByRoom.size())
+                .description("Rooms held in the in-process membership index")
+                .register(meterRegistry);
+        Gauge.builder("keeper.membership.index.ready", this, index -> index.ready ? 1 : 0)
+                .register(meterRegistry);
+    }
+
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        rebuild();
+    }
+
+    @Scheduled(initialDelayString = "${keeper.membership.index.rebuild-interval}",
+            fixedDelayString = "${keeper.membership.index.rebuild-interval}")
+    public void rebuild() {
+        if (!enabled || !building.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long started = System.currentTimeMillis();
+            // changes committed after this point are replayed from the stream on top of the snapshot
+            RecordId position = newestStreamId();
+            Map<Integer, RoaringBitmap> rooms = new HashMap<>();
+            Map<Integer, RoaringBitmap> users = new HashMap<>();
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.query(connection -> {
+                PreparedStatement statement = connection.prepareStatement(LOAD_SQL);
+                statement.setFetchSize(fetchSize);
+                return statement;
+            }, rs -> {
+                int roomId = toKey(rs.getLong(1));
+                int userId = toKey(rs.getLong(2));
+                rooms.computeIfAbsent(roomId, id -> new RoaringBitmap()).add(userId);
+                users.computeIfAbsent(userId, id -> new RoaringBitmap()).add(roomId);
+            }));
+            rooms.values().forEach(RoaringBitmap::runOptimize);
+            users.values().forEach(RoaringBitmap::runOptimize);
+
+            synchronized (this) {
+                membersByRoom = new ConcurrentHashMap<>(rooms);
+                roomsByUser = new ConcurrentHashMap<>(users);
+                pendingDuringBuild.forEach(this::applyLocked);
+                pendingDuringBuild.clear();
+                lastApplied = position;
+                ready = true;
+            }
+            log.info("Built membership index for {} rooms and {} users in {} ms",
+                    rooms.size(), users.size(), System.currentTimeMillis() - started);
+        } catch (Exception e) {
+            ready = false;
+            log.error("Failed to build the membership index, falling back to database checks: {}", e.getMessage(), e);
+        } finally {
+            synchronized (this) {
+                pendingDuringBuild.clear();
+            }
+            building.set(false);
+        }
+        pollChanges();
+    }
+
+    @Scheduled(fixedDelayString = "${keeper.membership.index.poll-interval}")
+    public void pollChanges() {
+        if (!enabled || !ready || building.get()) {
+            return;
+        }
+        try {
+            RecordId from = lastApplied;
+            RecordId oldest = oldestStreamId();
+            if (oldest != null && !from.equals(STREAM_START) && isAfter(oldest, from)) {
+                log.warn("Membership changes after {} were trimmed before this node read them, rebuilding", from);
+                ready = false;
+                rebuild();
+                return;
+            }
+
+            List<MapRecord<String, Object, Object>> records;
+            do {
+                StreamOffset<String>[] offsets = offsets(StreamOffset.create(MEMBERSHIP_STREAM, ReadOffset.from(from)));
+                records = redisTemplate.opsForStream().read(StreamReadOptions.empty().count(pollBatchSize), offsets);
+                if (records == null) {
+                    return;
+                }
+                for (MapRecord<String, Object, Object> record : records) {
+                    applyRecord(record);
+                    from = record.getId();
+                }
+                synchronized (this) {
+                    if (lastApplied != null && isAfter(from, lastApplied)) {
+                        lastApplied = from;
+                    }
+                }
+            } while (records.size() == pollBatchSize);
+        } catch (Exception e) {
+            log.error("Error reading membership changes: {}", e.getMessage());
+        }
+    }
+
+    @SafeVarargs
+    private static StreamOffset<String>[] offsets(StreamOffset<String>... offsets) {
+        return offsets;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public boolean isMember(Long roomId, Long userId) {
+        return containsMember(roomId, userId) || chatRoomRepository.isUserParticipant(roomId, userId);
+    }
+
+    /**
+     * Answers from the index alone; {@code false} means "not known here", not "not a member".
+     */
+    public boolean containsMember(Long roomId, Long userId) {
+        if (!ready || !indexable(roomId) || !indexable(userId)) {
+            return false;
+        }
+        RoaringBitmap members = membersByRoom.get(toKey(roomId));
+        return members != null && members.contains(toKey(userId));
+    }
+
+    public List<Long> roomIdsOf(Long userId) {
+        if (!ready || !indexable(userId)) {
+            return chatRoomRepository.findAllRoomIdsByParticipantId(userId);
+        }
+        RoaringBitmap rooms = roomsByUser.get(toKey(userId));
+        return rooms == null ? List.of() : rooms.stream().mapToLong(id -> id).boxed().toList();
+    }
+
+    public int[] memberIdsOf(Long roomId) {
+        if (!ready || !indexable(roomId)) {
+            return null;
+        }
+        RoaringBitmap members = membersByRoom.get(toKey(roomId));
+        return members == null ? new int[0] : members.toArray();
+    }
+
+    public void added(Long roomId, Long userId) {
+        afterCommit(Op.ADD, roomId, userId);
+    }
+
+    public void removed(Long roomId, Long userId) {
+        afterCommit(Op.REMOVE, roomId, userId);
+    }
+
+    public void roomDropped(Long roomId) {
+        afterCommit(Op.DROP_ROOM, roomId, 0L);
+    }
+
+    private void afterCommit(Op op, Long roomId, Long userId) {
+        if (!enabled) {
+            return;
+        }
+        if (!indexable(roomId) || !indexable(userId)) {
+            ready = false;
+            log.error("Membership change for room #{} and user #{} is outside the index's 32-bit id range; "
+                    + "falling back to database checks", roomId, userId);
+            return;
+        }
+        Delta delta = new Delta(op, toKey(roomId), toKey(userId));
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    applyAndPublish(delta);
+                }
+            });
+        } else {
+            applyAndPublish(delta);
+        }
+    }
+
+    private void applyAndPublish(Delta delta) {
+        apply(delta);
+        try {
+            redisTemplate.opsForStream().add(StreamRecords.string(Map.of(
+                    "op", delta.op().name(),
+                    "room", Integer.toString(delta.roomId()),
+                    "user", Integer.toString(delta.userId()))).withStreamKey(MEMBERSHIP_STREAM));
+            redisTemplate.opsForStream().trim(MEMBERSHIP_STREAM, streamMaxLength, true);
+        } catch (Exception e) {
+            log.error("Error publishing membership change for room #{}; other nodes pick it up on their next rebuild: {}",
+                    delta.roomId(), e.getMessage());
+        }
+    }
+
+    private void applyRecord(MapRecord<String, Object, Object> record) {
+        Map<Object, Object> fields = record.getValue();
+        try {
+            apply(new Delta(Op.valueOf((String) fields.get("op")),
+                    Integer.parseInt((String) fields.get("room")), Integer.parseInt((String) fields.get("user"))));
+        } catch (RuntimeException e) {
+            log.warn("Ignoring malformed membership change {}: {}", record.getId(), e.getMessage());
+        }
+    }
+
+    synchronized void apply(Delta delta) {
+        if (building.get()) {
+            pendingDuringBuild.add(delta);
+        }
+        applyLocked(delta);
+    }
+
+    private void applyLocked(Delta delta) {
+        switch (delta.op()) {
+            case ADD -> {
+                membersByRoom.compute(delta.roomId(), (id, members) -> with(members, delta.userId()));
+                roomsByUser.compute(delta.userId(), (id, rooms) -> with(rooms, delta.roomId()));
+            }
+            case REMOVE -> {
+                membersByRoom.computeIfPresent(delta.roomId(), (id, members) -> without(members, delta.userId()));
+                roomsByUser.computeIfPresent(delta.userId(), (id, rooms) -> without(rooms, delta.roomId()));
+            }
+            case DROP_ROOM -> {
+                RoaringBitmap members = membersByRoom.remove(delta.roomId());
+                if (members != null) {
+                    members.forEach((int userId) ->
+                            roomsByUser.computeIfPresent(userId, (id, rooms) -> without(rooms, delta.roomId())));
+                }
+            }
+        }
+    }
+
+    private RecordId newestStreamId() {
+        List<MapRecord<String, Object, Object>> newest = redisTemplate.opsForStream()
+                .reverseRange(MEMBERSHIP_STREAM, Range.unbounded(), Limit.limit().count(1));
+        return newest == null || newest.isEmpty() ? STREAM_START : newest.get(0).getId();
+    }
+
+    private RecordId oldestStreamId() {
+        List<MapRecord<String, Object, Object>> oldest = redisTemplate.opsForStream()
+                .range(MEMBERSHIP_STREAM, Range.unbounded(), Limit.limit().count(1));
+        return oldest == null || oldest.isEmpty() ? null : oldest.get(0).getId();
+    }
+
+    private static boolean isAfter(RecordId a, RecordId b) {
+        int byTime = Long.compare(a.getTimestamp(), b.getTimestamp());
+        return byTime != 0 ? byTime > 0 : a.getSequence() > b.getSequence();
+    }
+
+    private static RoaringBitmap with(RoaringBitmap bitmap, int value) {
+        if (bitmap != null && bitmap.contains(value)) {
+            return bitmap;
+        }
+        RoaringBitmap copy = bitmap == null ? new RoaringBitmap() : bitmap.clone();
+        copy.add(value);
+        return copy;
+    }
+
+    private static RoaringBitmap without(RoaringBitmap bitmap, int value) {
+        if (!bitmap.contains(value)) {
+            return bitmap;
+        }
+        RoaringBitmap copy = bitmap.clone();
+        copy.remove(value);
+        return copy.isEmpty() ? null : copy;
+    }
+
+    private static boolean indexable(long id) {
+        return id >= 0 && id <= Integer.MAX_VALUE;
+    }
+
+    // ids are stored as unsigned 32-bit bitmap entries; larger ids must not be truncated into someone else's slot
+    private static int toKey(long id) {
+        if (!indexable(id)) {
+            throw new IllegalStateException("Id " + id + " does not fit the membership index; "
+                    + "disable keeper.membership.index.enabled");
+        }
+        return (int) id;
+    }
+}
@@ -0,0 +1,311 @@
+package xyz.piod.keeper.service.partition;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import xyz.piod.keeper.service.AdvisoryLocks;
+
+import java.sql.Array;
+import java.sql.PreparedStatement;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class MessagePartitionService {
+
+    public static final String PARTITION_PREFIX = "messages_p";
+    public static final String ARCHIVE_PREFIX = "messages_archived_p";
+
+    private static final String MAINTENANCE_LOCK = "keeper.messages.partitioning";
+    private static final String LEGACY_PARTITION = PARTITION_PREFIX + "_legacy";
+    private static final String LEGACY_BOUND = LEGACY_PARTITION + "_bound";
+    private static final String LEGACY_KEY = LEGACY_PARTITION + "_id_timestamp_key";
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyy_MM");
+    private static final Pattern UPPER_BOUND = Pattern.compile("TO \\('(\\d{4}-\\d{2}-\\d{2})");
+
+    private static final String IS_PARTITIONED_SQL =
+            "SELECT relkind = 'p' FROM pg_class WHERE oid = to_regclass('messages')";
+    private static final String PARTITIONS_SQL = """
+            SELECT c.relname, pg_get_expr(c.relpartbound, c.oid)
+            FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid
+            WHERE i.inhparent = 'messages'::regclass AND NOT i.inhdetachpending
+            """;
+    private static final String DETACH_PENDING_SQL = """
+            SELECT c.relname
+            FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid
+            WHERE i.inhparent = 'messages'::regclass AND i.inhdetachpending
+            """;
+    private static final String DETACHED_PARTITIONS_SQL = """
+            SELECT relname FROM pg_class
+            WHERE relkind = 'r' AND NOT relispartition AND pg_table_is_visible(oid) AND relname LIKE 'messages\\_p%'
+            """;
+    private static final String INCOMING_FOREIGN_KEYS_SQL =
+            "SELECT conrelid::regclass::text, conname FROM pg_constraint WHERE contype = 'f' AND confrelid = 'messages'::regclass";
+    private static final String OUTGOING_FOREIGN_KEYS_SQL =
+            "SELECT conname, pg_get_constraintdef(oid) FROM pg_constraint WHERE contype = 'f' AND conrelid = ?::regclass";
+    private static final String LEGACY_INDEXES_SQL =
+            "SELECT indexname FROM pg_indexes WHERE schemaname = current_schema() AND tablename = ? AND indexname LIKE 'idx\\_messages\\_%'";
+    private static final String HAS_FOREIGN_KEY_SQL =
+            "SELECT count(*) > 0 FROM pg_constraint WHERE contype = 'f' AND conrelid = ?::regclass AND confrelid = 'messages'::regclass";
+    private static final String INVALID_INDEX_SQL = """
+            SELECT count(*) > 0 FROM pg_index i JOIN pg_class c ON c.oid = i.indexrelid
+            WHERE c.relname = ? AND pg_table_is_visible(c.oid) AND NOT i.indisvalid
+            """;
+    // the parent's indexes; each is built on the legacy table beforehand so ATTACH adopts it instead of building it
+    private static final Map<String, String> PARTITION_INDEXES = Map.of(
+            "idx_messages_chatroom_id_id", "chatroom_id, id",
+            "idx_messages_chatroom_id_timestamp", "chatroom_id, timestamp",
+            "idx_messages_replied_to_id_id", "replied_to_id, id");
+    private static final Map<String, String> MESSAGE_FOREIGN_KEYS = Map.of(
+            "reactions", "fk_reactions_message_id",
+            "message_read_receipts", "fk_message_read_receipts_message_id");
+    private static final String DETACH_REPLIES_SQL =
+            "UPDATE messages SET replied_to_id = NULL, reply_sender_username = NULL, reply_snippet = NULL WHERE replied_to_id = ANY(?)";
+    private static final String DELETE_REACTIONS_SQL = "DELETE FROM reactions WHERE message_id = ANY(?)";
+    private static final String DELETE_RECEIPTS_SQL = "DELETE FROM message_read_receipts WHERE message_id = ANY(?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${keeper.messages.partitioning.enabled}")
+    private boolean enabled;
+
+    @Value("${keeper.messages.partitioning.months-ahead}")
+    private int monthsAhead;
+
+    @Value("${keeper.messages.partitioning.retention-months}")
+    private int retentionMonths;
+
+    @Value("${keeper.messages.partitioning.cleanup-batch-size}")
+    private int cleanupBatchSize;
+
+    @Scheduled(fixedDelayString = "${keeper.messages.partitioning.maintenance-interval}")
+    public void maintain() {
+        try {
+            if (!AdvisoryLocks.runExclusively(jdbcTemplate, MAINTENANCE_LOCK, this::maintainLocked)) {
+                log.debug("Skipping message partition maintenance: another node is running it");
+            }
+        } catch (Exception e) {
+            log.error("Message partition maintenance failed: {}", e.getMessage(), e);
+        }
+    }
+
+    private void maintainLocked() {
+        if (!isPartitioned()) {
+            if (!enabled) {
+                ensureForeignKeys();
+                return;
+            }
+            convert();
+        } else if (!enabled) {
+            return;
+        }
+        finalizePendingDetaches();
+        createUpcomingPartitions();
+        if (retentionMonths > 0) {
+            detachExpiredPartitions();
+        }
+        archiveDetachedPartitions();
+    }
+
+    // while messages is a plain table its dependents keep real foreign keys; the entities leave them to this job
+    private void ensureForeignKeys() {
+        MESSAGE_FOREIGN_KEYS.forEach((table, constraint) -> {
+            if (!Boolean.TRUE.equals(jdbcTemplate.queryForObject("SELECT to_regclass(?) IS NOT NULL", Boolean.class, table))
+                    || Boolean.TRUE.equals(jdbcTemplate.queryForObject(HAS_FOREIGN_KEY_SQL, Boolean.class, table))) {
+                return;
+            }
+            jdbcTemplate.execute("ALTER TABLE " + table + " ADD CONSTRAINT " + constraint
+                    + " FOREIGN KEY (message_id) REFERENCES messages (id) NOT VALID");
+            int orphans = jdbcTemplate.update("DELETE FROM " + table + " t WHERE NOT EXISTS "
+                    + "(SELECT 1 FROM messages m WHERE m.id = t.message_id)");
+            jdbcTemplate.execute("ALTER TABLE " + table + " VALIDATE CONSTRAINT " + constraint);
+            log.info("Restored foreign key {} on {} after removing {} orphaned rows", constraint, table, orphans);
+        });
+    }
+
+    // a DETACH ... CONCURRENTLY interrupted by a crash or cancel leaves the partition half-detached until finalized
+    private void finalizePendingDetaches() {
+        for (String partition : jdbcTemplate.queryForList(DETACH_PENDING_SQL, String.class)) {
+            jdbcTemplate.execute("ALTER TABLE messages DETACH PARTITION " + partition + " FINALIZE");
+            log.info("Finalized pending detach of message partition {}", partition);
+        }
+    }
+
+    private boolean isPartitioned() {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(IS_PARTITIONED_SQL, Boolean.class));
+    }
+
+    private void convert() {
+        long started = System.currentTimeMillis();
+        LocalDate boundary = prepareLegacyPartition();
+        try {
+            attachLegacyPartition(boundary);
+        } catch (RuntimeException e) {
+            // the bound would start rejecting inserts once its month arrives, so it must not outlive a failed attempt
+            jdbcTemplate.execute("ALTER TABLE messages DROP CONSTRAINT IF EXISTS " + LEGACY_BOUND);
+            throw e;
+        }
+        log.info("Converted messages into a range-partitioned table in {} ms", System.currentTimeMillis() - started);
+    }
+
+    // runs outside any transaction and without blocking writes, so that ATTACH under the lock neither scans nor builds
+    private LocalDate prepareLegacyPartition() {
+        LocalDate newest = jdbcTemplate.queryForObject("SELECT max(timestamp)::date FROM messages", LocalDate.class);
+        // far enough ahead that messages posted before the table is locked still fall below it
+        LocalDate boundary = LocalDate.now().withDayOfMonth(1).plusMonths(2);
+        if (newest != null && !newest.isBefore(boundary)) {
+            boundary = newest.withDayOfMonth(1).plusMonths(1);
+        }
+
+        jdbcTemplate.execute("ALTER TABLE messages DROP CONSTRAINT IF EXISTS " + LEGACY_BOUND);
+        jdbcTemplate.execute("ALTER TABLE messages ADD CONSTRAINT " + LEGACY_BOUND
+                + " CHECK (timestamp IS NOT NULL AND timestamp < '" + boundary + "') NOT VALID");
+        jdbcTemplate.execute("ALTER TABLE messages VALIDATE CONSTRAINT " + LEGACY_BOUND);
+
+        createIndexConcurrently("CREATE UNIQUE INDEX", LEGACY_KEY, "id, timestamp");
+        PARTITION_INDEXES.forEach((index, columns) -> createIndexConcurrently("CREATE INDEX", index, columns));
+        return boundary;
+    }
+
+    // a failed concurrent build leaves an invalid index behind that IF NOT EXISTS would otherwise keep
+    private void createIndexConcurrently(String create, String index, String columns) {
+        if (Boolean.TRUE.equals(jdbcTemplate.queryForObject(INVALID_INDEX_SQL, Boolean.class, index))) {
+            jdbcTemplate.execute("DROP INDEX CONCURRENTLY " + index);
+        }
+        jdbcTemplate.execute(create + " CONCURRENTLY IF NOT EXISTS " + index + " ON messages (" + columns + ")");
+    }
+
+    private void attachLegacyPartition(LocalDate boundary) {
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.execute("LOCK TABLE messages IN ACCESS EXCLUSIVE MODE");
+            if (isPartitioned()) {
+                return;
+            }
+
+            Long maxId = jdbcTemplate.queryForObject("SELECT coalesce(max(id), 0) FROM messages", Long.class);
+
+            jdbcTemplate.query(INCOMING_FOREIGN_KEYS_SQL, rs -> {
+                jdbcTemplate.execute("ALTER TABLE " + rs.getString(1) + " DROP CONSTRAINT " + quote(rs.getString(2)));
+            });
+
+            jdbcTemplate.execute("ALTER TABLE messages RENAME TO " + LEGACY_PARTITION);
+            // ATTACH only adopts a primary key for the parent's, so the prebuilt (id, timestamp) index replaces the id key
+            jdbcTemplate.execute("ALTER TABLE " + LEGACY_PARTITION + " DROP CONSTRAINT messages_pkey");
+            jdbcTemplate.execute("ALTER TABLE " + LEGACY_PARTITION + " ADD CONSTRAINT " + LEGACY_PARTITION
+                    + "_pkey PRIMARY KEY USING INDEX " + LEGACY_KEY);
+            for (String index : jdbcTemplate.queryForList(LEGACY_INDEXES_SQL, String.class, LEGACY_PARTITION)) {
+                jdbcTemplate.execute("ALTER INDEX " + index + " RENAME TO " + index + "_legacy");
+            }
+            jdbcTemplate.execute("ALTER TABLE " + LEGACY_PARTITION + " ALTER COLUMN id DROP IDENTITY IF EXISTS");
+            jdbcTemplate.execute("ALTER TABLE " + LEGACY_PARTITION + " ALTER COLUMN id DROP DEFAULT");
+            jdbcTemplate.execute("DROP SEQUENCE IF EXISTS messages_id_seq");
+            jdbcTemplate.execute("CREATE SEQUENCE messages_id_seq START WITH " + (maxId + 1));
+
+            jdbcTemplate.execute("CREATE TABLE messages (LIKE " + LEGACY_PARTITION + " INCLUDING DEFAULTS) PARTITION BY RANGE (timestamp)");
+            jdbcTemplate.execute("ALTER TABLE messages ALTER COLUMN id SET DEFAULT nextval('messages_id_seq')");
+            jdbcTemplate.execute("ALTER SEQUENCE messages_id_seq OWNED BY messages.id");
+            jdbcTemplate.execute("ALTER TABLE messages ADD CONSTRAINT messages_pkey PRIMARY KEY (id, timestamp)");
+            PARTITION_INDEXES.forEach((index, columns) ->
+                    jdbcTemplate.execute("CREATE INDEX " + index + " ON messages (" + columns + ")"));
+            jdbcTemplate.query(OUTGOING_FOREIGN_KEYS_SQL, rs -> {
+                jdbcTemplate.execute("ALTER TABLE messages ADD CONSTRAINT " + quote(rs.getString(1)) + " " + rs.getString(2));
+            }, LEGACY_PARTITION);
+
+            // the validated bound implies the partition constraint, so ATTACH skips its scan of the legacy rows
+            jdbcTemplate.execute("ALTER TABLE messages ATTACH PARTITION " + LEGACY_PARTITION
+                    + " FOR VALUES FROM (MINVALUE) TO ('" + boundary + "')");
+            jdbcTemplate.execute("ALTER TABLE " + LEGACY_PARTITION + " DROP CONSTRAINT " + LEGACY_BOUND);
+        });
+    }
+
+    private void createUpcomingPartitions() {
+        TreeMap<LocalDate, String> partitions = partitionsByUpperBound();
+        LocalDate from = partitions.isEmpty() ? LocalDate.now().withDayOfMonth(1) : partitions.lastKey();
+        LocalDate until = LocalDate.now().withDayOfMonth(1).plusMonths(monthsAhead + 1);
+
+        for (LocalDate start = from; start.isBefore(until); start = start.plusMonths(1)) {
+            String name = PARTITION_PREFIX + start.format(PARTITION_SUFFIX);
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + name + " PARTITION OF messages FOR VALUES FROM ('"
+                    + start + "') TO ('" + start.plusMonths(1) + "')");
+            log.info("Created message partition {}", name);
+        }
+    }
+
+    private void detachExpiredPartitions() {
+        LocalDate cutoff = LocalDate.now().withDayOfMonth(1).minusMonths(retentionMonths);
+        for (Map.Entry<LocalDate, String> partition : partitionsByUpperBound().entrySet()) {
+            if (partition.getKey().isAfter(cutoff)) {
+                return;
+            }
+            jdbcTemplate.execute("ALTER TABLE messages DETACH PARTITION " + partition.getValue() + " CONCURRENTLY");
+            log.info("Detached message partition {} (older than {})", partition.getValue(), cutoff);
+        }
+    }
+
+    private void archiveDetachedPartitions() {
+        for (String table : jdbcTemplate.queryForList(DETACHED_PARTITIONS_SQL, String.class)) {
+            long cleared = 0;
+            Long afterId = 0L;
+            while (true) {
+                List<Long> ids = jdbcTemplate.queryForList(
+                        "SELECT id FROM " + table + " WHERE id > ? ORDER BY id LIMIT ?", Long.class, afterId, cleanupBatchSize);
+                if (ids.isEmpty()) {
+                    break;
+                }
+                detachDependents(ids);
+                cleared += ids.size();
+                afterId = ids.get(ids.size() - 1);
+            }
+            String archive = ARCHIVE_PREFIX + table.substring(PARTITION_PREFIX.length());
+            jdbcTemplate.execute("ALTER TABLE " + table + " RENAME TO " + archive);
+            log.info("Archived detached partition {} as {} after clearing dependents of {} messages", table, archive, cleared);
+        }
+    }
+
+    private void detachDependents(List<Long> ids) {
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            Array batch = connection.createArrayOf("bigint", ids.toArray());
+            try (PreparedStatement replies = connection.prepareStatement(DETACH_REPLIES_SQL);
+                 PreparedStatement reactions = connection.prepareStatement(DELETE_REACTIONS_SQL);
+                 PreparedStatement receipts = connection.prepareStatement(DELETE_RECEIPTS_SQL)) {
+                replies.setArray(1, batch);
+                replies.executeUpdate();
+                reactions.setArray(1, batch);
+                reactions.executeUpdate();
+                receipts.setArray(1, batch);
+                receipts.executeUpdate();
+                return null;
+            } finally {
+                batch.free();
+            }
+        }));
+    }
+
+    private TreeMap<LocalDate, String> partitionsByUpperBound() {
+        TreeMap<LocalDate, String> partitions = new TreeMap<>();
+        jdbcTemplate.query(PARTITIONS_SQL, rs -> {
+            Matcher bound = UPPER_BOUND.matcher(rs.getString(2));
+            if (bound.find()) {
+                partitions.put(LocalDate.parse(bound.group(1)), rs.getString(1));
+            }
+        });
+        return partitions;
+    }
+
+    private static String quote(String identifier) {
+        return "\"" + identifier.replace("\"", "\"\"") + "\"";
+    }
+}
@@ -0,0 +1,401 @@
+package xyz.piod.keeper.service.presence;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import xyz.piod.keeper.dto.ChatMessage;
+import xyz.piod.keeper.repository.ChatRoomRepository;
+import xyz.piod.keeper.repository.FriendshipRepository;
+import xyz.piod.keeper.repository.FriendshipRepository.PresenceAudience;
+import xyz.piod.keeper.repository.UserRepository;
+import xyz.piod.keeper.service.BroadcastService;
+import xyz.piod.keeper.service.membership.RoomMembershipIndex;
+import xyz.piod.keeper.service.transport.BroadcastEvent;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PresenceService {
+
+    public static final String LEGACY_ONLINE_USERS_KEY = "presence:online_users";
+    private static final String ONLINE_SHARD_KEY_PREFIX = "presence:online:";
+    private static final String CONNECTIONS_KEY_PREFIX = "presence:connections:";
+    static final String ONLINE_IDS_KEY = "presence:online-ids";
+    private static final int SWEEP_BATCH = 500;
+    private static final int ROOM_COUNT_BATCH = 1000;
+
+    /**
+     * Removes up to ARGV[2] members whose heartbeat expired at or before
+     * ARGV[1]; a member renewed between the read and the removal can no
+     * longer be dropped because both happen inside the script.
+     */
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> SWEEP_EXPIRED = new DefaultRedisScript<>("""
+            local expired = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', ARGV[1], 'LIMIT', 0, tonumber(ARGV[2]))
+            for _, member in ipairs(expired) do
+                redis.call('ZREM', KEYS[1], member)
+            end
+            return expired
+            """, List.class);
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final JdbcTemplate jdbcTemplate;
+    private final ChatRoomRepository chatRoomRepository;
+    private final FriendshipRepository friendshipRepository;
+    private final UserRepository userRepository;
+    private final RoomMembershipIndex membershipIndex;
+    private final BroadcastService broadcastService;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${keeper.presence.shards}")
+    private int shardCount;
+
+    @Value("${keeper.presence.ttl}")
+    private long ttlMillis;
+
+    @Value("${keeper.presence.debounce}")
+    private long debounceMillis;
+
+    @Value("${keeper.presence.legacy-fallback}")
+    private boolean legacyFallback;
+
+    private final Map<String, PendingChange> pendingChanges = new ConcurrentHashMap<>();
+    private final Map<String, Long> pendingLastSeen = new ConcurrentHashMap<>();
+    private final Set<String> announced = ConcurrentHashMap.newKeySet();
+    private final Set<String> unannounced = ConcurrentHashMap.newKeySet();
+
+    private Counter publishedCounter;
+    private Counter debouncedCounter;
+
+    @PostConstruct
+    void initMetrics() {
+        publishedCounter = Counter.builder("keeper.presence.changes")
+                .tag("outcome", "published")
+                .register(meterRegistry);
+        debouncedCounter = Counter.builder("keeper.presence.changes")
+                .tag("outcome", "debounced")
+                .description("Presence flaps that settled back to the previously published state")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    void flushOnShutdown() {
+        flushLastSeen();
+    }
+
+    public void heartbeat(String username, String connectionId) {
+        heartbeat(Map.of(connectionId, username));
+    }
+
+    public void heartbeat(Map<String, String> usernamesByConnection) {
+        if (usernamesByConnection.isEmpty()) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        long expiresAt = now + ttlMillis;
+        Set<String> usernames = new HashSet<>(usernamesByConnection.values());
+        Map<String, Boolean> wasOnline = onlineStates(usernames, now);
+
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                usernamesByConnection.forEach((connectionId, username) -> {
+                    String connectionsKey = CONNECTIONS_KEY_PREFIX + username;
+                    operations.opsForZSet().removeRangeByScore(connectionsKey, 0, now);
+                    operations.opsForZSet().add(connectionsKey, connectionId, expiresAt);
+                    operations.expire(connectionsKey, Duration.ofMillis(ttlMillis * 2));
+                });
+                usernames.forEach(username -> operations.opsForZSet().add(shardKey(username), username, expiresAt));
+                return null;
+            }
+        });
+
+        usernames.forEach(username -> {
+            pendingLastSeen.put(username, now);
+            if (!wasOnline.getOrDefault(username, false)) {
+                recordChange(username, true, now);
+            } else if (announced.add(username)) {
+                unannounced.add(username);
+            }
+        });
+    }
+
+    public void disconnect(String username, String connectionId) {
+        long now = System.currentTimeMillis();
+        String connectionsKey = CONNECTIONS_KEY_PREFIX + username;
+
+        List<Object> results = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                operations.opsForZSet().remove(connectionsKey, connectionId);
+                operations.opsForZSet().count(connectionsKey, now, Double.POSITIVE_INFINITY);
+                return null;
+            }
+        });
+        pendingLastSeen.put(username, now);
+
+        if (results.get(1) instanceof Long remaining && remaining == 0) {
+            Long removed = redisTemplate.opsForZSet().remove(shardKey(username), username);
+            if (removed != null && removed > 0) {
+                recordChange(username, false, now);
+            }
+        }
+    }
+
+    public long connectionCount(String username) {
+        Long count = redisTemplate.opsForZSet()
+                .count(CONNECTIONS_KEY_PREFIX + username, System.currentTimeMillis(), Double.POSITIVE_INFINITY);
+        return count == null ? 0 : count;
+    }
+
+    public Set<String> onlineAmong(Collection<String> usernames) {
+        Set<String> online = new HashSet<>();
+        onlineStates(usernames, System.currentTimeMillis()).forEach((username, isOnline) -> {
+            if (isOnline) {
+                online.add(username);
+            }
+        });
+        return online;
+    }
+
+    /**
+     * Like {@link #onlineAmong}, but only reports the viewer, their friends
+     * and people sharing a room with them; anyone else reads as offline.
+     */
+    public Set<String> onlineAmongVisibleTo(Long viewerId, Collection<String> usernames) {
+        Set<String> requested = usernames.stream().filter(Objects::nonNull).collect(Collectors.toSet());
+        if (requested.isEmpty()) {
+            return Set.of();
+        }
+        List<String> visible = userRepository.findVisibleUsernames(viewerId, requested);
+        return visible.isEmpty() ? Set.of() : onlineAmong(visible);
+    }
+
+    /**
+     * Counts against the settled online-id set, so it trails live presence by
+     * up to one debounce interval, like the updates friends receive.
+     */
+    public long onlineCountInRoom(Long roomId) {
+        int[] memberIds = membershipIndex.memberIdsOf(roomId);
+        if (memberIds == null) {
+            return onlineAmong(chatRoomRepository.findParticipantUsernames(roomId)).size();
+        }
+
+        long count = 0;
+        for (int from = 0; from < memberIds.length; from += ROOM_COUNT_BATCH) {
+            Object[] batch = Arrays.stream(memberIds, from, Math.min(from + ROOM_COUNT_BATCH, memberIds.length))
+                    .mapToObj(Integer::toUnsignedString)
+                    .toArray();
+            Map<Object, Boolean> online = redisTemplate.opsForSet().isMember(ONLINE_IDS_KEY, batch);
+            if (online != null) {
+                count += online.values().stream().filter(Boolean.TRUE::equals).count();
+            }
+        }
+        return count;
+    }
+
+    private Map<String, Boolean> onlineStates(Collection<String> usernames, long now) {
+        Map<String, List<String>> byShard = new HashMap<>();
+        for (String username : usernames) {
+            byShard.computeIfAbsent(shardKey(username), key -> new ArrayList<>()).add(username);
+        }
+        List<String> shardKeys = List.copyOf(byShard.keySet());
+
+        List<Object> scores = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                shardKeys.forEach(key -> operations.opsForZSet().score(key, byShard.get(key).toArray()));
+                return null;
+            }
+        });
+
+        Map<String, Boolean> states = new HashMap<>();
+        List<String> unknown = new ArrayList<>();
+        for (int i = 0; i < shardKeys.size(); i++) {
+            List<String> members = byShard.get(shardKeys.get(i));
+            List<?> memberScores = scores.get(i) instanceof List<?> list ? list : List.of();
+            for (int j = 0; j < members.size(); j++) {
+                boolean isOnline = j < memberScores.size()
+                        && memberScores.get(j) instanceof Double score && score > now;
+                states.put(members.get(j), isOnline);
+                if (!isOnline) {
+                    unknown.add(members.get(j));
+                }
+            }
+        }
+
+        if (legacyFallback && !unknown.isEmpty()) {
+            Map<Object, Boolean> legacy = redisTemplate.opsForSet().isMember(LEGACY_ONLINE_USERS_KEY, unknown.toArray());
+            if (legacy != null) {
+                legacy.forEach((username, isMember) -> {
+                    if (Boolean.TRUE.equals(isMember)) {
+                        states.put((String) username, true);
+                    }
+                });
+            }
+        }
+        return states;
+    }
+
+    @Scheduled(fixedRateString = "${keeper.presence.sweep-interval}")
+    @SuppressWarnings("unchecked")
+    public void sweepExpired() {
+        long now = System.currentTimeMillis();
+        for (int shard = 0; shard < shardCount; shard++) {
+            String key = ONLINE_SHARD_KEY_PREFIX + shard;
+            List<String> removed;
+            do {
+                removed = redisTemplate.execute(SWEEP_EXPIRED, List.of(key),
+                        String.valueOf(now), String.valueOf(SWEEP_BATCH));
+                if (removed == null) {
+                    break;
+                }
+                removed.forEach(username -> recordChange(username, false, now));
+            } while (removed.size() == SWEEP_BATCH);
+        }
+    }
+
+    @Scheduled(fixedRateString = "${keeper.presence.debounce}")
+    public void publishSettledChanges() {
+        long now = System.currentTimeMillis();
+        Map<String, PendingChange> settled = new HashMap<>();
+
+        for (Map.Entry<String, PendingChange> entry : pendingChanges.entrySet()) {
+            PendingChange change = entry.getValue();
+            if (now - change.changedAt() < debounceMillis || !pendingChanges.remove(entry.getKey(), change)) {
+                continue;
+            }
+            settled.put(entry.getKey(), change);
+        }
+        Set<String> seeds = new HashSet<>();
+        for (String username : List.copyOf(unannounced)) {
+            if (unannounced.remove(username) && !settled.containsKey(username)) {
+                seeds.add(username);
+            }
+        }
+        if (settled.isEmpty() && seeds.isEmpty()) {
+            return;
+        }
+
+        Set<String> usernames = new HashSet<>(settled.keySet());
+        usernames.addAll(seeds);
+        Map<String, Long> ids = new HashMap<>();
+        Map<String, List<String>> friends = new HashMap<>();
+        for (PresenceAudience audience : friendshipRepository.findPresenceAudiences(usernames)) {
+            ids.put(audience.getUsername(), audience.getUserId());
+            if (audience.getFriendUsername() != null) {
+                friends.computeIfAbsent(audience.getUsername(), key -> new ArrayList<>()).add(audience.getFriendUsername());
+            }
+        }
+
+        List<String> cameOnline = new ArrayList<>();
+        List<String> wentOffline = new ArrayList<>();
+        seeds.forEach(username -> addId(cameOnline, ids.get(username)));
+
+        List<BroadcastEvent> events = new ArrayList<>();
+        settled.forEach((username, change) -> {
+            addId(change.to() ? cameOnline : wentOffline, ids.get(username));
+            if (change.from() == change.to()) {
+                debouncedCounter.increment();
+                return;
+            }
+
+            ChatMessage update = new ChatMessage();
+            update.setType(ChatMessage.MessageType.PRESENCE_UPDATE);
+            update.setSenderUsername(username);
+            update.setOnline(change.to());
+            for (String friend : friends.getOrDefault(username, List.of())) {
+                events.add(new BroadcastEvent("user:" + friend, "new_event", update));
+            }
+            publishedCounter.increment();
+        });
+
+        if (!cameOnline.isEmpty()) {
+            redisTemplate.opsForSet().add(ONLINE_IDS_KEY, cameOnline.toArray(String[]::new));
+        }
+        if (!wentOffline.isEmpty()) {
+            redisTemplate.opsForSet().remove(ONLINE_IDS_KEY, wentOffline.toArray());
+        }
+        if (!events.isEmpty()) {
+            broadcastService.broadcastAll(events);
+        }
+    }
+
+    private static void addId(List<String> target, Long userId) {
+        if (userId != null) {
+            target.add(userId.toString());
+        }
+    }
+
+    @Scheduled(fixedRateString = "${keeper.presence.last-seen-flush-interval}")
+    public void flushLastSeen() {
+        if (pendingLastSeen.isEmpty()) {
+            return;
+        }
+
+        List<Map.Entry<String, Long>> batch = new ArrayList<>();
+        for (String username : List.copyOf(pendingLastSeen.keySet())) {
+            Long seenAt = pendingLastSeen.remove(username);
+            if (seenAt != null) {
+                batch.add(Map.entry(username, seenAt));
+            }
+        }
+
+        try {
+            jdbcTemplate.batchUpdate("UPDATE users SET last_seen_at = ? WHERE username = ?", batch, batch.size(),
+                    (ps, entry) -> {
+                        ps.setTimestamp(1, new Timestamp(entry.getValue()));
+                        ps.setString(2, entry.getKey());
+                    });
+        } catch (Exception e) {
+            log.error("Failed to persist last-seen timestamps for {} users: {}", batch.size(), e.getMessage());
+        }
+    }
+
+    private void recordChange(String username, boolean online, long now) {
+        if (online) {
+            announced.add(username);
+        } else {
+            announced.remove(username);
+        }
+        pendingChanges.merge(username, new PendingChange(!online, online, now),
+                (previous, current) -> new PendingChange(previous.from(), online, now));
+    }
+
+    private String shardKey(String username) {
+        return ONLINE_SHARD_KEY_PREFIX + Math.floorMod(username.hashCode(), shardCount);
+    }
+
+    private record PendingChange(boolean from, boolean to, long changedAt) {}
+}
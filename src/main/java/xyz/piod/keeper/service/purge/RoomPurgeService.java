@@ -0,0 +1,183 @@
+package xyz.piod.keeper.service.purge;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import xyz.piod.keeper.service.AdvisoryLocks;
+import xyz.piod.keeper.service.archive.MessageArchiveService;
+
+import java.sql.Array;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class RoomPurgeService {
+
+    private static final String PURGE_LOCK = "keeper.purge.tombstones";
+    private static final String RETENTION_LOCK = "keeper.purge.retention";
+
+    private static final String TOMBSTONED_ROOMS_SQL =
+            "SELECT id FROM chat_rooms WHERE deleted_at IS NOT NULL ORDER BY deleted_at LIMIT ?";
+    private static final String RETENTION_ROOMS_SQL =
+            "SELECT id, retention_days FROM chat_rooms WHERE deleted_at IS NULL AND retention_days IS NOT NULL";
+    private static final String ROOM_MESSAGE_BATCH_SQL =
+            "SELECT id FROM messages WHERE chatroom_id = ? ORDER BY id LIMIT ?";
+    private static final String EXPIRED_MESSAGE_BATCH_SQL =
+            "SELECT id FROM messages WHERE chatroom_id = ? AND timestamp < ? ORDER BY id LIMIT ?";
+    private static final String DETACH_REPLIES_SQL =
+            "UPDATE messages SET replied_to_id = NULL, reply_sender_username = NULL, reply_snippet = NULL " +
+            "WHERE replied_to_id = ANY(?) AND NOT (id = ANY(?))";
+    private static final String DELETE_REACTIONS_SQL = "DELETE FROM reactions WHERE message_id = ANY(?)";
+    private static final String DELETE_RECEIPTS_SQL = "DELETE FROM message_read_receipts WHERE message_id = ANY(?)";
+    private static final String DELETE_MESSAGES_SQL = "DELETE FROM messages WHERE id = ANY(?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+    private final MessageArchiveService archiveService;
+
+    @Value("${keeper.purge.batch-size}")
+    private int batchSize;
+
+    @Value("${keeper.purge.batch-pause}")
+    private long batchPauseMillis;
+
+    @Value("${keeper.purge.max-batches-per-run}")
+    private int maxBatchesPerRun;
+
+    @Value("${keeper.purge.rooms-per-run}")
+    private int roomsPerRun;
+
+    private Counter messagesCounter;
+    private Counter roomsCounter;
+
+    @PostConstruct
+    void initMetrics() {
+        messagesCounter = Counter.builder("keeper.purge.deleted")
+                .tag("unit", "messages")
+                .register(meterRegistry);
+        roomsCounter = Counter.builder("keeper.purge.deleted")
+                .tag("unit", "rooms")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${keeper.purge.interval}")
+    public void purgeTombstonedRooms() {
+        whileHolding(PURGE_LOCK, this::purgeTombstonedRoomsLocked);
+    }
+
+    @Scheduled(fixedDelayString = "${keeper.purge.retention-interval}")
+    public void applyRetention() {
+        whileHolding(RETENTION_LOCK, this::applyRetentionLocked);
+    }
+
+    // one node at a time: two nodes walking the same batches would double-count and contend on the same rows
+    private void whileHolding(String lock, Runnable run) {
+        if (!AdvisoryLocks.runExclusively(jdbcTemplate, lock, run)) {
+            log.debug("Skipping '{}': another node holds the lock", lock);
+        }
+    }
+
+    private void purgeTombstonedRoomsLocked() {
+        int budget = maxBatchesPerRun;
+        for (Long roomId : jdbcTemplate.queryForList(TOMBSTONED_ROOMS_SQL, Long.class, roomsPerRun)) {
+            budget = purgeMessages(roomId, null, budget);
+            if (budget == 0) {
+                return;
+            }
+            finishRoom(roomId);
+        }
+    }
+
+    private void applyRetentionLocked() {
+        int budget = maxBatchesPerRun;
+        for (Map<String, Object> room : jdbcTemplate.queryForList(RETENTION_ROOMS_SQL)) {
+            Long roomId = ((Number) room.get("id")).longValue();
+            LocalDateTime cutoff = LocalDateTime.now().minusDays(((Number) room.get("retention_days")).intValue());
+            messagesCounter.increment(archiveService.dropExpired(roomId, cutoff));
+            budget = purgeMessages(roomId, cutoff, budget);
+            if (budget == 0) {
+                return;
+            }
+        }
+    }
+
+    private int purgeMessages(Long roomId, LocalDateTime cutoff, int budget) {
+        while (budget > 0) {
+            List<Long> ids = cutoff == null
+                    ? jdbcTemplate.queryForList(ROOM_MESSAGE_BATCH_SQL, Long.class, roomId, batchSize)
+                    : jdbcTemplate.queryForList(EXPIRED_MESSAGE_BATCH_SQL, Long.class, roomId, Timestamp.valueOf(cutoff), batchSize);
+            if (ids.isEmpty()) {
+                return budget;
+            }
+
+            deleteMessages(ids);
+            messagesCounter.increment(ids.size());
+            budget--;
+
+            if (ids.size() < batchSize) {
+                return budget;
+            }
+            pause();
+        }
+        log.info("Purge budget exhausted while clearing room #{}; continuing next run", roomId);
+        return 0;
+    }
+
+    private void deleteMessages(List<Long> ids) {
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.execute((ConnectionCallback<Integer>) connection -> {
+            Array batch = connection.createArrayOf("bigint", ids.toArray());
+            try (PreparedStatement detach = connection.prepareStatement(DETACH_REPLIES_SQL);
+                 PreparedStatement reactions = connection.prepareStatement(DELETE_REACTIONS_SQL);
+                 PreparedStatement receipts = connection.prepareStatement(DELETE_RECEIPTS_SQL);
+                 PreparedStatement messages = connection.prepareStatement(DELETE_MESSAGES_SQL)) {
+                detach.setArray(1, batch);
+                detach.setArray(2, batch);
+                detach.executeUpdate();
+                reactions.setArray(1, batch);
+                reactions.executeUpdate();
+                receipts.setArray(1, batch);
+                receipts.executeUpdate();
+                messages.setArray(1, batch);
+                return messages.executeUpdate();
+            } finally {
+                batch.free();
+            }
+        }));
+    }
+
+    private void finishRoom(Long roomId) {
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update("DELETE FROM folder_rooms WHERE room_id = ?", roomId);
+            jdbcTemplate.update("DELETE FROM chatroom_participants WHERE chatroom_id = ?", roomId);
+            jdbcTemplate.update("DELETE FROM chat_rooms WHERE id = ? AND deleted_at IS NOT NULL", roomId);
+            archiveService.dropRoom(roomId);
+        });
+        roomsCounter.increment();
+        log.info("Purged tombstoned room #{}", roomId);
+    }
+
+    private void pause() {
+        if (batchPauseMillis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(batchPauseMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package xyz.piod.keeper.service.transport;
+
+import java.util.Map;
+
+public record BroadcastEvent(String topic, String event, Object payload) {
+
+    public Map<String, Object> toEnvelope() {
+        return Map.of(
+                "topic", topic,
+                "event", event,
+                "payload", payload
+        );
+    }
+
+    public Map<String, Object> toEnvelope(String origin) {
+        return Map.of(
+                "topic", topic,
+                "event", event,
+                "payload", payload,
+                "origin", origin
+        );
+    }
+}
@@ -0,0 +1,87 @@
+package xyz.piod.keeper.service.transport;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Frames are a fixed header followed by the CBOR-encoded payload:
+ * magic byte 'K', format version, then topic, event and origin as
+ * length-prefixed (u16) UTF-8 strings. Consumers can route on the header
+ * without decoding the payload. The payload mapper is a CBOR copy of the
+ * application ObjectMapper, so modules and naming match the JSON path.
+ */
+@Component
+public class CborEventCodec implements EventCodec {
+
+    public static final String CHANNEL = RedisEventTransport.KEEPER_EVENTS_CHANNEL + ".cbor";
+
+    private static final byte MAGIC = 'K';
+    private static final byte VERSION = 1;
+
+    private final ObjectMapper cborMapper;
+
+    public CborEventCodec(ObjectMapper objectMapper) {
+        this.cborMapper = objectMapper.copyWith(new CBORFactory());
+    }
+
+    @Override
+    public String name() {
+        return "cbor";
+    }
+
+    @Override
+    public String channel() {
+        return CHANNEL;
+    }
+
+    @Override
+    public byte[] encode(BroadcastEvent event, String origin) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeByte(MAGIC);
+        out.writeByte(VERSION);
+        writeString(out, event.topic());
+        writeString(out, event.event());
+        writeString(out, origin);
+        out.flush();
+        cborMapper.writeValue(buffer, event.payload());
+        return buffer.toByteArray();
+    }
+
+    public static Header readHeader(byte[] frame) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame));
+        if (in.readByte() != MAGIC || in.readByte() != VERSION) {
+            throw new IOException("Not a keeper CBOR event frame");
+        }
+        String topic = readString(in);
+        String event = readString(in);
+        String origin = readString(in);
+        return new Header(topic, event, origin, frame.length - in.available());
+    }
+
+    public <T> T readPayload(byte[] frame, Header header, Class<T> type) throws IOException {
+        return cborMapper.readValue(frame, header.payloadOffset(), frame.length - header.payloadOffset(), type);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readUnsignedShort()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public record Header(String topic, String event, String origin, int payloadOffset) {}
+}
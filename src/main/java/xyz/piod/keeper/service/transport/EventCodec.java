@@ -0,0 +1,12 @@
+package xyz.piod.keeper.service.transport;
+
+import java.io.IOException;
+
+public interface EventCodec {
+
+    String name();
+
+    String channel();
+
+    byte[] encode(BroadcastEvent event, String origin) throws IOException;
+}
@@ -0,0 +1,14 @@
+package xyz.piod.keeper.service.transport;
+
+import java.util.List;
+
+public interface EventTransport {
+
+    String name();
+
+    void publish(BroadcastEvent event);
+
+    default void publishBatch(List<BroadcastEvent> events) {
+        events.forEach(this::publish);
+    }
+}
@@ -0,0 +1,41 @@
+package xyz.piod.keeper.service.transport;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+@Component
+@ConditionalOnProperty(name = "keeper.broadcast.transport", havingValue = "memory")
+@Slf4j
+public class InMemoryEventTransport implements EventTransport {
+
+    private final List<Consumer<BroadcastEvent>> subscribers = new CopyOnWriteArrayList<>();
+
+    @Override
+    public String name() {
+        return "memory";
+    }
+
+    public void subscribe(Consumer<BroadcastEvent> subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    public void unsubscribe(Consumer<BroadcastEvent> subscriber) {
+        subscribers.remove(subscriber);
+    }
+
+    @Override
+    public void publish(BroadcastEvent event) {
+        for (Consumer<BroadcastEvent> subscriber : subscribers) {
+            try {
+                subscriber.accept(event);
+            } catch (Exception e) {
+                log.error("In-memory subscriber failed on event '{}' for topic '{}': {}", event.event(), event.topic(), e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package xyz.piod.keeper.service.transport;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+@Component
+@RequiredArgsConstructor
+public class JsonEventCodec implements EventCodec {
+
+    private final ObjectMapper objectMapper;
+
+    @Override
+    public String name() {
+        return "json";
+    }
+
+    @Override
+    public String channel() {
+        return RedisEventTransport.KEEPER_EVENTS_CHANNEL;
+    }
+
+    @Override
+    public byte[] encode(BroadcastEvent event, String origin) throws IOException {
+        return objectMapper.writeValueAsBytes(event.toEnvelope(origin));
+    }
+}
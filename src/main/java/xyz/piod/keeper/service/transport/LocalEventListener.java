@@ -0,0 +1,8 @@
+package xyz.piod.keeper.service.transport;
+
+public interface LocalEventListener {
+
+    boolean isSubscribed(String topic);
+
+    void onEvent(BroadcastEvent event);
+}
@@ -0,0 +1,186 @@
+package xyz.piod.keeper.service.transport;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+
+@Component
+@ConditionalOnProperty(name = "keeper.broadcast.transport", havingValue = "postgres")
+@RequiredArgsConstructor
+@Slf4j
+public class PostgresEventTransport implements EventTransport {
+
+    public static final String KEEPER_EVENTS_CHANNEL = "keeper_events";
+
+    // Postgres rejects NOTIFY payloads of 8000 bytes or more
+    private static final int MAX_NOTIFY_PAYLOAD_BYTES = 7999;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final DataSourceProperties dataSourceProperties;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final List<BiConsumer<String, String>> remoteListeners = new CopyOnWriteArrayList<>();
+
+    @Value("${keeper.broadcast.postgres.batch-size}")
+    private int batchSize;
+
+    @Value("${keeper.broadcast.postgres.listen-timeout}")
+    private int listenTimeoutMillis;
+
+    @Value("${keeper.broadcast.postgres.reconnect-delay}")
+    private long reconnectDelayMillis;
+
+    private volatile boolean listening;
+    private Thread listenerThread;
+
+    @Override
+    public String name() {
+        return "postgres";
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public void publish(BroadcastEvent event) {
+        publishBatch(List.of(event));
+    }
+
+    @Override
+    public void publishBatch(List<BroadcastEvent> events) {
+        List<String> payloads = new ArrayList<>(events.size());
+        for (BroadcastEvent event : events) {
+            String payload = encode(event);
+            if (payload != null) {
+                payloads.add(payload);
+            }
+        }
+
+        for (int from = 0; from < payloads.size(); from += batchSize) {
+            List<String> chunk = payloads.subList(from, Math.min(from + batchSize, payloads.size()));
+            sendNotifications(chunk);
+        }
+    }
+
+    /**
+     * Registers a handler for events published by other nodes. The handler
+     * receives the topic and the raw JSON envelope. The first registration
+     * starts a LISTEN loop on a dedicated, unpooled connection that
+     * reconnects after failures; notifications sent while it is
+     * disconnected are lost, as with Redis pub/sub.
+     */
+    public synchronized void addRemoteListener(BiConsumer<String, String> listener) {
+        remoteListeners.add(listener);
+        if (listenerThread == null) {
+            listening = true;
+            listenerThread = Thread.ofPlatform().daemon().name("keeper-pg-listen").start(this::listenLoop);
+        }
+    }
+
+    @PreDestroy
+    public synchronized void stopListening() {
+        listening = false;
+        if (listenerThread != null) {
+            listenerThread.interrupt();
+            listenerThread = null;
+        }
+    }
+
+    private void listenLoop() {
+        while (listening) {
+            try (Connection connection = DriverManager.getConnection(dataSourceProperties.determineUrl(),
+                    dataSourceProperties.determineUsername(), dataSourceProperties.determinePassword())) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + KEEPER_EVENTS_CHANNEL);
+                }
+                log.info("Listening for events from other nodes on Postgres channel '{}'", KEEPER_EVENTS_CHANNEL);
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (listening) {
+                    PGNotification[] notifications = pgConnection.getNotifications(listenTimeoutMillis);
+                    if (notifications != null) {
+                        for (PGNotification notification : notifications) {
+                            relay(notification.getParameter());
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                if (!listening) {
+                    return;
+                }
+                log.warn("Postgres event listener lost its connection, reconnecting in {} ms: {}",
+                        reconnectDelayMillis, e.getMessage());
+                try {
+                    Thread.sleep(reconnectDelayMillis);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void relay(String payload) {
+        try {
+            JsonNode envelope = objectMapper.readTree(payload);
+            if (nodeId.equals(envelope.path("origin").asText())) {
+                return;
+            }
+            String topic = envelope.path("topic").asText();
+            for (BiConsumer<String, String> listener : remoteListeners) {
+                listener.accept(topic, payload);
+            }
+        } catch (Exception e) {
+            log.error("Error relaying event from Postgres: {}", e.getMessage());
+        }
+    }
+
+    private void sendNotifications(List<String> payloads) {
+        jdbcTemplate.query(
+                "SELECT pg_notify(?, p) FROM unnest(?::text[]) AS p",
+                ps -> {
+                    ps.setString(1, KEEPER_EVENTS_CHANNEL);
+                    ps.setArray(2, ps.getConnection().createArrayOf("text", payloads.toArray()));
+                },
+                (RowCallbackHandler) rs -> { }
+        );
+        log.info("Broadcasted {} events to Postgres channel '{}'", payloads.size(), KEEPER_EVENTS_CHANNEL);
+    }
+
+    private String encode(BroadcastEvent event) {
+        try {
+            String payload = objectMapper.writeValueAsString(event.toEnvelope(nodeId));
+            int size = payload.getBytes(StandardCharsets.UTF_8).length;
+            if (size > MAX_NOTIFY_PAYLOAD_BYTES) {
+                log.error("Dropping event '{}' for topic '{}': {} bytes exceeds the NOTIFY payload limit",
+                        event.event(), event.topic(), size);
+                return null;
+            }
+            return payload;
+        } catch (JsonProcessingException e) {
+            log.error("Error serializing broadcast message to JSON: {}", e.getMessage());
+            return null;
+        }
+    }
+}
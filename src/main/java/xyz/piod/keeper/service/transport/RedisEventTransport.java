@@ -0,0 +1,110 @@
+package xyz.piod.keeper.service.transport;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+@Component
+@ConditionalOnProperty(name = "keeper.broadcast.transport", havingValue = "redis", matchIfMissing = true)
+@RequiredArgsConstructor
+@Slf4j
+public class RedisEventTransport implements EventTransport {
+
+    public static final String KEEPER_EVENTS_CHANNEL = "keeper-events";
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final List<EventCodec> availableCodecs;
+    private final String nodeId = UUID.randomUUID().toString();
+
+    @Value("${keeper.broadcast.redis.max-payload-bytes}")
+    private int maxPayloadBytes;
+
+    @Value("${keeper.broadcast.codecs}")
+    private String[] codecNames;
+
+    private List<EventCodec> codecs;
+
+    @PostConstruct
+    void selectCodecs() {
+        Set<String> enabled = Set.copyOf(Arrays.asList(codecNames));
+        codecs = availableCodecs.stream()
+                .filter(codec -> enabled.contains(codec.name()))
+                .toList();
+        if (codecs.isEmpty()) {
+            throw new IllegalStateException("No known codec in keeper.broadcast.codecs: " + enabled);
+        }
+        codecs.forEach(codec -> log.info("Publishing {} events on Redis channel '{}'", codec.name(), codec.channel()));
+    }
+
+    @Override
+    public String name() {
+        return "redis";
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public void publish(BroadcastEvent event) {
+        publishBatch(List.of(event));
+    }
+
+    @Override
+    public void publishBatch(List<BroadcastEvent> events) {
+        List<EncodedEvent> messages = new ArrayList<>(events.size() * codecs.size());
+        for (BroadcastEvent event : events) {
+            for (EventCodec codec : codecs) {
+                byte[] body = encode(codec, event);
+                if (body != null) {
+                    messages.add(new EncodedEvent(codec.channel().getBytes(StandardCharsets.UTF_8), body));
+                }
+            }
+        }
+
+        if (messages.isEmpty()) {
+            return;
+        }
+        if (messages.size() == 1) {
+            EncodedEvent message = messages.get(0);
+            redisTemplate.execute((RedisCallback<Long>) connection -> connection.publish(message.channel(), message.body()));
+            log.info("Broadcasted event '{}' to Redis", events.get(0).event());
+            return;
+        }
+
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            messages.forEach(message -> connection.publish(message.channel(), message.body()));
+            return null;
+        });
+        log.info("Broadcasted {} events to Redis in one pipeline", messages.size());
+    }
+
+    private byte[] encode(EventCodec codec, BroadcastEvent event) {
+        try {
+            byte[] message = codec.encode(event, nodeId);
+            if (message.length > maxPayloadBytes) {
+                log.error("Dropping {} event '{}' for topic '{}': {} bytes exceeds the Redis transport limit of {} bytes",
+                        codec.name(), event.event(), event.topic(), message.length, maxPayloadBytes);
+                return null;
+            }
+            return message;
+        } catch (Exception e) {
+            log.error("Error encoding broadcast message as {}: {}", codec.name(), e.getMessage());
+            return null;
+        }
+    }
+
+    private record EncodedEvent(byte[] channel, byte[] body) {}
+}
@@ -0,0 +1,99 @@
+package xyz.piod.keeper.service.typing;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import xyz.piod.keeper.repository.UserRepository;
+import xyz.piod.keeper.service.JwtService;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caches who a typing token belongs to, so the hot path skips signature
+ * verification and the user lookup. Room access is not cached; it is
+ * checked against the membership service on every command.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class SessionTokenCache {
+
+    private final JwtService jwtService;
+    private final UserRepository userRepository;
+
+    @Value("${keeper.typing.session-cache-size}")
+    private int maxSessions;
+
+    @Value("${keeper.typing.session-ttl}")
+    private long sessionTtlMillis;
+
+    // access-ordered, so the least recently used session is evicted first when full
+    private final Map<String, Session> sessions = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Session> eldest) {
+            return size() > maxSessions;
+        }
+    };
+
+    public Session resolve(String token) {
+        if (token == null || token.isBlank()) {
+            return null;
+        }
+
+        long now = System.currentTimeMillis();
+        synchronized (sessions) {
+            Session cached = sessions.get(token);
+            if (cached != null) {
+                if (cached.expiresAt() > now) {
+                    return cached;
+                }
+                sessions.remove(token);
+            }
+        }
+
+        Session session = load(token, now);
+        if (session == null) {
+            return null;
+        }
+        synchronized (sessions) {
+            Session winner = sessions.putIfAbsent(token, session);
+            return winner != null && winner.expiresAt() > now ? winner : session;
+        }
+    }
+
+    @Scheduled(fixedRate = 60000)
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        synchronized (sessions) {
+            sessions.values().removeIf(session -> session.expiresAt() <= now);
+        }
+    }
+
+    int size() {
+        synchronized (sessions) {
+            return sessions.size();
+        }
+    }
+
+    private Session load(String token, long now) {
+        try {
+            TokenClaims claims = jwtService.extractClaim(token,
+                    parsed -> new TokenClaims(parsed.getSubject(), parsed.getExpiration().getTime()));
+            Long userId = userRepository.findIdByUsername(claims.username()).orElse(null);
+            if (userId == null) {
+                return null;
+            }
+            return new Session(claims.username(), userId, Math.min(claims.expiresAt(), now + sessionTtlMillis));
+        } catch (Exception e) {
+            log.debug("Rejecting typing token: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    public record Session(String username, Long userId, long expiresAt) {}
+
+    private record TokenClaims(String username, long expiresAt) {}
+}
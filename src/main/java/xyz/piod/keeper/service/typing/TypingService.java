@@ -0,0 +1,135 @@
+package xyz.piod.keeper.service.typing;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import xyz.piod.keeper.dto.ChatMessage;
+import xyz.piod.keeper.dto.command.MessageCommand;
+import xyz.piod.keeper.service.BroadcastService;
+import xyz.piod.keeper.service.RoomMembershipService;
+import xyz.piod.keeper.service.transport.BroadcastEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TypingService {
+
+    public static final Set<String> ACTIONS = Set.of("typing", "stop_typing");
+
+    private final SessionTokenCache sessionTokenCache;
+    private final BroadcastService broadcastService;
+    private final RoomMembershipService roomMembershipService;
+    private final MeterRegistry meterRegistry;
+
+    // roomId -> username -> expiry of the typing state in epoch millis
+    private final Map<Long, Map<String, Long>> typingByRoom = new ConcurrentHashMap<>();
+    private final Set<Long> dirtyRooms = ConcurrentHashMap.newKeySet();
+
+    @Value("${keeper.typing.throttle}")
+    private long throttleMillis;
+
+    @Value("${keeper.typing.ttl}")
+    private long ttlMillis;
+
+    private Counter acceptedCounter;
+    private Counter throttledCounter;
+    private Counter rejectedCounter;
+
+    @PostConstruct
+    void initMetrics() {
+        acceptedCounter = Counter.builder("keeper.typing.commands").tag("outcome", "accepted").register(meterRegistry);
+        throttledCounter = Counter.builder("keeper.typing.commands").tag("outcome", "throttled").register(meterRegistry);
+        rejectedCounter = Counter.builder("keeper.typing.commands").tag("outcome", "rejected").register(meterRegistry);
+    }
+
+    public boolean isTypingAction(String action) {
+        return ACTIONS.contains(action);
+    }
+
+    public void handle(String action, MessageCommand command) {
+        SessionTokenCache.Session session = sessionTokenCache.resolve(command.getUserToken());
+        if (session == null || command.getRoomId() == null) {
+            rejectedCounter.increment();
+            return;
+        }
+
+        // only members were ever added, so stopping needs no membership check
+        if ("stop_typing".equals(action)) {
+            stopTyping(command.getRoomId(), session.username());
+        } else {
+            startTyping(command.getRoomId(), session.userId(), session.username());
+        }
+    }
+
+    private void startTyping(Long roomId, Long userId, String username) {
+        long now = System.currentTimeMillis();
+        Map<String, Long> current = typingByRoom.get(roomId);
+        Long previous = current == null ? null : current.get(username);
+        if (previous != null && previous - ttlMillis + throttleMillis > now) {
+            throttledCounter.increment();
+            return;
+        }
+        // checked after the throttle and from the membership index, so typing stays off the database
+        if (!roomMembershipService.containsMember(roomId, userId)) {
+            rejectedCounter.increment();
+            return;
+        }
+
+        Map<String, Long> typists = typingByRoom.computeIfAbsent(roomId, id -> new ConcurrentHashMap<>());
+        typists.put(username, now + ttlMillis);
+        acceptedCounter.increment();
+        if (previous == null) {
+            dirtyRooms.add(roomId);
+        }
+    }
+
+    private void stopTyping(Long roomId, String username) {
+        Map<String, Long> typists = typingByRoom.get(roomId);
+        if (typists != null && typists.remove(username) != null) {
+            acceptedCounter.increment();
+            dirtyRooms.add(roomId);
+        }
+    }
+
+    @Scheduled(fixedRateString = "${keeper.typing.tick}")
+    public void publishSnapshots() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<Long, Map<String, Long>> entry : typingByRoom.entrySet()) {
+            if (entry.getValue().values().removeIf(expiresAt -> expiresAt <= now)) {
+                dirtyRooms.add(entry.getKey());
+            }
+        }
+
+        if (dirtyRooms.isEmpty()) {
+            return;
+        }
+
+        List<BroadcastEvent> snapshots = new ArrayList<>();
+        for (Long roomId : List.copyOf(dirtyRooms)) {
+            dirtyRooms.remove(roomId);
+            Map<String, Long> typists = typingByRoom.getOrDefault(roomId, Map.of());
+
+            ChatMessage snapshot = new ChatMessage();
+            snapshot.setType(ChatMessage.MessageType.TYPING);
+            snapshot.setRoomId(roomId);
+            snapshot.setTypingUsernames(List.copyOf(typists.keySet()));
+            snapshots.add(new BroadcastEvent("room:" + roomId, "new_event", snapshot));
+
+            if (typists.isEmpty()) {
+                typingByRoom.computeIfPresent(roomId, (id, current) -> current.isEmpty() ? null : current);
+            }
+        }
+        broadcastService.broadcastAll(snapshots);
+    }
+}
@@ -0,0 +1,46 @@
+package xyz.piod.keeper.config.filter;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.test.util.ReflectionTestUtils;
+import xyz.piod.keeper.entity.User;
+import xyz.piod.keeper.service.JwtService;
+import xyz.piod.keeper.service.UserService;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class JwtAuthenticationFilterTest {
+
+    private JwtAuthenticationFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        filter = new JwtAuthenticationFilter(mock(JwtService.class), mock(UserService.class));
+        ReflectionTestUtils.setField(filter, "adminEmails", new String[]{"ops@example.com", ""});
+    }
+
+    @Test
+    void grantsAdminOnlyToConfiguredEmails() {
+        assertThat(filter.authorities(user("Ops@Example.com"))).extracting(GrantedAuthority::getAuthority)
+                .containsExactly("ROLE_USER", "ROLE_ADMIN");
+        assertThat(filter.authorities(user("alice@example.com"))).extracting(GrantedAuthority::getAuthority)
+                .containsExactly("ROLE_USER");
+    }
+
+    @Test
+    void blankEntriesGrantNothing() {
+        assertThat(filter.authorities(user(""))).extracting(GrantedAuthority::getAuthority)
+                .containsExactly("ROLE_USER");
+        assertThat(filter.authorities(user(null))).extracting(GrantedAuthority::getAuthority)
+                .containsExactly("ROLE_USER");
+    }
+
+    private static User user(String email) {
+        User user = new User();
+        user.setUsername("alice");
+        user.setEmail(email);
+        return user;
+    }
+}
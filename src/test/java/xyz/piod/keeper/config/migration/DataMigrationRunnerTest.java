@@ -0,0 +1,134 @@
+package xyz.piod.keeper.config.migration;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.boot.DefaultApplicationArguments;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs in a throwaway schema. Needs a reachable Postgres: set KEEPER_TEST_DATABASE_URL, and
+ * KEEPER_TEST_DATABASE_USERNAME / KEEPER_TEST_DATABASE_PASSWORD if required.
+ */
+@EnabledIfEnvironmentVariable(named = "KEEPER_TEST_DATABASE_URL", matches = ".+")
+class DataMigrationRunnerTest {
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private DataMigrationRunner runner;
+    private String schema;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new SingleConnectionDataSource(System.getenv("KEEPER_TEST_DATABASE_URL"),
+                System.getenv("KEEPER_TEST_DATABASE_USERNAME"), System.getenv("KEEPER_TEST_DATABASE_PASSWORD"), true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        schema = "keeper_migration_test_" + UUID.randomUUID().toString().replace("-", "");
+        jdbcTemplate.execute("CREATE SCHEMA " + schema);
+        jdbcTemplate.execute("SET search_path TO " + schema);
+        jdbcTemplate.execute("CREATE TABLE chatroom_participants (chatroom_id BIGINT, user_id BIGINT, hidden BOOLEAN DEFAULT FALSE)");
+        jdbcTemplate.execute("CREATE TABLE hidden_chat_rooms (chatroom_id BIGINT, user_id BIGINT)");
+        jdbcTemplate.execute("INSERT INTO chatroom_participants (chatroom_id, user_id) VALUES (1, 10), (1, 11)");
+        jdbcTemplate.execute("INSERT INTO hidden_chat_rooms VALUES (1, 11)");
+
+        runner = new DataMigrationRunner(jdbcTemplate,
+                new TransactionTemplate(new DataSourceTransactionManager(dataSource)));
+        ReflectionTestUtils.setField(runner, "replySnippetLength", 200);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.execute("DROP SCHEMA " + schema + " CASCADE");
+        dataSource.destroy();
+    }
+
+    @Test
+    void migratesHiddenRoomsOnceAndKeepsTheOldTable() {
+        runner.run(new DefaultApplicationArguments());
+        runner.run(new DefaultApplicationArguments());
+
+        assertThat(jdbcTemplate.queryForList("SELECT user_id FROM chatroom_participants WHERE hidden", Long.class))
+                .containsExactly(11L);
+        assertThat(jdbcTemplate.queryForObject("SELECT to_regclass('hidden_chat_rooms') IS NULL", Boolean.class)).isTrue();
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM hidden_chat_rooms_archived", Integer.class)).isEqualTo(1);
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM keeper_data_migrations WHERE name = 'hidden_chat_rooms -> chatroom_participants.hidden'",
+                Integer.class)).isEqualTo(1);
+    }
+
+    @Test
+    void backfillsRoomCountersOnce() {
+        jdbcTemplate.execute("CREATE TABLE chat_rooms (id BIGINT PRIMARY KEY, member_count INT NOT NULL DEFAULT 0, "
+                + "last_activity_at TIMESTAMP)");
+        jdbcTemplate.execute("CREATE TABLE messages (id BIGINT PRIMARY KEY, chatroom_id BIGINT, timestamp TIMESTAMP)");
+        jdbcTemplate.execute("INSERT INTO chat_rooms (id) VALUES (1), (2)");
+        jdbcTemplate.execute("INSERT INTO messages VALUES (100, 1, TIMESTAMP '2026-01-01 10:00'), "
+                + "(101, 1, TIMESTAMP '2026-01-02 10:00')");
+
+        runner.run(new DefaultApplicationArguments());
+
+        assertThat(jdbcTemplate.queryForList("SELECT member_count FROM chat_rooms ORDER BY id", Integer.class))
+                .containsExactly(2, 0);
+        assertThat(jdbcTemplate.queryForObject("SELECT last_activity_at::text FROM chat_rooms WHERE id = 1", String.class))
+                .isEqualTo("2026-01-02 10:00:00");
+
+        jdbcTemplate.execute("UPDATE chat_rooms SET member_count = 0, last_activity_at = NULL");
+        runner.run(new DefaultApplicationArguments());
+
+        assertThat(jdbcTemplate.queryForList("SELECT member_count FROM chat_rooms ORDER BY id", Integer.class))
+                .containsExactly(0, 0);
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM chat_rooms WHERE last_activity_at IS NOT NULL",
+                Integer.class)).isZero();
+    }
+
+    @Test
+    void backfillsRepliesOnce() {
+        jdbcTemplate.execute("CREATE TABLE users (id BIGINT PRIMARY KEY, username VARCHAR(50))");
+        jdbcTemplate.execute("CREATE TABLE messages (id BIGINT PRIMARY KEY, sender_id BIGINT, content TEXT, "
+                + "replied_to_id BIGINT, reply_sender_username VARCHAR(50), reply_snippet TEXT, reply_count INT NOT NULL DEFAULT 0)");
+        jdbcTemplate.execute("INSERT INTO users VALUES (10, 'alice')");
+        jdbcTemplate.execute("INSERT INTO messages (id, sender_id, content, replied_to_id) VALUES "
+                + "(1, 10, 'parent', NULL), (2, 10, 'reply', 1)");
+
+        runner.run(new DefaultApplicationArguments());
+
+        assertThat(jdbcTemplate.queryForObject("SELECT reply_snippet FROM messages WHERE id = 2", String.class))
+                .isEqualTo("parent");
+        assertThat(jdbcTemplate.queryForObject("SELECT reply_count FROM messages WHERE id = 1", Integer.class))
+                .isEqualTo(1);
+
+        jdbcTemplate.execute("UPDATE messages SET reply_snippet = NULL, reply_count = 0");
+        runner.run(new DefaultApplicationArguments());
+
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM messages WHERE reply_snippet IS NOT NULL OR reply_count > 0",
+                Integer.class)).isZero();
+    }
+
+    @Test
+    void doesNotRecordAFailedStep() {
+        runner.run(new DefaultApplicationArguments());
+        AtomicInteger attempts = new AtomicInteger();
+
+        ReflectionTestUtils.invokeMethod(runner, "runOnce", "flaky", (Runnable) () -> {
+            attempts.incrementAndGet();
+            jdbcTemplate.update("UPDATE chatroom_participants SET hidden = TRUE");
+            throw new IllegalStateException("boom");
+        });
+        ReflectionTestUtils.invokeMethod(runner, "runOnce", "flaky", (Runnable) attempts::incrementAndGet);
+        ReflectionTestUtils.invokeMethod(runner, "runOnce", "flaky", (Runnable) attempts::incrementAndGet);
+
+        assertThat(attempts).hasValue(2);
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM chatroom_participants WHERE hidden", Integer.class))
+                .isEqualTo(1);
+    }
+}
@@ -0,0 +1,85 @@
+package xyz.piod.keeper.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.test.util.ReflectionTestUtils;
+import xyz.piod.keeper.dto.ChatMessage;
+import xyz.piod.keeper.service.transport.BroadcastEvent;
+import xyz.piod.keeper.service.transport.EventTransport;
+import xyz.piod.keeper.service.transport.LocalEventListener;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BroadcastServiceTest {
+
+    private EventTransport eventTransport;
+    private BroadcastService broadcastService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        eventTransport = mock(EventTransport.class);
+        when(eventTransport.name()).thenReturn("test");
+        TopicSubscriptionRegistry subscriptionRegistry = mock(TopicSubscriptionRegistry.class);
+        when(subscriptionRegistry.hasSubscribers(any())).thenReturn(true);
+        ObjectProvider<LocalEventListener> listeners = mock(ObjectProvider.class);
+        when(listeners.orderedStream()).thenAnswer(invocation -> Stream.empty());
+
+        broadcastService = new BroadcastService(eventTransport, subscriptionRegistry, new SimpleMeterRegistry(), listeners);
+        ReflectionTestUtils.setField(broadcastService, "hotRoomsEnabled", true);
+        ReflectionTestUtils.setField(broadcastService, "hotThreshold", 2);
+        ReflectionTestUtils.setField(broadcastService, "coolThreshold", 1);
+        broadcastService.init();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void batchedRoomEventsQueueBehindMessagesBufferedForAHotRoom() {
+        ChatMessage first = message(ChatMessage.MessageType.CHAT);
+        ChatMessage second = message(ChatMessage.MessageType.CHAT);
+        ChatMessage seen = message(ChatMessage.MessageType.MESSAGES_SEEN);
+        broadcastService.broadcast("room:1", "new_event", first);
+        broadcastService.broadcast("room:1", "new_event", second);
+
+        broadcastService.broadcastAll(List.of(new BroadcastEvent("room:1", "new_event", seen)));
+        verify(eventTransport, never()).publishBatch(anyList());
+
+        broadcastService.flushHotRooms();
+
+        ArgumentCaptor<List<BroadcastEvent>> frames = ArgumentCaptor.forClass(List.class);
+        verify(eventTransport).publishBatch(frames.capture());
+        assertThat(frames.getValue()).singleElement().satisfies(frame -> {
+            assertThat(frame.event()).isEqualTo(HotRoomCoalescer.BATCH_EVENT);
+            assertThat((List<Object>) frame.payload()).containsExactly(second, seen);
+        });
+    }
+
+    @Test
+    void publishesBatchedEventsOfQuietRoomsRightAway() {
+        BroadcastEvent seen = new BroadcastEvent("room:1", "new_event", message(ChatMessage.MessageType.MESSAGES_SEEN));
+
+        broadcastService.broadcastAll(List.of(seen));
+
+        verify(eventTransport).publishBatch(List.of(seen));
+    }
+
+    private static ChatMessage message(ChatMessage.MessageType type) {
+        ChatMessage message = new ChatMessage();
+        message.setType(type);
+        message.setSenderUsername("alice");
+        message.setLastMessageId(5L);
+        return message;
+    }
+}
@@ -0,0 +1,93 @@
+package xyz.piod.keeper.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.context.ApplicationEventPublisher;
+import xyz.piod.keeper.entity.ChatRoom;
+import xyz.piod.keeper.entity.Friendship;
+import xyz.piod.keeper.entity.FriendshipStatus;
+import xyz.piod.keeper.entity.User;
+import xyz.piod.keeper.mapper.UserMapper;
+import xyz.piod.keeper.repository.ChatRoomParticipantRepository;
+import xyz.piod.keeper.repository.ChatRoomRepository;
+import xyz.piod.keeper.repository.FriendshipRepository;
+import xyz.piod.keeper.service.inbox.InboxService;
+
+import java.util.Optional;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ChatRoomServiceTest {
+
+    private ChatRoomRepository chatRoomRepository;
+    private RoomMembershipService membershipService;
+    private ChatRoomService chatRoomService;
+
+    @BeforeEach
+    void setUp() {
+        chatRoomRepository = mock(ChatRoomRepository.class);
+        membershipService = mock(RoomMembershipService.class);
+        FriendshipRepository friendshipRepository = mock(FriendshipRepository.class);
+        UserService userService = mock(UserService.class);
+        chatRoomService = new ChatRoomService(chatRoomRepository, friendshipRepository,
+                mock(ChatRoomParticipantRepository.class), membershipService, mock(InboxService.class),
+                mock(BroadcastService.class), mock(UserMapper.class), userService, mock(ApplicationEventPublisher.class));
+
+        User alice = user(7L, "alice");
+        User bob = user(3L, "bob");
+        when(userService.findUserByUsername("alice")).thenReturn(alice);
+        when(userService.findUserByUsername("bob")).thenReturn(bob);
+        Friendship friendship = new Friendship();
+        friendship.setStatus(FriendshipStatus.ACCEPTED);
+        when(friendshipRepository.findFriendshipBetween(alice, bob)).thenReturn(Optional.of(friendship));
+    }
+
+    @Test
+    void reusesARoomCreatedWhileWaitingForThePairLock() {
+        ChatRoom existing = new ChatRoom();
+        existing.setId(42L);
+        when(chatRoomRepository.findDirectMessageRoomId(3L, 7L)).thenReturn(null, 42L);
+        when(chatRoomRepository.findById(42L)).thenReturn(Optional.of(existing));
+
+        chatRoomService.getOrCreateDirectMessageChannel("alice", "bob");
+
+        InOrder order = inOrder(chatRoomRepository);
+        order.verify(chatRoomRepository).findDirectMessageRoomId(3L, 7L);
+        order.verify(chatRoomRepository).lockDirectMessagePair(3L, 7L);
+        order.verify(chatRoomRepository).findDirectMessageRoomId(3L, 7L);
+        verify(chatRoomRepository, never()).save(any());
+        verify(membershipService).toResponse(existing);
+    }
+
+    @Test
+    void createsTheRoomUnderThePairLock() {
+        when(chatRoomRepository.findDirectMessageRoomId(3L, 7L)).thenReturn(null);
+        when(chatRoomRepository.save(any(ChatRoom.class))).thenAnswer(invocation -> {
+            ChatRoom room = invocation.getArgument(0);
+            room.setId(42L);
+            return room;
+        });
+        when(chatRoomRepository.findById(42L)).thenAnswer(invocation -> Optional.of(new ChatRoom()));
+
+        chatRoomService.getOrCreateDirectMessageChannel("alice", "bob");
+
+        InOrder order = inOrder(chatRoomRepository, membershipService);
+        order.verify(chatRoomRepository).lockDirectMessagePair(3L, 7L);
+        order.verify(chatRoomRepository).save(any(ChatRoom.class));
+        order.verify(membershipService).addMember(42L, 7L);
+        order.verify(membershipService).addMember(42L, 3L);
+    }
+
+    private static User user(Long id, String username) {
+        User user = new User();
+        user.setId(id);
+        user.setUsername(username);
+        return user;
+    }
+}
@@ -0,0 +1,136 @@
+package xyz.piod.keeper.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitOperations;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.test.util.ReflectionTestUtils;
+import xyz.piod.keeper.config.CommandLane;
+import xyz.piod.keeper.config.RabbitMQConfig;
+import xyz.piod.keeper.dto.command.MessageCommand;
+import xyz.piod.keeper.entity.User;
+import xyz.piod.keeper.service.typing.TypingService;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CommandConsumerServiceTest {
+
+    private final MessageConverter messageConverter = new Jackson2JsonMessageConverter(new ObjectMapper());
+
+    private CommandProcessor commandProcessor;
+    private TypingService typingService;
+    private RabbitOperations operations;
+    private CommandConsumerService consumer;
+
+    @BeforeEach
+    void setUp() {
+        commandProcessor = mock(CommandProcessor.class);
+        typingService = mock(TypingService.class);
+        JwtService jwtService = mock(JwtService.class);
+        UserService userService = mock(UserService.class);
+        RabbitTemplate rabbitTemplate = mock(RabbitTemplate.class);
+        operations = mock(RabbitOperations.class);
+        when(commandProcessor.isKnownAction(anyString())).thenReturn(true);
+        when(typingService.isTypingAction(anyString())).thenAnswer(invocation ->
+                List.of("typing", "stop_typing").contains(invocation.<String>getArgument(0)));
+        when(jwtService.extractUsername(anyString())).thenReturn("alice");
+        when(userService.findUserByUsername("alice")).thenReturn(new User());
+        doAnswer(invocation -> invocation.<RabbitOperations.OperationsCallback<?>>getArgument(0).doInRabbit(operations))
+                .when(rabbitTemplate).invoke(any());
+
+        consumer = new CommandConsumerService(commandProcessor, jwtService, userService, typingService,
+                rabbitTemplate, messageConverter, Map.of(), new SimpleMeterRegistry());
+        for (String lane : List.of("interactive", "social", "bulk")) {
+            ReflectionTestUtils.setField(consumer, lane + "SloMillis", 1_000L);
+            ReflectionTestUtils.setField(consumer, lane + "Stripes", 4);
+        }
+        ReflectionTestUtils.setField(consumer, "ephemeralDeadlineMillis", 2_000L);
+        consumer.initLanes();
+    }
+
+    @Test
+    void routesEachRoomOntoOneStripeWithItsAction() {
+        Message first = laneMessage(command(7L, null, "c1"), "cmd.v2.message.new_message");
+        Message second = laneMessage(command(7L, null, "c2"), "cmd.v2.message.edit_message");
+
+        consumer.route(CommandLane.INTERACTIVE, first);
+        consumer.route(CommandLane.INTERACTIVE, second);
+
+        String stripeKey = CommandLane.INTERACTIVE.stripeRoutingKey(Math.floorMod(Long.hashCode(7L), 4));
+        verify(operations).send(RabbitMQConfig.COMMAND_STRIPES_EXCHANGE, stripeKey, first);
+        verify(operations).send(RabbitMQConfig.COMMAND_STRIPES_EXCHANGE, stripeKey, second);
+        verify(operations, times(2)).waitForConfirmsOrDie(anyLong());
+        assertThat((String) first.getMessageProperties().getHeader(CommandConsumerService.ACTION_HEADER))
+                .isEqualTo("new_message");
+        assertThat((String) second.getMessageProperties().getHeader(CommandConsumerService.ACTION_HEADER))
+                .isEqualTo("edit_message");
+    }
+
+    @Test
+    void stripesMessageOnlyCommandsByTheirMessage() {
+        assertThat(CommandConsumerService.stripeIndex(command(null, 501L, null), 8))
+                .isEqualTo(Math.floorMod(Long.hashCode(501L), 8));
+    }
+
+    @Test
+    void handlesStripeMessagesWithTheRoutedAction() {
+        Message message = laneMessage(command(1L, null, "c1"), "cmd.v2.message.new_message");
+        consumer.route(CommandLane.INTERACTIVE, message);
+
+        consumer.handleStripeMessage(CommandLane.INTERACTIVE, message);
+
+        verify(commandProcessor).process(eq("new_message"), any(), any(), eq("amqp"), anyLong());
+    }
+
+    @Test
+    void dropsStripeMessagesWithoutAnAction() {
+        consumer.handleStripeMessage(CommandLane.INTERACTIVE, laneMessage(command(1L, null, "c1"), "cmd.v2.message.new_message"));
+
+        verify(commandProcessor, never()).process(anyString(), any(), any(), anyString(), anyLong());
+    }
+
+    @Test
+    void dropsStaleTypingWithoutHandlingIt() {
+        consumer.handleMessageCommand(CommandLane.SOCIAL, command(1L, null, null), "typing",
+                new Date(System.currentTimeMillis() - 10_000L));
+
+        verify(typingService, never()).handle(anyString(), any());
+    }
+
+    private Message laneMessage(MessageCommand command, String routingKey) {
+        MessageProperties properties = new MessageProperties();
+        properties.setTimestamp(new Date());
+        Message message = messageConverter.toMessage(command, properties);
+        message.getMessageProperties().setReceivedRoutingKey(routingKey);
+        return message;
+    }
+
+    private static MessageCommand command(Long roomId, Long messageId, String commandId) {
+        MessageCommand command = new MessageCommand();
+        command.setRoomId(roomId);
+        command.setMessageId(messageId);
+        command.setCommandId(commandId);
+        command.setUserToken("token");
+        return command;
+    }
+}
@@ -0,0 +1,110 @@
+package xyz.piod.keeper.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+import xyz.piod.keeper.dto.ChatMessage;
+import xyz.piod.keeper.dto.command.MessageCommand;
+import xyz.piod.keeper.entity.User;
+
+import java.time.Duration;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CommandProcessorTest {
+
+    private MessageService messageService;
+    private RedisTemplate<String, String> redisTemplate;
+    private ValueOperations<String, String> values;
+    private CommandProcessor processor;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        messageService = mock(MessageService.class);
+        redisTemplate = mock(RedisTemplate.class);
+        values = mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(values);
+        processor = new CommandProcessor(messageService, mock(ReactionService.class), mock(SeenReceiptCoalescer.class),
+                redisTemplate, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(processor, "dedupTtlMillis", 600_000L);
+        ReflectionTestUtils.setField(processor, "inFlightTtlMillis", 30_000L);
+    }
+
+    @Test
+    void marksCommandDoneOnlyAfterItSucceeds() {
+        when(values.setIfAbsent(anyString(), anyString(), any(Duration.class))).thenReturn(true);
+
+        processor.process("new_message", command("c1"), user(7L), "direct", System.currentTimeMillis());
+
+        verify(values).setIfAbsent("command:dedup:7:c1", "in-flight", Duration.ofMillis(30_000L));
+        verify(messageService).saveAndBroadcastMessage(eq(1L), any(ChatMessage.class), any(User.class));
+        verify(values).set("command:dedup:7:c1", "done", Duration.ofMillis(600_000L));
+    }
+
+    @Test
+    void releasesTheClaimWhenProcessingFails() {
+        when(values.setIfAbsent(anyString(), anyString(), any(Duration.class))).thenReturn(true);
+        doThrow(new IllegalStateException("db down"))
+                .when(messageService).saveAndBroadcastMessage(any(), any(), any());
+
+        processor.process("new_message", command("c1"), user(7L), "amqp", System.currentTimeMillis());
+
+        verify(redisTemplate).delete("command:dedup:7:c1");
+        verify(values, never()).set(anyString(), eq("done"), any(Duration.class));
+    }
+
+    @Test
+    void skipsCommandsAlreadyClaimed() {
+        when(values.setIfAbsent(anyString(), anyString(), any(Duration.class))).thenReturn(false);
+
+        processor.process("new_message", command("c1"), user(7L), "amqp", System.currentTimeMillis());
+
+        verify(messageService, never()).saveAndBroadcastMessage(any(), any(), any());
+        verify(redisTemplate, never()).delete(anyString());
+    }
+
+    @Test
+    void scopesTheKeyToTheSendingUser() {
+        when(values.setIfAbsent(anyString(), anyString(), any(Duration.class))).thenReturn(true);
+
+        processor.process("new_message", command("c1"), user(7L), "amqp", System.currentTimeMillis());
+        processor.process("new_message", command("c1"), user(8L), "amqp", System.currentTimeMillis());
+
+        verify(values).setIfAbsent(eq("command:dedup:7:c1"), anyString(), any(Duration.class));
+        verify(values).setIfAbsent(eq("command:dedup:8:c1"), anyString(), any(Duration.class));
+    }
+
+    @Test
+    void processesCommandsWithoutAnIdWithoutTouchingRedis() {
+        processor.process("new_message", command(null), user(7L), "amqp", System.currentTimeMillis());
+
+        verify(messageService).saveAndBroadcastMessage(eq(1L), any(ChatMessage.class), any(User.class));
+        verify(redisTemplate, never()).opsForValue();
+    }
+
+    private static MessageCommand command(String commandId) {
+        MessageCommand command = new MessageCommand();
+        command.setCommandId(commandId);
+        command.setRoomId(1L);
+        command.setContent("hi");
+        return command;
+    }
+
+    private static User user(Long id) {
+        User user = new User();
+        user.setId(id);
+        user.setUsername("user" + id);
+        return user;
+    }
+}
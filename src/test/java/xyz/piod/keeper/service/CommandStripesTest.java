@@ -0,0 +1,109 @@
+package xyz.piod.keeper.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import xyz.piod.keeper.dto.command.MessageCommand;
+import xyz.piod.keeper.repository.MessageRepository;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CommandStripesTest {
+
+    private MessageRepository messageRepository;
+    private CommandStripes stripes;
+
+    @BeforeEach
+    void setUp() {
+        messageRepository = mock(MessageRepository.class);
+        stripes = new CommandStripes("test", 8, 1_000, messageRepository);
+    }
+
+    @AfterEach
+    void tearDown() {
+        stripes.shutdown();
+    }
+
+    @Test
+    void stripesMessageCommandsByTheirRoom() {
+        when(messageRepository.findRoomIdById(500L)).thenReturn(Optional.of(3L));
+
+        assertThat(stripes.stripeIndex(edit(500L))).isEqualTo(stripes.stripeIndex(post(3L)));
+    }
+
+    @Test
+    void fallsBackToTheMessageIdForUnknownMessages() {
+        when(messageRepository.findRoomIdById(501L)).thenReturn(Optional.empty());
+
+        assertThat(stripes.stripeIndex(edit(501L))).isEqualTo(Math.floorMod(Long.hashCode(501L), 8));
+    }
+
+    @Test
+    void runsEachRoomInSubmissionOrder() throws InterruptedException {
+        int rooms = 20;
+        int perRoom = 200;
+        Map<Long, List<Integer>> seen = new ConcurrentHashMap<>();
+        CountDownLatch done = new CountDownLatch(rooms * perRoom);
+
+        for (int i = 0; i < perRoom; i++) {
+            for (long room = 0; room < rooms; room++) {
+                long roomId = room;
+                int sequence = i;
+                assertThat(stripes.submit(post(roomId), () -> {
+                    seen.computeIfAbsent(roomId, id -> new CopyOnWriteArrayList<>()).add(sequence);
+                    done.countDown();
+                })).isTrue();
+            }
+        }
+
+        assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+        for (List<Integer> sequences : seen.values()) {
+            assertThat(sequences).isSorted().hasSize(perRoom);
+        }
+    }
+
+    @Test
+    void rejectsWhenAStripeIsFull() throws InterruptedException {
+        CommandStripes tiny = new CommandStripes("tiny", 1, 1, messageRepository);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            assertThat(tiny.submit(post(1L), () -> awaitQuietly(release))).isTrue();
+            Thread.sleep(50);
+            assertThat(tiny.submit(post(1L), () -> { })).isTrue();
+            assertThat(tiny.submit(post(1L), () -> { })).isFalse();
+        } finally {
+            release.countDown();
+            tiny.shutdown();
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static MessageCommand post(Long roomId) {
+        MessageCommand command = new MessageCommand();
+        command.setRoomId(roomId);
+        return command;
+    }
+
+    private static MessageCommand edit(Long messageId) {
+        MessageCommand command = new MessageCommand();
+        command.setMessageId(messageId);
+        return command;
+    }
+}
@@ -0,0 +1,78 @@
+package xyz.piod.keeper.service;
+
+import org.junit.jupiter.api.Test;
+import xyz.piod.keeper.dto.ChatMessage;
+import xyz.piod.keeper.dto.MessageResponse;
+import xyz.piod.keeper.service.transport.BroadcastEvent;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HotRoomCoalescerTest {
+
+    private final HotRoomCoalescer coalescer = new HotRoomCoalescer(3, 2);
+
+    @Test
+    void deliversImmediatelyBelowTheHotThreshold() {
+        assertThat(coalescer.offer(chat("room:1"), 0)).isFalse();
+        assertThat(coalescer.offer(chat("room:1"), 10)).isFalse();
+        assertThat(coalescer.drain(20)).isEmpty();
+    }
+
+    @Test
+    void buffersHotRoomsIntoOneFrame() {
+        coalescer.offer(chat("room:1"), 0);
+        coalescer.offer(chat("room:1"), 1);
+
+        assertThat(coalescer.offer(chat("room:1"), 2)).isTrue();
+        assertThat(coalescer.offer(chat("room:1"), 3)).isTrue();
+
+        List<BroadcastEvent> frames = coalescer.drain(4);
+        assertThat(frames).singleElement().satisfies(frame -> {
+            assertThat(frame.event()).isEqualTo(HotRoomCoalescer.BATCH_EVENT);
+            assertThat((List<?>) frame.payload()).hasSize(2);
+        });
+        assertThat(coalescer.hotRoomCount()).isEqualTo(1);
+    }
+
+    @Test
+    void keepsOnlyTheLatestReactionUpdatePerMessage() {
+        for (int i = 0; i < 3; i++) {
+            coalescer.offer(chat("room:1"), i);
+        }
+        coalescer.offer(reaction("room:1", 7L), 3);
+        coalescer.offer(reaction("room:1", 7L), 4);
+        coalescer.offer(reaction("room:1", 8L), 5);
+
+        assertThat((List<?>) coalescer.drain(6).get(0).payload()).hasSize(3);
+    }
+
+    @Test
+    void leavesCoalescingModeOnlyAfterAQuietTick() {
+        for (int i = 0; i < 4; i++) {
+            coalescer.offer(chat("room:1"), i);
+        }
+        coalescer.drain(5);
+
+        coalescer.drain(2_500);
+
+        assertThat(coalescer.hotRoomCount()).isZero();
+        assertThat(coalescer.offer(chat("room:1"), 2_600)).isFalse();
+    }
+
+    private static BroadcastEvent chat(String topic) {
+        ChatMessage message = new ChatMessage();
+        message.setType(ChatMessage.MessageType.CHAT);
+        return new BroadcastEvent(topic, "new_event", message);
+    }
+
+    private static BroadcastEvent reaction(String topic, Long messageId) {
+        MessageResponse updated = new MessageResponse();
+        updated.setId(messageId);
+        ChatMessage message = new ChatMessage();
+        message.setType(ChatMessage.MessageType.REACTION_UPDATE);
+        message.setUpdatedMessage(updated);
+        return new BroadcastEvent(topic, "new_event", message);
+    }
+}
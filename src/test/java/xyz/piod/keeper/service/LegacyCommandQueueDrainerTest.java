@@ -0,0 +1,76 @@
+package xyz.piod.keeper.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import xyz.piod.keeper.config.RabbitMQConfig;
+
+import java.util.Properties;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class LegacyCommandQueueDrainerTest {
+
+    private AmqpAdmin amqpAdmin;
+    private RabbitTemplate rabbitTemplate;
+    private LegacyCommandQueueDrainer drainer;
+
+    @BeforeEach
+    void setUp() {
+        amqpAdmin = mock(AmqpAdmin.class);
+        rabbitTemplate = mock(RabbitTemplate.class);
+        drainer = new LegacyCommandQueueDrainer(amqpAdmin, rabbitTemplate);
+    }
+
+    @Test
+    void bindsTheLanesOnlyAfterUnbindingTheLegacyQueue() {
+        when(amqpAdmin.getQueueProperties(RabbitMQConfig.LEGACY_COMMANDS_QUEUE)).thenReturn(legacy(1));
+
+        drainer.drain();
+
+        InOrder order = inOrder(amqpAdmin);
+        order.verify(amqpAdmin).removeBinding(any(Binding.class));
+        order.verify(amqpAdmin, times(RabbitMQConfig.commandLaneBindings().size())).declareBinding(any(Binding.class));
+    }
+
+    @Test
+    void waitsForOldConsumersBeforeDraining() {
+        when(amqpAdmin.getQueueProperties(RabbitMQConfig.LEGACY_COMMANDS_QUEUE)).thenReturn(legacy(2));
+
+        drainer.drain();
+        drainer.drain();
+
+        verify(amqpAdmin, times(2)).removeBinding(any(Binding.class));
+        verify(rabbitTemplate, never()).execute(any());
+        verify(amqpAdmin, never()).deleteQueue(RabbitMQConfig.LEGACY_COMMANDS_QUEUE, true, true);
+    }
+
+    @Test
+    void drainsAndDeletesOnceNoConsumerIsLeft() {
+        when(amqpAdmin.getQueueProperties(RabbitMQConfig.LEGACY_COMMANDS_QUEUE)).thenReturn(legacy(0)).thenReturn(null);
+        when(rabbitTemplate.execute(any())).thenReturn(true, true, false);
+
+        drainer.drain();
+        drainer.drain();
+
+        verify(rabbitTemplate, times(3)).execute(any());
+        verify(amqpAdmin).deleteQueue(RabbitMQConfig.LEGACY_COMMANDS_QUEUE, true, true);
+        verify(amqpAdmin, times(1)).getQueueProperties(RabbitMQConfig.LEGACY_COMMANDS_QUEUE);
+    }
+
+    private static Properties legacy(int consumers) {
+        Properties properties = new Properties();
+        properties.put(RabbitAdmin.QUEUE_CONSUMER_COUNT, consumers);
+        return properties;
+    }
+}
@@ -0,0 +1,137 @@
+package xyz.piod.keeper.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.data.redis.connection.DataType;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import xyz.piod.keeper.dto.NotificationDigest;
+import xyz.piod.keeper.dto.NotificationPayload;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Needs a reachable Redis: set KEEPER_TEST_REDIS_HOST (and KEEPER_TEST_REDIS_PORT if not 6379).
+ */
+@EnabledIfEnvironmentVariable(named = "KEEPER_TEST_REDIS_HOST", matches = ".+")
+class NotificationDigestServiceTest {
+
+    private static final String DUE_KEY = "notification:digest-due";
+
+    private LettuceConnectionFactory connectionFactory;
+    private StringRedisTemplate redisTemplate;
+    private NotificationPublisher notificationPublisher;
+    private NotificationDigestService digestService;
+    private String recipient;
+
+    @BeforeEach
+    void setUp() {
+        String port = System.getenv("KEEPER_TEST_REDIS_PORT");
+        connectionFactory = new LettuceConnectionFactory(System.getenv("KEEPER_TEST_REDIS_HOST"),
+                port == null ? 6379 : Integer.parseInt(port));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+
+        notificationPublisher = mock(NotificationPublisher.class);
+        digestService = new NotificationDigestService(redisTemplate, notificationPublisher, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(digestService, "enabled", true);
+        ReflectionTestUtils.setField(digestService, "windowMillis", 60_000L);
+        ReflectionTestUtils.setField(digestService, "tickMillis", 100L);
+        ReflectionTestUtils.setField(digestService, "wheelSize", 64);
+        ReflectionTestUtils.setField(digestService, "snippetLength", 50);
+        ReflectionTestUtils.setField(digestService, "sweepBatchSize", 100);
+        ReflectionTestUtils.setField(digestService, "claimTimeoutMillis", 0L);
+        digestService.init();
+
+        recipient = "digest-test-" + UUID.randomUUID();
+    }
+
+    @AfterEach
+    void tearDown() {
+        redisTemplate.delete(List.of("notification:digest:user:" + recipient, "notification:digest:rooms:" + recipient));
+        redisTemplate.opsForZSet().remove(DUE_KEY, recipient);
+        connectionFactory.destroy();
+    }
+
+    @Test
+    void keepsTheDigestUntilThePublishIsConfirmed() {
+        digestService.enqueue(List.of(payload("one"), payload("two")));
+        makeDue();
+        when(notificationPublisher.publishConfirmed(eq(NotificationPublisher.DIGEST_ROUTING_KEY), anyList())).thenReturn(false);
+
+        digestService.emitDigests(List.of(recipient));
+
+        assertThat(redisTemplate.opsForHash().get("notification:digest:user:" + recipient, "count")).isEqualTo("2");
+        assertThat(redisTemplate.opsForZSet().score(DUE_KEY, recipient)).isNotNull();
+
+        when(notificationPublisher.publishConfirmed(eq(NotificationPublisher.DIGEST_ROUTING_KEY), anyList())).thenReturn(true);
+        digestService.emitDigests(List.of(recipient));
+
+        assertThat(redisTemplate.hasKey("notification:digest:user:" + recipient)).isFalse();
+        assertThat(redisTemplate.opsForZSet().score(DUE_KEY, recipient)).isNull();
+    }
+
+    @Test
+    void keepsPayloadsThatArriveWhileTheDigestIsSent() {
+        digestService.enqueue(List.of(payload("one")));
+        makeDue();
+        when(notificationPublisher.publishConfirmed(eq(NotificationPublisher.DIGEST_ROUTING_KEY), anyList()))
+                .thenAnswer(invocation -> {
+                    List<NotificationDigest> digests = invocation.getArgument(1);
+                    assertThat(digests).singleElement().extracting(NotificationDigest::getMessageCount).isEqualTo(1L);
+                    digestService.enqueue(List.of(payload("late")));
+                    return true;
+                });
+
+        digestService.emitDigests(List.of(recipient));
+
+        assertThat(redisTemplate.opsForHash().get("notification:digest:user:" + recipient, "count")).isEqualTo("1");
+        assertThat(redisTemplate.opsForZSet().score(DUE_KEY, recipient)).isGreaterThan((double) System.currentTimeMillis());
+    }
+
+    @Test
+    void onlyOneEmitterClaimsADigest() {
+        ReflectionTestUtils.setField(digestService, "claimTimeoutMillis", 60_000L);
+        digestService.enqueue(List.of(payload("one")));
+        makeDue();
+        when(notificationPublisher.publishConfirmed(eq(NotificationPublisher.DIGEST_ROUTING_KEY), anyList())).thenReturn(false);
+
+        digestService.emitDigests(List.of(recipient));
+        digestService.emitDigests(List.of(recipient));
+
+        verify(notificationPublisher, times(1))
+                .publishConfirmed(eq(NotificationPublisher.DIGEST_ROUTING_KEY), anyList());
+    }
+
+    @Test
+    void recipientKeysNeverCollideWithTheDueSet() {
+        recipient = "due";
+        digestService.enqueue(List.of(payload("one")));
+
+        assertThat(redisTemplate.type("notification:digest:user:due")).isEqualTo(DataType.HASH);
+        assertThat(redisTemplate.type(DUE_KEY)).isEqualTo(DataType.ZSET);
+        assertThat(redisTemplate.opsForZSet().score(DUE_KEY, "due")).isNotNull();
+    }
+
+    private void makeDue() {
+        redisTemplate.opsForZSet().add(DUE_KEY, recipient, 0);
+    }
+
+    private NotificationPayload payload(String content) {
+        return new NotificationPayload(recipient, "alice", content, 1L, "token");
+    }
+}
@@ -0,0 +1,91 @@
+package xyz.piod.keeper.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+import xyz.piod.keeper.dto.NotificationPayload;
+import xyz.piod.keeper.dto.NotificationRecipient;
+import xyz.piod.keeper.repository.ChatRoomParticipantRepository;
+import xyz.piod.keeper.service.presence.PresenceService;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class NotificationFanoutServiceTest {
+
+    private ChatRoomParticipantRepository participantRepository;
+    private PresenceService presenceService;
+    private NotificationPublisher notificationPublisher;
+    private NotificationFanoutService fanoutService;
+
+    @BeforeEach
+    void setUp() {
+        participantRepository = mock(ChatRoomParticipantRepository.class);
+        presenceService = mock(PresenceService.class);
+        notificationPublisher = mock(NotificationPublisher.class);
+        when(presenceService.onlineAmong(anyCollection())).thenReturn(Set.of());
+        when(notificationPublisher.publishConfirmed(anyString(), anyList())).thenReturn(true);
+
+        fanoutService = new NotificationFanoutService(participantRepository, presenceService, notificationPublisher,
+                mock(NotificationDigestService.class), new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(fanoutService, "chunkSize", 100);
+        fanoutService.initMetrics();
+    }
+
+    @Test
+    void notifiesOfflineMembersOfEveryRoom() {
+        when(participantRepository.findNotificationRecipients(eq(1L), eq(7L), eq(0L), any(Pageable.class)))
+                .thenReturn(List.of(new NotificationRecipient(8L, "bob", "token")));
+
+        fanoutService.onMessagePosted(event("hello everyone"));
+
+        verify(notificationPublisher).publishConfirmed(NotificationPublisher.NEW_MESSAGE_ROUTING_KEY,
+                List.of(new NotificationPayload("bob", "alice", "hello everyone", 1L, "token")));
+    }
+
+    @Test
+    void skipsOnlineMembers() {
+        when(participantRepository.findNotificationRecipients(eq(1L), eq(7L), eq(0L), any(Pageable.class)))
+                .thenReturn(List.of(new NotificationRecipient(8L, "bob", "token")));
+        when(presenceService.onlineAmong(anyCollection())).thenReturn(Set.of("bob"));
+
+        fanoutService.onMessagePosted(event("hi"));
+
+        verify(notificationPublisher, never()).publishConfirmed(anyString(), anyList());
+    }
+
+    @Test
+    void pagesRecipientsByIdInChunks() {
+        ReflectionTestUtils.setField(fanoutService, "chunkSize", 2);
+        when(participantRepository.findNotificationRecipients(eq(1L), eq(7L), eq(0L), any(Pageable.class)))
+                .thenReturn(List.of(new NotificationRecipient(8L, "bob", "t1"), new NotificationRecipient(9L, "carol", "t2")));
+        when(participantRepository.findNotificationRecipients(eq(1L), eq(7L), eq(9L), any(Pageable.class)))
+                .thenReturn(List.of(new NotificationRecipient(12L, "dave", "t3")));
+
+        fanoutService.onMessagePosted(event("hi"));
+
+        verify(notificationPublisher).publishConfirmed(NotificationPublisher.NEW_MESSAGE_ROUTING_KEY, List.of(
+                new NotificationPayload("bob", "alice", "hi", 1L, "t1"),
+                new NotificationPayload("carol", "alice", "hi", 1L, "t2")));
+        verify(notificationPublisher).publishConfirmed(NotificationPublisher.NEW_MESSAGE_ROUTING_KEY,
+                List.of(new NotificationPayload("dave", "alice", "hi", 1L, "t3")));
+        verify(participantRepository, never()).findNotificationRecipients(eq(1L), eq(7L), eq(12L), any(Pageable.class));
+    }
+
+    private static MessagePostedEvent event(String content) {
+        return new MessagePostedEvent(1L, 100L, 7L, "alice", content, LocalDateTime.now());
+    }
+}
@@ -0,0 +1,100 @@
+package xyz.piod.keeper.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+import xyz.piod.keeper.mapper.ChatRoomMapper;
+import xyz.piod.keeper.mapper.UserMapper;
+import xyz.piod.keeper.repository.ChatRoomParticipantRepository;
+import xyz.piod.keeper.repository.ChatRoomRepository;
+import xyz.piod.keeper.repository.UserRepository;
+import xyz.piod.keeper.service.membership.RoomMembershipIndex;
+
+import java.util.BitSet;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RoomMembershipServiceTest {
+
+    private ChatRoomParticipantRepository participantRepository;
+    private RoomMembershipIndex membershipIndex;
+    private RoomMembershipService membershipService;
+
+    @BeforeEach
+    void setUp() {
+        participantRepository = mock(ChatRoomParticipantRepository.class);
+        membershipIndex = mock(RoomMembershipIndex.class);
+        membershipService = new RoomMembershipService(participantRepository, mock(ChatRoomRepository.class),
+                mock(UserRepository.class), mock(ChatRoomMapper.class), mock(UserMapper.class),
+                mock(BroadcastService.class), membershipIndex);
+        ReflectionTestUtils.setField(membershipService, "memberPageMax", 50);
+    }
+
+    @Test
+    void escapesLikeWildcardsInTheMemberPrefix() {
+        when(participantRepository.findMembers(eq(1L), any(), any())).thenReturn(Page.empty());
+
+        membershipService.getMembers(1L, " a_b%c\\ ", PageRequest.of(0, 20));
+
+        verify(participantRepository).findMembers(1L, "a\\_b\\%c\\\\", PageRequest.of(0, 20));
+    }
+
+    @Test
+    void capsTheMemberPageSize() {
+        when(participantRepository.findMembers(eq(1L), any(), any())).thenReturn(Page.empty());
+
+        membershipService.getMembers(1L, null, PageRequest.of(2, 500));
+
+        verify(participantRepository).findMembers(1L, "", PageRequest.of(2, 50));
+    }
+
+    @Test
+    void setsOneBitPerRequestedPositionFromTheIndex() {
+        when(membershipIndex.containsMember(3L, 7L)).thenReturn(true);
+        when(membershipIndex.containsMember(1L, 7L)).thenReturn(true);
+
+        BitSet allowed = membershipService.authorize(7L, List.of(3L, 2L, 1L, 3L));
+
+        assertThat(allowed.stream()).containsExactly(0, 2, 3);
+        verify(participantRepository).findMemberRoomIds(7L, List.of(2L));
+    }
+
+    @Test
+    void checksIndexMissesAgainstTheDatabase() {
+        when(participantRepository.findMemberRoomIds(7L, List.of(3L, 2L, 1L))).thenReturn(List.of(1L, 3L));
+
+        assertThat(membershipService.authorize(7L, List.of(3L, 2L, 1L)).stream()).containsExactly(0, 2);
+    }
+
+    @Test
+    void encodesTheFirstRoomInTheLowestBitOfTheFirstByte() {
+        when(membershipIndex.containsMember(1L, 7L)).thenReturn(true);
+        when(membershipIndex.containsMember(9L, 7L)).thenReturn(true);
+        List<Long> roomIds = List.of(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L);
+
+        byte[] bytes = membershipService.authorize(7L, roomIds).toByteArray();
+
+        assertThat(bytes).containsExactly(0x01, 0x01);
+    }
+
+    @Test
+    void containsMemberStaysOnTheIndexOnceItIsReady() {
+        when(membershipIndex.isReady()).thenReturn(true);
+
+        assertThat(membershipService.containsMember(3L, 7L)).isFalse();
+        verify(membershipIndex, never()).isMember(any(), any());
+
+        when(membershipIndex.isReady()).thenReturn(false);
+        when(membershipIndex.isMember(3L, 7L)).thenReturn(true);
+        assertThat(membershipService.containsMember(3L, 7L)).isTrue();
+    }
+}
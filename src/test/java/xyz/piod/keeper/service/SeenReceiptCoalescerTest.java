@@ -0,0 +1,141 @@
+package xyz.piod.keeper.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.test.util.ReflectionTestUtils;
+import xyz.piod.keeper.dto.ChatMessage;
+import xyz.piod.keeper.entity.User;
+import xyz.piod.keeper.service.transport.BroadcastEvent;
+
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SeenReceiptCoalescerTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private BroadcastService broadcastService;
+    private SeenReceiptCoalescer coalescer;
+    private final List<Long> written = new ArrayList<>();
+    private boolean databaseDown;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        broadcastService = mock(BroadcastService.class);
+        when(jdbcTemplate.batchUpdate(anyString(), any(Collection.class), anyInt(), any(ParameterizedPreparedStatementSetter.class)))
+                .thenAnswer(invocation -> {
+                    if (databaseDown) {
+                        throw new DataAccessResourceFailureException("down");
+                    }
+                    Collection<Object> batch = invocation.getArgument(1);
+                    ParameterizedPreparedStatementSetter<Object> setter = invocation.getArgument(3);
+                    PreparedStatement statement = mock(PreparedStatement.class);
+                    for (Object entry : batch) {
+                        setter.setValues(statement, entry);
+                        written.add(lastMessageId(entry));
+                    }
+                    int[] counts = new int[batch.size()];
+                    Arrays.fill(counts, 1);
+                    return new int[][] {counts};
+                });
+
+        coalescer = new SeenReceiptCoalescer(jdbcTemplate, broadcastService, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(coalescer, "maxFlushAttempts", 3);
+        coalescer.initMetrics();
+    }
+
+    @Test
+    void keepsReceiptsWhenTheFlushFails() {
+        coalescer.offer(user(1L), 10L, 100L);
+        databaseDown = true;
+        coalescer.flush();
+        verify(broadcastService, never()).broadcastAll(anyList());
+
+        databaseDown = false;
+        coalescer.flush();
+
+        assertThat(written).containsExactly(100L);
+        verify(broadcastService).broadcastAll(anyList());
+    }
+
+    @Test
+    void prefersNewerReceiptsOfferedDuringAFailedFlush() {
+        coalescer.offer(user(1L), 10L, 100L);
+        databaseDown = true;
+        coalescer.flush();
+        coalescer.offer(user(1L), 10L, 120L);
+
+        databaseDown = false;
+        coalescer.flush();
+
+        assertThat(written).containsExactly(120L);
+    }
+
+    @Test
+    void dropsReceiptsAfterTheLastAttempt() {
+        coalescer.offer(user(1L), 10L, 100L);
+        databaseDown = true;
+        coalescer.flush();
+        coalescer.flush();
+        coalescer.flush();
+
+        databaseDown = false;
+        coalescer.flush();
+
+        assertThat(written).isEmpty();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void broadcastsOneFilledFramePerUserAndRoom() {
+        coalescer.offer(user(1L), 10L, 100L);
+        coalescer.offer(user(2L), 10L, 90L);
+
+        coalescer.flush();
+
+        ArgumentCaptor<List<BroadcastEvent>> events = ArgumentCaptor.forClass(List.class);
+        verify(broadcastService).broadcastAll(events.capture());
+        assertThat(events.getValue()).hasSize(2).allSatisfy(event -> {
+            assertThat(event.topic()).isEqualTo("room:10");
+            ChatMessage seen = (ChatMessage) event.payload();
+            assertThat(seen.getType()).isEqualTo(ChatMessage.MessageType.MESSAGES_SEEN);
+            assertThat(seen.getRoomId()).isEqualTo(10L);
+        });
+        assertThat(events.getValue()).extracting(event -> (ChatMessage) event.payload())
+                .extracting(ChatMessage::getSenderUsername, ChatMessage::getLastMessageId)
+                .containsExactlyInAnyOrder(tuple("user1", 100L), tuple("user2", 90L));
+    }
+
+    private static Long lastMessageId(Object entry) {
+        Object pending = ((Map.Entry<?, ?>) entry).getValue();
+        return ReflectionTestUtils.invokeMethod(pending, "lastMessageId");
+    }
+
+    private static User user(Long id) {
+        User user = new User();
+        user.setId(id);
+        user.setUsername("user" + id);
+        return user;
+    }
+}
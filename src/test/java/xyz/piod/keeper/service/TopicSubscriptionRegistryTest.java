@@ -0,0 +1,108 @@
+package xyz.piod.keeper.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class TopicSubscriptionRegistryTest {
+
+    private RedisTemplate<String, String> redisTemplate;
+    private ZSetOperations<String, String> zSet;
+    private TopicSubscriptionRegistry registry;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        redisTemplate = mock(RedisTemplate.class);
+        zSet = mock(ZSetOperations.class);
+        when(redisTemplate.opsForZSet()).thenReturn(zSet);
+        registry = new TopicSubscriptionRegistry(redisTemplate, mock(RedisMessageListenerContainer.class));
+        ReflectionTestUtils.setField(registry, "suppressionEnabled", true);
+        ReflectionTestUtils.setField(registry, "leaseTtlMillis", 30_000L);
+    }
+
+    @Test
+    void failsOpenBeforeTheFirstSnapshot() {
+        assertThat(registry.hasSubscribers("room:1")).isTrue();
+    }
+
+    @Test
+    void suppressesTopicsMissingFromTheSnapshot() {
+        when(zSet.rangeByScore(anyString(), anyDouble(), anyDouble())).thenReturn(Set.of("room:1"));
+
+        registry.refreshSnapshot();
+
+        assertThat(registry.hasSubscribers("room:1")).isTrue();
+        assertThat(registry.hasSubscribers("room:2")).isFalse();
+    }
+
+    @Test
+    void failsOpenWhenRedisIsUnavailable() {
+        when(zSet.rangeByScore(anyString(), anyDouble(), anyDouble())).thenReturn(Set.of("room:1"));
+        registry.refreshSnapshot();
+        when(zSet.rangeByScore(anyString(), anyDouble(), anyDouble()))
+                .thenThrow(new RedisConnectionFailureException("down"));
+
+        registry.refreshSnapshot();
+
+        assertThat(registry.hasSubscribers("room:2")).isTrue();
+    }
+
+    @Test
+    void publishesEverythingWhenSuppressionIsDisabled() {
+        ReflectionTestUtils.setField(registry, "suppressionEnabled", false);
+        when(zSet.rangeByScore(anyString(), anyDouble(), anyDouble())).thenReturn(Set.of());
+        registry.refreshSnapshot();
+
+        assertThat(registry.hasSubscribers("room:2")).isTrue();
+    }
+
+    @Test
+    void newSubscriptionsAreLiveBeforeTheNextRefresh() {
+        when(zSet.rangeByScore(anyString(), anyDouble(), anyDouble())).thenReturn(Set.of());
+        registry.refreshSnapshot();
+
+        registry.addSubscription("room:2");
+
+        assertThat(registry.hasSubscribers("room:2")).isTrue();
+        verify(redisTemplate).convertAndSend(TopicSubscriptionRegistry.SUBSCRIPTIONS_CHANNEL, "room:2");
+    }
+
+    @Test
+    void subscriptionsAnnouncedByOtherNodesAreLive() {
+        when(zSet.rangeByScore(anyString(), anyDouble(), anyDouble())).thenReturn(Set.of());
+        registry.refreshSnapshot();
+
+        registry.onMessage(new DefaultMessage(TopicSubscriptionRegistry.SUBSCRIPTIONS_CHANNEL.getBytes(StandardCharsets.UTF_8),
+                "room:3".getBytes(StandardCharsets.UTF_8)), null);
+
+        assertThat(registry.hasSubscribers("room:3")).isTrue();
+    }
+
+    @Test
+    void aRefreshThatReadBeforeTheLeaseKeepsTheNewSubscription() {
+        when(zSet.rangeByScore(anyString(), anyDouble(), anyDouble())).thenAnswer(invocation -> {
+            registry.addSubscription("room:4");
+            return Set.of();
+        });
+
+        registry.refreshSnapshot();
+
+        assertThat(registry.hasSubscribers("room:4")).isTrue();
+    }
+}
@@ -0,0 +1,282 @@
+package xyz.piod.keeper.service.archive;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import xyz.piod.keeper.dto.MessageResponse;
+import xyz.piod.keeper.entity.ArchivedSegment;
+import xyz.piod.keeper.entity.Message;
+import xyz.piod.keeper.exception.UnauthorizedOperationException;
+import xyz.piod.keeper.mapper.MessageMapper;
+import xyz.piod.keeper.repository.ArchivedSegmentRepository;
+import xyz.piod.keeper.repository.MessageRepository;
+import xyz.piod.keeper.repository.UserRepository;
+import xyz.piod.keeper.service.RoomMembershipService;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class MessageArchiveServiceTest {
+
+    private static final long ROOM_ID = 7L;
+    private static final LocalDateTime BASE = LocalDateTime.of(2024, 3, 1, 12, 0);
+
+    @TempDir
+    Path archiveDir;
+
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+    private ArchivedSegmentRepository segmentRepository;
+    private MessageRepository messageRepository;
+    private MessageMapper messageMapper;
+    private RoomMembershipService membershipService;
+    private MessageArchiveService archiveService;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        transactionTemplate = mock(TransactionTemplate.class);
+        segmentRepository = mock(ArchivedSegmentRepository.class);
+        messageRepository = mock(MessageRepository.class);
+        messageMapper = mock(MessageMapper.class);
+        membershipService = mock(RoomMembershipService.class);
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.getArgument(0, TransactionCallback.class).doInTransaction(null));
+        when(messageMapper.toMessageResponse(any())).thenAnswer(invocation -> {
+            MessageResponse response = new MessageResponse();
+            response.setId(invocation.getArgument(0, Message.class).getId());
+            return response;
+        });
+
+        archiveService = new MessageArchiveService(jdbcTemplate, transactionTemplate, segmentRepository,
+                mock(UserRepository.class), messageRepository, messageMapper, new SimpleMeterRegistry(), membershipService);
+        ReflectionTestUtils.setField(archiveService, "enabled", true);
+        ReflectionTestUtils.setField(archiveService, "archiveDir", archiveDir.toString());
+        ReflectionTestUtils.setField(archiveService, "blockSize", 4);
+        ReflectionTestUtils.setField(archiveService, "openSegmentLimit", 16);
+        archiveService.initMetrics();
+    }
+
+    @Test
+    void sweepOnlyRemovesStaleSegmentFiles() throws Exception {
+        Path orphan = staleFile("7/1-10.seg");
+        Path partial = staleFile("7/11-20.seg.tmp");
+        Path foreign = staleFile("notes.txt");
+        Path nested = staleFile("7/backup.db");
+        when(segmentRepository.findByIdGreaterThanOrderByIdAsc(any(), any())).thenReturn(List.of());
+
+        archiveService.verify();
+
+        assertThat(orphan).doesNotExist();
+        assertThat(partial).doesNotExist();
+        assertThat(foreign).exists();
+        assertThat(nested).exists();
+    }
+
+    @Test
+    void sweepIsSkippedWhileArchivingIsDisabled() throws Exception {
+        ReflectionTestUtils.setField(archiveService, "enabled", false);
+        Path orphan = staleFile("7/1-10.seg");
+        when(segmentRepository.findByIdGreaterThanOrderByIdAsc(any(), any())).thenReturn(List.of());
+
+        archiveService.verify();
+
+        assertThat(orphan).exists();
+        verify(segmentRepository, never()).existsByFileName(anyString());
+    }
+
+    @Test
+    void stitchDoesNotTouchTheManifestWhileArchivingIsDisabled() {
+        ReflectionTestUtils.setField(archiveService, "enabled", false);
+        Page<Message> hot = new PageImpl<>(List.of(message(12)), PageRequest.of(0, 4), 1);
+
+        Page<MessageResponse> page = archiveService.stitch(ROOM_ID, hot);
+
+        assertThat(page.getContent()).extracting(MessageResponse::getId).containsExactly(12L);
+        verifyNoInteractions(segmentRepository, jdbcTemplate);
+    }
+
+    @Test
+    void rehydrateChecksMembershipBeforeWriting() throws Exception {
+        ArchivedSegment segment = segment(LongStream.rangeClosed(1, 3).boxed().toList());
+        when(segmentRepository.findCovering(null, 2L)).thenReturn(List.of(segment));
+        when(membershipService.isMember(ROOM_ID, 42L)).thenReturn(false);
+
+        assertThatThrownBy(() -> archiveService.rehydrate(null, 2L, 42L))
+                .isInstanceOf(UnauthorizedOperationException.class);
+
+        verifyNoInteractions(transactionTemplate);
+        try (var files = Files.list(archiveDir.resolve("7"))) {
+            assertThat(files).containsExactly(archiveDir.resolve(segment.getFileName()));
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void rehydrateRestoresOnlyTheRequestedMessage() throws Exception {
+        ArchivedSegment segment = segment(LongStream.rangeClosed(1, 3).boxed().toList());
+        when(segmentRepository.findCovering(ROOM_ID, 2L)).thenReturn(List.of(segment));
+        when(membershipService.isMember(ROOM_ID, 42L)).thenReturn(true);
+        when(segmentRepository.replaceFile(eq(segment.getId()), eq(segment.getFileName()), anyString(), anyInt(), anyLong()))
+                .thenReturn(1);
+
+        assertThat(archiveService.rehydrate(ROOM_ID, 2L, 42L)).isTrue();
+
+        ArgumentCaptor<Collection<ColdMessage>> inserted = ArgumentCaptor.forClass(Collection.class);
+        verify(jdbcTemplate).batchUpdate(anyString(), inserted.capture(), eq(1), any(ParameterizedPreparedStatementSetter.class));
+        assertThat(inserted.getValue()).extracting(ColdMessage::id).containsExactly(2L);
+
+        ArgumentCaptor<String> rewritten = ArgumentCaptor.forClass(String.class);
+        verify(segmentRepository).replaceFile(eq(segment.getId()), eq(segment.getFileName()), rewritten.capture(),
+                eq(2), anyLong());
+        assertThat(SegmentFile.isSegmentName(rewritten.getValue())).isTrue();
+        assertThat(SegmentFile.open(archiveDir.resolve(rewritten.getValue())).readAll())
+                .extracting(ColdMessage::id).containsExactly(1L, 3L);
+        assertThat(archiveDir.resolve(segment.getFileName())).doesNotExist();
+    }
+
+    @Test
+    void stitchMergesRehydratedMessagesByTimestamp() throws Exception {
+        // Message 5 was rehydrated: it is hot but older than the newest cold message.
+        ArchivedSegment segment = segment(List.of(1L, 2L, 3L, 4L, 6L, 7L, 8L, 9L, 10L));
+        when(segmentRepository.countArchivedMessages(ROOM_ID)).thenReturn(9L);
+        when(segmentRepository.findByRoomIdOrderByLastMessageIdDesc(ROOM_ID)).thenReturn(List.of(segment));
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class), any(), any(), anyLong()))
+                .thenAnswer(invocation -> Math.min(2L, invocation.getArgument(4, Long.class)));
+        when(jdbcTemplate.query(anyString(), ArgumentMatchers.<RowMapper<MessageArchiveService.HotKey>>any(),
+                any(), any(), anyLong()))
+                .thenReturn(List.of(new MessageArchiveService.HotKey(5L, BASE.plusMinutes(5))));
+        when(messageRepository.findAllWithReactionsByIdIn(List.of(5L))).thenReturn(List.of(message(5)));
+
+        List<Message> hot = List.of(message(12), message(11), message(5));
+        assertThat(page(hot, 0)).containsExactly(12L, 11L, 10L, 9L);
+        assertThat(page(hot, 1)).containsExactly(8L, 7L, 6L, 5L);
+        assertThat(page(hot, 2)).containsExactly(4L, 3L, 2L, 1L);
+    }
+
+    @Test
+    void findRepliesStopsAfterTheScanLimit() throws Exception {
+        ReflectionTestUtils.setField(archiveService, "replyScanSegments", 2);
+        List<ArchivedSegment> segments = List.of(
+                segmentOf(List.of(cold(1), cold(2), cold(3))),
+                segmentOf(List.of(cold(4), reply(5, 1), cold(6))),
+                segmentOf(List.of(cold(7), reply(8, 1), cold(9))));
+        when(segmentRepository.findByRoomIdAndLastMessageIdGreaterThanOrderByFirstMessageIdAsc(ROOM_ID, 1L, PageRequest.of(0, 3)))
+                .thenReturn(segments);
+
+        MessageArchiveService.ReplyScan scan = archiveService.findReplies(ROOM_ID, 1L, 0L, 10);
+
+        assertThat(scan.replies()).extracting(MessageResponse::getId).containsExactly(5L);
+        assertThat(scan.scannedThrough()).isEqualTo(6L);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void dropExpiredDetachesHotRepliesToDroppedMessages() throws Exception {
+        doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        ArchivedSegment segment = segment(LongStream.rangeClosed(1, 3).boxed().toList());
+        when(segmentRepository.findByRoomIdAndNewestAtBefore(ROOM_ID, BASE)).thenReturn(List.of(segment));
+
+        assertThat(archiveService.dropExpired(ROOM_ID, BASE)).isEqualTo(3);
+
+        ArgumentCaptor<List<Object[]>> ranges = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(argThat((String sql) -> sql.contains("replied_to_id BETWEEN")), ranges.capture());
+        assertThat(ranges.getValue()).containsExactly(new Object[]{ROOM_ID, 1L, 3L});
+        verify(segmentRepository).deleteAllInBatch(List.of(segment));
+        assertThat(archiveDir.resolve(segment.getFileName())).doesNotExist();
+    }
+
+    private List<Long> page(List<Message> hot, int number) {
+        PageRequest pageable = PageRequest.of(number, 4, Sort.by(Sort.Order.desc("timestamp"), Sort.Order.desc("id")));
+        List<Message> content = hot.stream().skip(pageable.getOffset()).limit(4).toList();
+        Page<MessageResponse> page = archiveService.stitch(ROOM_ID, new PageImpl<>(content, pageable, hot.size()));
+        assertThat(page.getTotalElements()).isEqualTo(12);
+        return page.getContent().stream().map(MessageResponse::getId).toList();
+    }
+
+    private ArchivedSegment segment(List<Long> ids) throws Exception {
+        return segmentOf(ids.stream().map(MessageArchiveServiceTest::cold).toList());
+    }
+
+    private ArchivedSegment segmentOf(List<ColdMessage> messages) throws Exception {
+        List<Long> ids = messages.stream().map(ColdMessage::id).toList();
+        String fileName = SegmentFile.name(ROOM_ID, ids.get(0), ids.get(ids.size() - 1), null);
+        ArchivedSegment segment = new ArchivedSegment();
+        segment.setId(1L);
+        segment.setRoomId(ROOM_ID);
+        segment.setFirstMessageId(ids.get(0));
+        segment.setLastMessageId(ids.get(ids.size() - 1));
+        segment.setMessageCount(ids.size());
+        segment.setOldestAt(messages.get(0).timestamp());
+        segment.setNewestAt(messages.get(messages.size() - 1).timestamp());
+        segment.setFileName(fileName);
+        segment.setChecksum(SegmentFile.write(archiveDir.resolve(fileName), ROOM_ID, messages, 4));
+        return segment;
+    }
+
+    private static ColdMessage cold(long id) {
+        return new ColdMessage(id, 100L, "message " + id, null, null, null, 0, false, false,
+                null, null, null, null, BASE.plusMinutes(id), List.of(), List.of());
+    }
+
+    private static ColdMessage reply(long id, long parentId) {
+        return new ColdMessage(id, 100L, "message " + id, parentId, "alice", "message " + parentId, 0, false, false,
+                null, null, null, null, BASE.plusMinutes(id), List.of(), List.of());
+    }
+
+    private static Message message(long id) {
+        Message message = new Message();
+        message.setId(id);
+        message.setContent("message " + id);
+        message.setTimestamp(BASE.plusMinutes(id));
+        return message;
+    }
+
+    private Path staleFile(String name) throws Exception {
+        Path file = archiveDir.resolve(name);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, "x");
+        Files.setLastModifiedTime(file, FileTime.from(Instant.now().minus(2, ChronoUnit.HOURS)));
+        return file;
+    }
+}
@@ -0,0 +1,94 @@
+package xyz.piod.keeper.service.archive;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SegmentFileTest {
+
+    private static final LocalDateTime BASE = LocalDateTime.of(2024, 3, 1, 12, 0);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readsBackWhatWasWritten() throws IOException {
+        List<ColdMessage> messages = messages(600);
+        Path target = dir.resolve(SegmentFile.name(7, 1, 1200, null));
+
+        long checksum = SegmentFile.write(target, 7, messages, 256);
+        SegmentFile file = SegmentFile.open(target);
+
+        assertThat(file.checksum()).isEqualTo(checksum);
+        assertThat(file.roomId()).isEqualTo(7);
+        assertThat(file.messageCount()).isEqualTo(600);
+        assertThat(file.blockCount()).isEqualTo(3);
+        assertThat(file.firstId(1)).isEqualTo(messages.get(256).id());
+        assertThat(file.readAll()).isEqualTo(messages);
+        assertThat(file.read(250, 260)).isEqualTo(messages.subList(250, 260));
+        assertThat(file.find(513)).contains(messages.get(256));
+        assertThat(file.find(514)).isEmpty();
+        assertThat(file.find(0)).isEmpty();
+        assertThat(Files.exists(target.resolveSibling(target.getFileName() + ".tmp"))).isFalse();
+    }
+
+    @Test
+    void detectsCorruptBlocks() throws IOException {
+        Path target = dir.resolve(SegmentFile.name(7, 1, 1200, null));
+        long checksum = SegmentFile.write(target, 7, messages(600), 256);
+
+        byte[] bytes = Files.readAllBytes(target);
+        bytes[bytes.length - 10] ^= 0x5A;
+        Files.write(target, bytes);
+        SegmentFile file = SegmentFile.open(target);
+
+        assertThat(file.checksum()).isNotEqualTo(checksum);
+        assertThat(file.readBlock(0)).hasSize(256);
+        assertThatThrownBy(() -> file.readBlock(2))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("Checksum mismatch");
+    }
+
+    @Test
+    void rejectsFilesThatAreNotSegments() throws IOException {
+        Path target = dir.resolve("7/1-2.seg");
+        Files.createDirectories(target.getParent());
+        Files.write(target, new byte[64]);
+
+        assertThatThrownBy(() -> SegmentFile.open(target))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("Not a message segment");
+    }
+
+    @Test
+    void recognisesSegmentNames() {
+        assertThat(SegmentFile.isSegmentName(SegmentFile.name(7, 1, 1200, null))).isTrue();
+        assertThat(SegmentFile.isSegmentName(SegmentFile.name(7, 1, 1200, "3fa9c0"))).isTrue();
+        assertThat(SegmentFile.isSegmentName("7/1-1200.seg.tmp")).isTrue();
+        assertThat(SegmentFile.isSegmentName("7/1-1200.seg.bak")).isFalse();
+        assertThat(SegmentFile.isSegmentName("1-1200.seg")).isFalse();
+        assertThat(SegmentFile.isSegmentName("backups/dump.sql")).isFalse();
+    }
+
+    private static List<ColdMessage> messages(int count) {
+        List<ColdMessage> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long id = 1 + i * 2L;
+            messages.add(new ColdMessage(id, 100L + i % 3, "message " + id,
+                    i > 0 ? id - 2 : null, i > 0 ? "alice" : null, i > 0 ? "message " + (id - 2) : null,
+                    i % 5, i % 7 == 0, false, null, null, null, null, BASE.plusSeconds(id),
+                    List.of(new ColdMessage.Reaction(101L, "+1", BASE.plusSeconds(id + 1))),
+                    List.of(new ColdMessage.Receipt(102L, BASE.plusSeconds(id + 2)))));
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,183 @@
+package xyz.piod.keeper.service.export;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import xyz.piod.keeper.entity.User;
+import xyz.piod.keeper.exception.TooManyRequestsException;
+import xyz.piod.keeper.repository.UserRepository;
+import xyz.piod.keeper.service.RoomMembershipService;
+import xyz.piod.keeper.service.archive.ColdMessage;
+import xyz.piod.keeper.service.archive.MessageArchiveService;
+
+import java.io.ByteArrayOutputStream;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RoomExportServiceTest {
+
+    private static final long ROOM_ID = 7L;
+    private static final LocalDateTime BASE = LocalDateTime.of(2024, 3, 1, 12, 0);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final TreeSet<Long> hot = new TreeSet<>();
+    private final TreeSet<Long> archived = new TreeSet<>();
+    private final AtomicLong latestSegment = new AtomicLong();
+    private Runnable onSecondPage = () -> {};
+    private int queries;
+
+    private JdbcTemplate jdbcTemplate;
+    private MessageArchiveService archiveService;
+    private RoomMembershipService membershipService;
+    private RoomExportService exportService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        archiveService = mock(MessageArchiveService.class);
+        membershipService = mock(RoomMembershipService.class);
+        when(membershipService.isMember(eq(ROOM_ID), any())).thenReturn(true);
+        when(archiveService.latestSegmentId(ROOM_ID)).thenAnswer(invocation -> latestSegment.get());
+        doAnswer(invocation -> {
+            long afterId = invocation.getArgument(1);
+            List<ColdMessage> block = archived.tailSet(afterId, false).stream().map(RoomExportServiceTest::cold).toList();
+            if (!block.isEmpty()) {
+                invocation.getArgument(2, MessageArchiveService.ArchivedBlockHandler.class).handle(block);
+            }
+            return null;
+        }).when(archiveService).forEachArchivedBlock(eq(ROOM_ID), anyLong(), any());
+        when(jdbcTemplate.query(anyString(), ArgumentMatchers.<RowMapper<Object>>any(), eq(ROOM_ID), anyLong(), anyLong(), anyInt()))
+                .thenAnswer(invocation -> {
+                    if (++queries == 2) {
+                        onSecondPage.run();
+                    }
+                    RowMapper<?> mapper = invocation.getArgument(1);
+                    long afterId = invocation.getArgument(3);
+                    long beforeId = invocation.getArgument(4);
+                    int limit = invocation.getArgument(5);
+                    List<Object> rows = new ArrayList<>();
+                    for (Long id : hot.subSet(afterId, false, beforeId, false)) {
+                        if (rows.size() == limit) {
+                            break;
+                        }
+                        rows.add(mapper.mapRow(row(id), rows.size()));
+                    }
+                    return rows;
+                });
+
+        exportService = new RoomExportService(jdbcTemplate, objectMapper, mock(UserRepository.class),
+                membershipService, archiveService, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(exportService, "pageSize", 2);
+        ReflectionTestUtils.setField(exportService, "bufferSize", 1024);
+        ReflectionTestUtils.setField(exportService, "timeout", 60_000L);
+        ReflectionTestUtils.setField(exportService, "maxConcurrent", 2);
+        ReflectionTestUtils.setField(exportService, "maxPerUser", 1);
+        exportService.init();
+    }
+
+    @Test
+    void mergesRehydratedMessagesIntoArchivedBlocks() throws Exception {
+        archived.addAll(List.of(1L, 2L, 4L));
+        hot.addAll(List.of(3L, 5L, 6L, 7L));
+        latestSegment.set(1);
+
+        assertThat(exportedIds(null)).containsExactly(1L, 2L, 3L, 4L, 5L, 6L, 7L);
+    }
+
+    @Test
+    void resumesAfterTheGivenId() throws Exception {
+        archived.addAll(List.of(1L, 2L, 4L));
+        hot.addAll(List.of(3L, 5L, 6L, 7L));
+        latestSegment.set(1);
+
+        assertThat(exportedIds(3L)).containsExactly(4L, 5L, 6L, 7L);
+    }
+
+    @Test
+    void picksUpRowsArchivedMidExport() throws Exception {
+        hot.addAll(List.of(1L, 2L, 3L, 4L, 5L, 6L));
+        onSecondPage = () -> {
+            hot.removeAll(List.of(3L, 4L));
+            archived.addAll(List.of(3L, 4L));
+            latestSegment.incrementAndGet();
+        };
+
+        assertThat(exportedIds(null)).containsExactly(1L, 2L, 3L, 4L, 5L, 6L);
+    }
+
+    @Test
+    void limitsExportsPerUser() throws Exception {
+        StreamingResponseBody first = exportService.export(ROOM_ID, null, false, user(1L));
+
+        assertThatThrownBy(() -> exportService.export(ROOM_ID, null, false, user(1L)))
+                .isInstanceOf(TooManyRequestsException.class);
+
+        first.writeTo(new ByteArrayOutputStream());
+        exportService.export(ROOM_ID, null, false, user(1L)).writeTo(new ByteArrayOutputStream());
+    }
+
+    @Test
+    void limitsConcurrentExports() throws Exception {
+        StreamingResponseBody first = exportService.export(ROOM_ID, null, false, user(1L));
+        exportService.export(ROOM_ID, null, false, user(2L));
+
+        assertThatThrownBy(() -> exportService.export(ROOM_ID, null, false, user(3L)))
+                .isInstanceOf(TooManyRequestsException.class);
+
+        first.writeTo(new ByteArrayOutputStream());
+        exportService.export(ROOM_ID, null, false, user(3L));
+    }
+
+    private List<Long> exportedIds(Long afterId) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exportService.export(ROOM_ID, afterId, false, user(1L)).writeTo(out);
+        List<Long> ids = new ArrayList<>();
+        for (String line : out.toString().split("\n")) {
+            ids.add(objectMapper.readTree(line).get("id").asLong());
+        }
+        return ids;
+    }
+
+    private static ResultSet row(long id) throws Exception {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getLong("id")).thenReturn(id);
+        when(rs.getTimestamp("timestamp")).thenReturn(Timestamp.valueOf(BASE.plusMinutes(id)));
+        when(rs.getString("username")).thenReturn("alice");
+        when(rs.getString("content")).thenReturn("message " + id);
+        return rs;
+    }
+
+    private static ColdMessage cold(long id) {
+        return new ColdMessage(id, 100L, "message " + id, null, null, null, 0, false, false,
+                null, null, null, null, BASE.plusMinutes(id), List.of(), List.of());
+    }
+
+    private static User user(long id) {
+        User user = new User();
+        user.setId(id);
+        user.setUsername("user" + id);
+        return user;
+    }
+}
@@ -0,0 +1,52 @@
+package xyz.piod.keeper.service.gateway;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SendQueueTest {
+
+    private final List<Runnable> scheduled = new ArrayList<>();
+    private final List<String> written = new ArrayList<>();
+    private final AtomicBoolean failed = new AtomicBoolean();
+
+    @Test
+    void producersNeverWriteToTheConnection() {
+        SendQueue<String> queue = new SendQueue<>(4, scheduled::add, written::add, () -> failed.set(true));
+
+        assertThat(queue.offer("a")).isTrue();
+        assertThat(queue.offer("b")).isTrue();
+
+        assertThat(written).isEmpty();
+        assertThat(scheduled).hasSize(1);
+        scheduled.get(0).run();
+        assertThat(written).containsExactly("a", "b");
+    }
+
+    @Test
+    void rejectsFramesOnceTheBufferIsFull() {
+        SendQueue<String> queue = new SendQueue<>(2, scheduled::add, written::add, () -> failed.set(true));
+
+        queue.offer("a");
+        queue.offer("b");
+
+        assertThat(queue.offer("c")).isFalse();
+    }
+
+    @Test
+    void closesAndReportsWhenAWriteFails() {
+        SendQueue<String> queue = new SendQueue<>(4, Runnable::run, frame -> {
+            throw new IllegalStateException("broken pipe");
+        }, () -> failed.set(true));
+
+        queue.offer("a");
+
+        assertThat(failed).isTrue();
+        assertThat(queue.isClosed()).isTrue();
+        assertThat(queue.offer("b")).isFalse();
+    }
+}
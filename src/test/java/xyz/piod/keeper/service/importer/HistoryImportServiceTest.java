@@ -0,0 +1,145 @@
+package xyz.piod.keeper.service.importer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+import xyz.piod.keeper.entity.ChatRoom;
+import xyz.piod.keeper.entity.User;
+import xyz.piod.keeper.repository.ChatRoomRepository;
+import xyz.piod.keeper.repository.UserRepository;
+import xyz.piod.keeper.service.RoomMembershipService;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class HistoryImportServiceTest {
+
+    private static final long ROOM_ID = 3L;
+
+    @TempDir
+    Path dir;
+
+    private JdbcTemplate jdbcTemplate;
+    private UserRepository userRepository;
+    private HistoryImportService importService;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        userRepository = mock(UserRepository.class);
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        ChatRoomRepository chatRoomRepository = mock(ChatRoomRepository.class);
+        when(chatRoomRepository.findById(ROOM_ID)).thenReturn(Optional.of(new ChatRoom()));
+        doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+
+        importService = new HistoryImportService(jdbcTemplate, transactionTemplate, new ObjectMapper(),
+                userRepository, chatRoomRepository, mock(RoomMembershipService.class));
+        ReflectionTestUtils.setField(importService, "userBatchSize", 100);
+    }
+
+    @Test
+    void rejectsRoomsThatAlreadyHaveHistory() throws Exception {
+        when(jdbcTemplate.queryForObject(anyString(), eq(Boolean.class), eq(ROOM_ID), eq(ROOM_ID))).thenReturn(true);
+
+        assertThatThrownBy(() -> importService.importRoom(ROOM_ID, messages(line("1", "2024-01-01T10:00:00")), userMap("{}")))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("empty room");
+        verifyNoInteractions(userRepository);
+    }
+
+    @Test
+    void rejectsFilesNotSortedByTimestamp() throws Exception {
+        when(jdbcTemplate.queryForObject(anyString(), eq(Boolean.class), eq(ROOM_ID), eq(ROOM_ID))).thenReturn(false);
+        Path file = messages(line("1", "2024-01-01T10:00:00"), line("2", "2024-01-01T09:00:00"));
+
+        assertThatThrownBy(() -> importService.importRoom(ROOM_ID, file, userMap("{}")))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("sorted by timestamp");
+        verifyNoInteractions(userRepository);
+    }
+
+    @Test
+    void rejectsMappingsToUnknownAccounts() {
+        when(userRepository.findByUsernameIn(anyList())).thenReturn(List.of());
+
+        assertThatThrownBy(() -> importService.resolveUsers(Set.of("alice"), Map.of("alice", "alice_k")))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("alice_k");
+        verify(userRepository, never()).saveAll(any());
+    }
+
+    @Test
+    void mapsListedSendersAndCreatesPlaceholdersForTheRest() {
+        when(userRepository.findByUsernameIn(List.of("alice_k"))).thenReturn(List.of(user(7L, "alice_k")));
+        when(userRepository.findExistingUsernames(any())).thenReturn(List.of("BobSmith"), List.of());
+        AtomicLong ids = new AtomicLong(100);
+        when(userRepository.saveAll(anyList())).thenAnswer(invocation -> {
+            List<User> users = invocation.getArgument(0);
+            users.forEach(user -> user.setId(ids.incrementAndGet()));
+            return users;
+        });
+        Set<String> senders = new LinkedHashSet<>(List.of("alice", "Bob Smith", "carol"));
+
+        Map<String, Long> userIds = importService.resolveUsers(senders, Map.of("alice", "alice_k"));
+
+        assertThat(userIds).containsEntry("alice", 7L).containsKeys("Bob Smith", "carol");
+        assertThat(userIds.get("Bob Smith")).isNotEqualTo(userIds.get("carol")).isGreaterThan(100L);
+        verify(userRepository, times(2)).findExistingUsernames(any());
+        verify(userRepository, never()).findByUsername(anyString());
+        ArgumentCaptor<List<User>> created = ArgumentCaptor.forClass(List.class);
+        verify(userRepository).saveAll(created.capture());
+        assertThat(created.getValue()).hasSize(2)
+                .allMatch(user -> user.getEmail().endsWith("@imported.invalid"))
+                .noneMatch(user -> user.getUsername().equals("BobSmith"))
+                .anyMatch(user -> user.getUsername().equals("carol"));
+    }
+
+    private static User user(Long id, String username) {
+        User user = new User();
+        user.setId(id);
+        user.setUsername(username);
+        return user;
+    }
+
+    private static String line(String id, String timestamp) {
+        return "{\"id\":\"" + id + "\",\"timestamp\":\"" + timestamp + "\",\"sender\":\"alice\",\"content\":\"hi\"}";
+    }
+
+    private Path messages(String... lines) throws Exception {
+        return Files.write(dir.resolve("messages.jsonl"), List.of(lines));
+    }
+
+    private Path userMap(String json) throws Exception {
+        return Files.writeString(dir.resolve("users.json"), json);
+    }
+}
@@ -0,0 +1,197 @@
+package xyz.piod.keeper.service.inbox;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.domain.Page;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+import xyz.piod.keeper.dto.ChatRoomSummary;
+import xyz.piod.keeper.dto.InboxEntry;
+import xyz.piod.keeper.repository.ChatRoomParticipantRepository;
+import xyz.piod.keeper.repository.ChatRoomRepository;
+import xyz.piod.keeper.repository.MessageRepository;
+import xyz.piod.keeper.service.MessageDeletedEvent;
+import xyz.piod.keeper.service.MessageEditedEvent;
+import xyz.piod.keeper.service.MessagePostedEvent;
+import xyz.piod.keeper.service.RoomTombstonedEvent;
+import xyz.piod.keeper.service.membership.RoomMembershipIndex;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class InboxServiceTest {
+
+    private static final LocalDateTime FIRST = LocalDateTime.of(2026, 1, 1, 10, 0);
+    private static final LocalDateTime LAST = FIRST.plusSeconds(5);
+
+    private RedisTemplate<String, String> redisTemplate;
+    private ValueOperations<String, String> valueOperations;
+    private ZSetOperations<String, String> pipelinedZSet;
+    private ChatRoomRepository chatRoomRepository;
+    private ChatRoomParticipantRepository participantRepository;
+    private RoomMembershipIndex membershipIndex;
+    private InboxService inboxService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        redisTemplate = mock(RedisTemplate.class);
+        valueOperations = mock(ValueOperations.class);
+        pipelinedZSet = mock(ZSetOperations.class);
+        RedisOperations<String, String> pipeline = mock(RedisOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(pipeline.opsForZSet()).thenReturn(pipelinedZSet);
+        when(redisTemplate.executePipelined(any(SessionCallback.class))).thenAnswer(invocation -> {
+            invocation.getArgument(0, SessionCallback.class).execute(pipeline);
+            return List.of();
+        });
+
+        chatRoomRepository = mock(ChatRoomRepository.class);
+        participantRepository = mock(ChatRoomParticipantRepository.class);
+        membershipIndex = mock(RoomMembershipIndex.class);
+        when(membershipIndex.memberIdsOf(1L)).thenReturn(new int[]{7, 8});
+
+        inboxService = new InboxService(redisTemplate, chatRoomRepository, participantRepository,
+                mock(MessageRepository.class), membershipIndex);
+        ReflectionTestUtils.setField(inboxService, "snippetLength", 5);
+        ReflectionTestUtils.setField(inboxService, "fanoutChunkSize", 100);
+        ReflectionTestUtils.setField(inboxService, "largeRoomThreshold", 1);
+        ReflectionTestUtils.setField(inboxService, "largeRoomFanoutIntervalMillis", 30_000L);
+        ReflectionTestUtils.setField(inboxService, "maxEntries", 1000);
+        ReflectionTestUtils.setField(inboxService, "pageMax", 100);
+    }
+
+    @Test
+    void skipsHiddenMembersWhenFanningOutFromTheIndex() {
+        when(participantRepository.findHiddenMemberIds(1L)).thenReturn(List.of(8L));
+
+        inboxService.onMessagePosted(posted(100L, "hi", FIRST));
+
+        verify(pipelinedZSet).add("inbox:7", "1", score(FIRST));
+        verify(pipelinedZSet, never()).add(eq("inbox:8"), anyString(), anyDouble());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void prunesStaleRoomsBeforeFillingThePage() {
+        ZSetOperations<String, String> zSet = mock(ZSetOperations.class);
+        when(redisTemplate.opsForZSet()).thenReturn(zSet);
+        when(redisTemplate.hasKey("inbox:7:built")).thenReturn(true);
+        when(zSet.zCard("inbox:7")).thenReturn(4L);
+        when(zSet.reverseRange("inbox:7", 0, 1)).thenReturn(ordered("1", "2"), ordered("1", "3"));
+        when(chatRoomRepository.findRoomSummariesByIds(7L, List.of(1L, 2L))).thenReturn(List.of(summary(1L)));
+        when(chatRoomRepository.findRoomSummariesByIds(7L, List.of(1L, 3L))).thenReturn(List.of(summary(1L), summary(3L)));
+        when(redisTemplate.executePipelined(any(SessionCallback.class))).thenReturn(List.of(Map.of(), Map.of()));
+
+        Page<InboxEntry> page = inboxService.getInbox(7L, 0, 2);
+
+        verify(zSet).remove("inbox:7", "2");
+        assertThat(page.getContent()).extracting(entry -> entry.room().id()).containsExactly(1L, 3L);
+        assertThat(page.getTotalElements()).isEqualTo(3);
+    }
+
+    @Test
+    void fansOutTheLastMessageOfAThrottledBurst() {
+        when(chatRoomRepository.findMemberCount(1L)).thenReturn(2);
+        when(valueOperations.setIfAbsent(eq("inbox:fanout:1"), eq("1"), any(Duration.class)))
+                .thenReturn(true, false, false, true);
+
+        inboxService.onMessagePosted(posted(100L, "first", FIRST));
+        inboxService.onMessagePosted(posted(101L, "second", FIRST.plusSeconds(1)));
+        inboxService.onMessagePosted(posted(102L, "third", LAST));
+        verify(pipelinedZSet, times(1)).add("inbox:7", "1", score(FIRST));
+
+        inboxService.flushTrailingFanouts();
+        inboxService.flushTrailingFanouts();
+
+        verify(pipelinedZSet).add("inbox:7", "1", score(LAST));
+        verify(pipelinedZSet).add("inbox:8", "1", score(LAST));
+        verify(pipelinedZSet, never()).add("inbox:7", "1", score(FIRST.plusSeconds(1)));
+    }
+
+    @Test
+    void dropsATrailingFanoutOvertakenByANewerOne() {
+        when(chatRoomRepository.findMemberCount(1L)).thenReturn(2);
+        when(valueOperations.setIfAbsent(eq("inbox:fanout:1"), eq("1"), any(Duration.class)))
+                .thenReturn(false, true);
+
+        inboxService.onMessagePosted(posted(100L, "first", FIRST));
+        inboxService.onMessagePosted(posted(101L, "second", LAST));
+        inboxService.flushTrailingFanouts();
+
+        verify(pipelinedZSet, times(2)).add(anyString(), eq("1"), anyDouble());
+        verify(pipelinedZSet, never()).add("inbox:7", "1", score(FIRST));
+    }
+
+    @Test
+    void storesAnEmptySnippetForContentlessMessages() {
+        inboxService.onMessagePosted(posted(100L, null, FIRST));
+
+        verify(redisTemplate).execute(any(RedisScript.class), eq(List.of("inbox:room:1:last")),
+                eq("100"), eq("alice"), eq(""), eq(FIRST.toString()));
+    }
+
+    @Test
+    void rewritesTheSnippetOfAnEditedLastMessage() {
+        inboxService.onMessageEdited(new MessageEditedEvent(1L, 100L, "edited text"));
+
+        verify(redisTemplate).execute(any(RedisScript.class), eq(List.of("inbox:room:1:last")), eq("100"), eq("edite"));
+    }
+
+    @Test
+    void evictsTheSnapshotOfADeletedLastMessage() {
+        inboxService.onMessageDeleted(new MessageDeletedEvent(1L, 100L));
+
+        verify(redisTemplate).execute(any(RedisScript.class), eq(List.of("inbox:room:1:last")), eq("100"));
+    }
+
+    @Test
+    void forgetsTombstonedRooms() {
+        when(chatRoomRepository.findMemberCount(1L)).thenReturn(2);
+        when(valueOperations.setIfAbsent(eq("inbox:fanout:1"), eq("1"), any(Duration.class))).thenReturn(false, true);
+        inboxService.onMessagePosted(posted(100L, "first", FIRST));
+
+        inboxService.onRoomTombstoned(new RoomTombstonedEvent(1L));
+        inboxService.flushTrailingFanouts();
+
+        verify(redisTemplate).delete("inbox:room:1:last");
+        verify(pipelinedZSet, never()).add(anyString(), anyString(), anyDouble());
+    }
+
+    private static MessagePostedEvent posted(Long messageId, String content, LocalDateTime at) {
+        return new MessagePostedEvent(1L, messageId, 7L, "alice", content, at);
+    }
+
+    private static Set<String> ordered(String... members) {
+        return new LinkedHashSet<>(List.of(members));
+    }
+
+    private static ChatRoomSummary summary(Long roomId) {
+        return new ChatRoomSummary(roomId, "room", false, null, 2, null, FIRST);
+    }
+
+    private static double score(LocalDateTime at) {
+        return at.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,222 @@
+package xyz.piod.keeper.service.membership;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.Limit;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StreamOperations;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+import xyz.piod.keeper.repository.ChatRoomRepository;
+
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RoomMembershipIndexTest {
+
+    private final List<long[]> snapshot = new CopyOnWriteArrayList<>();
+    private Runnable duringLoad = () -> { };
+
+    private JdbcTemplate jdbcTemplate;
+    private StreamOperations<String, Object, Object> streams;
+    private ChatRoomRepository chatRoomRepository;
+    private RoomMembershipIndex index;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        doAnswer(invocation -> {
+            duringLoad.run();
+            RowCallbackHandler handler = invocation.getArgument(1);
+            for (long[] row : snapshot) {
+                handler.processRow(mock(ResultSet.class, call -> row[(int) call.getArgument(0, Integer.class) - 1]));
+            }
+            return null;
+        }).when(jdbcTemplate).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        doAnswer(invocation -> {
+            invocation.getArgument(0, Consumer.class).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+
+        RedisTemplate<String, String> redisTemplate = mock(RedisTemplate.class);
+        streams = mock(StreamOperations.class);
+        when(redisTemplate.opsForStream()).thenReturn(streams);
+        when(streams.reverseRange(eq(RoomMembershipIndex.MEMBERSHIP_STREAM), any(Range.class), any(Limit.class)))
+                .thenReturn(List.of());
+        when(streams.range(eq(RoomMembershipIndex.MEMBERSHIP_STREAM), any(Range.class), any(Limit.class)))
+                .thenReturn(List.of());
+        when(streams.read(any(StreamReadOptions.class), any(StreamOffset.class))).thenReturn(List.of());
+
+        chatRoomRepository = mock(ChatRoomRepository.class);
+        index = new RoomMembershipIndex(jdbcTemplate, transactionTemplate, redisTemplate, chatRoomRepository,
+                new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(index, "enabled", true);
+        ReflectionTestUtils.setField(index, "fetchSize", 100);
+        ReflectionTestUtils.setField(index, "pollBatchSize", 100);
+        ReflectionTestUtils.setField(index, "streamMaxLength", 1000L);
+    }
+
+    @Test
+    void checksMissesAgainstTheDatabase() {
+        index.rebuild();
+        when(chatRoomRepository.isUserParticipant(1L, 7L)).thenReturn(true);
+
+        assertThat(index.containsMember(1L, 7L)).isFalse();
+        assertThat(index.isMember(1L, 7L)).isTrue();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void appliesRevocationsFromTheStreamAndResumesAfterThem() {
+        snapshot.add(new long[]{1, 7});
+        index.rebuild();
+        assertThat(index.isMember(1L, 7L)).isTrue();
+
+        when(streams.read(any(StreamReadOptions.class), any(StreamOffset.class)))
+                .thenReturn(List.of(record("5-0", "REMOVE", 1, 7)), List.of());
+        index.pollChanges();
+        index.pollChanges();
+
+        assertThat(index.isMember(1L, 7L)).isFalse();
+        ArgumentCaptor<StreamOffset<String>> offsets = ArgumentCaptor.forClass(StreamOffset.class);
+        verify(streams, times(3)).read(any(StreamReadOptions.class), offsets.capture());
+        assertThat(offsets.getValue().getOffset().getOffset()).isEqualTo("5-0");
+    }
+
+    @Test
+    void rebuildsWhenItsStreamPositionWasTrimmed() {
+        index.rebuild();
+        when(streams.read(any(StreamReadOptions.class), any(StreamOffset.class)))
+                .thenReturn(List.of(record("5-0", "ADD", 1, 7)), List.of());
+        index.pollChanges();
+
+        when(streams.range(eq(RoomMembershipIndex.MEMBERSHIP_STREAM), any(Range.class), any(Limit.class)))
+                .thenReturn(List.of(record("9-0", "ADD", 2, 8)));
+        index.pollChanges();
+
+        verify(jdbcTemplate, times(2)).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+        assertThat(index.isReady()).isTrue();
+    }
+
+    @Test
+    void refusesIdsBeyondThirtyTwoBits() {
+        long wide = (1L << 32) + 7;
+        snapshot.add(new long[]{1, 7});
+        index.rebuild();
+
+        index.added(1L, wide);
+
+        assertThat(index.isReady()).isFalse();
+        assertThat(index.containsMember(1L, 7L)).isFalse();
+        index.isMember(1L, wide);
+        verify(chatRoomRepository).isUserParticipant(1L, wide);
+
+        snapshot.add(new long[]{1, wide});
+        index.rebuild();
+        assertThat(index.isReady()).isFalse();
+    }
+
+    @Test
+    void keepsChangesMadeWhileRebuilding() throws Exception {
+        for (long userId = 0; userId < 200; userId++) {
+            snapshot.add(new long[]{1, userId});
+        }
+        ExecutorService writers = Executors.newFixedThreadPool(8);
+        duringLoad = () -> {
+            List<Future<?>> writes = new ArrayList<>();
+            for (long userId = 0; userId < 400; userId++) {
+                long user = userId;
+                writes.add(writers.submit(() -> {
+                    if (user < 100) {
+                        index.removed(1L, user);
+                    } else if (user >= 200) {
+                        index.added(1L, user);
+                    }
+                }));
+            }
+            for (Future<?> write : writes) {
+                try {
+                    write.get();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+
+        index.rebuild();
+        writers.shutdown();
+
+        for (long userId = 0; userId < 400; userId++) {
+            assertThat(index.containsMember(1L, userId)).as("user %d", userId).isEqualTo(userId >= 100);
+            assertThat(index.roomIdsOf(userId).contains(1L)).as("rooms of user %d", userId).isEqualTo(userId >= 100);
+        }
+    }
+
+    @Test
+    void staysConsistentUnderConcurrentChangesAndReads() throws Exception {
+        index.rebuild();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int worker = 0; worker < 8; worker++) {
+            long room = worker % 4;
+            tasks.add(pool.submit(() -> {
+                for (long userId = 0; userId < 500; userId++) {
+                    index.added(room, userId);
+                    index.containsMember(room, userId);
+                    index.memberIdsOf(room);
+                    if (userId % 2 == 1) {
+                        index.removed(room, userId);
+                    }
+                }
+            }));
+        }
+        for (Future<?> task : tasks) {
+            task.get();
+        }
+        pool.shutdown();
+
+        for (long room = 0; room < 4; room++) {
+            assertThat(index.memberIdsOf(room)).hasSize(250);
+        }
+        for (long userId = 0; userId < 500; userId++) {
+            assertThat(index.roomIdsOf(userId)).hasSize(userId % 2 == 0 ? 4 : 0);
+        }
+        verify(chatRoomRepository, times(0)).findAllRoomIdsByParticipantId(anyLong());
+    }
+
+    private static MapRecord<String, Object, Object> record(String id, String op, int room, int user) {
+        return StreamRecords.<String, Object, Object>mapBacked(Map.<Object, Object>of("op", op, "room", Integer.toString(room),
+                "user", Integer.toString(user))).withStreamKey(RoomMembershipIndex.MEMBERSHIP_STREAM).withId(RecordId.of(id));
+    }
+}
@@ -0,0 +1,198 @@
+package xyz.piod.keeper.service.partition;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs in a throwaway schema. Needs a reachable Postgres 14+: set KEEPER_TEST_DATABASE_URL, and
+ * KEEPER_TEST_DATABASE_USERNAME / KEEPER_TEST_DATABASE_PASSWORD if required.
+ * Run with {@code -Dkeeper.benchmark=true} to also compare history and last-message
+ * lookups on a plain and a monthly partitioned table.
+ */
+@EnabledIfEnvironmentVariable(named = "KEEPER_TEST_DATABASE_URL", matches = ".+")
+class MessagePartitionServiceTest {
+
+    private final String schema = "keeper_partition_test_" + UUID.randomUUID().toString().replace("-", "");
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    void setUp() {
+        JdbcTemplate admin = new JdbcTemplate(dataSource(null));
+        admin.execute("CREATE SCHEMA " + schema);
+
+        DriverManagerDataSource dataSource = dataSource(schema);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        jdbcTemplate.execute("CREATE TABLE users (id BIGSERIAL PRIMARY KEY, username VARCHAR(50))");
+        jdbcTemplate.execute("""
+                CREATE TABLE messages (
+                    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+                    chatroom_id BIGINT NOT NULL,
+                    sender_id BIGINT NOT NULL REFERENCES users (id),
+                    content TEXT,
+                    timestamp TIMESTAMP NOT NULL,
+                    replied_to_id BIGINT,
+                    reply_sender_username VARCHAR(50),
+                    reply_snippet VARCHAR(256))
+                """);
+        jdbcTemplate.execute("CREATE INDEX idx_messages_chatroom_id_id ON messages (chatroom_id, id)");
+        jdbcTemplate.execute("CREATE TABLE reactions (id BIGSERIAL PRIMARY KEY, message_id BIGINT NOT NULL, emoji VARCHAR(8))");
+        jdbcTemplate.execute("CREATE TABLE message_read_receipts (id BIGSERIAL PRIMARY KEY, message_id BIGINT NOT NULL)");
+        jdbcTemplate.execute("INSERT INTO users (username) VALUES ('alice')");
+        jdbcTemplate.execute("INSERT INTO messages (chatroom_id, sender_id, content, timestamp) VALUES "
+                + "(1, 1, 'old', now() - interval '3 months'), (1, 1, 'new', now())");
+    }
+
+    @AfterEach
+    void tearDown() {
+        new JdbcTemplate(dataSource(null)).execute("DROP SCHEMA " + schema + " CASCADE");
+    }
+
+    @Test
+    void restoresForeignKeysWhilePartitioningIsOff() {
+        jdbcTemplate.execute("INSERT INTO reactions (message_id, emoji) VALUES (1, 'x'), (999, 'y')");
+        jdbcTemplate.execute("INSERT INTO message_read_receipts (message_id) VALUES (2), (998)");
+
+        service(false).maintain();
+        service(false).maintain();
+
+        assertThat(foreignKeysInto("messages")).containsExactlyInAnyOrder("message_read_receipts", "reactions");
+        assertThat(jdbcTemplate.queryForList("SELECT message_id FROM reactions", Long.class)).containsExactly(1L);
+        assertThat(jdbcTemplate.queryForList("SELECT message_id FROM message_read_receipts", Long.class)).containsExactly(2L);
+        assertThat(isPartitioned()).isFalse();
+    }
+
+    @Test
+    void convertsOnceWhenNodesRunMaintenanceTogether() throws Exception {
+        service(false).maintain();
+        ExecutorService nodes = Executors.newFixedThreadPool(3);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> runs = new ArrayList<>();
+        for (int node = 0; node < 3; node++) {
+            MessagePartitionService service = service(true);
+            runs.add(nodes.submit(() -> {
+                start.await();
+                service.maintain();
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> run : runs) {
+            run.get();
+        }
+        nodes.shutdown();
+        service(true).maintain();
+
+        assertThat(isPartitioned()).isTrue();
+        assertThat(foreignKeysInto("messages")).isEmpty();
+        List<String> partitions = jdbcTemplate.queryForList(
+                "SELECT c.relname::text FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid "
+                        + "WHERE i.inhparent = 'messages'::regclass ORDER BY 1", String.class);
+        assertThat(partitions).contains("messages_p_legacy").hasSize(2);
+        assertThat(jdbcTemplate.queryForList("SELECT pg_get_constraintdef(oid) FROM pg_constraint "
+                + "WHERE conrelid = 'messages_p_legacy'::regclass AND contype IN ('p', 'c')", String.class))
+                .containsExactly("PRIMARY KEY (id, \"timestamp\")");
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM pg_index i JOIN pg_inherits h ON h.inhrelid = i.indexrelid "
+                + "WHERE i.indrelid = 'messages_p_legacy'::regclass AND i.indisvalid", Integer.class)).isEqualTo(4);
+        assertThat(jdbcTemplate.queryForList("SELECT content FROM messages ORDER BY timestamp", String.class))
+                .containsExactly("old", "new");
+
+        Long nextId = jdbcTemplate.queryForObject("INSERT INTO messages (chatroom_id, sender_id, content, timestamp) "
+                + "VALUES (1, 1, 'next month', now() + interval '1 month') RETURNING id", Long.class);
+        assertThat(nextId).isEqualTo(3L);
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "keeper.benchmark", matches = "true")
+    void benchmarkPlainAgainstPartitioned() {
+        int rows = Integer.getInteger("keeper.benchmark.messages", 1_000_000);
+        int rooms = 1_000;
+        int iterations = 2_000;
+
+        jdbcTemplate.execute("CREATE TABLE messages_partitioned (LIKE messages INCLUDING DEFAULTS) PARTITION BY RANGE (timestamp)");
+        jdbcTemplate.execute("ALTER TABLE messages_partitioned ADD PRIMARY KEY (id, timestamp)");
+        jdbcTemplate.execute("CREATE INDEX ON messages_partitioned (chatroom_id, timestamp)");
+        jdbcTemplate.execute("CREATE INDEX ON messages (chatroom_id, timestamp)");
+        for (int month = -12; month <= 0; month++) {
+            jdbcTemplate.execute("CREATE TABLE messages_partitioned_" + (month + 12) + " PARTITION OF messages_partitioned "
+                    + "FOR VALUES FROM (date_trunc('month', now()) + interval '" + month + " months') "
+                    + "TO (date_trunc('month', now()) + interval '" + (month + 1) + " months')");
+        }
+        jdbcTemplate.update("INSERT INTO messages (chatroom_id, sender_id, content, timestamp) "
+                + "SELECT g % ?, 1, 'message ' || g, date_trunc('month', now()) - interval '12 months' "
+                + "+ (now() - date_trunc('month', now()) + interval '12 months') * g / ? "
+                + "FROM generate_series(1, ?) g", rooms, rows, rows);
+        jdbcTemplate.execute("INSERT INTO messages_partitioned SELECT * FROM messages");
+        jdbcTemplate.execute("ANALYZE messages");
+        jdbcTemplate.execute("ANALYZE messages_partitioned");
+
+        for (String table : List.of("messages", "messages_partitioned")) {
+            String history = "SELECT id FROM " + table + " WHERE chatroom_id = ? ORDER BY timestamp DESC, id DESC LIMIT 50";
+            String recent = "SELECT id FROM " + table + " WHERE chatroom_id = ? AND timestamp >= now() - interval '7 days' "
+                    + "ORDER BY timestamp DESC LIMIT 50";
+            System.out.printf("%s: history %d ns/op, last 7 days %d ns/op%n", table,
+                    time(history, rooms, iterations), time(recent, rooms, iterations));
+        }
+    }
+
+    private long time(String sql, int rooms, int iterations) {
+        for (int i = 0; i < iterations / 10; i++) {
+            jdbcTemplate.queryForList(sql, Long.class, i % rooms);
+        }
+        long started = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            jdbcTemplate.queryForList(sql, Long.class, i % rooms);
+        }
+        return (System.nanoTime() - started) / iterations;
+    }
+
+    private MessagePartitionService service(boolean enabled) {
+        MessagePartitionService service = new MessagePartitionService(jdbcTemplate, transactionTemplate);
+        ReflectionTestUtils.setField(service, "enabled", enabled);
+        ReflectionTestUtils.setField(service, "monthsAhead", 2);
+        ReflectionTestUtils.setField(service, "retentionMonths", 0);
+        ReflectionTestUtils.setField(service, "cleanupBatchSize", 100);
+        return service;
+    }
+
+    private boolean isPartitioned() {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT relkind = 'p' FROM pg_class WHERE oid = to_regclass('messages')", Boolean.class));
+    }
+
+    private List<String> foreignKeysInto(String table) {
+        return jdbcTemplate.queryForList("SELECT conrelid::regclass::text FROM pg_constraint "
+                + "WHERE contype = 'f' AND confrelid = ?::regclass", String.class, table);
+    }
+
+    private static DriverManagerDataSource dataSource(String schema) {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(System.getenv("KEEPER_TEST_DATABASE_URL"),
+                System.getenv("KEEPER_TEST_DATABASE_USERNAME"), System.getenv("KEEPER_TEST_DATABASE_PASSWORD"));
+        if (schema != null) {
+            Properties properties = new Properties();
+            properties.setProperty("options", "-c search_path=" + schema);
+            dataSource.setConnectionProperties(properties);
+        }
+        return dataSource;
+    }
+}
@@ -0,0 +1,159 @@
+package xyz.piod.keeper.service.presence;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.SetOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import xyz.piod.keeper.repository.ChatRoomRepository;
+import xyz.piod.keeper.repository.FriendshipRepository;
+import xyz.piod.keeper.repository.UserRepository;
+import xyz.piod.keeper.service.BroadcastService;
+import xyz.piod.keeper.service.membership.RoomMembershipIndex;
+import xyz.piod.keeper.service.transport.BroadcastEvent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class PresenceServiceTest {
+
+    private RedisTemplate<String, String> redisTemplate;
+    private UserRepository userRepository;
+    private ChatRoomRepository chatRoomRepository;
+    private FriendshipRepository friendshipRepository;
+    private RoomMembershipIndex membershipIndex;
+    private BroadcastService broadcastService;
+    private SetOperations<String, String> setOperations;
+    private PresenceService presenceService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        redisTemplate = mock(RedisTemplate.class);
+        userRepository = mock(UserRepository.class);
+        chatRoomRepository = mock(ChatRoomRepository.class);
+        friendshipRepository = mock(FriendshipRepository.class);
+        membershipIndex = mock(RoomMembershipIndex.class);
+        broadcastService = mock(BroadcastService.class);
+        setOperations = mock(SetOperations.class);
+        when(redisTemplate.opsForSet()).thenReturn(setOperations);
+        presenceService = new PresenceService(redisTemplate, mock(JdbcTemplate.class), chatRoomRepository,
+                friendshipRepository, userRepository, membershipIndex, broadcastService, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(presenceService, "shardCount", 1);
+        ReflectionTestUtils.setField(presenceService, "debounceMillis", 0L);
+        ReflectionTestUtils.setField(presenceService, "legacyFallback", false);
+        presenceService.initMetrics();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void reportsOnlyUsersVisibleToTheViewer() {
+        when(userRepository.findVisibleUsernames(7L, Set.of("bob", "stranger"))).thenReturn(List.of("bob"));
+        double future = System.currentTimeMillis() + 60_000;
+        when(redisTemplate.executePipelined(any(SessionCallback.class)))
+                .thenReturn(List.of(Arrays.asList(future)));
+
+        Set<String> online = presenceService.onlineAmongVisibleTo(7L, List.of("bob", "stranger"));
+
+        assertThat(online).containsExactly("bob");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void skipsRedisWhenNothingIsVisible() {
+        when(userRepository.findVisibleUsernames(any(), any())).thenReturn(List.of());
+
+        assertThat(presenceService.onlineAmongVisibleTo(7L, List.of("stranger"))).isEmpty();
+        verify(redisTemplate, never()).executePipelined(any(SessionCallback.class));
+    }
+
+    @Test
+    void ignoresEmptyQueries() {
+        assertThat(presenceService.onlineAmongVisibleTo(7L, List.of())).isEmpty();
+        verify(userRepository, never()).findVisibleUsernames(any(), any());
+    }
+
+    @Test
+    void countsRoomPresenceFromTheMembershipIndex() {
+        when(membershipIndex.memberIdsOf(3L)).thenReturn(new int[]{7, 8, 9});
+        when(setOperations.isMember(PresenceService.ONLINE_IDS_KEY, new Object[]{"7", "8", "9"}))
+                .thenReturn(Map.of("7", true, "8", false, "9", true));
+
+        assertThat(presenceService.onlineCountInRoom(3L)).isEqualTo(2);
+        verifyNoInteractions(chatRoomRepository);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void publishesSettledChangesWithOneAudienceQuery() {
+        doReturn(List.of("bob", "carol")).doReturn(List.of())
+                .when(redisTemplate).execute(any(RedisScript.class), anyList(), anyString(), anyString());
+        presenceService.sweepExpired();
+        when(friendshipRepository.findPresenceAudiences(Set.of("bob", "carol"))).thenReturn(List.of(
+                audience(8L, "bob", "alice"), audience(8L, "bob", "dave"), audience(9L, "carol", null)));
+
+        presenceService.publishSettledChanges();
+
+        verify(friendshipRepository, times(1)).findPresenceAudiences(any());
+        verify(setOperations).remove(eq(PresenceService.ONLINE_IDS_KEY), any(Object[].class));
+        ArgumentCaptor<List<BroadcastEvent>> events = ArgumentCaptor.forClass(List.class);
+        verify(broadcastService).broadcastAll(events.capture());
+        assertThat(events.getValue()).extracting(BroadcastEvent::topic).containsExactlyInAnyOrder("user:alice", "user:dave");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void sweepsInScriptBatchesUntilAShortBatch() {
+        List<String> full = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            full.add("user" + i);
+        }
+        doReturn(full).doReturn(List.of("last"))
+                .when(redisTemplate).execute(any(RedisScript.class), anyList(), anyString(), anyString());
+
+        presenceService.sweepExpired();
+
+        verify(redisTemplate, times(2)).execute(any(RedisScript.class), anyList(), anyString(), anyString());
+        verify(redisTemplate, never()).opsForZSet();
+    }
+
+    private static FriendshipRepository.PresenceAudience audience(Long userId, String username, String friend) {
+        return new FriendshipRepository.PresenceAudience() {
+            @Override
+            public Long getUserId() {
+                return userId;
+            }
+
+            @Override
+            public String getUsername() {
+                return username;
+            }
+
+            @Override
+            public String getFriendUsername() {
+                return friend;
+            }
+        };
+    }
+}
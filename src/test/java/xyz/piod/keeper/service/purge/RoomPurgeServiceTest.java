@@ -0,0 +1,91 @@
+package xyz.piod.keeper.service.purge;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+import xyz.piod.keeper.service.archive.MessageArchiveService;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RoomPurgeServiceTest {
+
+    private static final String TRY_LOCK = "SELECT pg_try_advisory_lock(hashtext(?))";
+    private static final String UNLOCK = "SELECT pg_advisory_unlock(hashtext(?))";
+
+    private JdbcTemplate jdbcTemplate;
+    private Connection connection;
+    private PreparedStatement tryLock;
+    private PreparedStatement unlock;
+    private ResultSet lockResult;
+    private RoomPurgeService purgeService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() throws Exception {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        connection = mock(Connection.class);
+        tryLock = mock(PreparedStatement.class);
+        unlock = mock(PreparedStatement.class);
+        lockResult = mock(ResultSet.class);
+        when(connection.prepareStatement(TRY_LOCK)).thenReturn(tryLock);
+        when(connection.prepareStatement(UNLOCK)).thenReturn(unlock);
+        when(tryLock.executeQuery()).thenReturn(lockResult);
+        when(unlock.executeQuery()).thenReturn(mock(ResultSet.class));
+        when(lockResult.next()).thenReturn(true);
+        when(jdbcTemplate.execute(any(ConnectionCallback.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0, ConnectionCallback.class).doInConnection(connection));
+
+        purgeService = new RoomPurgeService(jdbcTemplate, mock(TransactionTemplate.class), new SimpleMeterRegistry(),
+                mock(MessageArchiveService.class));
+        ReflectionTestUtils.setField(purgeService, "roomsPerRun", 10);
+        ReflectionTestUtils.setField(purgeService, "maxBatchesPerRun", 10);
+        purgeService.initMetrics();
+    }
+
+    @Test
+    void purgesWhileHoldingTheLock() throws Exception {
+        when(lockResult.getBoolean(1)).thenReturn(true);
+
+        purgeService.purgeTombstonedRooms();
+
+        verify(tryLock).setString(1, "keeper.purge.tombstones");
+        verify(jdbcTemplate).queryForList(anyString(), eq(Long.class), eq(10));
+        verify(unlock).setString(1, "keeper.purge.tombstones");
+    }
+
+    @Test
+    void skipsTheRunWhenAnotherNodeHoldsTheLock() throws Exception {
+        when(lockResult.getBoolean(1)).thenReturn(false);
+
+        purgeService.applyRetention();
+
+        verify(tryLock).setString(1, "keeper.purge.retention");
+        verify(jdbcTemplate, never()).queryForList(anyString());
+        verify(connection, never()).prepareStatement(UNLOCK);
+    }
+
+    @Test
+    void releasesTheLockWhenTheRunFails() throws Exception {
+        when(lockResult.getBoolean(1)).thenReturn(true);
+        when(jdbcTemplate.queryForList(anyString())).thenThrow(new IllegalStateException("boom"));
+
+        assertThatThrownBy(() -> purgeService.applyRetention()).isInstanceOf(IllegalStateException.class);
+
+        verify(unlock).setString(1, "keeper.purge.retention");
+    }
+}
@@ -0,0 +1,121 @@
+package xyz.piod.keeper.service.transport;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Run with {@code -Dkeeper.benchmark=true} to also compare size and
+ * encode/decode cost against the JSON codec.
+ */
+class CborEventCodecTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    @Test
+    void roundTripsHeaderAndPayload() throws IOException {
+        CborEventCodec codec = new CborEventCodec(objectMapper);
+
+        byte[] frame = codec.encode(new BroadcastEvent("room:7", "new_event", Map.of("content", "hi")), "node-1");
+        CborEventCodec.Header header = CborEventCodec.readHeader(frame);
+
+        assertThat(header.topic()).isEqualTo("room:7");
+        assertThat(header.event()).isEqualTo("new_event");
+        assertThat(header.origin()).isEqualTo("node-1");
+        assertThat(codec.readPayload(frame, header, Map.class)).containsEntry("content", "hi");
+    }
+
+    @Test
+    void usesTheApplicationMapperConfiguration() throws IOException {
+        ObjectMapper snakeCase = objectMapper.copy().setPropertyNamingStrategy(PropertyNamingStrategies.SNAKE_CASE);
+        CborEventCodec codec = new CborEventCodec(snakeCase);
+
+        byte[] frame = codec.encode(new BroadcastEvent("room:7", "new_event",
+                new Payload(42L, LocalDateTime.of(2026, 1, 2, 3, 4, 5))), "node-1");
+        JsonNode payload = codec.readPayload(frame, CborEventCodec.readHeader(frame), JsonNode.class);
+
+        assertThat(payload.has("message_id")).isTrue();
+        assertThat(codec.readPayload(frame, CborEventCodec.readHeader(frame), Payload.class).sentAt())
+                .isEqualTo(LocalDateTime.of(2026, 1, 2, 3, 4, 5));
+    }
+
+    @Test
+    void rejectsFramesWithoutTheMagicHeader() {
+        assertThatThrownBy(() -> CborEventCodec.readHeader(new byte[] {'{', '"', 't'}))
+                .isInstanceOf(IOException.class);
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "keeper.benchmark", matches = "true")
+    void compareWithJson() throws IOException {
+        int iterations = Integer.getInteger("keeper.benchmark.events", 200_000);
+        CborEventCodec cbor = new CborEventCodec(objectMapper);
+        JsonEventCodec json = new JsonEventCodec(objectMapper);
+        BroadcastEvent event = new BroadcastEvent("room:1234", "new_event", sampleMessage());
+
+        byte[] cborFrame = cbor.encode(event, "node-1");
+        byte[] jsonFrame = json.encode(event, "node-1");
+
+        for (int i = 0; i < iterations; i++) {
+            cbor.encode(event, "node-1");
+            json.encode(event, "node-1");
+        }
+        long started = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            cbor.encode(event, "node-1");
+        }
+        long cborEncode = (System.nanoTime() - started) / iterations;
+        started = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            json.encode(event, "node-1");
+        }
+        long jsonEncode = (System.nanoTime() - started) / iterations;
+
+        for (int i = 0; i < iterations; i++) {
+            cbor.readPayload(cborFrame, CborEventCodec.readHeader(cborFrame), Map.class);
+            objectMapper.readValue(jsonFrame, Map.class);
+        }
+        started = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            cbor.readPayload(cborFrame, CborEventCodec.readHeader(cborFrame), Map.class);
+        }
+        long cborDecode = (System.nanoTime() - started) / iterations;
+        started = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            objectMapper.readValue(jsonFrame, Map.class);
+        }
+        long jsonDecode = (System.nanoTime() - started) / iterations;
+
+        System.out.printf("json: %d bytes/event, encode %d ns/op, decode %d ns/op%n",
+                jsonFrame.length, jsonEncode, jsonDecode);
+        System.out.printf("cbor: %d bytes/event, encode %d ns/op, decode %d ns/op%n",
+                cborFrame.length, cborEncode, cborDecode);
+    }
+
+    private static Map<String, Object> sampleMessage() {
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("id", 918273645L);
+        message.put("chatRoomId", 1234L);
+        message.put("senderUsername", "someone");
+        message.put("content", "See you at the standup tomorrow, I'll bring the notes from today");
+        message.put("timestamp", LocalDateTime.of(2026, 1, 2, 3, 4, 5));
+        message.put("edited", false);
+        message.put("pinned", false);
+        message.put("reactions", List.of(Map.of("emoji", "👍", "count", 3)));
+        return message;
+    }
+
+    record Payload(Long messageId, LocalDateTime sentAt) {}
+}
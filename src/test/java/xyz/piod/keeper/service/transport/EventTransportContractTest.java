@@ -0,0 +1,130 @@
+package xyz.piod.keeper.service.transport;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+
+/**
+ * Behaviour every {@link EventTransport} must share: events published on one
+ * node reach subscribers on another, batches keep their order, and payloads
+ * over the transport's limit are dropped without failing the publisher.
+ * Run with {@code -Dkeeper.benchmark=true} to also measure throughput.
+ */
+abstract class EventTransportContractTest {
+
+    private static final long RECEIVE_TIMEOUT_MILLIS = 5_000;
+
+    protected final BlockingQueue<String> received = new LinkedBlockingQueue<>();
+
+    protected abstract EventTransport publisher() throws Exception;
+
+    /**
+     * Starts delivering the topics of events published by other nodes into {@link #received}.
+     */
+    protected abstract void startReceiving() throws Exception;
+
+    protected abstract void stop() throws Exception;
+
+    /**
+     * Largest envelope the transport accepts, or {@link Integer#MAX_VALUE} when unbounded.
+     */
+    protected abstract int maxPayloadBytes();
+
+    @BeforeEach
+    void connect() throws Exception {
+        startReceiving();
+        awaitSubscription();
+    }
+
+    @AfterEach
+    void disconnect() throws Exception {
+        stop();
+    }
+
+    @Test
+    void deliversPublishedEvents() throws Exception {
+        publisher().publish(new BroadcastEvent("room:1", "new_event", Map.of("content", "hello")));
+
+        assertThat(next()).isEqualTo("room:1");
+    }
+
+    @Test
+    void deliversBatchesInOrder() throws Exception {
+        List<BroadcastEvent> batch = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            batch.add(new BroadcastEvent("room:" + i, "new_event", Map.of("seq", i)));
+        }
+
+        publisher().publishBatch(batch);
+
+        for (int i = 0; i < 25; i++) {
+            assertThat(next()).isEqualTo("room:" + i);
+        }
+    }
+
+    @Test
+    void dropsOversizedEventsWithoutFailing() throws Exception {
+        if (maxPayloadBytes() == Integer.MAX_VALUE) {
+            return;
+        }
+        BroadcastEvent oversized = new BroadcastEvent("room:big", "new_event", Map.of("content", "x".repeat(maxPayloadBytes())));
+
+        assertThatCode(() -> publisher().publishBatch(List.of(
+                oversized,
+                new BroadcastEvent("room:small", "new_event", Map.of("content", "ok"))))).doesNotThrowAnyException();
+
+        assertThat(next()).isEqualTo("room:small");
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "keeper.benchmark", matches = "true")
+    void throughput() throws Exception {
+        int total = Integer.getInteger("keeper.benchmark.events", 20_000);
+        int batchSize = 100;
+        EventTransport transport = publisher();
+        long started = System.nanoTime();
+        for (int from = 0; from < total; from += batchSize) {
+            List<BroadcastEvent> batch = new ArrayList<>(batchSize);
+            for (int i = from; i < Math.min(from + batchSize, total); i++) {
+                batch.add(new BroadcastEvent("room:" + (i % 100), "new_event", Map.of("content", "message " + i)));
+            }
+            transport.publishBatch(batch);
+        }
+        for (int i = 0; i < total; i++) {
+            next();
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+        System.out.printf("%s transport: %d events in %.2f s, %.0f events/s%n",
+                transport.name(), total, seconds, total / seconds);
+    }
+
+    private String next() throws InterruptedException {
+        String topic = received.poll(RECEIVE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        assertThat(topic).as("event delivered within %d ms", RECEIVE_TIMEOUT_MILLIS).isNotNull();
+        return topic;
+    }
+
+    private void awaitSubscription() throws Exception {
+        long deadline = System.currentTimeMillis() + RECEIVE_TIMEOUT_MILLIS;
+        while (System.currentTimeMillis() < deadline) {
+            publisher().publish(new BroadcastEvent("probe", "probe", Map.of()));
+            if ("probe".equals(received.poll(100, TimeUnit.MILLISECONDS))) {
+                Thread.sleep(100);
+                received.clear();
+                return;
+            }
+        }
+        throw new IllegalStateException("Subscriber never became ready");
+    }
+}
@@ -0,0 +1,29 @@
+package xyz.piod.keeper.service.transport;
+
+import java.util.function.Consumer;
+
+class InMemoryEventTransportContractTest extends EventTransportContractTest {
+
+    private final InMemoryEventTransport transport = new InMemoryEventTransport();
+    private final Consumer<BroadcastEvent> subscriber = event -> received.add(event.topic());
+
+    @Override
+    protected EventTransport publisher() {
+        return transport;
+    }
+
+    @Override
+    protected void startReceiving() {
+        transport.subscribe(subscriber);
+    }
+
+    @Override
+    protected void stop() {
+        transport.unsubscribe(subscriber);
+    }
+
+    @Override
+    protected int maxPayloadBytes() {
+        return Integer.MAX_VALUE;
+    }
+}
@@ -0,0 +1,56 @@
+package xyz.piod.keeper.service.transport;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Needs a reachable Postgres: set KEEPER_TEST_DATABASE_URL, and
+ * KEEPER_TEST_DATABASE_USERNAME / KEEPER_TEST_DATABASE_PASSWORD if required.
+ */
+@EnabledIfEnvironmentVariable(named = "KEEPER_TEST_DATABASE_URL", matches = ".+")
+class PostgresEventTransportContractTest extends EventTransportContractTest {
+
+    private PostgresEventTransport publishingNode;
+    private PostgresEventTransport listeningNode;
+
+    @Override
+    protected EventTransport publisher() {
+        return publishingNode;
+    }
+
+    @Override
+    protected void startReceiving() {
+        publishingNode = node();
+        listeningNode = node();
+        listeningNode.addRemoteListener((topic, frame) -> received.add(topic));
+    }
+
+    @Override
+    protected void stop() {
+        listeningNode.stopListening();
+    }
+
+    @Override
+    protected int maxPayloadBytes() {
+        return 7999;
+    }
+
+    private static PostgresEventTransport node() {
+        DataSourceProperties properties = new DataSourceProperties();
+        properties.setUrl(System.getenv("KEEPER_TEST_DATABASE_URL"));
+        properties.setUsername(System.getenv("KEEPER_TEST_DATABASE_USERNAME"));
+        properties.setPassword(System.getenv("KEEPER_TEST_DATABASE_PASSWORD"));
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                properties.getUrl(), properties.getUsername(), properties.getPassword());
+
+        PostgresEventTransport transport = new PostgresEventTransport(new JdbcTemplate(dataSource), new ObjectMapper(), properties);
+        ReflectionTestUtils.setField(transport, "batchSize", 100);
+        ReflectionTestUtils.setField(transport, "listenTimeoutMillis", 100);
+        ReflectionTestUtils.setField(transport, "reconnectDelayMillis", 500L);
+        return transport;
+    }
+}
@@ -0,0 +1,67 @@
+package xyz.piod.keeper.service.transport;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+/**
+ * Needs a reachable Redis: set KEEPER_TEST_REDIS_HOST (and KEEPER_TEST_REDIS_PORT if not 6379).
+ */
+@EnabledIfEnvironmentVariable(named = "KEEPER_TEST_REDIS_HOST", matches = ".+")
+class RedisEventTransportContractTest extends EventTransportContractTest {
+
+    private static final int MAX_PAYLOAD_BYTES = 65_536;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private LettuceConnectionFactory connectionFactory;
+    private RedisMessageListenerContainer listenerContainer;
+    private RedisEventTransport transport;
+
+    @Override
+    protected EventTransport publisher() {
+        return transport;
+    }
+
+    @Override
+    protected void startReceiving() throws Exception {
+        String port = System.getenv("KEEPER_TEST_REDIS_PORT");
+        connectionFactory = new LettuceConnectionFactory(System.getenv("KEEPER_TEST_REDIS_HOST"),
+                port == null ? 6379 : Integer.parseInt(port));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+
+        transport = new RedisEventTransport(new StringRedisTemplate(connectionFactory), List.of(new JsonEventCodec(objectMapper)));
+        ReflectionTestUtils.setField(transport, "maxPayloadBytes", MAX_PAYLOAD_BYTES);
+        ReflectionTestUtils.setField(transport, "codecNames", new String[]{"json"});
+        transport.selectCodecs();
+
+        listenerContainer = new RedisMessageListenerContainer();
+        listenerContainer.setConnectionFactory(connectionFactory);
+        listenerContainer.addMessageListener((message, pattern) -> {
+            try {
+                received.add(objectMapper.readTree(message.getBody()).path("topic").asText());
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }, new ChannelTopic(RedisEventTransport.KEEPER_EVENTS_CHANNEL));
+        listenerContainer.afterPropertiesSet();
+        listenerContainer.start();
+    }
+
+    @Override
+    protected void stop() throws Exception {
+        listenerContainer.destroy();
+        connectionFactory.destroy();
+    }
+
+    @Override
+    protected int maxPayloadBytes() {
+        return MAX_PAYLOAD_BYTES;
+    }
+}
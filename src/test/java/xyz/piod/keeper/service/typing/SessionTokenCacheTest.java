@@ -0,0 +1,124 @@
+package xyz.piod.keeper.service.typing;
+
+import io.jsonwebtoken.Claims;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import xyz.piod.keeper.repository.UserRepository;
+import xyz.piod.keeper.service.JwtService;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SessionTokenCacheTest {
+
+    private JwtService jwtService;
+    private UserRepository userRepository;
+    private SessionTokenCache cache;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        jwtService = mock(JwtService.class);
+        userRepository = mock(UserRepository.class);
+        when(jwtService.extractClaim(anyString(), any())).thenAnswer(invocation -> {
+            String token = invocation.getArgument(0);
+            Claims claims = mock(Claims.class);
+            when(claims.getSubject()).thenReturn("user-" + token);
+            when(claims.getExpiration()).thenReturn(new Date(System.currentTimeMillis() + 3_600_000L));
+            return ((Function<Claims, Object>) invocation.getArgument(1)).apply(claims);
+        });
+        when(userRepository.findIdByUsername(anyString())).thenReturn(Optional.of(42L));
+
+        cache = new SessionTokenCache(jwtService, userRepository);
+        ReflectionTestUtils.setField(cache, "maxSessions", 2);
+        ReflectionTestUtils.setField(cache, "sessionTtlMillis", 60_000L);
+    }
+
+    @Test
+    void cachesResolvedSessions() {
+        SessionTokenCache.Session first = cache.resolve("a");
+        SessionTokenCache.Session second = cache.resolve("a");
+
+        assertThat(first.username()).isEqualTo("user-a");
+        assertThat(first.userId()).isEqualTo(42L);
+        assertThat(second).isSameAs(first);
+        verify(userRepository, times(1)).findIdByUsername("user-a");
+    }
+
+    @Test
+    void capsSessionLifetimeAtTheConfiguredTtl() {
+        long before = System.currentTimeMillis();
+
+        SessionTokenCache.Session session = cache.resolve("a");
+
+        assertThat(session.expiresAt()).isBetween(before + 60_000L, System.currentTimeMillis() + 60_000L);
+    }
+
+    @Test
+    void reloadsSessionsAfterTheyExpire() {
+        ReflectionTestUtils.setField(cache, "sessionTtlMillis", 0L);
+
+        cache.resolve("a");
+        cache.resolve("a");
+
+        verify(userRepository, times(2)).findIdByUsername("user-a");
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedSessionWhenFull() {
+        cache.resolve("a");
+        cache.resolve("b");
+        cache.resolve("a");
+        cache.resolve("c");
+
+        assertThat(cache.size()).isEqualTo(2);
+        cache.resolve("a");
+        cache.resolve("b");
+        verify(userRepository, times(1)).findIdByUsername("user-a");
+        verify(userRepository, times(2)).findIdByUsername("user-b");
+    }
+
+    @Test
+    void rejectsTokensOfUnknownUsers() {
+        when(userRepository.findIdByUsername("user-ghost")).thenReturn(Optional.empty());
+
+        assertThat(cache.resolve("ghost")).isNull();
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    void concurrentResolvesAgreeAndStayWithinTheCap() throws Exception {
+        ReflectionTestUtils.setField(cache, "maxSessions", 16);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Callable<SessionTokenCache.Session>> calls = new ArrayList<>();
+            for (int i = 0; i < 2_000; i++) {
+                String token = "t" + (i % 64);
+                calls.add(() -> cache.resolve(token));
+            }
+            for (Future<SessionTokenCache.Session> result : pool.invokeAll(calls)) {
+                assertThat(result.get()).isNotNull();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertThat(cache.size()).isLessThanOrEqualTo(16);
+    }
+}
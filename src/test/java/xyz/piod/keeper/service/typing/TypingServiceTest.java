@@ -0,0 +1,99 @@
+package xyz.piod.keeper.service.typing;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import xyz.piod.keeper.dto.ChatMessage;
+import xyz.piod.keeper.dto.command.MessageCommand;
+import xyz.piod.keeper.service.BroadcastService;
+import xyz.piod.keeper.service.RoomMembershipService;
+import xyz.piod.keeper.service.transport.BroadcastEvent;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class TypingServiceTest {
+
+    private SessionTokenCache sessionTokenCache;
+    private BroadcastService broadcastService;
+    private RoomMembershipService roomMembershipService;
+    private TypingService typingService;
+
+    @BeforeEach
+    void setUp() {
+        sessionTokenCache = mock(SessionTokenCache.class);
+        broadcastService = mock(BroadcastService.class);
+        roomMembershipService = mock(RoomMembershipService.class);
+        typingService = new TypingService(sessionTokenCache, broadcastService, roomMembershipService,
+                new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(typingService, "throttleMillis", 1_000L);
+        ReflectionTestUtils.setField(typingService, "ttlMillis", 5_000L);
+        typingService.initMetrics();
+
+        when(sessionTokenCache.resolve("token"))
+                .thenReturn(new SessionTokenCache.Session("alice", 7L, System.currentTimeMillis() + 60_000L));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void broadcastsTypingForRoomMembers() {
+        when(roomMembershipService.containsMember(3L, 7L)).thenReturn(true);
+
+        typingService.handle("typing", command(3L));
+        typingService.publishSnapshots();
+
+        ArgumentCaptor<List<BroadcastEvent>> captor = ArgumentCaptor.forClass(List.class);
+        verify(broadcastService).broadcastAll(captor.capture());
+        BroadcastEvent event = captor.getValue().get(0);
+        assertThat(event.topic()).isEqualTo("room:3");
+        assertThat(((ChatMessage) event.payload()).getTypingUsernames()).containsExactly("alice");
+    }
+
+    @Test
+    void ignoresUsersWhoAreNotMembers() {
+        when(roomMembershipService.containsMember(3L, 7L)).thenReturn(false);
+
+        typingService.handle("typing", command(3L));
+        typingService.publishSnapshots();
+
+        verify(broadcastService, never()).broadcastAll(anyList());
+    }
+
+    @Test
+    void ignoresCommandsWithoutARoom() {
+        typingService.handle("typing", command(null));
+        typingService.publishSnapshots();
+
+        verify(roomMembershipService, never()).containsMember(any(), any());
+        verify(broadcastService, never()).broadcastAll(anyList());
+    }
+
+    @Test
+    void throttledTypingSkipsTheMembershipCheck() {
+        when(roomMembershipService.containsMember(3L, 7L)).thenReturn(true);
+
+        typingService.handle("typing", command(3L));
+        typingService.handle("typing", command(3L));
+        typingService.handle("typing", command(3L));
+
+        verify(roomMembershipService, times(1)).containsMember(3L, 7L);
+        verify(roomMembershipService, never()).isMember(any(), any());
+    }
+
+    private static MessageCommand command(Long roomId) {
+        MessageCommand command = new MessageCommand();
+        command.setUserToken("token");
+        command.setRoomId(roomId);
+        return command;
+    }
+}